@@ -38,6 +38,42 @@ public class ByteRangeInputStream extends InputStream {
      * @throws IOException
      */
     public ByteRangeInputStream(InputStream src, long limit, String rangeHeader)
+        throws IOException, IndexOutOfBoundsException {
+        long[] range = parse(limit, rangeHeader);
+        this.offset = range[0];
+        this.length = range[1];
+        this.src = src;
+        long skipped = 0;
+        while ((skipped += src.skip(offset - skipped)) < offset) {
+            src.skip(offset - skipped);
+        }
+        // describe the inclusive range of byte positions of this segment
+        contentRange = contentRange(this.offset, this.length, limit);
+    }
+
+    /**
+     * Like {@link #ByteRangeInputStream(InputStream, long, String)}, but
+     * opens the source at the start of the range, rather than skipping to it.
+     *
+     * @param src opens the source at the offset of the range
+     * @param limit the maximum size of the stream
+     * @param rangeHeader the value of a rfc2616 HTTP Range request header, given in the form "bytes=[num][-num]"
+     * @throws IndexOutOfBoundsException when there is no satisfiable range in the header value (HTTP 416)
+     * @throws IOException
+     */
+    public ByteRangeInputStream(Source src, long limit, String rangeHeader)
+        throws IOException, IndexOutOfBoundsException {
+        long[] range = parse(limit, rangeHeader);
+        this.offset = range[0];
+        this.length = range[1];
+        this.src = src.open(this.offset, this.length);
+        contentRange = contentRange(this.offset, this.length, limit);
+    }
+
+    /**
+     * Get the offset and length of the range requested.
+     */
+    private static long[] parse(long limit, String rangeHeader)
         throws IOException, IndexOutOfBoundsException {
         Matcher m = RANGE_HEADER.matcher(rangeHeader);
         if (!m.find()) {
@@ -66,18 +102,14 @@ public class ByteRangeInputStream extends InputStream {
         if (offset >= limit || offset < 0) {
             throw new IndexOutOfBoundsException("Bad range spec start position: " + rangeHeader);
         }
-        this.length = Math.min(length, limit);
         if (length < 0) {
             throw new IndexOutOfBoundsException("Bad range spec end position: " + rangeHeader);
         }
-        this.offset = offset;
-        this.src = src;
-        long skipped = 0;
-        while ((skipped += src.skip(offset - skipped)) < offset) {
-            src.skip(offset - skipped);
-        }
-        // describe the inclusive range of byte positions of this segment
-        contentRange = "bytes " +  Long.toString(this.offset) + "-" + Long.toString(this.offset + this.length - 1)
+        return new long[] {offset, Math.min(length, limit)};
+    }
+
+    private static String contentRange(long offset, long length, long limit) {
+        return "bytes " +  Long.toString(offset) + "-" + Long.toString(offset + length - 1)
                 + "/" + Long.toString(limit);
     }
 
@@ -131,4 +163,33 @@ public class ByteRangeInputStream extends InputStream {
         this.read += skipped;
         return skipped;
     }
+
+    InputStream source() {
+        return this.src;
+    }
+
+    long remaining() {
+        return this.length - this.read;
+    }
+
+    /**
+     * Account for bytes sent from the source by other means than reading
+     * this stream (see {@link FileChannelInputStream}).
+     */
+    void transferred(long count) {
+        this.read += count;
+    }
+
+    /**
+     * Opens content at a given position, for sources that can do so without
+     * reading what comes before it.
+     */
+    public interface Source {
+
+        /**
+         * @param offset the position of the first byte to read
+         * @param length the number of bytes that will be read
+         */
+        InputStream open(long offset, long length) throws IOException;
+    }
 }
@@ -0,0 +1,201 @@
+/* The contents of this file are subject to the license and copyright terms
+ * detailed in the license directory at the root of the source tree (also
+ * available online at http://fedora-commons.org/license/).
+ */
+package org.fcrepo.utilities.io;
+
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Reads a region of a file through its FileChannel, and exposes the channel
+ * so that the region can be transferred to its destination with
+ * {@link FileChannel#transferTo(long, long, WritableByteChannel)} rather
+ * than copied through a buffer.
+ * <p>
+ * Reads are positional, so the channel's own position is not used.
+ * </p>
+ */
+public class FileChannelInputStream extends InputStream {
+
+    private final FileChannel m_channel;
+
+    private final long m_end;
+
+    private long m_position;
+
+    /**
+     * @param channel the channel to read; it is closed when this stream is
+     * @param offset the position of the first byte to read
+     * @param length the most bytes to read
+     * @throws IOException
+     */
+    public FileChannelInputStream(FileChannel channel, long offset, long length)
+            throws IOException {
+        m_channel = channel;
+        m_position = offset;
+        m_end = offset + Math.max(0, Math.min(length, channel.size() - offset));
+    }
+
+    public FileChannel getChannel() {
+        return m_channel;
+    }
+
+    /**
+     * Get the position in the channel of the next byte to be read.
+     */
+    public long getPosition() {
+        return m_position;
+    }
+
+    /**
+     * Get the number of bytes left to read.
+     */
+    public long getRemaining() {
+        return m_end - m_position;
+    }
+
+    @Override
+    public int read() throws IOException {
+        byte[] b = new byte[1];
+        return read(b, 0, 1) == 1 ? b[0] & 0xff : -1;
+    }
+
+    @Override
+    public int read(byte[] buf, int offset, int length) throws IOException {
+        if (length == 0) {
+            return 0;
+        }
+        long rem = getRemaining();
+        if (rem < 1) {
+            return -1;
+        }
+        int read = m_channel.read(ByteBuffer.wrap(buf, offset,
+                                                  (int) Math.min(rem, length)),
+                                  m_position);
+        if (read < 0) {
+            return -1;
+        }
+        m_position += read;
+        return read;
+    }
+
+    @Override
+    public long skip(long skip) throws IOException {
+        long skipped = Math.max(0, Math.min(skip, getRemaining()));
+        m_position += skipped;
+        return skipped;
+    }
+
+    @Override
+    public int available() throws IOException {
+        return (int) Math.min(getRemaining(), Integer.MAX_VALUE);
+    }
+
+    @Override
+    public void close() throws IOException {
+        m_channel.close();
+    }
+
+    /**
+     * Transfer up to max of the remaining bytes to the target, as if they
+     * had been read.
+     * @return the number of bytes transferred
+     * @throws IOException
+     */
+    public long transferTo(WritableByteChannel target, long max)
+            throws IOException {
+        long count = Math.min(max, getRemaining());
+        long done = 0;
+        while (done < count) {
+            long sent = m_channel.transferTo(m_position, count - done, target);
+            if (sent <= 0) {
+                break;
+            }
+            m_position += sent;
+            done += sent;
+        }
+        return done;
+    }
+
+    /**
+     * Whether the rest of a stream can be sent to out with
+     * {@link #transferTo(InputStream, OutputStream)}: that is, out is itself
+     * a channel or a FileOutputStream, and the stream is a
+     * FileChannelInputStream, or a FileInputStream with content left (which
+     * rules out pipes and devices), or a {@link ByteRangeInputStream} over
+     * one of them. Any other OutputStream would have to be wrapped in a
+     * channel that copies through a buffer of its own, which is slower than
+     * copying the stream directly.
+     */
+    public static boolean isTransferable(InputStream in, OutputStream out) {
+        if (!(out instanceof FileOutputStream)
+                && !(out instanceof WritableByteChannel)) {
+            return false;
+        }
+        if (in instanceof ByteRangeInputStream) {
+            in = ((ByteRangeInputStream) in).source();
+        }
+        if (in instanceof FileInputStream) {
+            try {
+                FileChannel channel = ((FileInputStream) in).getChannel();
+                return channel.size() > channel.position();
+            } catch (IOException e) {
+                return false;
+            }
+        }
+        return in instanceof FileChannelInputStream;
+    }
+
+    /**
+     * Send the rest of a stream to out through the underlying file's
+     * channel. The stream is not closed.
+     * @param in a stream for which
+     * {@link #isTransferable(InputStream, OutputStream)}
+     * @return the number of bytes sent
+     * @throws IOException
+     * @throws IllegalArgumentException if the stream is not transferable
+     */
+    public static long transferTo(InputStream in, OutputStream out)
+            throws IOException {
+        ByteRangeInputStream range = null;
+        long max = Long.MAX_VALUE;
+        if (in instanceof ByteRangeInputStream) {
+            range = (ByteRangeInputStream) in;
+            max = range.remaining();
+            in = range.source();
+        }
+        WritableByteChannel target;
+        if (out instanceof FileOutputStream) {
+            target = ((FileOutputStream) out).getChannel();
+        } else if (out instanceof WritableByteChannel) {
+            target = (WritableByteChannel) out;
+        } else {
+            throw new IllegalArgumentException("Not a channel: "
+                    + out.getClass().getName());
+        }
+        long sent;
+        if (in instanceof FileChannelInputStream) {
+            sent = ((FileChannelInputStream) in).transferTo(target, max);
+        } else if (in instanceof FileInputStream) {
+            FileChannel channel = ((FileInputStream) in).getChannel();
+            FileChannelInputStream view =
+                    new FileChannelInputStream(channel, channel.position(), max);
+            sent = view.transferTo(target, max);
+            channel.position(view.getPosition());
+        } else {
+            throw new IllegalArgumentException("Not a file-backed stream: "
+                    + in.getClass().getName());
+        }
+        if (range != null) {
+            range.transferred(sent);
+        }
+        return sent;
+    }
+}
@@ -9,7 +9,8 @@ import org.junit.runner.RunWith;
 import org.junit.runners.Suite;
 
 @RunWith(Suite.class)
-@Suite.SuiteClasses( {org.fcrepo.utilities.io.TestByteRangeInputStream.class} )
+@Suite.SuiteClasses( {org.fcrepo.utilities.io.TestByteRangeInputStream.class,
+                       org.fcrepo.utilities.io.TestFileChannelInputStream.class} )
 public class AllUnitTests {
 
     // Supports legacy tests runners
@@ -17,6 +18,7 @@ public class AllUnitTests {
         junit.framework.TestSuite suite =
                 new junit.framework.TestSuite(AllUnitTests.class.getName());
         suite.addTest(org.fcrepo.utilities.io.TestByteRangeInputStream.suite());
+        suite.addTest(org.fcrepo.utilities.io.TestFileChannelInputStream.suite());
         return suite;
     }
 }
@@ -115,6 +115,26 @@ public class TestByteRangeInputStream {
         assertEquals(data, actual);
 	}
 
+    @SuppressWarnings("resource")
+    @Test
+    public void testOpenedAtOffset() throws IndexOutOfBoundsException, IOException {
+        final byte[] data = "1234567890".getBytes(Charset.forName("UTF-8"));
+        final long[] opened = new long[2];
+        ByteRangeInputStream.Source source = new ByteRangeInputStream.Source() {
+            @Override
+            public InputStream open(long offset, long length) {
+                opened[0] = offset;
+                opened[1] = length;
+                return new ByteArrayInputStream(data, (int) offset, (int) length);
+            }
+        };
+        ByteRangeInputStream test = new ByteRangeInputStream(source, 10, "bytes=-4");
+        assertEquals(6, opened[0]);
+        assertEquals(4, opened[1]);
+        assertEquals("bytes 6-9/10", test.contentRange);
+        assertEquals("7890", IOUtils.toString(test));
+    }
+
 	public static junit.framework.Test suite() {
 		return new JUnit4TestAdapter(TestByteRangeInputStream.class);
 	}
@@ -0,0 +1,179 @@
+/* The contents of this file are subject to the license and copyright terms
+ * detailed in the license directory at the root of the source tree (also
+ * available online at http://fedora-commons.org/license/).
+ */
+package org.fcrepo.utilities.io;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestFileChannelInputStream {
+
+    private File file;
+
+    private File target;
+
+    /** Where content is transferred to. */
+    private FileOutputStream out;
+
+    @Before
+    public void setUp() throws IOException {
+        file = File.createTempFile("filechannelinputstream", ".dat");
+        FileOutputStream content = new FileOutputStream(file);
+        try {
+            content.write("1234567890".getBytes("UTF-8"));
+        } finally {
+            content.close();
+        }
+        target = File.createTempFile("filechannelinputstream", ".out");
+        out = new FileOutputStream(target);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        out.close();
+        file.delete();
+        target.delete();
+    }
+
+    @Test
+    public void testRead() throws IOException {
+        FileChannelInputStream in = open(2, 5);
+        try {
+            assertEquals('3', in.read());
+            assertEquals(1, in.skip(1));
+            assertEquals("567", IOUtils.toString(in, "UTF-8"));
+            assertEquals(-1, in.read());
+            assertEquals(7, in.getPosition());
+        } finally {
+            in.close();
+        }
+        in = open(8, 5);
+        try {
+            assertEquals(2, in.getRemaining());
+            assertEquals("90", IOUtils.toString(in, "UTF-8"));
+        } finally {
+            in.close();
+        }
+    }
+
+    @Test
+    public void testTransfer() throws IOException {
+        FileChannelInputStream in = open(3, 4);
+        try {
+            assertTrue(FileChannelInputStream.isTransferable(in, out));
+            assertEquals("4567", transfer(in));
+            assertEquals(0, in.getRemaining());
+        } finally {
+            in.close();
+        }
+        FileInputStream fis = new FileInputStream(file);
+        try {
+            assertEquals(1, fis.skip(1));
+            assertTrue(FileChannelInputStream.isTransferable(fis, out));
+            assertEquals("234567890", transfer(fis));
+            assertEquals(-1, fis.read());
+        } finally {
+            fis.close();
+        }
+    }
+
+    @SuppressWarnings("resource")
+    @Test
+    public void testTransferRange() throws IOException {
+        ByteRangeInputStream range =
+                new ByteRangeInputStream(new FileInputStream(file), 10,
+                                         "bytes=2-4");
+        try {
+            assertTrue(FileChannelInputStream.isTransferable(range, out));
+            assertEquals("345", transfer(range));
+            assertEquals(-1, range.read());
+        } finally {
+            range.close();
+        }
+        ByteRangeInputStream.Source source = new ByteRangeInputStream.Source() {
+
+            @Override
+            public InputStream open(long offset, long length)
+                    throws IOException {
+                return TestFileChannelInputStream.this.open(offset, length);
+            }
+        };
+        range = new ByteRangeInputStream(source, 10, "bytes=-3");
+        try {
+            assertTrue(FileChannelInputStream.isTransferable(range, out));
+            assertEquals("890", transfer(range));
+        } finally {
+            range.close();
+        }
+    }
+
+    @Test
+    public void testNotTransferable() throws IOException {
+        assertFalse(FileChannelInputStream
+                .isTransferable(new ByteArrayInputStream(new byte[1]), out));
+        FileChannelInputStream in = open(0, 10);
+        try {
+            // copying to a plain stream through a channel would be slower
+            assertFalse(FileChannelInputStream
+                    .isTransferable(in, new ByteArrayOutputStream()));
+        } finally {
+            in.close();
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testTransferToPlainStream() throws IOException {
+        FileChannelInputStream in = open(0, 10);
+        try {
+            FileChannelInputStream.transferTo(in, new ByteArrayOutputStream());
+        } finally {
+            in.close();
+        }
+    }
+
+    private FileChannelInputStream open(long offset, long length)
+            throws IOException {
+        return new FileChannelInputStream(new RandomAccessFile(file, "r")
+                .getChannel(), offset, length);
+    }
+
+    /**
+     * Transfer the rest of the stream to the target, returning what it was.
+     */
+    private String transfer(InputStream in) throws IOException {
+        long start = out.getChannel().position();
+        long sent = FileChannelInputStream.transferTo(in, out);
+        assertEquals(start + sent, out.getChannel().position());
+        RandomAccessFile written = new RandomAccessFile(target, "r");
+        try {
+            byte[] bytes = new byte[(int) sent];
+            written.seek(start);
+            written.readFully(bytes);
+            return new String(bytes, "UTF-8");
+        } finally {
+            written.close();
+        }
+    }
+
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(TestFileChannelInputStream.class);
+    }
+}
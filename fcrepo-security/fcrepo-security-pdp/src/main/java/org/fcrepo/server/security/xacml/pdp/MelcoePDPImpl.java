@@ -20,14 +20,18 @@ package org.fcrepo.server.security.xacml.pdp;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
+import java.util.concurrent.Callable;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.fcrepo.server.security.RequestCtx;
 import org.fcrepo.server.security.impl.BasicEvaluationCtx;
 import org.fcrepo.server.security.impl.BasicRequestCtx;
+import org.fcrepo.server.utilities.ParallelTasks;
 import org.jboss.security.xacml.sunxacml.Indenter;
 import org.jboss.security.xacml.sunxacml.PDP;
 import org.jboss.security.xacml.sunxacml.PDPConfig;
@@ -135,9 +139,28 @@ public class MelcoePDPImpl
     @Override
     public ResponseCtx evaluateBatch(RequestCtx[] requests) throws EvaluationException {
         logger.debug("evaluating request batch");
+        List<Callable<ResponseCtx>> tasks =
+                new ArrayList<Callable<ResponseCtx>>(requests.length);
+        for (final RequestCtx request: requests) {
+            tasks.add(new Callable<ResponseCtx>() {
+
+                @Override
+                public ResponseCtx call() throws EvaluationException {
+                    return evaluate(request);
+                }
+            });
+        }
+        List<ResponseCtx> responses;
+        try {
+            responses = ParallelTasks.invokeAll(tasks);
+        } catch (EvaluationException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new EvaluationException("Error evaluating request batch: "
+                    + e.getMessage(), e);
+        }
         Set<Result> results = new HashSet<Result>();
-        for (RequestCtx request: requests) {
-            ResponseCtx response = evaluate(request);
+        for (ResponseCtx response: responses) {
             @SuppressWarnings("unchecked")
             Set<Result> r = response.getResults();
             results.addAll(r);
@@ -17,7 +17,10 @@
 package org.fcrepo.server.security.xacml.pdp.data;
 
 import java.io.File;
+import java.util.Collections;
 import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
@@ -29,6 +32,7 @@ import org.fcrepo.server.security.xacml.pdp.finder.policy.PolicyReader;
 import org.fcrepo.server.security.xacml.util.DataFileUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.w3c.dom.Document;
 
 import org.jboss.security.xacml.sunxacml.AbstractPolicy;
 import org.jboss.security.xacml.sunxacml.EvaluationCtx;
@@ -38,7 +42,12 @@ import org.jboss.security.xacml.sunxacml.finder.PolicyFinder;
 /**
  * Implements PolicyIndex for a filesystem policy index, cached in memory
  *
- * FIXME: there is no indexing; all policies will be returned by getPolicies()
+ * Policies are parsed once, when they are loaded or added, and indexed on the
+ * resource-id and action-id values their Targets require (see
+ * PolicyTargetIndex). getPolicies() returns only the candidate policies for the
+ * request, without parsing. PolicySets refer to the PolicyFinder, so they are
+ * parsed the first time each PolicyFinder asks for them, and cached per
+ * PolicyFinder.
  *
  * @author nishen@melcoe.mq.edu.au
  */
@@ -54,6 +63,13 @@ implements PolicyIndex {
 
     // contains the cached policies.  one and only one of these
     private static Map<String, byte[]> policies = null;
+    // parsed Policies (not PolicySets), by name
+    private static Map<String, AbstractPolicy> parsedPolicies = null;
+    // parsed PolicySets, by PolicyFinder and then by name
+    private static final Map<PolicyFinder, Map<String, AbstractPolicy>> parsedPolicySets =
+        Collections.synchronizedMap(new WeakHashMap<PolicyFinder, Map<String, AbstractPolicy>>());
+    // candidate policies by resource-id and action-id
+    private static PolicyTargetIndex targetIndex = null;
     // protects concurrent access to the policies (particularly the files in the cache directory)
     private static final ReentrantReadWriteLock rwl = new ReentrantReadWriteLock();
     public static final Lock readLock = rwl.readLock();
@@ -62,7 +78,7 @@ implements PolicyIndex {
     protected FilePolicyIndex(PolicyReader policyReader)
     throws PolicyIndexException {
         super(policyReader);
-        indexed = false; // this implementation returns all policies when queried - no indexing/filtering
+        indexed = true; // policies are filtered on resource-id and action-id
 
         logger.info("Starting FilePolicyIndex");
 
@@ -99,14 +115,13 @@ implements PolicyIndex {
     @Override
     public Map<String, AbstractPolicy> getPolicies(EvaluationCtx eval, PolicyFinder policyFinder)
     throws PolicyIndexException {
-        // no indexing, return everything
         // return a copy, otherwise the map could change during evaluation if policies are added, deleted etc
         readLock.lock();
         try {
+            Set<String> candidates = targetIndex.getCandidates(eval);
             Map<String, AbstractPolicy> result = new ConcurrentHashMap<String, AbstractPolicy>();
-            for(String id:policies.keySet()){
-                AbstractPolicy policy = handleDocument(m_policyReader.readPolicy(policies.get(id)),policyFinder);
-                result.put(id, policy);
+            for (String id : candidates) {
+                result.put(id, getParsedPolicy(id, policyFinder));
             }
             return result;
         }
@@ -117,6 +132,75 @@ implements PolicyIndex {
         }
     }
 
+    /**
+     * Get a parsed policy from the cache. A PolicySet is parsed the first time
+     * it is requested for a given PolicyFinder. Call with the read lock held.
+     */
+    private AbstractPolicy getParsedPolicy(String name, PolicyFinder policyFinder) throws ParsingException {
+        AbstractPolicy policy = parsedPolicies.get(name);
+        if (policy != null) {
+            return policy;
+        }
+
+        Map<String, AbstractPolicy> policySets;
+        synchronized (parsedPolicySets) {
+            policySets = parsedPolicySets.get(policyFinder);
+            if (policySets == null) {
+                policySets = new ConcurrentHashMap<String, AbstractPolicy>();
+                parsedPolicySets.put(policyFinder, policySets);
+            }
+        }
+        policy = policySets.get(name);
+        if (policy == null) {
+            // a concurrent request may parse it too; either result will do
+            policy = handleDocument(m_policyReader.readPolicy(policies.get(name)), policyFinder);
+            policySets.put(name, policy);
+        }
+        return policy;
+    }
+
+    /**
+     * Parse a policy document, and the policy too if it is a Policy (a
+     * PolicySet can only be parsed with a PolicyFinder).
+     */
+    private ParsedDocument parsePolicy(String name, byte[] document) throws PolicyIndexException {
+        try {
+            Document doc = m_policyReader.readPolicy(document);
+            AbstractPolicy policy = null;
+            if ("Policy".equals(doc.getDocumentElement().getTagName())) {
+                policy = handleDocument(doc, null);
+            }
+            return new ParsedDocument(doc, policy);
+        } catch (ParsingException pe) {
+            throw new PolicyIndexException("Error parsing policy " + name + ": " + pe.getMessage(), pe);
+        }
+    }
+
+    /**
+     * Index a parsed policy document, and cache it if it is a Policy. Call
+     * with the write lock held.
+     */
+    private void cachePolicy(String name, ParsedDocument parsed) {
+        targetIndex.add(name, parsed.document);
+        if (parsed.policy != null) {
+            parsedPolicies.put(name, parsed.policy);
+        }
+    }
+
+    /**
+     * Remove a policy from the parsed caches and the index. Call with the
+     * write lock held.
+     */
+    private void uncachePolicy(String name) {
+        targetIndex.remove(name);
+        parsedPolicies.remove(name);
+        synchronized (parsedPolicySets) {
+            for (Map<String, AbstractPolicy> policySets : parsedPolicySets.values()) {
+                policySets.remove(name);
+            }
+        }
+    }
+
 
     /**
      * Convert a policy name to a filename that can be used to persist the policy.
@@ -201,13 +285,7 @@ implements PolicyIndex {
         writeLock.lock();
         try {
             logger.debug("Updating policy named: " + name);
-            if (doDelete(name)) {
-                doAdd(name, newDocument);
-                return true;
-            } else {
-                // delete failed
-                return false;
-            }
+            return doUpdate(name, newDocument);
         } finally {
             writeLock.unlock();
         }
@@ -219,9 +297,13 @@ implements PolicyIndex {
     private String doAdd(String name, String document) throws PolicyIndexException {
         String filename = nameToFile(name).getAbsolutePath();
 
-        if (policies.put(name, document.getBytes()) != null) {
+        if (policies.containsKey(name)) {
             throw new PolicyIndexException("Attempting to add policy " + name + " but it already exists");
         }
+        // parse before storing, so a policy that can't be parsed is rejected here
+        // rather than failing every subsequent request
+        cachePolicy(name, parsePolicy(name, document.getBytes()));
+        policies.put(name, document.getBytes());
 
         try {
             logger.debug("Saving policy file in index: " + filename);
@@ -234,10 +316,34 @@ implements PolicyIndex {
     }
 
 
+    private boolean doUpdate(String name, String document) throws PolicyIndexException {
+        if (!policies.containsKey(name)) {
+            throw new PolicyIndexException("Attempting to update non-existent policy " + name);
+        }
+        // parse before replacing anything, so a document that can't be parsed
+        // leaves the existing policy in force
+        byte[] bytes = document.getBytes();
+        ParsedDocument parsed = parsePolicy(name, bytes);
+
+        String filename = nameToFile(name).getAbsolutePath();
+        try {
+            logger.debug("Saving policy file in index: " + filename);
+            DataFileUtils.saveDocument(filename, bytes);
+        } catch (Exception e) {
+            throw new PolicyIndexException("Failed to save policy file " + filename);
+        }
+
+        uncachePolicy(name);
+        cachePolicy(name, parsed);
+        policies.put(name, bytes);
+        return true;
+    }
+
     private boolean doDelete(String name) throws PolicyIndexException {
         if (policies.remove(name) == null) {
             throw new PolicyIndexException("Attempting to delete non-existent policy " + name);
         }
+        uncachePolicy(name);
 
         File policy = nameToFile(name);
 
@@ -268,7 +374,7 @@ implements PolicyIndex {
         try {
             logger.debug("Getting policy named: " + name);
             if (policies.containsKey(name)) {
-                return handleDocument(m_policyReader.readPolicy(policies.get(name)), policyFinder);
+                return getParsedPolicy(name, policyFinder);
             } else {
                 throw new PolicyIndexException("Attempting to get non-existent policy " + name);
             }
@@ -306,6 +412,9 @@ implements PolicyIndex {
             }
             // clear the cache
             policies = new ConcurrentHashMap<String, byte[]>();
+            parsedPolicies = new ConcurrentHashMap<String, AbstractPolicy>();
+            parsedPolicySets.clear();
+            targetIndex = new PolicyTargetIndex();
 
             return true;
         } finally {
@@ -325,6 +434,8 @@ implements PolicyIndex {
                 logger.info("Populating FeSL File policy index cache from " + policyDir);
 
                 policies = new ConcurrentHashMap<String, byte[]>();
+                parsedPolicies = new ConcurrentHashMap<String, AbstractPolicy>();
+                targetIndex = new PolicyTargetIndex();
 
                 File policyHome = new File(policyDir);
                 if (!policyHome.exists()) {
@@ -345,6 +456,7 @@ implements PolicyIndex {
 
                         String policyName = fileToName(f);
                         logger.debug("Adding policy file to cache, policy name: " + policyName);
+                        cachePolicy(policyName, parsePolicy(policyName, doc));
                         policies.put(policyName, doc);
                     } catch (Exception e) {
                         logger.error("Error loading document: " + f.getName(), e);
@@ -358,6 +470,17 @@ implements PolicyIndex {
         }
     }
 
+    private static class ParsedDocument {
+
+        final Document document;
+
+        // null for a PolicySet
+        final AbstractPolicy policy;
 
+        ParsedDocument(Document document, AbstractPolicy policy) {
+            this.document = document;
+            this.policy = policy;
+        }
+    }
 
 }
\ No newline at end of file
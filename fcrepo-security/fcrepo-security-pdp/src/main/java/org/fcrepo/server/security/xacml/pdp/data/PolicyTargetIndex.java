@@ -0,0 +1,336 @@
+/* The contents of this file are subject to the license and copyright terms
+ * detailed in the license directory at the root of the source tree (also
+ * available online at http://fedora-commons.org/license/).
+ */
+package org.fcrepo.server.security.xacml.pdp.data;
+
+import java.net.URI;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArraySet;
+
+import org.fcrepo.common.Constants;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+
+import org.jboss.security.xacml.sunxacml.EvaluationCtx;
+import org.jboss.security.xacml.sunxacml.attr.AttributeValue;
+import org.jboss.security.xacml.sunxacml.attr.BagAttribute;
+import org.jboss.security.xacml.sunxacml.cond.EvaluationResult;
+
+
+/**
+ * An in-memory index of policy targets, keyed on the values of resource-id and
+ * action-id that each policy's Target requires.
+ *
+ * The index only ever errs on the side of returning too many policies: a
+ * policy is a candidate unless its Target can only match resource-id (or
+ * action-id) values that are absent from the request. Policies whose Target
+ * does not constrain a dimension with an equality match (no section, an
+ * Any element, an alternative without such a match, or a non-equality
+ * function) are candidates for every request, as are PolicySets. If the
+ * request has no values for a dimension, that dimension is not used to filter.
+ *
+ * Not synchronized: writes must be guarded by the owning index's write lock,
+ * and reads by its read lock.
+ *
+ */
+class PolicyTargetIndex {
+
+    private final Dimension m_resources =
+            new Dimension("Resource", PolicyIndex.XACML_RESOURCE_ID);
+
+    private final Dimension m_actions =
+            new Dimension("Action",
+                          Constants.ACTION.ID.uri,
+                          Constants.XACML1_ACTION.ID.uri);
+
+    private final Set<String> m_names = new HashSet<String>();
+
+    /**
+     * Add a policy to the index, replacing any previous entry of that name.
+     */
+    void add(String name, Document policy) {
+        remove(name);
+        Element root = policy.getDocumentElement();
+        boolean isPolicy = "Policy".equals(localName(root));
+        Element target = isPolicy ? firstChild(root, "Target") : null;
+        m_resources.add(name, isPolicy, target);
+        m_actions.add(name, isPolicy, target);
+        m_names.add(name);
+    }
+
+    void remove(String name) {
+        if (m_names.remove(name)) {
+            m_resources.remove(name);
+            m_actions.remove(name);
+        }
+    }
+
+    void clear() {
+        m_names.clear();
+        m_resources.clear();
+        m_actions.clear();
+    }
+
+    /**
+     * Get the names of the policies that may apply to this request.
+     */
+    Set<String> getCandidates(EvaluationCtx eval) {
+        Set<String> result = null;
+        for (Dimension dimension : new Dimension[] {m_resources, m_actions}) {
+            Set<String> candidates = dimension.getCandidates(eval);
+            if (candidates == null) {
+                continue;
+            }
+            if (result == null) {
+                result = candidates;
+            } else {
+                result.retainAll(candidates);
+            }
+        }
+        return result == null ? new HashSet<String>(m_names) : result;
+    }
+
+    /**
+     * One of the Target sections (Resources or Actions), indexed on the
+     * values required for a set of attribute ids.
+     */
+    private static class Dimension {
+
+        private final String m_element;
+
+        private final List<String> m_attributeIds;
+
+        /** policies that don't constrain this dimension */
+        private final Set<String> m_unconstrained = new HashSet<String>();
+
+        /** value -> names of the policies that accept it */
+        private final Map<String, Set<String>> m_byValue =
+                new HashMap<String, Set<String>>();
+
+        /** name -> values the policy accepts; for removal */
+        private final Map<String, Set<String>> m_valuesByPolicy =
+                new HashMap<String, Set<String>>();
+
+        /**
+         * attribute id -> data types used in policies; the request is queried
+         * with each of them. Read without the lock by request threads, hence
+         * concurrent.
+         */
+        private final Map<String, Set<URI>> m_dataTypes =
+                new ConcurrentHashMap<String, Set<URI>>();
+
+        Dimension(String element, String... attributeIds) {
+            m_element = element;
+            m_attributeIds = Arrays.asList(attributeIds);
+        }
+
+        void add(String name, boolean isPolicy, Element target) {
+            Set<String> values = isPolicy ? getRequiredValues(target) : null;
+            if (values == null) {
+                m_unconstrained.add(name);
+                return;
+            }
+            m_valuesByPolicy.put(name, values);
+            for (String value : values) {
+                Set<String> names = m_byValue.get(value);
+                if (names == null) {
+                    names = new HashSet<String>();
+                    m_byValue.put(value, names);
+                }
+                names.add(name);
+            }
+        }
+
+        void remove(String name) {
+            m_unconstrained.remove(name);
+            Set<String> values = m_valuesByPolicy.remove(name);
+            if (values == null) {
+                return;
+            }
+            for (String value : values) {
+                Set<String> names = m_byValue.get(value);
+                if (names != null) {
+                    names.remove(name);
+                    if (names.isEmpty()) {
+                        m_byValue.remove(value);
+                    }
+                }
+            }
+        }
+
+        void clear() {
+            m_unconstrained.clear();
+            m_byValue.clear();
+            m_valuesByPolicy.clear();
+        }
+
+        /**
+         * @return the candidate policies, or null if this dimension can't be
+         *         used to filter the request.
+         */
+        Set<String> getCandidates(EvaluationCtx eval) {
+            Set<String> requestValues = getRequestValues(eval);
+            if (requestValues == null) {
+                return null;
+            }
+            Set<String> result = new HashSet<String>(m_unconstrained);
+            for (String value : requestValues) {
+                Set<String> names = m_byValue.get(value);
+                if (names != null) {
+                    result.addAll(names);
+                }
+            }
+            return result;
+        }
+
+        /**
+         * The values this Target section requires, or null if it will accept
+         * any value. Each alternative (Resource or Action element) must have an
+         * equality match on one of our attribute ids; we index on the first
+         * such match.
+         */
+        private Set<String> getRequiredValues(Element target) {
+            Element section =
+                    target == null ? null : firstChild(target, m_element + "s");
+            if (section == null) {
+                return null;
+            }
+            Set<String> values = new HashSet<String>();
+            for (Node n = section.getFirstChild(); n != null; n =
+                    n.getNextSibling()) {
+                if (n.getNodeType() != Node.ELEMENT_NODE) {
+                    continue;
+                }
+                String name = localName(n);
+                if (name.equals("Any" + m_element)) {
+                    return null;
+                }
+                if (!name.equals(m_element)) {
+                    continue;
+                }
+                String value = getRequiredValue((Element) n);
+                if (value == null) {
+                    return null;
+                }
+                values.add(value);
+            }
+            return values.isEmpty() ? null : values;
+        }
+
+        private String getRequiredValue(Element alternative) {
+            for (Node n = alternative.getFirstChild(); n != null; n =
+                    n.getNextSibling()) {
+                if (n.getNodeType() != Node.ELEMENT_NODE
+                        || !localName(n).equals(m_element + "Match")) {
+                    continue;
+                }
+                Element match = (Element) n;
+                if (!match.getAttribute("MatchId").endsWith("-equal")) {
+                    continue;
+                }
+                Element value = firstChild(match, "AttributeValue");
+                Element designator =
+                        firstChild(match, m_element + "AttributeDesignator");
+                if (value == null || designator == null
+                        || !m_attributeIds.contains(designator
+                                .getAttribute("AttributeId"))) {
+                    continue;
+                }
+                addDataType(designator.getAttribute("AttributeId"),
+                            designator.getAttribute("DataType"));
+                return value.getTextContent().trim();
+            }
+            return null;
+        }
+
+        private void addDataType(String attributeId, String dataType) {
+            Set<URI> types = m_dataTypes.get(attributeId);
+            if (types == null) {
+                types = new CopyOnWriteArraySet<URI>();
+                m_dataTypes.put(attributeId, types);
+            }
+            types.add(URI.create(dataType));
+        }
+
+        /**
+         * Get the request's values for our attribute ids, or null if there
+         * are none we can use.
+         */
+        @SuppressWarnings("unchecked")
+        private Set<String> getRequestValues(EvaluationCtx eval) {
+            Set<String> values = new HashSet<String>();
+            for (Map.Entry<String, Set<URI>> e : m_dataTypes.entrySet()) {
+                URI attributeId = URI.create(e.getKey());
+                for (URI type : e.getValue()) {
+                    EvaluationResult result =
+                            m_element.equals("Resource") ? eval
+                                    .getResourceAttribute(type,
+                                                          attributeId,
+                                                          null) : eval
+                                    .getActionAttribute(type,
+                                                        attributeId,
+                                                        null);
+                    if (result.getStatus() != null || result.indeterminate()) {
+                        // can't tell what the request holds; don't filter.
+                        return null;
+                    }
+                    AttributeValue attr = result.getAttributeValue();
+                    if (!attr.returnsBag()) {
+                        values.add(attr.encode().trim());
+                        continue;
+                    }
+                    Iterator<AttributeValue> i =
+                            ((BagAttribute) attr).iterator();
+                    while (i.hasNext()) {
+                        String value = i.next().encode().trim();
+                        values.add(value);
+                        if (PolicyIndex.XACML_RESOURCE_ID.equals(e.getKey())) {
+                            String[] components =
+                                    PolicyIndexBase.makeComponents(value);
+                            if (components != null) {
+                                for (String c : components) {
+                                    if (c != null) {
+                                        values.add(c);
+                                    }
+                                }
+                            }
+                        }
+                    }
+                }
+            }
+            return values.isEmpty() ? null : values;
+        }
+    }
+
+    private static Element firstChild(Element parent, String localName) {
+        for (Node n = parent.getFirstChild(); n != null; n = n.getNextSibling()) {
+            if (n.getNodeType() == Node.ELEMENT_NODE
+                    && localName.equals(localName(n))) {
+                return (Element) n;
+            }
+        }
+        return null;
+    }
+
+    private static String localName(Node node) {
+        String name = node.getLocalName();
+        if (name == null) {
+            name = node.getNodeName();
+            int colon = name.indexOf(':');
+            if (colon >= 0) {
+                name = name.substring(colon + 1);
+            }
+        }
+        return name;
+    }
+
+}
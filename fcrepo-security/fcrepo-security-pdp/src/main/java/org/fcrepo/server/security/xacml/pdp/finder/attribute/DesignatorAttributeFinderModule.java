@@ -1,9 +1,11 @@
 package org.fcrepo.server.security.xacml.pdp.finder.attribute;
 
 import java.net.URI;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Set;
+import java.util.WeakHashMap;
 
 import org.fcrepo.server.security.AttributeFinderModule;
 import org.fcrepo.server.security.xacml.util.Attribute;
@@ -12,6 +14,7 @@ import org.slf4j.LoggerFactory;
 
 import org.jboss.security.xacml.sunxacml.EvaluationCtx;
 import org.jboss.security.xacml.sunxacml.attr.AttributeDesignator;
+import org.jboss.security.xacml.sunxacml.cond.EvaluationResult;
 
 
 public abstract class DesignatorAttributeFinderModule
@@ -22,6 +25,10 @@ public abstract class DesignatorAttributeFinderModule
 
     protected final Map<Integer,Map<String,Attribute>> m_attributes = new HashMap<Integer,Map<String,Attribute>>();
 
+    // results already found for each evaluation, dropped with the evaluation
+    private final Map<EvaluationCtx, Map<String, EvaluationResult>> m_results =
+            Collections.synchronizedMap(new WeakHashMap<EvaluationCtx, Map<String, EvaluationResult>>());
+
     public void setActionAttributes(Map<String,Attribute> attributes){
         setAttributes(AttributeDesignator.ACTION_TARGET,attributes);
     }
@@ -50,6 +57,51 @@ public abstract class DesignatorAttributeFinderModule
     }
 
 
+    /**
+     * Gets a result found earlier in the same evaluation, so that policies
+     * which refer to an attribute more than once only look it up once.
+     *
+     * @param context
+     *        the evaluation
+     * @param key
+     *        identifies the attribute, as given to
+     *        {@link #memoize(EvaluationCtx, String, EvaluationResult)}
+     * @return the result, or null if it has not been found yet
+     */
+    protected EvaluationResult getMemoized(EvaluationCtx context, String key) {
+        Map<String, EvaluationResult> results = m_results.get(context);
+        if (results == null) {
+            return null;
+        }
+        synchronized (results) {
+            return results.get(key);
+        }
+    }
+
+    protected void memoize(EvaluationCtx context,
+                           String key,
+                           EvaluationResult result) {
+        Map<String, EvaluationResult> results;
+        synchronized (m_results) {
+            results = m_results.get(context);
+            if (results == null) {
+                results = new HashMap<String, EvaluationResult>();
+                m_results.put(context, results);
+            }
+        }
+        synchronized (results) {
+            results.put(key, result);
+        }
+    }
+
+    protected static String getMemoKey(int designatorType,
+                                       URI attributeType,
+                                       URI attributeId,
+                                       String resourceId) {
+        return designatorType + " " + attributeType + " " + attributeId + " "
+                + resourceId;
+    }
+
     protected boolean emptyAttributeMap() {
         return m_attributes.size() == 0;
     }
@@ -109,7 +109,11 @@ public class FedoraRIAttributeFinder
         }
 
 
-        EvaluationResult result = null;
+        String key = getMemoKey(designatorType, attributeType, attributeId, resourceId);
+        EvaluationResult result = getMemoized(context, key);
+        if (result != null) {
+            return result;
+        }
         try {
             result = getEvaluationResult(resourceId, attrName, attribute, attributeType);
         } catch (Exception e) {
@@ -117,6 +121,7 @@ public class FedoraRIAttributeFinder
             return new EvaluationResult(BagAttribute
                     .createEmptyBag(attributeType));
         }
+        memoize(context, key, result);
 
         return result;
     }
@@ -147,7 +147,11 @@ public class RITriplesAttributeFinder
                     .createEmptyBag(attributeType));
         }
 
-        EvaluationResult result = null;
+        String key = getMemoKey(designatorType, attributeType, attributeId, resourceId);
+        EvaluationResult result = getMemoized(context, key);
+        if (result != null) {
+            return result;
+        }
         try {
             result = getEvaluationResult(resourceId, attrName, designatorType, attributeType);
         } catch (Exception e) {
@@ -155,6 +159,7 @@ public class RITriplesAttributeFinder
             return new EvaluationResult(BagAttribute
                     .createEmptyBag(attributeType));
         }
+        memoize(context, key, result);
 
         return result;
     }
@@ -1,8 +1,13 @@
 package org.fcrepo.server.security.xacml.util;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -13,6 +18,7 @@ import org.fcrepo.common.PID;
 import org.fcrepo.server.Server;
 import org.fcrepo.server.resourceIndex.ResourceIndex;
 import org.fcrepo.server.security.xacml.MelcoeXacmlException;
+import org.fcrepo.server.storage.RelationshipChanges;
 import org.jrdf.graph.Node;
 import org.jrdf.graph.ObjectNode;
 import org.jrdf.graph.PredicateNode;
@@ -27,7 +33,7 @@ import org.trippi.TupleIterator;
 
 public class RIRelationshipResolver
         extends RelationshipResolverBase
-        implements RelationshipResolver {
+        implements RelationshipResolver, RelationshipChanges.Listener {
 
     private static final Logger logger = LoggerFactory.getLogger(RIRelationshipResolver.class);
 
@@ -48,19 +54,80 @@ public class RIRelationshipResolver
     private static final String SPARQL = "sparql";
     private static final String ITQL = "itql";
 
+    /**
+     * The number of objects whose parents are kept between requests, 0 to
+     * look them up every time.
+     */
+    public static final String PARENT_CACHE_SIZE = "parent-cache-size";
+
+    /**
+     * The number of seconds cached parents are used for, which bounds how
+     * stale they can be if the resource index is updated asynchronously.
+     */
+    public static final String PARENT_CACHE_MAX_AGE = "parent-cache-max-age";
+
+    private static final int DEFAULT_PARENT_CACHE_SIZE = 10000;
+
+    private static final int DEFAULT_PARENT_CACHE_MAX_AGE = 300;
+
+    // the most objects whose parents are looked up in one query
+    private static final int BATCH_SIZE = 100;
+
+    // parents by object URI, least recently used first
+    private final Map<String, CachedParents> m_parentCache;
+
+    private final long m_parentCacheMaxAge;
+
+    // incremented whenever cached parents are invalidated
+    private long m_cacheGeneration = 0;
 
     public RIRelationshipResolver(Server server, Map<String, String> options) throws MelcoeXacmlException {
+        this(getResourceIndex(server), options);
+    }
+
+    RIRelationshipResolver(ResourceIndex ri, Map<String, String> options) throws MelcoeXacmlException {
         super(options);
+        RI = ri;
+
+        final int cacheSize =
+                getIntOption(options, PARENT_CACHE_SIZE, DEFAULT_PARENT_CACHE_SIZE);
+        m_parentCacheMaxAge =
+                getIntOption(options, PARENT_CACHE_MAX_AGE, DEFAULT_PARENT_CACHE_MAX_AGE) * 1000L;
+        if (cacheSize > 0 && m_parentCacheMaxAge > 0) {
+            m_parentCache = new LinkedHashMap<String, CachedParents>(16, 0.75f, true) {
+
+                private static final long serialVersionUID = 1L;
 
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, CachedParents> eldest) {
+                    return size() > cacheSize;
+                }
+            };
+            RelationshipChanges.addListener(this);
+        } else {
+            m_parentCache = null;
+        }
+    }
+
+    private static ResourceIndex getResourceIndex(Server server) throws MelcoeXacmlException {
+        ResourceIndex ri;
         try {
-            RI = (ResourceIndex) server.getModule("org.fcrepo.server.resourceIndex.ResourceIndex");
+            ri = (ResourceIndex) server.getModule("org.fcrepo.server.resourceIndex.ResourceIndex");
         } catch (Exception e) {
             throw new MelcoeXacmlException("Error getting resource index.", e);
         }
-        if (RI == null) {
+        if (ri == null) {
             throw new MelcoeXacmlException("No Resource Index Module is available to the Server.");
         }
+        return ri;
+    }
 
+    /**
+     * Stops listening for relationship changes, so a resolver that is being
+     * replaced can be discarded.
+     */
+    public void close() {
+        RelationshipChanges.removeListener(this);
     }
 
     @Override
@@ -260,6 +327,51 @@ public class RIRelationshipResolver
                 return buildRESTParentHierarchy(parentArray[0]) + "/" + pid;
             }
 
+    /**
+     * Finds the parents of all the objects a level at a time, so a list of
+     * n objects needs as many parent queries as its deepest hierarchy rather
+     * than one per object and ancestor.
+     */
+    @Override
+    public Map<String, String> buildRESTParentHierarchies(Collection<String> pids)
+            throws MelcoeXacmlException {
+        Map<String, Set<String>> parents = new HashMap<String, Set<String>>();
+        Set<String> level = new HashSet<String>(pids);
+        while (!level.isEmpty()) {
+            parents.putAll(getParents(level));
+            Set<String> next = new HashSet<String>();
+            for (String pid : level) {
+                Set<String> p = parents.get(pid);
+                // FIXME: always uses the first parent, as buildRESTParentHierarchy(String) does
+                if (p != null && !p.isEmpty()) {
+                    String parent = p.iterator().next();
+                    if (!parents.containsKey(parent)) {
+                        next.add(parent);
+                    }
+                }
+            }
+            level = next;
+        }
+
+        Map<String, String> hierarchies = new HashMap<String, String>();
+        for (String pid : pids) {
+            hierarchies.put(pid, buildRESTParentHierarchy(pid, parents,
+                                                          new HashSet<String>()));
+        }
+        return hierarchies;
+    }
+
+    private String buildRESTParentHierarchy(String pid,
+                                            Map<String, Set<String>> parents,
+                                            Set<String> path) {
+        Set<String> p = parents.get(pid);
+        if (p == null || p.isEmpty() || !path.add(pid)) {
+            return "/" + pid;
+        }
+        return buildRESTParentHierarchy(p.iterator().next(), parents, path)
+                + "/" + pid;
+    }
+
     // get parent/child query based on parent and child relationships
     // note: single variable in result, variable must be "parent"
     protected String getTQLQuery(String pidUri) {
@@ -269,36 +381,59 @@ public class RIRelationshipResolver
         // outward
         sb.append("("); // start outward
         sb.append("<" + pidUri + "> $rel1 $parent ");
-        sb.append(" and ("); // start var bindings
-        // bind outward relationship variable
-        for (int i = 0; i < parentRelationships.size(); i++) {
-            if (i > 0) {
-                sb.append(" or ");
-            }
-            sb.append("$rel1 <http://mulgara.org/mulgara#is> <" + parentRelationships.get(i) + "> ");
+        appendTQLBindings(sb, "$rel1", parentRelationships);
+        sb.append(")"); // end outward
+
+        // inward
+        if (childRelationships != null && !childRelationships.isEmpty()) {
+            sb.append(" or ("); // start inward
+            sb.append("$parent $rel2 <" + pidUri + "> ");
+            appendTQLBindings(sb, "$rel2", childRelationships);
+            sb.append(")"); // end inward
         }
-        sb.append(")"); // end var bindings
 
+        return sb.toString();
+    }
+
+    // get parent/child query for a number of objects at once
+    // note: variables in result are "child" and "parent"
+    protected String getTQLQuery(Collection<String> pidUris) {
+        List<String> uris = new ArrayList<String>(pidUris);
+        StringBuilder sb = new StringBuilder();
+
+        sb.append("select $child $parent from <#ri> where ");
+        // outward
+        sb.append("("); // start outward
+        sb.append("$child $rel1 $parent ");
+        appendTQLBindings(sb, "$rel1", parentRelationships);
+        appendTQLBindings(sb, "$child", uris);
         sb.append(")"); // end outward
 
         // inward
-        if (parentRelationships != null && !parentRelationships.isEmpty()) {
+        if (childRelationships != null && !childRelationships.isEmpty()) {
             sb.append(" or ("); // start inward
-            sb.append("$parent $rel2 <" + pidUri + "> ");
-            sb.append(" and ("); // start inward var bindings
-            // bind inward relationship variable
-            for (int i = 0; i < childRelationships.size(); i++) {
-                if (i > 0) {
-                    sb.append(" or ");
-                }
-                sb.append("$rel2 <http://mulgara.org/mulgara#is> <" + childRelationships.get(i) + "> ");
-            }
-            sb.append(")"); // end inward var bindings
+            sb.append("$parent $rel2 $child ");
+            appendTQLBindings(sb, "$rel2", childRelationships);
+            appendTQLBindings(sb, "$child", uris);
             sb.append(")"); // end inward
         }
 
         return sb.toString();
     }
+
+    private static void appendTQLBindings(StringBuilder sb,
+                                          String variable,
+                                          List<String> relationships) {
+        sb.append(" and ("); // start var bindings
+        for (int i = 0; i < relationships.size(); i++) {
+            if (i > 0) {
+                sb.append(" or ");
+            }
+            sb.append(variable + " <http://mulgara.org/mulgara#is> <" + relationships.get(i) + "> ");
+        }
+        sb.append(")"); // end var bindings
+    }
+
     protected String getSPARQLQuery(String pidUri) {
         StringBuilder sb = new StringBuilder();
 
@@ -318,7 +453,7 @@ public class RIRelationshipResolver
             for (int i = 0; i < childRelationships.size(); i++) {
                 sb.append(" UNION ");
                 sb.append(" { ");
-                sb.append(" ?parent  <" + parentRelationships.get(i) + "> <" + pidUri + ">.");
+                sb.append(" ?parent  <" + childRelationships.get(i) + "> <" + pidUri + ">.");
                 sb.append(" } ");
             }
         }
@@ -328,47 +463,146 @@ public class RIRelationshipResolver
     }
 
     protected Set<String> getParents(String pid) throws MelcoeXacmlException {
-        logger.debug("Obtaining parents for: {}", pid);
+        return getParents(Collections.singleton(pid)).get(pid);
+    }
 
-        Set<String> parentPIDs = new HashSet<String>();
-        if (pid.equalsIgnoreCase(Constants.FEDORA_REPOSITORY_PID.uri)) {
-            return parentPIDs;
+    /**
+     * Gets the parents of a number of objects, from the parent cache where
+     * possible. With iTQL the others are looked up a batch at a time.
+     *
+     * @param pids
+     *        the objects, as PIDs or info:fedora/ URIs
+     * @return the PIDs of each object's parents, keyed as given
+     * @throws MelcoeXacmlException
+     */
+    protected Map<String, Set<String>> getParents(Collection<String> pids)
+            throws MelcoeXacmlException {
+        Map<String, Set<String>> result = new HashMap<String, Set<String>>();
+        // pids still to be looked up, by URI
+        Map<String, List<String>> missing = new LinkedHashMap<String, List<String>>();
+
+        long now = System.currentTimeMillis();
+        for (String pid : pids) {
+            if (pid.equalsIgnoreCase(Constants.FEDORA_REPOSITORY_PID.uri)) {
+                result.put(pid, new HashSet<String>());
+                continue;
+            }
+            String pidUri = getFedoraResourceURI(pid);
+            if (pidUri == null) {
+                result.put(pid, new HashSet<String>());
+                continue;
+            }
+            Set<String> cached = getCachedParents(pidUri, now);
+            if (cached != null) {
+                logger.debug("Found cached parents for: {}", pid);
+                result.put(pid, new HashSet<String>(cached));
+                continue;
+            }
+            List<String> keys = missing.get(pidUri);
+            if (keys == null) {
+                keys = new ArrayList<String>(1);
+                missing.put(pidUri, keys);
+            }
+            keys.add(pid);
         }
 
-        // build query using query language in following preferences
-        // tuple itql
-        // tuple sparql
-        // triple SPO
+        List<String> uris = new ArrayList<String>(missing.keySet());
+        for (int i = 0; i < uris.size(); i += BATCH_SIZE) {
+            List<String> batch = uris.subList(i, Math.min(i + BATCH_SIZE, uris.size()));
+            logger.debug("Obtaining parents for: {}", batch);
+
+            long generation = getCacheGeneration();
+            Map<String, Set<String>> found = findParents(batch);
+            for (String pidUri : batch) {
+                Set<String> parentPIDs = null;
+                if (found != null) {
+                    parentPIDs = found.get(pidUri);
+                    if (parentPIDs == null) {
+                        parentPIDs = new HashSet<String>();
+                    }
+                    cacheParents(pidUri, parentPIDs, generation);
+                }
+                for (String pid : missing.get(pidUri)) {
+                    result.put(pid, parentPIDs == null
+                            ? new HashSet<String>()
+                            : new HashSet<String>(parentPIDs));
+                }
+            }
+        }
+        return result;
+    }
 
-        String pidUri = getFedoraResourceURI(pid);
+    // build query using query language in following preferences
+    // tuple itql
+    // tuple sparql
+    // triple SPO
+    // returns null if the parents could not be found
+    private Map<String, Set<String>> findParents(List<String> pidUris)
+            throws MelcoeXacmlException {
+        Map<String, Set<String>> parents = new HashMap<String, Set<String>>();
 
         // tuple query
         if (verifyTupleLanguage(ITQL) || verifyTupleLanguage(SPARQL)) {
-            String query = "";
-            String lang = "";
             if (itqlTuples) {
-                lang = ITQL;
-                query = getTQLQuery(pidUri);
+                String query = getTQLQuery(pidUris);
+                if (!findParents(ITQL, query, null, parents)) {
+                    return null;
+                }
             } else if (sparqlTuples){
-                lang = SPARQL;
-                query = getSPARQLQuery(pidUri);
+                for (String pidUri : pidUris) {
+                    String query = getSPARQLQuery(pidUri);
+                    if (!findParents(SPARQL, query, pidUri, parents)) {
+                        return null;
+                    }
+                }
             } else {
                 throw new MelcoeXacmlException("RI supports no expected query languages for parent queries.");
             }
 
-            logger.debug("{} query: {}", lang, query);
+        } else if (spoTriples || verifyTripleLanguage(SPO)) {
+            for (String pidUri : pidUris) {
+                parents.put(pidUri, findParentsSPO(pidUri));
+            }
+
+        } else {
+            logger.error("Can't get parents: Resource index implementation must support SPARQL tuple queries or SPO triple queries");
+            return null;
+        }
 
-            TupleIterator tuples;
-            try {
-                tuples = RI.findTuples(lang, query,0, false);
-                if (tuples != null) {
+        return parents;
+    }
+
+    // runs a parent/child tuple query, adding the parents found to the map.
+    // if child is null, the child is taken from the "child" variable
+    private boolean findParents(String lang,
+                                String query,
+                                String child,
+                                Map<String, Set<String>> parents) {
+        logger.debug("{} query: {}", lang, query);
+
+        TupleIterator tuples;
+        try {
+            tuples = RI.findTuples(lang, query,0, false);
+            if (tuples != null) {
+                try {
                     while (tuples.hasNext()) {
-                        Node parent = tuples.next().get("parent");
-                        if (parent != null) {
+                        Map<String, Node> tuple = tuples.next();
+                        Node parent = tuple.get("parent");
+                        String pidUri = child;
+                        if (pidUri == null) {
+                            Node childNode = tuple.get("child");
+                            pidUri = childNode == null ? null : childNode.stringValue();
+                        }
+                        if (parent != null && pidUri != null) {
                             if (parent.isURIReference()) {
                                 try {
                                     PID parentPID = new PID(parent.stringValue());
                                     logger.debug("Found parent " + parentPID.toString());
+                                    Set<String> parentPIDs = parents.get(pidUri);
+                                    if (parentPIDs == null) {
+                                        parentPIDs = new HashSet<String>();
+                                        parents.put(pidUri, parentPIDs);
+                                    }
                                     parentPIDs.add(parentPID.toString());
                                 } catch (MalformedPIDException e) {
                                     logger.warn("parent/child relationship target is not a Fedora object" + parent.stringValue());
@@ -380,72 +614,199 @@ public class RIRelationshipResolver
                             logger.error("parent/child tuple result did not contain parent variable");
                         }
                     }
-                    logger.debug("Query result count: " + tuples.count());
-
-                } else {
-                    logger.debug("Query returned 0 results");
+                } finally {
+                    tuples.close();
                 }
-
-            } catch (TrippiException e) {
-                logger.error("Error running TQL query " + e.getMessage(), e);
-                return parentPIDs;
+            } else {
+                logger.debug("Query returned 0 results");
             }
 
+        } catch (TrippiException e) {
+            logger.error("Error running " + lang + " query " + e.getMessage(), e);
+            return false;
+        }
+        return true;
+    }
+
+    private Set<String> findParentsSPO(String pidUri) throws MelcoeXacmlException {
+        Set<String> parentPIDs = new HashSet<String>();
 
-        } else if (spoTriples || verifyTripleLanguage(SPO)) {
-            // gets all relationships for pid, then filters results
-            // rather than executing separate queries for each relationship
+        // gets all relationships for pid, then filters results
+        // rather than executing separate queries for each relationship
 
-            // parent relationships
-            Map<String, Set<String>> pRels = null;
-            if (parentRelationships.size() == 1) {
-                pRels= getRelationships(pidUri, parentRelationships.get(0));
-            } else {
-                pRels = getRelationships(pidUri);
-            }
+        // parent relationships
+        Map<String, Set<String>> pRels = null;
+        if (parentRelationships.size() == 1) {
+            pRels= getRelationships(pidUri, parentRelationships.get(0));
+        } else {
+            pRels = getRelationships(pidUri);
+        }
 
-           for (String rel : pRels.keySet()) {
-               if (parentRelationships.contains(rel)) {
-                   for (String parent : pRels.get(rel)) {
+       for (String rel : pRels.keySet()) {
+           if (parentRelationships.contains(rel)) {
+               for (String parent : pRels.get(rel)) {
+                   PID parentPid;
+                try {
+                    parentPid = new PID(parent);
+                    parentPIDs.add(parentPid.toString());
+                } catch (MalformedPIDException e) {
+                    logger.warn("Parent of " + pidUri + " through relationship " + rel + " is not a Fedora resource");
+                }
+               }
+           }
+       }
+       // child relationships
+       if (childRelationships != null && !childRelationships.isEmpty()) {
+           Map<String, Set<String>> cRels = null;
+           if (childRelationships.size() == 1) {
+               cRels= getReverseRelationships(pidUri, childRelationships.get(0));
+           } else {
+               cRels = getReverseRelationships(pidUri);
+           }
+           for (String rel : cRels.keySet()) {
+               if (childRelationships.contains(rel)) {
+                   for (String parent : cRels.get(rel)) {
                        PID parentPid;
                     try {
                         parentPid = new PID(parent);
                         parentPIDs.add(parentPid.toString());
                     } catch (MalformedPIDException e) {
-                        logger.warn("Parent of " + pid + " through relationship " + rel + " is not a Fedora resource");
+                        logger.warn("Parent of " + pidUri + " through relationship " + rel + " is not a Fedora resource");
                     }
                    }
                }
            }
-           // child relationships
-           if (childRelationships != null && !childRelationships.isEmpty()) {
-               Map<String, Set<String>> cRels = null;
-               if (childRelationships.size() == 1) {
-                   cRels= getReverseRelationships(pidUri, childRelationships.get(0));
-               } else {
-                   cRels = getReverseRelationships(pidUri);
-               }
-               for (String rel : cRels.keySet()) {
-                   if (childRelationships.contains(rel)) {
-                       for (String parent : cRels.get(rel)) {
-                           PID parentPid;
-                        try {
-                            parentPid = new PID(parent);
-                            parentPIDs.add(parentPid.toString());
-                        } catch (MalformedPIDException e) {
-                            logger.warn("Parent of " + pid + " through relationship " + rel + " is not a Fedora resource");
-                        }
-                       }
-                   }
-               }
-           }
+       }
+       return parentPIDs;
+    }
 
-        } else {
-            logger.error("Can't get parents: Resource index implementation must support SPARQL tuple queries or SPO triple queries");
-            return parentPIDs;
+    private Set<String> getCachedParents(String pidUri, long now) {
+        if (m_parentCache == null) {
+            return null;
         }
+        synchronized (m_parentCache) {
+            CachedParents cached = m_parentCache.get(pidUri);
+            if (cached == null) {
+                return null;
+            }
+            if (cached.expires < now) {
+                m_parentCache.remove(pidUri);
+                return null;
+            }
+            return cached.parents;
+        }
+    }
 
-        return parentPIDs;
+    private long getCacheGeneration() {
+        if (m_parentCache == null) {
+            return 0;
+        }
+        synchronized (m_parentCache) {
+            return m_cacheGeneration;
+        }
+    }
+
+    // parents are only cached if nothing was invalidated while they were
+    // being looked up, as the lookup may have read the old relationships
+    private void cacheParents(String pidUri, Set<String> parents, long generation) {
+        if (m_parentCache == null) {
+            return;
+        }
+        synchronized (m_parentCache) {
+            if (generation == m_cacheGeneration) {
+                m_parentCache.put(pidUri, new CachedParents(parents,
+                        System.currentTimeMillis() + m_parentCacheMaxAge));
+            }
+        }
+    }
+
+    /**
+     * Drops the cached parents of an object when its parent relationships
+     * change, and those of its old and new children when its child
+     * relationships change. The children are taken from the change itself,
+     * since the resource index may not have been updated yet.
+     */
+    @Override
+    public void relationshipsChanged(String pid, Map<String, Set<String>> changes) {
+        String pidUri = getFedoraResourceURI(pid);
+        if (m_parentCache == null || pidUri == null) {
+            return;
+        }
+        boolean parentsChanged =
+                changes == null
+                        || !Collections.disjoint(changes.keySet(), parentRelationships);
+        boolean childrenChanged =
+                childRelationships != null
+                        && (changes == null || !Collections
+                                .disjoint(changes.keySet(), childRelationships));
+        if (!parentsChanged && !childrenChanged) {
+            return;
+        }
+
+        Set<String> children = new HashSet<String>();
+        if (childrenChanged && changes != null) {
+            for (String rel : childRelationships) {
+                Set<String> objects = changes.get(rel);
+                if (objects == null) {
+                    continue;
+                }
+                for (String object : objects) {
+                    String childUri = getFedoraResourceURI(object);
+                    if (childUri != null) {
+                        children.add(childUri);
+                    }
+                }
+            }
+        }
+
+        String parentPid = pidUri.substring(Constants.FEDORA.uri.length());
+        synchronized (m_parentCache) {
+            m_cacheGeneration++;
+            if (parentsChanged) {
+                m_parentCache.remove(pidUri);
+            }
+            if (childrenChanged) {
+                // old children, including those of a purged object
+                Iterator<CachedParents> entries =
+                        m_parentCache.values().iterator();
+                while (entries.hasNext()) {
+                    if (entries.next().parents.contains(parentPid)) {
+                        entries.remove();
+                    }
+                }
+                for (String child : children) {
+                    m_parentCache.remove(child);
+                }
+            }
+        }
+    }
+
+    private static int getIntOption(Map<String, String> options,
+                                    String name,
+                                    int defaultValue)
+            throws MelcoeXacmlException {
+        String value = options.get(name);
+        if (value == null || value.trim().length() == 0) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            throw new MelcoeXacmlException("Invalid value for " + name + ": "
+                    + value, e);
+        }
+    }
+
+    private static class CachedParents {
+
+        final Set<String> parents;
+
+        final long expires;
+
+        CachedParents(Set<String> parents, long expires) {
+            this.parents = parents;
+            this.expires = expires;
+        }
     }
 
     private boolean verifyTripleLanguage(String lang) {
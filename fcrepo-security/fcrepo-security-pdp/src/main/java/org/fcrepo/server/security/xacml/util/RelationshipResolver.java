@@ -1,6 +1,7 @@
 
 package org.fcrepo.server.security.xacml.util;
 
+import java.util.Collection;
 import java.util.Map;
 import java.util.Set;
 
@@ -49,6 +50,20 @@ public interface RelationshipResolver {
     public String buildRESTParentHierarchy(String pid)
             throws MelcoeXacmlException;
 
+    /**
+     * Generates the REST based representations of a number of objects and
+     * their parents, as {@link #buildRESTParentHierarchy(String)} does for
+     * one. Implementations may look up the parents of all the objects
+     * together.
+     *
+     * @param pids
+     *        the pids whose parents we need to find
+     * @return the REST representation of each pid and its parents
+     * @throws MelcoeXacmlException
+     */
+    public Map<String, String> buildRESTParentHierarchies(Collection<String> pids)
+            throws MelcoeXacmlException;
+
     /**
      * Get attributes defined by a query.
      *
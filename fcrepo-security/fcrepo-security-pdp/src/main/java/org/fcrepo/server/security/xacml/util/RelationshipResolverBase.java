@@ -1,13 +1,16 @@
 package org.fcrepo.server.security.xacml.util;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
 import org.fcrepo.common.Constants;
 import org.fcrepo.common.MalformedPIDException;
 import org.fcrepo.common.PID;
+import org.fcrepo.server.security.xacml.MelcoeXacmlException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -68,6 +71,16 @@ public abstract class RelationshipResolverBase
 
     }
 
+    @Override
+    public Map<String, String> buildRESTParentHierarchies(Collection<String> pids)
+            throws MelcoeXacmlException {
+        Map<String, String> hierarchies = new HashMap<String, String>();
+        for (String pid : pids) {
+            hierarchies.put(pid, buildRESTParentHierarchy(pid));
+        }
+        return hierarchies;
+    }
+
     /**
      * given either a ns:pid/ds identifier or an info:fedora/ URI form of the same
      * return the URI form, validating the PID part.  Returns null if the argument
@@ -6,6 +6,7 @@ package org.fcrepo.server.security.xacml.util;
 
 import java.io.File;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -101,6 +102,16 @@ public class RelationshipResolverImpl
         return buildRESTParentHierarchy(parentArray[0]) + "/" + pid;
     }
 
+    @Override
+    public Map<String, String> buildRESTParentHierarchies(Collection<String> pids)
+            throws MelcoeXacmlException {
+        Map<String, String> hierarchies = new HashMap<String, String>();
+        for (String pid : pids) {
+            hierarchies.put(pid, buildRESTParentHierarchy(pid));
+        }
+        return hierarchies;
+    }
+
     /*
      * (non-Javadoc)
      * @see
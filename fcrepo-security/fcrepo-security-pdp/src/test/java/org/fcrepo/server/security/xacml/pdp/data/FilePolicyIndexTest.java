@@ -0,0 +1,117 @@
+/* The contents of this file are subject to the license and copyright terms
+ * detailed in the license directory at the root of the source tree (also
+ * available online at http://fedora-commons.org/license/).
+ */
+package org.fcrepo.server.security.xacml.pdp.data;
+
+import static org.fcrepo.server.security.xacml.pdp.data.PolicyTargetIndexTest.names;
+import static org.fcrepo.server.security.xacml.pdp.data.PolicyTargetIndexTest.policyXml;
+import static org.fcrepo.server.security.xacml.pdp.data.PolicyTargetIndexTest.request;
+import static org.fcrepo.server.security.xacml.pdp.data.PolicyTargetIndexTest.resources;
+import static org.fcrepo.server.security.xacml.pdp.data.PolicyTargetIndexTest.target;
+import static org.fcrepo.server.security.xacml.pdp.data.PolicyTargetIndexTest.values;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Set;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.fcrepo.server.security.xacml.pdp.MelcoePDP;
+import org.fcrepo.server.security.xacml.pdp.finder.policy.PolicyReader;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class FilePolicyIndexTest {
+
+    private static final String NAME = "test:policy";
+
+    private boolean m_createdPdpHome;
+
+    private File m_policyDir;
+
+    private FilePolicyIndex m_index;
+
+    @Before
+    public void setUp() throws Exception {
+        // the policy directory is given relative to PDP_HOME
+        File pdpHome = MelcoePDP.PDP_HOME.getAbsoluteFile();
+        m_createdPdpHome = !pdpHome.exists() && pdpHome.mkdirs();
+        m_policyDir = Files.createTempDirectory("policies").toFile();
+        m_index = new FilePolicyIndex(new PolicyReader());
+        m_index.setPolicyDirectoryPath("/"
+                + pdpHome.toPath().relativize(m_policyDir.toPath()));
+        m_index.init();
+        // the cache is shared by all instances
+        m_index.clear();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        m_index.clear();
+        m_policyDir.delete();
+        if (m_createdPdpHome) {
+            MelcoePDP.PDP_HOME.getAbsoluteFile().delete();
+        }
+    }
+
+    @Test
+    public void testAddUpdateDelete() throws Exception {
+        m_index.addPolicy(NAME, policyXml(target(resources("/demo:1"), "")));
+        assertTrue(m_index.contains(NAME));
+        assertEquals(names(NAME), candidates("/demo:1"));
+
+        assertTrue(m_index.updatePolicy(NAME,
+                                        policyXml(target(resources("/demo:2"),
+                                                         ""))));
+        assertEquals(names(), candidates("/demo:1"));
+        assertEquals(names(NAME), candidates("/demo:2"));
+        assertTrue(storedPolicy().contains("/demo:2"));
+
+        assertTrue(m_index.deletePolicy(NAME));
+        assertFalse(m_index.contains(NAME));
+        assertEquals(names(), candidates("/demo:2"));
+        assertFalse(policyFile().exists());
+    }
+
+    @Test
+    public void testUpdateWithBadDocumentKeepsPolicy() throws Exception {
+        m_index.addPolicy(NAME, policyXml(target(resources("/demo:1"), "")));
+        try {
+            m_index.updatePolicy(NAME, "<Policy");
+            fail("updated with a document that can't be parsed");
+        } catch (PolicyIndexException e) {
+            // expected
+        }
+        assertTrue(m_index.contains(NAME));
+        assertEquals(names(NAME), candidates("/demo:1"));
+        assertTrue(storedPolicy().contains("/demo:1"));
+    }
+
+    @Test(expected = PolicyIndexException.class)
+    public void testUpdateNonExistentPolicy() throws Exception {
+        m_index.updatePolicy(NAME, policyXml(target(resources("/demo:1"), "")));
+    }
+
+    private Set<String> candidates(String resourceId) throws Exception {
+        return m_index.getPolicies(request(values(resourceId), values()), null)
+                .keySet();
+    }
+
+    private File policyFile() {
+        return new File(m_policyDir, "test_policy.xml");
+    }
+
+    private String storedPolicy() throws Exception {
+        return new String(Files.readAllBytes(policyFile().toPath()), "UTF-8");
+    }
+
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(FilePolicyIndexTest.class);
+    }
+}
@@ -0,0 +1,304 @@
+/* The contents of this file are subject to the license and copyright terms
+ * detailed in the license directory at the root of the source tree (also
+ * available online at http://fedora-commons.org/license/).
+ */
+package org.fcrepo.server.security.xacml.pdp.data;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.w3c.dom.Document;
+
+import org.jboss.security.xacml.sunxacml.EvaluationCtx;
+import org.jboss.security.xacml.sunxacml.attr.AttributeValue;
+import org.jboss.security.xacml.sunxacml.attr.BagAttribute;
+import org.jboss.security.xacml.sunxacml.attr.StringAttribute;
+import org.jboss.security.xacml.sunxacml.cond.EvaluationResult;
+
+public class PolicyTargetIndexTest {
+
+    private static final String XACML =
+            "urn:oasis:names:tc:xacml:1.0:policy";
+
+    private static final String STRING =
+            "http://www.w3.org/2001/XMLSchema#string";
+
+    private static final String STRING_EQUAL =
+            "urn:oasis:names:tc:xacml:1.0:function:string-equal";
+
+    private static final String ACTION_ID =
+            "urn:fedora:names:fedora:2.1:action:id";
+
+    private PolicyTargetIndex m_index;
+
+    @Before
+    public void setUp() {
+        m_index = new PolicyTargetIndex();
+    }
+
+    @Test
+    public void testResourceMatch() throws Exception {
+        m_index.add("demo1", policy(target(resources("/demo:1"), "")));
+        m_index.add("demo2", policy(target(resources("/demo:2"), "")));
+
+        assertEquals(names("demo1"),
+                     m_index.getCandidates(request(values("/demo:1"),
+                                                   values())));
+        // policies on an object apply to its datastreams
+        assertEquals(names("demo1"),
+                     m_index.getCandidates(request(values("/demo:1/DC"),
+                                                   values())));
+        assertEquals(names(),
+                     m_index.getCandidates(request(values("/demo:3"),
+                                                   values())));
+    }
+
+    @Test
+    public void testAlternativeResources() throws Exception {
+        m_index.add("both", policy(target(resources("/demo:1", "/demo:2"),
+                                          "")));
+        assertEquals(names("both"),
+                     m_index.getCandidates(request(values("/demo:2"),
+                                                   values())));
+        assertEquals(names(),
+                     m_index.getCandidates(request(values("/demo:3"),
+                                                   values())));
+    }
+
+    @Test
+    public void testActionMatch() throws Exception {
+        m_index.add("read", policy(target("", actions("read"))));
+        m_index.add("write", policy(target("", actions("write"))));
+
+        assertEquals(names("read"),
+                     m_index.getCandidates(request(values(),
+                                                   values("read"))));
+    }
+
+    @Test
+    public void testResourceAndActionMatch() throws Exception {
+        m_index.add("read1", policy(target(resources("/demo:1"),
+                                           actions("read"))));
+        m_index.add("write1", policy(target(resources("/demo:1"),
+                                            actions("write"))));
+        m_index.add("read2", policy(target(resources("/demo:2"),
+                                           actions("read"))));
+
+        assertEquals(names("read1"),
+                     m_index.getCandidates(request(values("/demo:1"),
+                                                   values("read"))));
+    }
+
+    @Test
+    public void testSubjectTargetIsNotFiltered() throws Exception {
+        m_index.add("demo1", policy(target(resources("/demo:1"), "")));
+        m_index.add("subject",
+                    policy("<Target><Subjects><Subject>"
+                            + "<SubjectMatch MatchId=\"" + STRING_EQUAL + "\">"
+                            + "<AttributeValue DataType=\"" + STRING
+                            + "\">fedoraAdmin</AttributeValue>"
+                            + "<SubjectAttributeDesignator DataType=\""
+                            + STRING + "\" AttributeId=\""
+                            + "urn:oasis:names:tc:xacml:1.0:subject:subject-id"
+                            + "\"/></SubjectMatch>"
+                            + "</Subject></Subjects></Target>"));
+
+        assertEquals(names("subject"),
+                     m_index.getCandidates(request(values("/demo:2"),
+                                                   values("read"))));
+    }
+
+    @Test
+    public void testWildcardPoliciesAreAlwaysCandidates() throws Exception {
+        m_index.add("demo1", policy(target(resources("/demo:1"),
+                                           actions("read"))));
+        m_index.add("empty", policy("<Target/>"));
+        m_index.add("none", policy(""));
+        m_index.add("anyResource",
+                    policy(target("<Resources><AnyResource/></Resources>",
+                                  "")));
+        m_index.add("anyAction",
+                    policy(target("", "<Actions><AnyAction/></Actions>")));
+        m_index.add("notEqual",
+                    policy(target("<Resources><Resource>"
+                            + "<ResourceMatch MatchId=\"urn:oasis:names:tc:"
+                            + "xacml:1.0:function:regexp-string-match\">"
+                            + "<AttributeValue DataType=\"" + STRING
+                            + "\">/demo:.*</AttributeValue>"
+                            + "<ResourceAttributeDesignator DataType=\""
+                            + STRING + "\" AttributeId=\""
+                            + PolicyIndex.XACML_RESOURCE_ID + "\"/>"
+                            + "</ResourceMatch></Resource></Resources>",
+                                  "")));
+        m_index.add("policySet", document("<PolicySet xmlns=\"" + XACML
+                + "\" PolicySetId=\"policySet\" PolicyCombiningAlgId=\""
+                + "urn:oasis:names:tc:xacml:1.0:policy-combining-algorithm:"
+                + "first-applicable\">"
+                + target(resources("/demo:1"), "") + "</PolicySet>"));
+
+        assertEquals(names("empty",
+                           "none",
+                           "anyResource",
+                           "anyAction",
+                           "notEqual",
+                           "policySet"),
+                     m_index.getCandidates(request(values("/demo:2"),
+                                                   values("write"))));
+    }
+
+    @Test
+    public void testRequestWithoutValuesIsNotFiltered() throws Exception {
+        m_index.add("demo1", policy(target(resources("/demo:1"),
+                                           actions("read"))));
+        m_index.add("demo2", policy(target(resources("/demo:2"),
+                                           actions("write"))));
+
+        assertEquals(names("demo1", "demo2"),
+                     m_index.getCandidates(request(values(), values())));
+        // only the action filters
+        assertEquals(names("demo2"),
+                     m_index.getCandidates(request(values(),
+                                                   values("write"))));
+    }
+
+    @Test
+    public void testUpdateAndRemove() throws Exception {
+        m_index.add("policy", policy(target(resources("/demo:1"), "")));
+        m_index.add("other", policy(target(resources("/demo:2"), "")));
+
+        // re-adding replaces the previous target
+        m_index.add("policy", policy(target(resources("/demo:3"), "")));
+        assertEquals(names(),
+                     m_index.getCandidates(request(values("/demo:1"),
+                                                   values())));
+        assertEquals(names("policy"),
+                     m_index.getCandidates(request(values("/demo:3"),
+                                                   values())));
+
+        m_index.remove("policy");
+        assertEquals(names(),
+                     m_index.getCandidates(request(values("/demo:3"),
+                                                   values())));
+        assertEquals(names("other"),
+                     m_index.getCandidates(request(values("/demo:2"),
+                                                   values())));
+
+        m_index.clear();
+        assertTrue(m_index.getCandidates(request(values(), values()))
+                .isEmpty());
+    }
+
+    static String target(String resources, String actions) {
+        return "<Target>" + resources + actions + "</Target>";
+    }
+
+    static String resources(String... ids) {
+        StringBuilder sb = new StringBuilder("<Resources>");
+        for (String id : ids) {
+            sb.append("<Resource>")
+                    .append(match("Resource",
+                                  PolicyIndex.XACML_RESOURCE_ID,
+                                  id)).append("</Resource>");
+        }
+        return sb.append("</Resources>").toString();
+    }
+
+    static String actions(String... ids) {
+        StringBuilder sb = new StringBuilder("<Actions>");
+        for (String id : ids) {
+            sb.append("<Action>").append(match("Action", ACTION_ID, id))
+                    .append("</Action>");
+        }
+        return sb.append("</Actions>").toString();
+    }
+
+    private static String match(String element, String attributeId,
+                                String value) {
+        return "<" + element + "Match MatchId=\"" + STRING_EQUAL + "\">"
+                + "<AttributeValue DataType=\"" + STRING + "\">" + value
+                + "</AttributeValue><" + element
+                + "AttributeDesignator DataType=\"" + STRING
+                + "\" AttributeId=\"" + attributeId + "\"/></" + element
+                + "Match>";
+    }
+
+    static Document policy(String target) throws Exception {
+        return document(policyXml(target));
+    }
+
+    static String policyXml(String target) {
+        return "<Policy xmlns=\"" + XACML + "\" PolicyId=\"test\""
+                + " RuleCombiningAlgId=\"urn:oasis:names:tc:xacml:1.0:"
+                + "rule-combining-algorithm:first-applicable\">" + target
+                + "</Policy>";
+    }
+
+    private static Document document(String xml) throws Exception {
+        DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+        factory.setNamespaceAware(true);
+        return factory.newDocumentBuilder()
+                .parse(new ByteArrayInputStream(xml.getBytes("UTF-8")));
+    }
+
+    static Set<String> names(String... names) {
+        return new HashSet<String>(Arrays.asList(names));
+    }
+
+    static List<String> values(String... values) {
+        return Arrays.asList(values);
+    }
+
+    /**
+     * A request that answers resource and action attribute queries with the
+     * given values.
+     */
+    static EvaluationCtx request(final List<String> resourceIds,
+                                         final List<String> actionIds) {
+        InvocationHandler handler = new InvocationHandler() {
+
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                if (method.getName().equals("getResourceAttribute")) {
+                    return result((URI) args[0], resourceIds);
+                }
+                if (method.getName().equals("getActionAttribute")) {
+                    return result((URI) args[0], actionIds);
+                }
+                throw new UnsupportedOperationException(method.getName());
+            }
+        };
+        return (EvaluationCtx) Proxy
+                .newProxyInstance(EvaluationCtx.class.getClassLoader(),
+                                  new Class<?>[] {EvaluationCtx.class},
+                                  handler);
+    }
+
+    private static EvaluationResult result(URI type, List<String> values) {
+        List<AttributeValue> bag = new ArrayList<AttributeValue>();
+        for (String value : values) {
+            bag.add(new StringAttribute(value));
+        }
+        return new EvaluationResult(new BagAttribute(type, bag));
+    }
+
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(PolicyTargetIndexTest.class);
+    }
+}
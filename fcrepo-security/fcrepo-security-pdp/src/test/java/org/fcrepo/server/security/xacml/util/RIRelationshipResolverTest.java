@@ -0,0 +1,206 @@
+/* The contents of this file are subject to the license and copyright terms
+ * detailed in the license directory at the root of the source tree (also
+ * available online at http://fedora-commons.org/license/).
+ */
+package org.fcrepo.server.security.xacml.util;
+
+import static org.junit.Assert.assertEquals;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.fcrepo.common.rdf.SimpleURIReference;
+import org.fcrepo.server.resourceIndex.ResourceIndex;
+import org.jrdf.graph.Node;
+import org.junit.Before;
+import org.junit.Test;
+import org.trippi.TupleIterator;
+
+public class RIRelationshipResolverTest {
+
+    private static final String IS_MEMBER_OF =
+            "info:fedora/fedora-system:def/relations-external#isMemberOf";
+
+    private static final String HAS_MEMBER =
+            "info:fedora/fedora-system:def/relations-external#hasMember";
+
+    private static final String TITLE =
+            "http://purl.org/dc/elements/1.1/title";
+
+    /** parent links in the fake resource index, as {child, parent} */
+    private final List<String[]> m_links = new ArrayList<String[]>();
+
+    private int m_queries;
+
+    private RIRelationshipResolver m_resolver;
+
+    @Before
+    public void setUp() throws Exception {
+        Map<String, String> options = new HashMap<String, String>();
+        options.put("xacml-parent-relationship-1", IS_MEMBER_OF);
+        options.put("xacml-child-relationship-1", HAS_MEMBER);
+        m_resolver = new RIRelationshipResolver(resourceIndex(), options);
+
+        link("demo:1", "demo:10");
+        link("demo:2", "demo:10");
+        link("demo:10", "demo:100");
+    }
+
+    @Test
+    public void testBatchQueryResultMapping() throws Exception {
+        Map<String, String> hierarchies =
+                m_resolver.buildRESTParentHierarchies(Arrays
+                        .asList("demo:1", "demo:2", "demo:3"));
+
+        assertEquals("/demo:100/demo:10/demo:1", hierarchies.get("demo:1"));
+        assertEquals("/demo:100/demo:10/demo:2", hierarchies.get("demo:2"));
+        assertEquals("/demo:3", hierarchies.get("demo:3"));
+        // one query per level of the hierarchy
+        assertEquals(3, m_queries);
+
+        assertEquals("/demo:100/demo:10/demo:1",
+                     m_resolver.buildRESTParentHierarchy("demo:1"));
+        assertEquals(3, m_queries);
+    }
+
+    @Test
+    public void testParentRelationshipChange() throws Exception {
+        assertEquals("/demo:100/demo:10/demo:1",
+                     m_resolver.buildRESTParentHierarchy("demo:1"));
+        m_links.clear();
+        link("demo:1", "demo:20");
+
+        // other changes keep the cached parents
+        m_resolver.relationshipsChanged("demo:1", changes(TITLE, "x"));
+        assertEquals("/demo:100/demo:10/demo:1",
+                     m_resolver.buildRESTParentHierarchy("demo:1"));
+
+        m_resolver.relationshipsChanged("demo:1",
+                                        changes(IS_MEMBER_OF,
+                                                "info:fedora/demo:10",
+                                                "info:fedora/demo:20"));
+        assertEquals("/demo:20/demo:1",
+                     m_resolver.buildRESTParentHierarchy("demo:1"));
+    }
+
+    @Test
+    public void testChildRelationshipChange() throws Exception {
+        assertEquals("/demo:3", m_resolver.buildRESTParentHierarchy("demo:3"));
+        assertEquals("/demo:100/demo:10/demo:2",
+                     m_resolver.buildRESTParentHierarchy("demo:2"));
+
+        // demo:10 gains demo:3 as a member and loses demo:2
+        m_links.remove(1);
+        link("demo:3", "demo:10");
+        m_resolver.relationshipsChanged("demo:10",
+                                        changes(HAS_MEMBER,
+                                                "info:fedora/demo:2",
+                                                "info:fedora/demo:3"));
+
+        assertEquals("/demo:100/demo:10/demo:3",
+                     m_resolver.buildRESTParentHierarchy("demo:3"));
+        assertEquals("/demo:2", m_resolver.buildRESTParentHierarchy("demo:2"));
+    }
+
+    @Test
+    public void testPurge() throws Exception {
+        assertEquals("/demo:100/demo:10/demo:1",
+                     m_resolver.buildRESTParentHierarchy("demo:1"));
+
+        m_links.clear();
+        m_resolver.relationshipsChanged("demo:10", null);
+
+        assertEquals("/demo:1", m_resolver.buildRESTParentHierarchy("demo:1"));
+    }
+
+    private void link(String child, String parent) {
+        m_links.add(new String[] {"info:fedora/" + child,
+                "info:fedora/" + parent});
+    }
+
+    private static Map<String, Set<String>> changes(String predicate,
+                                                    String... objects) {
+        return Collections.<String, Set<String>> singletonMap(predicate,
+                new HashSet<String>(Arrays.asList(objects)));
+    }
+
+    /**
+     * A resource index that answers iTQL parent queries from m_links,
+     * returning the links whose child the query names.
+     */
+    private ResourceIndex resourceIndex() {
+        InvocationHandler handler = new InvocationHandler() {
+
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                String name = method.getName();
+                if (name.equals("listTupleLanguages")) {
+                    return new String[] {"itql"};
+                }
+                if (name.equals("listTripleLanguages")) {
+                    return new String[0];
+                }
+                if (name.equals("findTuples") && args.length == 4) {
+                    m_queries++;
+                    return tuples((String) args[1]);
+                }
+                throw new UnsupportedOperationException(name);
+            }
+        };
+        return (ResourceIndex) Proxy
+                .newProxyInstance(ResourceIndex.class.getClassLoader(),
+                                  new Class<?>[] {ResourceIndex.class},
+                                  handler);
+    }
+
+    private TupleIterator tuples(String query) {
+        List<Map<String, Node>> rows = new ArrayList<Map<String, Node>>();
+        for (String[] link : m_links) {
+            if (query.contains("<" + link[0] + ">")) {
+                Map<String, Node> row = new HashMap<String, Node>();
+                row.put("child", new SimpleURIReference(URI.create(link[0])));
+                row.put("parent", new SimpleURIReference(URI.create(link[1])));
+                rows.add(row);
+            }
+        }
+        final Iterator<Map<String, Node>> it = rows.iterator();
+        return new TupleIterator() {
+
+            @Override
+            public String[] names() {
+                return new String[] {"child", "parent"};
+            }
+
+            @Override
+            public boolean hasNext() {
+                return it.hasNext();
+            }
+
+            @Override
+            public Map<String, Node> next() {
+                return it.next();
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+    }
+
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(RIRelationshipResolverTest.class);
+    }
+}
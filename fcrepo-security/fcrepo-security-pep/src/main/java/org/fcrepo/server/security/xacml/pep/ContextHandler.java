@@ -19,6 +19,7 @@
 package org.fcrepo.server.security.xacml.pep;
 
 import java.net.URI;
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 
@@ -87,4 +88,16 @@ public interface ContextHandler {
 
     public ResponseCtx evaluateBatch(RequestCtx[] requests) throws PEPException;
 
+    /**
+     * Looks up the parent hierarchies of a number of objects together, so
+     * that building a request for each of them afterwards need not query the
+     * resource index for each one.
+     *
+     * @param pids
+     *        the PIDs of the objects requests will be built for.
+     * @throws PEPException
+     */
+    public void resolveParentHierarchies(Collection<String> pids)
+            throws PEPException;
+
 }
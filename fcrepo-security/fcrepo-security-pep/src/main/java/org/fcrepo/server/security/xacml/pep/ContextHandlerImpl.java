@@ -19,6 +19,7 @@
 package org.fcrepo.server.security.xacml.pep;
 
 import java.net.URI;
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 
@@ -119,4 +120,18 @@ public class ContextHandlerImpl
     public ResponseCtx evaluateBatch(RequestCtx[] requests) throws PEPException {
         return m_evaluationEngine.evaluate(requests);
     }
+
+    /*
+     * (non-Javadoc)
+     * @see org.fcrepo.server.security.xacml.pep.ContextHandler#resolveParentHierarchies(java.util.Collection)
+     */
+    @Override
+    public void resolveParentHierarchies(Collection<String> pids)
+            throws PEPException {
+        try {
+            m_relationshipResolver.buildRESTParentHierarchies(pids);
+        } catch (MelcoeXacmlException e) {
+            throw new PEPException(e);
+        }
+    }
 }
\ No newline at end of file
@@ -57,6 +57,16 @@ public interface EvaluationEngine {
      */
     public String evaluate(String[] requests) throws PEPException;
 
+    /**
+     * Evaluates a batch of requests, such as one for each object in a list
+     * result, which may be evaluated concurrently. The responses are combined
+     * into a single response.
+     *
+     * @param requests
+     *        the requests; null entries are ignored
+     * @return a response containing the results for each request
+     * @throws PEPException
+     */
     public ResponseCtx evaluate(RequestCtx[] requests) throws PEPException;
 
     /**
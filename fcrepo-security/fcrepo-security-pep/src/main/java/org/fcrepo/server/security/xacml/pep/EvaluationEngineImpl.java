@@ -18,12 +18,16 @@
 
 package org.fcrepo.server.security.xacml.pep;
 
+import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
+import java.util.concurrent.Callable;
 
 import org.fcrepo.server.security.RequestCtx;
 import org.fcrepo.server.security.xacml.MelcoeXacmlException;
 import org.fcrepo.server.security.xacml.util.ContextUtil;
+import org.fcrepo.server.utilities.ParallelTasks;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.jboss.security.xacml.sunxacml.ctx.ResponseCtx;
@@ -88,25 +92,27 @@ public class EvaluationEngineImpl
 
             a = System.currentTimeMillis();
 
+            // parsed once, for both the cache and the PDP
+            org.fcrepo.server.security.RequestCtx req = null;
+            try {
+                req = m_contextUtil.makeRequestCtx(r);
+            } catch (MelcoeXacmlException e) {
+                throw new PEPException(e);
+            }
+
             if (responseCache != null) {
-                resCtx = responseCache.getCacheItem(r);
+                resCtx = responseCache.getCacheItem(req);
             }
 
             if (resCtx == null) {
                 logger.debug("No item found in cache. Sending to PDP for evaluation.");
 
-                org.fcrepo.server.security.RequestCtx req = null;
-                try {
-                    req = m_contextUtil.makeRequestCtx(r);
-                } catch (MelcoeXacmlException e) {
-                    throw new PEPException(e);
-                }
                 resCtx = client.evaluate(req);
 
                 // Add this new result to the cache if caching is enabled
                 logger.debug("Adding PDP evaluation results to cache");
                 if (responseCache != null) {
-                    responseCache.addCacheItem(r, resCtx);
+                    responseCache.addCacheItem(req, resCtx);
                 }
             } else {
                 logger.debug("Item found in cache");
@@ -126,54 +132,77 @@ public class EvaluationEngineImpl
         return m_contextUtil.makeResponseCtx(resultCtx);
     }
 
+    /**
+     * Answers what it can from the cache, then sends the rest to the PDP
+     * client in parallel, one request per task.
+     */
     @Override
     public ResponseCtx evaluate(RequestCtx[] requests) throws PEPException {
         logger.debug("evaluating array of requests");
 
-        long a, b;
+        long a = System.currentTimeMillis();
 
         Set<Result> finalResults = new HashSet<Result>();
+        List<Callable<ResponseCtx>> misses =
+                new ArrayList<Callable<ResponseCtx>>();
 
-        for (RequestCtx r : requests) {
+        for (final RequestCtx r : requests) {
             if (r == null) continue;
 
             ResponseCtx resCtx = null;
-
-            a = System.currentTimeMillis();
-
-            String rKey = m_contextUtil.makeRequestCtx(r);
             if (responseCache != null) {
-                resCtx = responseCache.getCacheItem(rKey);
+                resCtx = responseCache.getCacheItem(r);
             }
 
             if (resCtx == null) {
-                logger.debug("No item found in cache. Sending to PDP for evaluation.");
-
-                resCtx = client.evaluate(r);
-
-                // Add this new result to the cache if caching is enabled
-                logger.debug("Adding PDP evaluation results to cache");
-                if (responseCache != null) {
-                    responseCache.addCacheItem(rKey, resCtx);
-                }
+                misses.add(new Callable<ResponseCtx>() {
+
+                    @Override
+                    public ResponseCtx call() throws PEPException {
+                        ResponseCtx response = client.evaluate(r);
+                        // Add this new result to the cache if caching is enabled
+                        if (responseCache != null) {
+                            responseCache.addCacheItem(r, response);
+                        }
+                        return response;
+                    }
+                });
             } else {
-                logger.debug("Item found in cache");
+                addResults(finalResults, resCtx);
             }
+        }
 
-            b = System.currentTimeMillis();
-            logger.debug("Time taken for XACML Evaluation: {}ms", (b - a));
+        logger.debug("{} of {} requests found in cache; sending the rest to the PDP",
+                     requests.length - misses.size(), requests.length);
 
-            @SuppressWarnings("unchecked")
-            Set<Result> results = resCtx.getResults();
-
-            finalResults.addAll(results);
+        List<ResponseCtx> responses;
+        try {
+            responses = ParallelTasks.invokeAll(misses);
+        } catch (PEPException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new PEPException(e.getMessage(), e);
         }
+        for (ResponseCtx resCtx : responses) {
+            addResults(finalResults, resCtx);
+        }
+
+        long b = System.currentTimeMillis();
+        logger.debug("Time taken for XACML Evaluation: {}ms", (b - a));
 
         ResponseCtx resultCtx = new ResponseCtx(finalResults);
 
         return (resultCtx);
     }
 
+    private static void addResults(Set<Result> finalResults,
+                                   ResponseCtx resCtx) {
+        @SuppressWarnings("unchecked")
+        Set<Result> results = resCtx.getResults();
+
+        finalResults.addAll(results);
+    }
+
     /*
      * (non-Javadoc)
      * @see org.fcrepo.server.security.xacml.pep.EvaluationEngine#getClient()
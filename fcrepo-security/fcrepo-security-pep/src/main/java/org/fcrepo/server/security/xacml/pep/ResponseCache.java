@@ -1,6 +1,7 @@
 
 package org.fcrepo.server.security.xacml.pep;
 
+import org.fcrepo.server.security.RequestCtx;
 import org.jboss.security.xacml.sunxacml.ctx.ResponseCtx;
 
 /**
@@ -17,7 +18,17 @@ public interface ResponseCache {
      *        the response to add
      */
     public void addCacheItem(String request, ResponseCtx response);
-    
+
+    /**
+     * Adds an item to the cache.
+     *
+     * @param request
+     *        the request to hash and add.
+     * @param response
+     *        the response to add
+     */
+    public void addCacheItem(RequestCtx request, ResponseCtx response);
+
     public void setTTL(long ttl);
 
     /**
@@ -27,8 +38,23 @@ public interface ResponseCache {
      */
     public ResponseCtx getCacheItem(String request);
 
+    /**
+     * @param request
+     *        the request to hash and retrieve
+     * @return the response corresponding to the request hash
+     */
+    public ResponseCtx getCacheItem(RequestCtx request);
+
     /**
      * Invalidates the cache.
      */
     public void invalidate();
+
+    /**
+     * Invalidates the cached responses to requests about an object.
+     *
+     * @param pid
+     *        the pid of the object
+     */
+    public void invalidate(String pid);
 }
\ No newline at end of file
@@ -18,13 +18,20 @@
 
 package org.fcrepo.server.security.xacml.pep;
 
+import java.net.URI;
+import java.nio.charset.Charset;
 import java.security.MessageDigest;
-import java.util.ArrayList;
+import java.security.NoSuchAlgorithmException;
 import java.util.Arrays;
-import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
+import org.fcrepo.common.Constants;
 import org.fcrepo.server.security.Attribute;
 import org.fcrepo.server.security.RequestCtx;
 import org.fcrepo.server.security.xacml.MelcoeXacmlException;
@@ -37,6 +44,16 @@ import org.jboss.security.xacml.sunxacml.ctx.ResponseCtx;
 import org.jboss.security.xacml.sunxacml.ctx.Subject;
 
 /**
+ * A bounded, thread-safe cache of XACML responses, keyed by a digest of the
+ * request's attributes.
+ * <p>
+ * Lookups and additions don't lock. When the cache is full the oldest
+ * entries are evicted, except that entries used since they were last
+ * considered for eviction get a second chance, which approximates least
+ * recently used order at a constant cost per eviction. Entries older than
+ * the time to live are never returned.
+ * </p>
+ *
  * @author nishen@melcoe.mq.edu.au
  */
 public class ResponseCacheImpl
@@ -51,6 +68,10 @@ public class ResponseCacheImpl
 
     private static final long DEFAULT_TTL = 10 * 60 * 1000; // 10 minutes
 
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private static final URI PID_ATTRIBUTE = Constants.OBJECT.PID.getURI();
+
     private static final Attribute[] ATTRIBUTE_TYPE = new Attribute[0];
 
     private static final AttributeComparator ATTRIBUTE_COMPARATOR = new AttributeComparator();
@@ -59,17 +80,38 @@ public class ResponseCacheImpl
 
     private static final SubjectComparator SUBJECT_COMPARATOR = new SubjectComparator();
 
+    // MessageDigest isn't thread-safe, so each thread gets its own
+    private static final ThreadLocal<MessageDigest> DIGEST =
+            new ThreadLocal<MessageDigest>() {
+
+                @Override
+                protected MessageDigest initialValue() {
+                    try {
+                        return MessageDigest.getInstance("MD5");
+                    } catch (NoSuchAlgorithmException e) {
+                        throw new IllegalStateException(e);
+                    }
+                }
+            };
+
     private final int CACHE_SIZE;
 
-    private long TTL;
+    private volatile long TTL;
+
+    private final ConcurrentHashMap<Key, Entry> m_entries;
 
-    private Map<String, ResponseCtx> requestCache = null;
+    // entries in the order they were added, with removed ones left in
+    // until they reach the head
+    private final ConcurrentLinkedQueue<Entry> m_evictionQueue =
+            new ConcurrentLinkedQueue<Entry>();
 
-    private Map<String, Long> requestCacheTimeTracker = null;
+    private final AtomicInteger m_queued = new AtomicInteger();
 
-    private List<String> requestCacheUsageTracker = null;
+    private final AtomicLong m_hits = new AtomicLong();
 
-    private MessageDigest digest = null;
+    private final AtomicLong m_misses = new AtomicLong();
+
+    private final AtomicLong m_evictions = new AtomicLong();
 
     /**
      * The default constructor that initialises the cache with default values.
@@ -116,15 +158,12 @@ public class ResponseCacheImpl
             }
         }
 
-        // Note - HashMap, ArrayList are not thread-safe
-        requestCache = new HashMap<String, ResponseCtx>(CACHE_SIZE);
-        requestCacheTimeTracker = new HashMap<String, Long>(CACHE_SIZE);
-        requestCacheUsageTracker = new ArrayList<String>(CACHE_SIZE);
+        m_entries = new ConcurrentHashMap<Key, Entry>(CACHE_SIZE);
 
         try {
-            digest = MessageDigest.getInstance("MD5");
-        } catch (Exception e) {
-            throw new PEPException("Could not initialize the ResponseCache", e);
+            DIGEST.get();
+        } catch (IllegalStateException e) {
+            throw new PEPException("Could not initialize the ResponseCache", e.getCause());
         }
     }
 
@@ -140,93 +179,79 @@ public class ResponseCacheImpl
      */
     @Override
     public void addCacheItem(String request, ResponseCtx response) {
-        String hash = null;
-
         try {
-            hash = makeHash(request);
-
-            // thread-safety on cache operations
-            synchronized (requestCache) {
-
-                // if we have a maxxed cache, remove least used item
-                if (requestCache.size() >= CACHE_SIZE) {
-                    String key = requestCacheUsageTracker.remove(0);
-                    requestCache.remove(key);
-                    if (logger.isDebugEnabled()) {
-                        logger.debug("Purging cache element");
-                    }
-                }
-
-                requestCache.put(hash, response);
-                requestCacheUsageTracker.add(hash);
-                requestCacheTimeTracker.put(hash, new Long(System
-                                                           .currentTimeMillis()));
-            }
-
-            if (logger.isDebugEnabled()) {
-                logger.debug("Adding Cache Item (" + requestCache.size() + "/"
-                             + requestCacheUsageTracker.size() + "/"
-                             + requestCacheTimeTracker.size() + "): " + hash);
-            }
+            addCacheItem(makeRequestCtx(request), response);
         } catch (Exception e) {
             logger.warn("Error adding cache item: " + e.getMessage(), e);
         }
     }
 
+    /*
+     * (non-Javadoc)
+     * @see org.fcrepo.server.security.xacml.pep.ResponseCache#addCacheItem(org.fcrepo.server.security.RequestCtx,
+     * org.jboss.security.xacml.sunxacml.ctx.ResponseCtx)
+     */
+    @Override
+    public void addCacheItem(RequestCtx request, ResponseCtx response) {
+        if (TTL <= 0 || CACHE_SIZE <= 0) {
+            return;
+        }
+        Key key = makeKey(request);
+        Entry entry =
+                new Entry(key, response, getPid(request), System.currentTimeMillis());
+        m_entries.put(key, entry);
+        m_evictionQueue.offer(entry);
+        m_queued.incrementAndGet();
+        evict();
+
+        if (logger.isDebugEnabled()) {
+            logger.debug("Adding Cache Item (" + m_entries.size() + "): " + key);
+        }
+    }
+
     /*
      * (non-Javadoc)
      * @see org.fcrepo.server.security.xacml.pep.ResponseCache#getCacheItem(java.lang.String)
      */
     @Override
     public ResponseCtx getCacheItem(String request) {
-        String hash = null;
-        ResponseCtx response = null;
-
         try {
-            hash = makeHash(request);
-
-            // thread-safety on cache operations
-            synchronized (requestCache) {
-
-                if (logger.isDebugEnabled()) {
-                    logger.debug("Getting Cache Item (" + requestCache.size() + "/"
-                                 + requestCacheUsageTracker.size() + "/"
-                                 + requestCacheTimeTracker.size() + "): " + hash);
-                }
-
-                response = requestCache.get(hash);
-
-                if (response == null) {
-                    return null;
-                }
-
-                // if this item is older than CACHE_ITEM_TTL then we can't use it
-                long usedLast =
-                    System.currentTimeMillis()
-                    - requestCacheTimeTracker.get(hash).longValue();
-                if (usedLast > TTL) {
-                    requestCache.remove(hash);
-                    requestCacheUsageTracker.remove(hash);
-                    requestCacheTimeTracker.remove(hash);
-
-                    if (logger.isDebugEnabled()) {
-                        logger.debug("CACHE_ITEM_TTL exceeded: " + hash);
-                    }
+            return getCacheItem(makeRequestCtx(request));
+        } catch (Exception e) {
+            logger.warn("Error getting cache item: " + e.getMessage(), e);
+            return null;
+        }
+    }
 
-                    return null;
-                }
+    /*
+     * (non-Javadoc)
+     * @see org.fcrepo.server.security.xacml.pep.ResponseCache#getCacheItem(org.fcrepo.server.security.RequestCtx)
+     */
+    @Override
+    public ResponseCtx getCacheItem(RequestCtx request) {
+        if (TTL <= 0) {
+            return null;
+        }
+        Key key = makeKey(request);
+        Entry entry = m_entries.get(key);
+        if (entry == null) {
+            m_misses.incrementAndGet();
+            return null;
+        }
 
-                // we just used this item, move it to the end of the list (items at
-                // beginning get removed...)
-                requestCacheUsageTracker.add(requestCacheUsageTracker
-                                             .remove(requestCacheUsageTracker.indexOf(hash)));
+        // if this item is older than CACHE_ITEM_TTL then we can't use it
+        if (System.currentTimeMillis() - entry.created > TTL) {
+            m_entries.remove(key, entry);
+            m_misses.incrementAndGet();
+            if (logger.isDebugEnabled()) {
+                logger.debug("CACHE_ITEM_TTL exceeded: " + key);
             }
-        } catch (Exception e) {
-            logger.warn("Error getting cache item: " + e.getMessage(), e);
-            response = null;
+            return null;
         }
 
-        return response;
+        entry.used = true;
+        m_hits.incrementAndGet();
+        return entry.response;
     }
 
     /*
@@ -235,47 +260,128 @@ public class ResponseCacheImpl
      */
     @Override
     public void invalidate() {
-        // thread-safety on cache operations
-        synchronized (requestCache) {
-            requestCache = new HashMap<String, ResponseCtx>(CACHE_SIZE);
-            requestCacheTimeTracker = new HashMap<String, Long>(CACHE_SIZE);
-            requestCacheUsageTracker = new ArrayList<String>(CACHE_SIZE);
+        m_entries.clear();
+    }
+
+    /*
+     * (non-Javadoc)
+     * @see org.fcrepo.server.security.xacml.pep.ResponseCache#invalidate(java.lang.String)
+     */
+    @Override
+    public void invalidate(String pid) {
+        if (pid == null) {
+            return;
         }
+        int removed = 0;
+        Iterator<Map.Entry<Key, Entry>> entries = m_entries.entrySet().iterator();
+        while (entries.hasNext()) {
+            if (pid.equals(entries.next().getValue().pid)) {
+                entries.remove();
+                removed++;
+            }
+        }
+        logger.debug("Invalidated {} cache items for {}", removed, pid);
     }
 
     /**
-     * Given a request, this method generates a hash.
-     *
-     * @param request
-     *        the request to hash
-     * @return the hash
-     * @throws CacheException
+     * @return the number of lookups that found a usable response
      */
-    private String makeHash(String request) throws CacheException {
-        RequestCtx reqCtx = null;
+    public long getHitCount() {
+        return m_hits.get();
+    }
+
+    /**
+     * @return the number of lookups that found no usable response
+     */
+    public long getMissCount() {
+        return m_misses.get();
+    }
+
+    /**
+     * @return the proportion of lookups that found a usable response, or 0
+     *         if there have been none
+     */
+    public double getHitRate() {
+        long hits = m_hits.get();
+        long lookups = hits + m_misses.get();
+        return lookups == 0 ? 0 : (double) hits / lookups;
+    }
+
+    /**
+     * @return the number of responses removed to make room for others
+     */
+    public long getEvictionCount() {
+        return m_evictions.get();
+    }
+
+    /**
+     * @return the number of responses currently held
+     */
+    public int size() {
+        return m_entries.size();
+    }
+
+    /**
+     * Removes entries until the cache is within its size. Removed entries
+     * are dropped from the queue on the way, and the queue is also drained
+     * while it holds many more of those than the cache holds entries.
+     */
+    private void evict() {
+        while (m_entries.size() > CACHE_SIZE
+                || m_queued.get() > 2 * CACHE_SIZE) {
+            Entry entry = m_evictionQueue.poll();
+            if (entry == null) {
+                return;
+            }
+            m_queued.decrementAndGet();
+            if (m_entries.get(entry.key) != entry) {
+                // already removed or replaced
+                continue;
+            }
+            if (entry.used || m_entries.size() <= CACHE_SIZE) {
+                // used since last here, or not needed to make room
+                entry.used = false;
+                m_evictionQueue.offer(entry);
+                m_queued.incrementAndGet();
+            } else if (m_entries.remove(entry.key, entry)) {
+                m_evictions.incrementAndGet();
+                if (logger.isDebugEnabled()) {
+                    logger.debug("Purging cache element");
+                }
+            }
+        }
+    }
+
+    private RequestCtx makeRequestCtx(String request) throws CacheException {
         try {
-            reqCtx = m_contextUtil.makeRequestCtx(request);
+            return m_contextUtil.makeRequestCtx(request);
         } catch (MelcoeXacmlException pe) {
             throw new CacheException("Error converting request", pe);
         }
-        byte[] hash = null;
-        // ensure thread safety, don't want concurrent invocations of this method all modifying digest at once
-        // (alternative is to construct a new digest for each(
-        synchronized(digest) {
-            digest.reset();
+    }
 
-            hashSubjectList(reqCtx.getSubjectsAsList(), digest);
+    /**
+     * Given a request, this method generates a key from a digest of its
+     * attributes, in an order that doesn't depend on the order in which they
+     * appear in the request.
+     *
+     * @param reqCtx
+     *        the request to hash
+     * @return the key
+     */
+    private static Key makeKey(RequestCtx reqCtx) {
+        MessageDigest digest = DIGEST.get();
+        digest.reset();
 
-            hashAttributeList(reqCtx.getResourceAsList(), digest);
+        hashSubjectList(reqCtx.getSubjectsAsList(), digest);
 
-            hashAttributeList(reqCtx.getActionAsList(), digest);
+        hashAttributeList(reqCtx.getResourceAsList(), digest);
 
-            hashAttributeList(reqCtx.getEnvironmentAttributesAsList(), digest);
+        hashAttributeList(reqCtx.getActionAsList(), digest);
 
-            hash = digest.digest();
-        }
+        hashAttributeList(reqCtx.getEnvironmentAttributesAsList(), digest);
 
-        return byte2hex(hash);
+        return new Key(digest.digest());
     }
 
     @SuppressWarnings("unchecked")
@@ -285,6 +391,7 @@ public class ResponseCacheImpl
         for (Subject s:subjs) {
             hashAttributeList(s.getAttributesAsList(), digest);
         }
+        digest.update((byte) 1);
     }
 
     private static void hashAttributeList(List<Attribute> attList, MessageDigest digest) {
@@ -293,43 +400,108 @@ public class ResponseCacheImpl
         for (Attribute a:atts) {
             hashAttribute(a, digest);
         }
+        // ends the list, so that attributes can't move between lists
+        digest.update((byte) 1);
     }
+
     /**
-     * Utility function to add an attribute to the hash digest.
+     * Utility function to add an attribute to the hash digest. Each part is
+     * followed by a separator so that different attributes can't hash the
+     * same by running together.
      *
      * @param a
      *        the attribute to hash
      */
     private static void hashAttribute(Attribute a, MessageDigest dig) {
-        dig.update(a.getId().toString().getBytes());
-        dig.update(a.getType().toString().getBytes());
-        dig.update(a.getValue().encode().getBytes());
+        hashString(a.getId().toString(), dig);
+        hashString(a.getType().toString(), dig);
+        hashString(a.getValue().encode(), dig);
         if (a.getIssuer() != null) {
-            dig.update(a.getIssuer().getBytes());
+            hashString(a.getIssuer(), dig);
         }
+        dig.update((byte) 2);
         if (a.getIssueInstant() != null) {
-            dig.update(a.getIssueInstant().encode().getBytes());
+            hashString(a.getIssueInstant().encode(), dig);
         }
+        dig.update((byte) 2);
+    }
+
+    private static void hashString(String s, MessageDigest dig) {
+        dig.update(s.getBytes(UTF8));
+        dig.update((byte) 0);
+    }
+
+    // the object the request is about, if any
+    private static String getPid(RequestCtx reqCtx) {
+        for (Attribute a : reqCtx.getResourceAsList()) {
+            if (PID_ATTRIBUTE.equals(a.getId())) {
+                return a.getValue().encode();
+            }
+        }
+        return null;
     }
 
     /**
-     * Converts a hash into its hexadecimal string representation.
-     *
-     * @param bytes
-     *        the byte array to convert
-     * @return the hexadecimal string representation
+     * A request digest.
      */
-    private String byte2hex(byte[] bytes) {
-        char[] hexChars =
-                {'0', '1', '2', '3', '4', '5', '6', '7', '8', '9', 'a', 'b',
-                        'c', 'd', 'e', 'f'};
-
-        StringBuffer sb = new StringBuffer();
-        for (byte b : bytes) {
-            sb.append(hexChars[b >> 4 & 0xf]);
-            sb.append(hexChars[b & 0xf]);
+    private static final class Key {
+
+        private final byte[] m_digest;
+
+        private final int m_hashCode;
+
+        Key(byte[] digest) {
+            m_digest = digest;
+            m_hashCode = Arrays.hashCode(digest);
+        }
+
+        @Override
+        public int hashCode() {
+            return m_hashCode;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Key && Arrays.equals(m_digest, ((Key) o).m_digest);
+        }
+
+        /**
+         * Converts the digest into its hexadecimal string representation.
+         */
+        @Override
+        public String toString() {
+            char[] hexChars =
+                    {'0', '1', '2', '3', '4', '5', '6', '7', '8', '9', 'a', 'b',
+                            'c', 'd', 'e', 'f'};
+
+            StringBuilder sb = new StringBuilder(m_digest.length * 2);
+            for (byte b : m_digest) {
+                sb.append(hexChars[b >> 4 & 0xf]);
+                sb.append(hexChars[b & 0xf]);
+            }
+
+            return sb.toString();
         }
+    }
 
-        return new String(sb);
+    private static final class Entry {
+
+        final Key key;
+
+        final ResponseCtx response;
+
+        final String pid;
+
+        final long created;
+
+        // whether used since last considered for eviction
+        volatile boolean used;
+
+        Entry(Key key, ResponseCtx response, String pid, long created) {
+            this.key = key;
+            this.response = response;
+            this.pid = pid;
+            this.created = created;
+        }
     }
-}
\ No newline at end of file
+}
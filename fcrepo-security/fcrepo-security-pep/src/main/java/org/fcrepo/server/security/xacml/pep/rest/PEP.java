@@ -19,6 +19,7 @@
 package org.fcrepo.server.security.xacml.pep.rest;
 
 import java.io.IOException;
+import java.net.URI;
 import java.util.Map;
 import java.util.Set;
 
@@ -32,10 +33,13 @@ import javax.servlet.ServletResponse;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
+import org.fcrepo.common.Constants;
+import org.fcrepo.server.security.Attribute;
 import org.fcrepo.server.security.RequestCtx;
 import org.fcrepo.server.security.xacml.pep.AuthzDeniedException;
 import org.fcrepo.server.security.xacml.pep.ContextHandler;
 import org.fcrepo.server.security.xacml.pep.PEPException;
+import org.fcrepo.server.security.xacml.pep.ResponseCache;
 import org.fcrepo.server.security.xacml.pep.rest.filters.DataResponseWrapper;
 import org.fcrepo.server.security.xacml.pep.rest.filters.ObjectsFilter;
 import org.fcrepo.server.security.xacml.pep.rest.filters.ObjectsRESTFilterMatcher;
@@ -62,8 +66,12 @@ public final class PEP
     private Map<String, RESTFilter> m_filters;
     private ObjectsRESTFilterMatcher m_objectsRESTFilterMatcher;
 
+    private static final URI PID_ATTRIBUTE = Constants.OBJECT.PID.getURI();
+
     private ContextHandler m_ctxHandler = null;
 
+    private ResponseCache m_responseCache = null;
+
     public PEP(ObjectsRESTFilterMatcher objectsRESTFilterMatcher, Map<String, RESTFilter> filters ) throws PEPException {
         m_objectsRESTFilterMatcher = objectsRESTFilterMatcher;
         m_filters = filters;
@@ -164,6 +172,12 @@ public final class PEP
 
                 // pass the request along to the next chain...
                 chain.doFilter(req, res);
+
+                // decisions about an object may change when it does
+                if (m_responseCache != null && reqCtx != null
+                        && isWrite(req.getMethod())) {
+                    m_responseCache.invalidate(getPid(reqCtx));
+                }
             } else {
                 // there must always be a filter, even if it is a NOOP
                 logger.error("No FeSL REST filter found for \"{}\"", servletPath);
@@ -222,12 +236,36 @@ public final class PEP
         m_filters = null;
         m_objectsRESTFilterMatcher = null;
         m_ctxHandler = null;
+        m_responseCache = null;
     }
 
     public void setContextHandler(ContextHandler ctxHandler) {
         m_ctxHandler = ctxHandler;
     }
 
+    /**
+     * Sets the cache of decisions to invalidate for objects changed through
+     * this filter. Optional.
+     */
+    public void setResponseCache(ResponseCache responseCache) {
+        m_responseCache = responseCache;
+    }
+
+    private static boolean isWrite(String method) {
+        return !"GET".equals(method) && !"HEAD".equals(method)
+                && !"OPTIONS".equals(method);
+    }
+
+    // the object the request is about, if any
+    private static String getPid(RequestCtx reqCtx) {
+        for (Attribute a : reqCtx.getResourceAsList()) {
+            if (PID_ATTRIBUTE.equals(a.getId())) {
+                return a.getValue().encode();
+            }
+        }
+        return null;
+    }
+
     /**
      * Enforces a decision returned from the PDP.
      *
@@ -325,6 +325,22 @@ public class RISearchFilter
             throws ServletException {
         RequestCtx[] requests = new RequestCtx[pids.size()];
         int ix = 0;
+        // the same for every pid, so only looked up once
+        List<Map<URI, List<AttributeValue>>> subjects = getSubjects(request);
+        Map<URI, AttributeValue> environment = getEnvironment(request);
+        // find all the parents up front rather than one pid at a time
+        List<String> objectPids = new ArrayList<String>(pids.size());
+        for (String pidDN : pids) {
+            String[] components = pidDN.split("\\/");
+            if (components.length > 1) {
+                objectPids.add(components[1]);
+            }
+        }
+        try {
+            m_relationshipResolver.buildRESTParentHierarchies(objectPids);
+        } catch (MelcoeXacmlException e) {
+            logger.warn("Error resolving parent hierarchies: " + e.getMessage(), e);
+        }
         for (String pidDN : pids) {
             logger.debug("Checking: {}", pidDN);
 
@@ -358,10 +374,10 @@ public class RISearchFilter
                 }
 
                 RequestCtx req =
-                        m_contextUtil.buildRequest(getSubjects(request),
+                        m_contextUtil.buildRequest(subjects,
                                                  actions,
                                                  resAttr,
-                                                 getEnvironment(request),
+                                                 environment,
                                                  m_relationshipResolver);
 
                 String xacmlResourceId = getXacmlResourceId(req);
@@ -411,6 +411,15 @@ public class FindObjects
             throws ServletException {
         RequestCtx[] requests = new RequestCtx[pids.size()];
         int ix = 0;
+        // the same for every pid, so only looked up once
+        List<Map<URI, List<AttributeValue>>> subjects = getSubjects(request);
+        Map<URI, AttributeValue> environment = getEnvironment(request);
+        // find all the parents up front rather than one pid at a time
+        try {
+            getContextHandler().resolveParentHierarchies(pids);
+        } catch (PEPException e) {
+            logger.warn("Error resolving parent hierarchies: " + e.getMessage(), e);
+        }
         for (String pid : pids) {
             logger.debug("Checking: {}", pid);
 
@@ -429,10 +438,10 @@ public class FindObjects
 
                 RequestCtx req =
                         getContextHandler()
-                                .buildRequest(getSubjects(request),
+                                .buildRequest(subjects,
                                               actions,
                                               resAttr,
-                                              getEnvironment(request));
+                                              environment);
 
                 requests[ix++] = req;
             } catch (Exception e) {
@@ -87,6 +87,23 @@ public class FieldSearchResultHandler
         RequestCtx[] requests = new RequestCtx[objs.size()];
         int ix = 0;
         Map<String, ObjectFields> objects = new HashMap<String, ObjectFields>();
+        // the same for every object, so only looked up once
+        List<Map<URI, List<AttributeValue>>> subjects = getSubjects(context);
+        Map<URI, AttributeValue> environment = getEnvironment(context);
+
+        // find all the parents up front rather than one object at a time
+        List<String> pids = new ArrayList<String>(objs.size());
+        for (ObjectFields o : objs) {
+            if (o.getPid() != null && o.getPid().getValue() != null
+                    && !o.getPid().getValue().isEmpty()) {
+                pids.add(o.getPid().getValue());
+            }
+        }
+        try {
+            getContextHandler().resolveParentHierarchies(pids);
+        } catch (PEPException e) {
+            logger.warn("Error resolving parent hierarchies: " + e.getMessage(), e);
+        }
 
         for (ObjectFields o : objs) {
             logger.debug("Checking: {}", o.getPid());
@@ -112,10 +129,10 @@ public class FieldSearchResultHandler
 
                     RequestCtx req =
                             getContextHandler()
-                                    .buildRequest(getSubjects(context),
+                                    .buildRequest(subjects,
                                                   actions,
                                                   resAttr,
-                                                  getEnvironment(context));
+                                                  environment);
 
                     requests[ix++] = req;
                 } catch (Exception e) {
@@ -6,7 +6,6 @@ package org.fcrepo.oai;
 
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.nio.charset.Charset;
 import java.util.Enumeration;
 import java.util.HashMap;
 
@@ -24,7 +23,6 @@ import org.fcrepo.server.errors.authorization.AuthzOperationalException;
 import org.fcrepo.server.errors.authorization.AuthzPermittedException;
 import org.fcrepo.server.errors.servletExceptionExtensions.InternalError500Exception;
 import org.fcrepo.server.errors.servletExceptionExtensions.RootException;
-import org.fcrepo.utilities.ReadableByteArrayOutputStream;
 
 
 
@@ -50,21 +48,22 @@ public abstract class OAIProviderServlet
                 String name = (String) enm.nextElement();
                 params.put(name, request.getParameter(name));
             }
-            ReadableByteArrayOutputStream out = new ReadableByteArrayOutputStream();
             Context context =
                     ReadOnlyContext.getContext(Constants.HTTP_REQUEST.REST.uri,
                                                request);
+            // the response is written as it is produced; authorization is
+            // checked before anything is written
+            response.setContentType("text/xml; charset=UTF-8");
             try {
-                getResponder().respond(context, params, out);
-                out.close();
+                getResponder().respond(context,
+                                       params,
+                                       response.getOutputStream());
             } catch (AuthzException ae) {
                 throw RootException.getServletException(ae,
                                                         request,
                                                         ACTION_LABEL,
                                                         new String[0]);
             }
-            response.setContentType("text/xml; charset=UTF-8");
-            response.getWriter().print(out.getString(Charset.forName("UTF-8")));
         } catch (Throwable t) {
             throw new InternalError500Exception("",
                                                 t,
@@ -119,19 +119,17 @@ public class OAIResponder
                                   out);
             } else if (verb.equals("ListIdentifiers")) {
                 String rToken = (String) args.get("resumptionToken");
-                List<?> headers;
+                Date from = null;
+                Date until = null;
+                String metadataPrefix = null;
+                String set = null;
                 if (rToken != null) {
                     if (args.size() > 2) {
                         throw new BadArgumentException("ListIdentifiers request specified resumptionToken with other arguments.");
                     }
-                    headers = m_provider.getHeaders(rToken);
                 } else {
                     Iterator<String> iter = args.keySet().iterator();
                     boolean badParam = false;
-                    Date from = null;
-                    Date until = null;
-                    String metadataPrefix = null;
-                    String set = null;
                     while (iter.hasNext()) {
                         String name = iter.next();
                         if (name.equals("metadataPrefix")) {
@@ -156,29 +154,56 @@ public class OAIResponder
                     if (metadataPrefix == null) {
                         throw new BadArgumentException("ListIdentifiers request did not specify metadataPrefix argument.");
                     }
-                    headers =
-                            m_provider.getHeaders(from,
-                                                  until,
-                                                  metadataPrefix,
-                                                  set);
                 }
-                if (headers.size() == 0) {
-                    throw new NoRecordsMatchException("No records match the providied criteria.");
-                }
-                ResumptionToken resumptionToken = null;
-                if (m_provider.getMaxHeaders() > 0) {
-                    if (headers.size() > m_provider.getMaxHeaders()) {
+                if (m_provider instanceof StreamingOAIProvider) {
+                    StreamingOAIProvider provider =
+                            (StreamingOAIProvider) m_provider;
+                    ListWriter<Header> writer =
+                            new ListWriter<Header>("ListIdentifiers",
+                                                   args,
+                                                   baseURL,
+                                                   out);
+                    ResumptionToken resumptionToken;
+                    if (rToken != null) {
+                        resumptionToken = provider.listHeaders(rToken, writer);
+                    } else {
                         resumptionToken =
-                                (ResumptionToken) headers
-                                        .get(headers.size() - 1);
-                        headers = headers.subList(0, headers.size() - 1);
+                                provider.listHeaders(from,
+                                                     until,
+                                                     metadataPrefix,
+                                                     set,
+                                                     writer);
+                    }
+                    writer.finish(resumptionToken);
+                } else {
+                    List<?> headers;
+                    if (rToken != null) {
+                        headers = m_provider.getHeaders(rToken);
+                    } else {
+                        headers =
+                                m_provider.getHeaders(from,
+                                                      until,
+                                                      metadataPrefix,
+                                                      set);
+                    }
+                    if (headers.size() == 0) {
+                        throw new NoRecordsMatchException("No records match the providied criteria.");
                     }
+                    ResumptionToken resumptionToken = null;
+                    if (m_provider.getMaxHeaders() > 0) {
+                        if (headers.size() > m_provider.getMaxHeaders()) {
+                            resumptionToken =
+                                    (ResumptionToken) headers
+                                            .get(headers.size() - 1);
+                            headers = headers.subList(0, headers.size() - 1);
+                        }
+                    }
+                    respondToListIdentifiers(args,
+                                             baseURL,
+                                             headers,
+                                             resumptionToken,
+                                             out);
                 }
-                respondToListIdentifiers(args,
-                                         baseURL,
-                                         headers,
-                                         resumptionToken,
-                                         out);
             } else if (verb.equals("ListMetadataFormats")) {
                 String identifier = (String) args.get("identifier");
                 if (identifier == null) {
@@ -194,19 +219,17 @@ public class OAIResponder
                         .getMetadataFormats(identifier), out);
             } else if (verb.equals("ListRecords")) {
                 String rToken = (String) args.get("resumptionToken");
-                List<?> records;
+                Date from = null;
+                Date until = null;
+                String metadataPrefix = null;
+                String set = null;
                 if (rToken != null) {
                     if (args.size() > 2) {
                         throw new BadArgumentException("ListRecords request specified resumptionToken with other arguments.");
                     }
-                    records = m_provider.getRecords(rToken);
                 } else {
                     Iterator<String> iter = args.keySet().iterator();
                     boolean badParam = false;
-                    Date from = null;
-                    Date until = null;
-                    String metadataPrefix = null;
-                    String set = null;
                     while (iter.hasNext()) {
                         String name = (String) iter.next();
                         if (name.equals("metadataPrefix")) {
@@ -231,29 +254,56 @@ public class OAIResponder
                     if (metadataPrefix == null) {
                         throw new BadArgumentException("ListRecords request did not specify metadataPrefix argument.");
                     }
-                    records =
-                            m_provider.getRecords(from,
-                                                  until,
-                                                  metadataPrefix,
-                                                  set);
                 }
-                if (records.size() == 0) {
-                    throw new NoRecordsMatchException("No records match the providied criteria.");
-                }
-                ResumptionToken resumptionToken = null;
-                if (m_provider.getMaxRecords() > 0) {
-                    if (records.size() > m_provider.getMaxRecords()) {
+                if (m_provider instanceof StreamingOAIProvider) {
+                    StreamingOAIProvider provider =
+                            (StreamingOAIProvider) m_provider;
+                    ListWriter<Record> writer =
+                            new ListWriter<Record>("ListRecords",
+                                                   args,
+                                                   baseURL,
+                                                   out);
+                    ResumptionToken resumptionToken;
+                    if (rToken != null) {
+                        resumptionToken = provider.listRecords(rToken, writer);
+                    } else {
                         resumptionToken =
-                                (ResumptionToken) records
-                                        .get(records.size() - 1);
-                        records = records.subList(0, records.size() - 1);
+                                provider.listRecords(from,
+                                                     until,
+                                                     metadataPrefix,
+                                                     set,
+                                                     writer);
+                    }
+                    writer.finish(resumptionToken);
+                } else {
+                    List<?> records;
+                    if (rToken != null) {
+                        records = m_provider.getRecords(rToken);
+                    } else {
+                        records =
+                                m_provider.getRecords(from,
+                                                      until,
+                                                      metadataPrefix,
+                                                      set);
+                    }
+                    if (records.size() == 0) {
+                        throw new NoRecordsMatchException("No records match the providied criteria.");
                     }
+                    ResumptionToken resumptionToken = null;
+                    if (m_provider.getMaxRecords() > 0) {
+                        if (records.size() > m_provider.getMaxRecords()) {
+                            resumptionToken =
+                                    (ResumptionToken) records
+                                            .get(records.size() - 1);
+                            records = records.subList(0, records.size() - 1);
+                        }
+                    }
+                    respondToListRecords(args,
+                                         baseURL,
+                                         records,
+                                         resumptionToken,
+                                         out);
                 }
-                respondToListRecords(args,
-                                     baseURL,
-                                     records,
-                                     resumptionToken,
-                                     out);
             } else if (verb.equals("ListSets")) {
                 String rToken = (String) args.get("resumptionToken");
                 List<?> sets;
@@ -439,6 +489,60 @@ public class OAIResponder
         appendBottom(out);
     }
 
+    /**
+     * Writes a list response as its items are handed over by a
+     * StreamingOAIProvider. The response is only started with the first item,
+     * so that an error can be written instead if there are none.
+     */
+    private class ListWriter<T>
+            implements StreamingOAIProvider.Handler<T> {
+
+        private final String m_verb;
+
+        private final Map<String, String> m_args;
+
+        private final String m_baseURL;
+
+        private final PrintWriter m_out;
+
+        private boolean m_started;
+
+        ListWriter(String verb,
+                   Map<String, String> args,
+                   String baseURL,
+                   PrintWriter out) {
+            m_verb = verb;
+            m_args = args;
+            m_baseURL = baseURL;
+            m_out = out;
+        }
+
+        public void handle(T item) {
+            if (!m_started) {
+                appendTop(m_out);
+                appendRequest(m_args, m_baseURL, m_out);
+                m_out.println("  <" + m_verb + ">");
+                m_started = true;
+            }
+            if (item instanceof Record) {
+                appendRecord("    ", (Record) item, m_out);
+            } else {
+                appendHeader("    ", (Header) item, m_out);
+            }
+        }
+
+        // resumptionToken may be null
+        void finish(ResumptionToken resumptionToken)
+                throws NoRecordsMatchException {
+            if (!m_started) {
+                throw new NoRecordsMatchException("No records match the providied criteria.");
+            }
+            appendResumptionToken(resumptionToken, m_out);
+            m_out.println("  </" + m_verb + ">");
+            appendBottom(m_out);
+        }
+    }
+
     private void appendRecord(String indent, Record record, PrintWriter out) {
         Header header = record.getHeader();
         String metadata = record.getMetadata();
@@ -0,0 +1,83 @@
+/* The contents of this file are subject to the license and copyright terms
+ * detailed in the license directory at the root of the source tree (also
+ * available online at http://fedora-commons.org/license/).
+ */
+package org.fcrepo.oai;
+
+import java.util.Date;
+
+/**
+ * An OAIProvider that can pass the records and headers of a list response to
+ * the responder one at a time, so that neither has to hold a whole page.
+ * <p>
+ * The responder uses these methods instead of the List-returning ones of
+ * OAIProvider for ListRecords and ListIdentifiers. Each item is passed to the
+ * handler as soon as it is read, and the resumption token for the rest of the
+ * list, if any, is returned once the page is done. If nothing matches, a
+ * NoRecordsMatchException is thrown before anything is passed to the handler.
+ * </p>
+ */
+public interface StreamingOAIProvider
+        extends OAIProvider {
+
+    /**
+     * Receives the items of a list response.
+     */
+    public interface Handler<T> {
+
+        public void handle(T item);
+    }
+
+    /**
+     * Pass the first page of records in a range to a handler.
+     *
+     * @return the resumption token for the rest of the list, or null if there
+     *         is none.
+     */
+    public abstract ResumptionToken listRecords(Date from,
+                                                Date until,
+                                                String metadataPrefix,
+                                                String set,
+                                                Handler<Record> handler)
+            throws CannotDisseminateFormatException, NoRecordsMatchException,
+            NoSetHierarchyException, RepositoryException;
+
+    /**
+     * Pass the next page of records of a list to a handler.
+     *
+     * @return the resumption token for the rest of the list. On the last page
+     *         this may have a null value, or be null itself.
+     */
+    public abstract ResumptionToken listRecords(String resumptionToken,
+                                                Handler<Record> handler)
+            throws CannotDisseminateFormatException, NoRecordsMatchException,
+            NoSetHierarchyException, BadResumptionTokenException,
+            RepositoryException;
+
+    /**
+     * Pass the first page of headers in a range to a handler.
+     *
+     * @return the resumption token for the rest of the list, or null if there
+     *         is none.
+     */
+    public abstract ResumptionToken listHeaders(Date from,
+                                                Date until,
+                                                String metadataPrefix,
+                                                String set,
+                                                Handler<Header> handler)
+            throws CannotDisseminateFormatException, NoRecordsMatchException,
+            NoSetHierarchyException, RepositoryException;
+
+    /**
+     * Pass the next page of headers of a list to a handler.
+     *
+     * @return the resumption token for the rest of the list. On the last page
+     *         this may have a null value, or be null itself.
+     */
+    public abstract ResumptionToken listHeaders(String resumptionToken,
+                                                Handler<Header> handler)
+            throws CannotDisseminateFormatException, NoRecordsMatchException,
+            NoSetHierarchyException, BadResumptionTokenException,
+            RepositoryException;
+
+}
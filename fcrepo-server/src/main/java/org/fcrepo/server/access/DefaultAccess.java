@@ -4,6 +4,8 @@
  */
 package org.fcrepo.server.access;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.io.UnsupportedEncodingException;
 import java.net.InetAddress;
 import java.net.URLDecoder;
@@ -36,6 +38,7 @@ import org.fcrepo.server.errors.InvalidUserParmException;
 import org.fcrepo.server.errors.MethodNotFoundException;
 import org.fcrepo.server.errors.ModuleInitializationException;
 import org.fcrepo.server.errors.ServerException;
+import org.fcrepo.server.errors.StreamIOException;
 import org.fcrepo.server.search.FieldSearchQuery;
 import org.fcrepo.server.search.FieldSearchResult;
 import org.fcrepo.server.security.Authorization;
@@ -60,6 +63,7 @@ import org.fcrepo.server.storage.types.Property;
 import org.fcrepo.server.storage.types.RelationshipTuple;
 import org.fcrepo.server.utilities.ServerUtility;
 import org.fcrepo.utilities.DateUtility;
+import org.fcrepo.utilities.io.ByteRangeInputStream;
 import org.fcrepo.utilities.io.NullInputStream;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -178,6 +182,42 @@ public class DefaultAccess
                                                     getRole());
         }
 
+        // the datastream mediation registry is shared by every dissemination
+        long expirationSeconds =
+                getServerParameter("datastreamExpirationLimit", 300, 0);
+        long maxEntries =
+                getServerParameter("datastreamMediationMaxEntries", 100000, 1);
+        long reuseMillis =
+                getServerParameter("datastreamMediationReuseLimit", 0, 0);
+        DisseminationService.configureRegistry(expirationSeconds * 1000,
+                                               (int) Math.min(maxEntries,
+                                                              Integer.MAX_VALUE),
+                                               reuseMillis);
+    }
+
+    /**
+     * Get a whole-number server parameter, or the default if it is not
+     * specified.
+     *
+     * @throws ModuleInitializationException
+     *         If the value is not a number, or is less than the minimum.
+     */
+    private long getServerParameter(String name, long defaultValue, long min)
+            throws ModuleInitializationException {
+        String value = getServer().getParameter(name);
+        if (value == null || value.isEmpty()) {
+            return defaultValue;
+        }
+        try {
+            long number = Long.parseLong(value);
+            if (number < min) {
+                throw new NumberFormatException("Must be at least " + min);
+            }
+            return number;
+        } catch (NumberFormatException e) {
+            throw new ModuleInitializationException("Bad value for " + name
+                    + " parameter: " + e.getMessage(), getRole());
+        }
     }
 
     private static final Hashtable<String, String> accessActionAttributes =
@@ -1075,6 +1115,25 @@ public class DefaultAccess
         return itemIndexURL;
     }
 
+    /**
+     * Opens the content of a datastream at the start of a range.
+     */
+    private static ByteRangeInputStream.Source getContentSource(final Datastream ds,
+                                                                final Context context) {
+        return new ByteRangeInputStream.Source() {
+
+            @Override
+            public InputStream open(long offset, long length)
+                    throws IOException {
+                try {
+                    return ds.getContentStream(context, offset, length);
+                } catch (StreamIOException e) {
+                    throw new IOException(e.getMessage(), e);
+                }
+            }
+        };
+    }
+
     private String getReposBaseURL(String protocol, String port) {
         String reposBaseURL = null;
         String fedoraServerHost = getServer().getParameter("fedoraServerHost");
@@ -1129,20 +1188,28 @@ public class DefaultAccess
                 ds.DSSize = ds.getContentSize(context);
             }
             Property[] dsHeaders = getDatastreamHeaders(PID, ds);
+            String rangeHdr = context.getHeaderValue(HttpHeaders.RANGE);
             if (ServerUtility.isStaleCache(context, dsHeaders)) {
                 if (isHEADRequest(context)) {
                     mimeTypedStream = new MIMETypedStream(ds.DSMIME, NullInputStream.NULL_STREAM,
                             getDatastreamHeaders(PID, ds), ds.DSSize);
+                    // delimit Content-Range if necessary
+                    if (rangeHdr != null) mimeTypedStream.setRange(rangeHdr);
+                } else if (rangeHdr != null && !rangeHdr.isEmpty()) {
+                    // open the content at the start of the range, rather
+                    // than reading up to it
+                    mimeTypedStream = new MIMETypedStream(ds.DSMIME, null,
+                            dsHeaders, ds.DSSize);
+                    mimeTypedStream.setRange(rangeHdr,
+                            getContentSource(ds, context));
                 } else {
                     mimeTypedStream = new MIMETypedStream(ds.DSMIME, ds.getContentStream(context),
                             dsHeaders, ds.DSSize);                    
                 }
             } else {
                 mimeTypedStream = MIMETypedStream.getNotModified(dsHeaders);
+                if (rangeHdr != null) mimeTypedStream.setRange(rangeHdr);
             }
-            String rangeHdr = context.getHeaderValue(HttpHeaders.RANGE);
-            // delimit Content-Range if necessary
-            if (rangeHdr != null) mimeTypedStream.setRange(rangeHdr);
         } else if (ds.DSControlGrp.equalsIgnoreCase("E")) {
             DatastreamReferencedContent drc =
                     (DatastreamReferencedContent) ds;
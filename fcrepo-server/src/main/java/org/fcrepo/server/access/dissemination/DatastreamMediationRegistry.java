@@ -0,0 +1,242 @@
+/* The contents of this file are subject to the license and copyright terms
+ * detailed in the license directory at the root of the source tree (also
+ * available online at http://fedora-commons.org/license/).
+ */
+package org.fcrepo.server.access.dissemination;
+
+import java.sql.Timestamp;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.fcrepo.server.storage.types.DatastreamMediation;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The temporary IDs handed to backend services in place of datastream
+ * locations, and what they stand for.
+ * <p>
+ * Registrations are kept in a concurrent map, and also in a second, sorted
+ * map in the order they were made, which is the order they expire in. Each
+ * registration removes the expired ones from the head of the order, and, if
+ * the registry holds more than its maximum, the oldest ones, so the cost
+ * doesn't depend on the size of the registry. A released registration is
+ * removed from both, so neither holds more than the maximum.
+ * </p>
+ * <p>
+ * Normally an ID is released, and forgotten, as soon as it has been resolved.
+ * If a reuse interval is set, IDs are instead kept until they expire, and
+ * registering the same location again within the interval returns the same
+ * ID. The interval should be less than datastreamMediationLimit, or reused IDs
+ * will be refused as too old.
+ * </p>
+ */
+public class DatastreamMediationRegistry {
+
+    private static final Logger logger =
+            LoggerFactory.getLogger(DatastreamMediationRegistry.class);
+
+    private final ConcurrentHashMap<String, Registration> m_registrations =
+            new ConcurrentHashMap<String, Registration>();
+
+    /** Registrations in the order they were made. */
+    private final ConcurrentSkipListMap<Long, Registration> m_expiryOrder =
+            new ConcurrentSkipListMap<Long, Registration>();
+
+    /** The latest reusable registration for each location. */
+    private final ConcurrentHashMap<String, Registration> m_byLocation =
+            new ConcurrentHashMap<String, Registration>();
+
+    /** Held by the thread removing registrations from the queue. */
+    private final AtomicBoolean m_expiring = new AtomicBoolean();
+
+    /** Makes IDs registered in the same millisecond unique. */
+    private final AtomicInteger m_counter = new AtomicInteger();
+
+    /** The order of registrations. */
+    private final AtomicLong m_sequence = new AtomicLong();
+
+    private volatile long m_expirationMillis = 300000;
+
+    private volatile int m_maxEntries = 100000;
+
+    private volatile long m_reuseMillis = 0;
+
+    /**
+     * Set how long registrations are kept, in milliseconds.
+     */
+    public void setExpirationMillis(long expirationMillis) {
+        m_expirationMillis = expirationMillis;
+    }
+
+    /**
+     * Set the most registrations kept; above this, the oldest are removed
+     * before they expire.
+     */
+    public void setMaxEntries(int maxEntries) {
+        m_maxEntries = maxEntries;
+    }
+
+    /**
+     * Set how long, in milliseconds, the ID registered for a location is
+     * handed out again for the same location. Zero, the default, means IDs
+     * are never reused, and are released as soon as they are resolved.
+     */
+    public void setReuseMillis(long reuseMillis) {
+        m_reuseMillis = reuseMillis;
+    }
+
+    /**
+     * Register a datastream, returning its temporary ID. The ID is a
+     * timestamp, followed by a colon and a counter, and is also set as the
+     * mediatedDatastreamID.
+     *
+     * @param reuseKey
+     *        identifies what was registered, for reuse; registrations with
+     *        the same key are interchangeable.
+     */
+    public String register(DatastreamMediation dm, String reuseKey) {
+        long now = System.currentTimeMillis();
+        expire(now);
+        long reuseMillis = m_reuseMillis;
+        if (reuseMillis > 0 && reuseKey != null) {
+            Registration r = m_byLocation.get(reuseKey);
+            if (r != null && now - r.time < reuseMillis
+                    && m_registrations.get(r.tempID) == r) {
+                return r.tempID;
+            }
+        }
+        String tempID =
+                new Timestamp(now).toString() + ":"
+                        + Math.floorMod(m_counter.getAndIncrement(), 1000000);
+        dm.mediatedDatastreamID = tempID;
+        Registration r =
+                new Registration(tempID,
+                                 dm,
+                                 now,
+                                 reuseKey,
+                                 m_sequence.getAndIncrement());
+        m_registrations.put(tempID, r);
+        m_expiryOrder.put(r.sequence, r);
+        if (reuseMillis > 0 && reuseKey != null) {
+            m_byLocation.put(reuseKey, r);
+        }
+        logger.debug("DatastreamMediationKey added to registry: {}", tempID);
+        return tempID;
+    }
+
+    /**
+     * Get what a temporary ID stands for, or null if it isn't registered.
+     */
+    public DatastreamMediation get(String tempID) {
+        Registration r = m_registrations.get(tempID);
+        return r == null ? null : r.dm;
+    }
+
+    /**
+     * Get when a temporary ID was registered, or -1 if it isn't registered.
+     */
+    public long getRegistrationTime(String tempID) {
+        Registration r = m_registrations.get(tempID);
+        return r == null ? -1 : r.time;
+    }
+
+    /**
+     * Signal that a temporary ID has been resolved. Unless IDs are being
+     * reused, it is forgotten.
+     */
+    public void release(String tempID) {
+        if (m_reuseMillis > 0) {
+            return;
+        }
+        Registration r = m_registrations.get(tempID);
+        if (r != null) {
+            remove(r);
+        }
+    }
+
+    /**
+     * Get the number of registered IDs.
+     */
+    public int size() {
+        return m_registrations.size();
+    }
+
+    /**
+     * Get the number of registrations waiting to expire.
+     */
+    int expiring() {
+        return m_expiryOrder.size();
+    }
+
+    /**
+     * Remove the registrations that have expired, and, if there are too many,
+     * the oldest, to make room for one more. Only one thread does this at a
+     * time; others carry on.
+     */
+    private void expire(long now) {
+        if (!m_expiring.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            long cutoff = now - m_expirationMillis;
+            Map.Entry<Long, Registration> first;
+            while ((first = m_expiryOrder.firstEntry()) != null) {
+                Registration head = first.getValue();
+                boolean expired = head.time < cutoff;
+                if (!expired && m_registrations.size() < m_maxEntries) {
+                    break;
+                }
+                if (remove(head)) {
+                    if (expired) {
+                        logger.debug("DatastreamMediationKey expired: {}",
+                                     head.tempID);
+                    } else {
+                        logger.warn("Datastream mediation registry is full "
+                                + "({} entries); removed {} before it expired",
+                                    m_maxEntries, head.tempID);
+                    }
+                }
+            }
+        } finally {
+            m_expiring.set(false);
+        }
+    }
+
+    private boolean remove(Registration r) {
+        m_expiryOrder.remove(r.sequence, r);
+        if (r.reuseKey != null) {
+            m_byLocation.remove(r.reuseKey, r);
+        }
+        return m_registrations.remove(r.tempID, r);
+    }
+
+    private static class Registration {
+
+        final String tempID;
+
+        final DatastreamMediation dm;
+
+        final long time;
+
+        final String reuseKey;
+
+        final long sequence;
+
+        Registration(String tempID,
+                     DatastreamMediation dm,
+                     long time,
+                     String reuseKey,
+                     long sequence) {
+            this.tempID = tempID;
+            this.dm = dm;
+            this.time = time;
+            this.reuseKey = reuseKey;
+            this.sequence = sequence;
+        }
+    }
+}
@@ -8,8 +8,6 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.PrintWriter;
 import java.net.URI;
-import java.sql.Timestamp;
-import java.util.Date;
 import java.util.Enumeration;
 import java.util.Iterator;
 
@@ -140,9 +138,7 @@ public class DatastreamResolverServlet
         String dsPhysicalLocation = null;
         String dsControlGroupType = null;
         MIMETypedStream mimeTypedStream = null;
-        DisseminationService ds = null;
-        Timestamp keyTimestamp = null;
-        Timestamp currentTimestamp = null;
+        String callbackRole = null;
         PrintWriter out = null;
         ServletOutputStream outStream = null;
 
@@ -168,20 +164,19 @@ public class DatastreamResolverServlet
             }
             id = id.replace('T', ' ').replaceAll("/", "").trim();
 
-            // Get in-memory hashtable of mappings from Fedora server.
-            ds = new DisseminationService(m_server);
+            // Get in-memory registry of mappings from Fedora server.
             DatastreamMediation dm = DisseminationService.dsRegistry.get(id);
-            if (dm == null) {
-                StringBuffer entries = new StringBuffer();
-                Iterator<String> eIter = DisseminationService.dsRegistry.keySet().iterator();
-                while (eIter.hasNext()) {
-                    entries.append("'" + eIter.next() + "' ");
-                }
+            long registrationTime =
+                    DisseminationService.dsRegistry.getRegistrationTime(id);
+            if (dm == null || registrationTime == -1) {
                 throw new IOException("Cannot find datastream in temp registry by key: "
-                        + id + "\n" + "Reg entries: " + entries.toString());
+                        + id + " (" + DisseminationService.dsRegistry.size()
+                        + " entries)");
             }
             dsPhysicalLocation = dm.dsLocation;
             dsControlGroupType = dm.dsControlGroupType;
+            // the registration may be shared, so it isn't changed
+            callbackRole = dm.callbackRole;
             if (logger.isDebugEnabled()) {
                 logger.debug("**************************** DatastreamResolverServlet dm.dsLocation: {}", dm.dsLocation);
                 logger.debug("**************************** DatastreamResolverServlet dm.dsControlGroupType: {}", dm.dsControlGroupType);
@@ -231,10 +226,10 @@ public class DatastreamResolverServlet
                             .equals("X"))) {
                 if (logger.isDebugEnabled()) {
                     logger.debug("*********************** Changed role from: "
-                            + dm.callbackRole + "  to: "
+                            + callbackRole + "  to: "
                             + BackendPolicies.BACKEND_SERVICE_CALL_UNSECURE);
                 }
-                dm.callbackRole = BackendPolicies.BACKEND_SERVICE_CALL_UNSECURE;
+                callbackRole = BackendPolicies.BACKEND_SERVICE_CALL_UNSECURE;
             }
 
             // If callback is to fedora server itself and callback is over SSL,
@@ -248,7 +243,7 @@ public class DatastreamResolverServlet
             // not handle autoredirecting from http to https so it is necessary
             // to set the protocol and port
             // to the appropriate secure port.
-            if (dm.callbackRole.equals(BackendPolicies.FEDORA_INTERNAL_CALL)) {
+            if (callbackRole.equals(BackendPolicies.FEDORA_INTERNAL_CALL)) {
                 if (dm.callbackSSL) {
                     dsPhysicalLocation =
                             dsPhysicalLocation.replaceFirst("http:", "https:");
@@ -263,8 +258,6 @@ public class DatastreamResolverServlet
                     }
                 }
             }
-            keyTimestamp = Timestamp.valueOf(ds.extractTimestamp(id));
-            currentTimestamp = new Timestamp(new Date().getTime());
             logger.debug("dsPhysicalLocation={} dsControlGroupType={}",
                     dsPhysicalLocation, dsControlGroupType);
 
@@ -273,7 +266,7 @@ public class DatastreamResolverServlet
             // The expiration limit can be adjusted using the Fedora config
             // parameter
             // named "datastreamMediationLimit" which is in milliseconds.
-            long diff = currentTimestamp.getTime() - keyTimestamp.getTime();
+            long diff = System.currentTimeMillis() - registrationTime;
             logger.debug("Timestamp diff for mechanism's reponse: {} ms.",
                     diff);
             if (diff > datastreamMediationLimit) {
@@ -294,11 +287,11 @@ public class DatastreamResolverServlet
                 return;
             }
 
-            if (dm.callbackRole == null) {
+            if (callbackRole == null) {
                 throw new AuthzOperationalException("no callbackRole for this ticket");
             }
             String targetRole = //Authorization.FEDORA_ROLE_KEY + "=" +
-                    dm.callbackRole; // restrict access to role of this
+                    callbackRole; // restrict access to role of this
             // ticket
             String[] targetRoles = {targetRole};
             Context context =
@@ -513,7 +506,7 @@ public class DatastreamResolverServlet
             if (outStream != null) {
                 outStream.close();
             }
-            DisseminationService.dsRegistry.remove(id);
+            DisseminationService.dsRegistry.release(id);
         }
     }
 
@@ -6,7 +6,6 @@ package org.fcrepo.server.access.dissemination;
 
 import java.io.UnsupportedEncodingException;
 import java.net.URLEncoder;
-import java.sql.Timestamp;
 import java.util.Date;
 import java.util.Enumeration;
 import java.util.Hashtable;
@@ -58,12 +57,6 @@ public class DisseminationService {
 	/** The expiration limit in minutes for removing entries from the database. */
 	private static int datastreamExpirationLimit = 0;
 
-	/**
-	 * An incremental counter used to insure uniqueness of tempIDs used for
-	 * datastream mediation.
-	 */
-	private static int counter = 0;
-
 	/** Datastream Mediation control flag. */
 	private boolean m_doDatastreamMediation;
 	private boolean m_useNewUrlEncodingTest;
@@ -88,9 +81,29 @@ public class DisseminationService {
 
 	private final Authorization m_authorization;
 
-	/** The hashtable containing information required for datastream mediation. */
-	protected static Hashtable<String, DatastreamMediation> dsRegistry = new Hashtable<String, DatastreamMediation>(
-			1000);
+	/** The registry containing information required for datastream mediation. */
+	protected static final DatastreamMediationRegistry dsRegistry = new DatastreamMediationRegistry();
+
+	/**
+	 * <p>
+	 * Configures the registry of mediated datastreams, which is shared by
+	 * every instance. The Access module does this once, when it starts.
+	 * </p>
+	 * 
+	 * @param expirationMillis
+	 *            How long registrations are kept.
+	 * @param maxEntries
+	 *            The most registrations kept.
+	 * @param reuseMillis
+	 *            How long the ID registered for a location is handed out
+	 *            again, or zero to never reuse IDs.
+	 */
+	public static void configureRegistry(long expirationMillis,
+			int maxEntries, long reuseMillis) {
+		dsRegistry.setExpirationMillis(expirationMillis);
+		dsRegistry.setMaxEntries(maxEntries);
+		dsRegistry.setReuseMillis(reuseMillis);
+	}
 
 	/**
 	 * <p>
@@ -787,36 +800,14 @@ public class DisseminationService {
 			String methodName) throws ServerException {
 
 		String tempID = null;
-		Timestamp timeStamp = null;
-		if (counter > 999999) {
-			counter = 0;
-		}
-		long currentTime = new Timestamp(new Date().getTime()).getTime();
-		long expireLimit = currentTime - (long) datastreamExpirationLimit
-				* 1000;
 
 		try {
 
-			// Remove any datastream registrations that have expired.
-			// The expiration limit can be adjusted using the Fedora config
-			// parameter
-			// named "datastreamExpirationLimit" which is in seconds.
-			for (Enumeration<String> e = dsRegistry.keys(); e.hasMoreElements();) {
-				String key = e.nextElement();
-				timeStamp = Timestamp.valueOf(extractTimestamp(key));
-				if (expireLimit > timeStamp.getTime()) {
-					dsRegistry.remove(key);
-					logger.debug("DatastreamMediationKey removed from Hash: {}",
-							key);
-				}
-			}
-
-			// Register datastream.
+			// Register datastream. Registrations older than the Fedora config
+			// parameter named "datastreamExpirationLimit", which is in
+			// seconds, are removed by the registry.
 			if (tempID == null) {
-				timeStamp = new Timestamp(new Date().getTime());
-				tempID = timeStamp.toString() + ":" + counter++;
 				DatastreamMediation dm = new DatastreamMediation();
-				dm.mediatedDatastreamID = tempID;
 				dm.dsLocation = dsLocation;
 				dm.dsControlGroupType = dsControlGroupType;
 				dm.methodName = methodName;
@@ -893,8 +884,9 @@ public class DisseminationService {
 				dm.callBasicAuth = beServiceCallBasicAuth;
 				dm.callbackSSL = beServiceCallbackSSL;
 				dm.callSSL = beServiceCallSSL;
-				dsRegistry.put(tempID, dm);
-				logger.debug("DatastreammediationKey added to Hash: " + tempID);
+				tempID = dsRegistry.register(dm, dsLocation + " "
+						+ dsControlGroupType + " " + beServiceRole + " "
+						+ methodName);
 			}
 
 		} catch (Throwable th) {
@@ -909,26 +901,6 @@ public class DisseminationService {
 		return tempID.replace(' ', 'T');
 	}
 
-	/**
-	 * <p>
-	 * The tempID that is used for datastream mediation consists of a <code>
-	 * Timestamp</code> plus a counter appended to the end to insure uniqueness.
-	 * This method is a utility method used to extract the Timestamp portion
-	 * from the tempID by stripping off the arbitrary counter at the end of the
-	 * string.
-	 * </p>
-	 * 
-	 * @param tempID
-	 *            The tempID to be extracted.
-	 * @return The extracted Timestamp value as a string.
-	 */
-	public String extractTimestamp(String tempID) {
-//		StringBuffer sb = new StringBuffer();
-//		sb.append(tempID);
-//		sb.replace(tempID.lastIndexOf(":"), tempID.length(), "");
-		return tempID.substring(0, tempID.lastIndexOf(":"));
-	}
-
 	/**
 	 * <p>
 	 * Performs simple string replacement using regular expressions. All
@@ -39,6 +39,10 @@ public interface JournalConstants {
 
     String PARAMETER_JOURNAL_FILE_AGE_LIMIT = "journalFileAgeLimit";
 
+    String PARAMETER_JOURNAL_CONCURRENCY = "journalConcurrency";
+
+    String PARAMETER_JOURNAL_REPLAY_THREADS = "journalReplayThreads";
+
     // Acceptable values for server parameters.
     String VALUE_TRUE = "true";
 
@@ -54,6 +58,10 @@ public interface JournalConstants {
 
     String VALUE_RECOVERY_LOG_LEVEL_LOW = "low";
 
+    String VALUE_JOURNAL_CONCURRENCY_SERIAL = "serial";
+
+    String VALUE_JOURNAL_CONCURRENCY_PER_OBJECT = "perObject";
+
     // Default values for server parameters.
     String DEFAULT_FILENAME_PREFIX = "fedoraJournal";
 
@@ -61,6 +69,10 @@ public interface JournalConstants {
 
     String DEFAULT_AGE_LIMIT = "1D";
 
+    String DEFAULT_JOURNAL_CONCURRENCY = VALUE_JOURNAL_CONCURRENCY_SERIAL;
+
+    String DEFAULT_JOURNAL_REPLAY_THREADS = "4";
+
     // Strings for the XML document header of the Journal file
     String DOCUMENT_ENCODING = "UTF-8";
 
@@ -9,6 +9,7 @@ import org.fcrepo.server.errors.InvalidStateException;
 import org.fcrepo.server.errors.ModuleInitializationException;
 import org.fcrepo.server.errors.ModuleShutdownException;
 import org.fcrepo.server.errors.ServerException;
+import org.fcrepo.server.journal.helpers.ParameterHelper;
 import org.fcrepo.server.journal.recoverylog.JournalRecoveryLog;
 import org.fcrepo.server.management.ManagementDelegate;
 import org.fcrepo.server.messaging.PName;
@@ -64,7 +65,26 @@ public class JournalConsumer
                                           role,
                                           server,
                                           reader,
-                                          recoveryLog);
+                                          recoveryLog,
+                                          getReplayThreads(parameters, role));
+    }
+
+    /**
+     * A journal written in per-object mode may be replayed on several threads.
+     * Otherwise, replay it on one thread.
+     */
+    private static int getReplayThreads(Map<String, String> parameters,
+                                        String role)
+            throws ModuleInitializationException {
+        try {
+            if (ParameterHelper.parseParametersForPerObjectConcurrency(parameters)) {
+                return ParameterHelper.parseParametersForReplayThreads(parameters);
+            } else {
+                return 1;
+            }
+        } catch (JournalException e) {
+            throw new ModuleInitializationException(e.getMessage(), role, e);
+        }
     }
 
     /**
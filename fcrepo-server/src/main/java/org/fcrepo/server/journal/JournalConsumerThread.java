@@ -17,6 +17,10 @@ import org.slf4j.LoggerFactory;
 /**
  * Process the journal entries as a separate Thread, while the JournalConsumer
  * is blocking all calls from outside.
+ * <p>
+ * If given more than one replay thread, hand the entries to a
+ * {@link ParallelJournalReplayer}, so entries for different objects are
+ * replayed in parallel.
  *
  * @author Jim Blake
  */
@@ -34,6 +38,8 @@ public class JournalConsumerThread
 
     private ManagementDelegate delegate;
 
+    private final int replayThreads;
+
     private boolean shutdown = false;
 
     /**
@@ -46,9 +52,23 @@ public class JournalConsumerThread
                                  ServerInterface server,
                                  JournalReader reader,
                                  JournalRecoveryLog recoveryLog) {
+        this(parameters, role, server, reader, recoveryLog, 1);
+    }
+
+    /**
+     * As above, but replay entries for different objects on as many as
+     * <code>replayThreads</code> threads.
+     */
+    public JournalConsumerThread(Map<String, String> parameters,
+                                 String role,
+                                 ServerInterface server,
+                                 JournalReader reader,
+                                 JournalRecoveryLog recoveryLog,
+                                 int replayThreads) {
         this.server = server;
         this.reader = reader;
         this.recoveryLog = recoveryLog;
+        this.replayThreads = replayThreads;
     }
 
     /**
@@ -72,16 +92,20 @@ public class JournalConsumerThread
 
             recoveryLog.log("Start recovery.");
 
-            while (true) {
-                if (shutdown) {
-                    break;
-                }
-                ConsumerJournalEntry cje = reader.readJournalEntry();
-                if (cje == null) {
-                    break;
+            if (replayThreads > 1) {
+                replayInParallel();
+            } else {
+                while (true) {
+                    if (shutdown) {
+                        break;
+                    }
+                    ConsumerJournalEntry cje = reader.readJournalEntry();
+                    if (cje == null) {
+                        break;
+                    }
+                    cje.invokeMethod(delegate, recoveryLog);
+                    cje.close();
                 }
-                cje.invokeMethod(delegate, recoveryLog);
-                cje.close();
             }
             reader.shutdown();
 
@@ -104,6 +128,32 @@ public class JournalConsumerThread
         }
     }
 
+    /**
+     * Hand the entries to the replayer, and wait for them to complete before
+     * declaring the recovery finished.
+     */
+    private void replayInParallel() throws Exception {
+        ParallelJournalReplayer replayer =
+                new ParallelJournalReplayer(replayThreads,
+                                            delegate,
+                                            recoveryLog);
+        try {
+            while (true) {
+                if (shutdown) {
+                    break;
+                }
+                ConsumerJournalEntry cje = reader.readJournalEntry();
+                if (cje == null) {
+                    break;
+                }
+                replayer.replay(cje);
+            }
+            replayer.drain();
+        } finally {
+            replayer.shutdown();
+        }
+    }
+
     /**
      * Wait for the server to initialize. If we wait too long, give up and shut
      * down the thread.
@@ -10,6 +10,7 @@ import org.fcrepo.server.errors.ModuleInitializationException;
 import org.fcrepo.server.errors.ModuleShutdownException;
 import org.fcrepo.server.errors.ServerException;
 import org.fcrepo.server.journal.entry.CreatorJournalEntry;
+import org.fcrepo.server.journal.helpers.ParameterHelper;
 import org.fcrepo.server.management.ManagementDelegate;
 import org.fcrepo.server.messaging.PName;
 import org.fcrepo.server.storage.types.Datastream;
@@ -57,6 +58,8 @@ public class JournalCreator
         this.role = role;
 
         try {
+            // reject a bad concurrency mode before creating the writer.
+            ParameterHelper.parseParametersForPerObjectConcurrency(parameters);
             writer = JournalWriter.getInstance(parameters, role, server);
         } catch (JournalException e) {
             String msg = "Problem creating the JournalWriter";
@@ -11,6 +11,9 @@ import java.io.IOException;
 
 import java.util.Date;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import javax.xml.stream.XMLEventWriter;
 import javax.xml.stream.XMLStreamException;
@@ -61,6 +64,15 @@ import org.slf4j.LoggerFactory;
  * {@link CreatorJournalEntry}, and these values must be written to the
  * journal.</li>
  * </ul>
+ * <p>
+ * In per-object concurrency mode (see {@link JournalConstants#PARAMETER_JOURNAL_CONCURRENCY}),
+ * management methods on different objects run in parallel. Each of them calls
+ * {@link #beginConcurrentEntry()} before invoking the method and
+ * {@link #endConcurrentEntry()} after writing the entry. Opening or closing a
+ * journal file requires exclusive access, so the repository hash is never
+ * computed while a management method is in progress. Entries are numbered by
+ * a sequencer as they are written, so the journal holds a total order.
+ * </p>
  *
  * @author Jim Blake
  */
@@ -109,6 +121,21 @@ public abstract class JournalWriter
 
     protected final ServerInterface server;
 
+    /**
+     * Are management methods on different objects allowed to run in parallel?
+     */
+    protected final boolean perObjectConcurrency;
+
+    /**
+     * In per-object mode, management methods in progress hold the read lock;
+     * opening and closing files requires the write lock.
+     */
+    private final ReentrantReadWriteLock quiescenceLock =
+            new ReentrantReadWriteLock();
+
+    /** The sequence number of the most recently written entry. */
+    private final AtomicLong sequenceNumber = new AtomicLong();
+
     /**
      * Concrete sub-classes must implement this constructor.
      */
@@ -118,6 +145,18 @@ public abstract class JournalWriter
         this.parameters = parameters;
         this.role = role;
         this.server = server;
+        perObjectConcurrency =
+                parameters != null
+                        && VALUE_JOURNAL_CONCURRENCY_PER_OBJECT
+                                .equals(parameters
+                                        .get(PARAMETER_JOURNAL_CONCURRENCY));
+    }
+
+    /**
+     * May management methods on different objects be journaled in parallel?
+     */
+    public boolean isPerObjectConcurrency() {
+        return perObjectConcurrency;
     }
 
     public abstract void shutdown() throws JournalException;
@@ -141,6 +180,55 @@ public abstract class JournalWriter
     public abstract void writeJournalEntry(CreatorJournalEntry journalEntry)
             throws JournalException;
 
+    /**
+     * In per-object mode, call this before invoking a management method. If
+     * the writer is ready to accept an entry, this only takes a shared lock.
+     * Otherwise, wait until all methods in progress are complete, then
+     * {@link #prepareToWriteJournalEntry() prepare} the writer. If this method
+     * returns normally, the caller must call {@link #endConcurrentEntry()}.
+     */
+    public void beginConcurrentEntry() throws JournalException {
+        quiescenceLock.readLock().lock();
+        if (isReadyForConcurrentEntry()) {
+            return;
+        }
+        quiescenceLock.readLock().unlock();
+
+        quiescenceLock.writeLock().lock();
+        try {
+            prepareToWriteJournalEntry();
+            // downgrade to the shared lock before letting others in.
+            quiescenceLock.readLock().lock();
+        } finally {
+            quiescenceLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * In per-object mode, call this after the journal entry is written.
+     */
+    public void endConcurrentEntry() {
+        quiescenceLock.readLock().unlock();
+    }
+
+    /**
+     * Can an entry be written without opening or closing a file? Sub-classes
+     * that support per-object concurrency should override this. The default
+     * answer is "no", which makes every entry wait for exclusive access.
+     */
+    protected boolean isReadyForConcurrentEntry() {
+        return false;
+    }
+
+    /**
+     * Asynchronous tasks that close a journal file (like an age-limit timer)
+     * must hold this lock, so they don't close a file while a management
+     * method is in progress. In serial mode, the lock is always available.
+     */
+    public Lock getQuiescenceLock() {
+        return quiescenceLock.writeLock();
+    }
+
     /**
      * Subclasses should call this method to initialize a new Journal file.
      */
@@ -187,7 +275,28 @@ public abstract class JournalWriter
                                      XMLEventWriter writer)
             throws JournalException {
         try {
-            writeJournaEntryStartTag(journalEntry, writer);
+            appendJournalEntry(journalEntry, writer);
+            writer.flush();
+        } catch (XMLStreamException e) {
+            throw new JournalException(e);
+        }
+    }
+
+    /**
+     * Format a JournalEntry object and write a JournalEntry tag to the
+     * journal, but don't flush the writer. Sub-classes that commit entries in
+     * groups can flush once for several entries. Callers must synchronize on
+     * the {@link #SYNCHRONIZER}, so the sequence numbers match the order of
+     * the entries in the journal.
+     *
+     * @return the sequence number of the entry.
+     */
+    protected long appendJournalEntry(CreatorJournalEntry journalEntry,
+                                      XMLEventWriter writer)
+            throws JournalException {
+        try {
+            long sequence = sequenceNumber.incrementAndGet();
+            writeJournaEntryStartTag(journalEntry, sequence, writer);
 
             new ContextXmlWriter().writeContext(journalEntry.getContext(),
                                                 writer);
@@ -195,17 +304,28 @@ public abstract class JournalWriter
             writeArguments(journalEntry.getArgumentsMap(), writer);
 
             putEndTag(writer, QNAME_TAG_JOURNAL_ENTRY);
-            writer.flush();
+            return sequence;
         } catch (XMLStreamException e) {
             throw new JournalException(e);
         }
     }
 
+    /**
+     * The sequence number of the most recently written entry.
+     */
+    protected long getLastSequenceNumber() {
+        return sequenceNumber.get();
+    }
+
     private void writeJournaEntryStartTag(CreatorJournalEntry journalEntry,
+                                          long sequence,
                                           XMLEventWriter writer)
             throws XMLStreamException {
         putStartTag(writer, QNAME_TAG_JOURNAL_ENTRY);
         putAttribute(writer, QNAME_ATTR_METHOD, journalEntry.getMethodName());
+        if (perObjectConcurrency) {
+            putAttribute(writer, QNAME_ATTR_SEQ_NO, Long.toString(sequence));
+        }
         putAttribute(writer, QNAME_ATTR_TIMESTAMP, JournalHelper
                 .formatDate(journalEntry.getContext().now()));
 
@@ -0,0 +1,202 @@
+/* The contents of this file are subject to the license and copyright terms
+ * detailed in the license directory at the root of the source tree (also
+ * available online at http://fedora-commons.org/license/).
+ */
+package org.fcrepo.server.journal;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.fcrepo.common.Constants;
+import org.fcrepo.server.errors.ServerException;
+import org.fcrepo.server.journal.entry.ConsumerJournalEntry;
+import org.fcrepo.server.journal.helpers.ObjectLockTable;
+import org.fcrepo.server.journal.recoverylog.JournalRecoveryLog;
+import org.fcrepo.server.management.ManagementDelegate;
+
+
+/**
+ * Replays journal entries on several threads, for a journal that was written
+ * in per-object concurrency mode.
+ * <p>
+ * Each thread is a "lane" with its own queue. All entries for a given object
+ * go to the same lane, so they are replayed in journal order, while entries
+ * for different objects may be replayed in parallel. An entry with no object
+ * (like putTempStream or getNextPID), or an ingest that lets the PID come from
+ * the serialization, is a barrier: all lanes are drained, and the entry is
+ * replayed on the calling thread.
+ * <p>
+ * The number of entries waiting in the lanes is bounded, so the reader can't
+ * get too far ahead. The first failure in any lane stops the replay; it is
+ * reported by the next call to {@link #replay(ConsumerJournalEntry)} or
+ * {@link #drain()}.
+ */
+class ParallelJournalReplayer
+        implements JournalConstants {
+
+    /** How many entries may wait in each lane. */
+    private static final int ENTRIES_PER_LANE = 16;
+
+    private final ManagementDelegate delegate;
+
+    private final JournalRecoveryLog recoveryLog;
+
+    private final ObjectLockTable lanesByObject;
+
+    private final ExecutorService[] lanes;
+
+    private final Future<?>[] lastInLane;
+
+    private final Semaphore capacity;
+
+    private final AtomicReference<Throwable> failure =
+            new AtomicReference<Throwable>();
+
+    ParallelJournalReplayer(int threads,
+                            ManagementDelegate delegate,
+                            JournalRecoveryLog recoveryLog) {
+        this.delegate = delegate;
+        this.recoveryLog = recoveryLog;
+        lanesByObject = new ObjectLockTable(threads);
+        lanes = new ExecutorService[threads];
+        for (int i = 0; i < threads; i++) {
+            lanes[i] =
+                    Executors.newSingleThreadExecutor(new LaneThreadFactory(i));
+        }
+        lastInLane = new Future<?>[threads];
+        capacity = new Semaphore(threads * ENTRIES_PER_LANE);
+    }
+
+    /**
+     * Replay this entry, either in the lane for its object, or as a barrier.
+     * The entry is closed after it has been replayed.
+     */
+    void replay(ConsumerJournalEntry cje) throws ServerException,
+            JournalException {
+        checkForFailure();
+
+        String pid = getObjectPid(cje);
+        if (pid == null) {
+            drain();
+            try {
+                cje.invokeMethod(delegate, recoveryLog);
+            } finally {
+                cje.close();
+            }
+            return;
+        }
+
+        try {
+            capacity.acquire();
+        } catch (InterruptedException e) {
+            throw new JournalException("Interrupted while waiting to replay "
+                    + cje, e);
+        }
+        int lane = lanesByObject.getStripe(pid) % lanes.length;
+        lastInLane[lane] = lanes[lane].submit(new ReplayTask(cje));
+    }
+
+    /**
+     * Wait until every entry handed to the lanes has been replayed.
+     */
+    void drain() throws JournalException {
+        for (int i = 0; i < lanes.length; i++) {
+            Future<?> last = lastInLane[i];
+            if (last == null) {
+                continue;
+            }
+            try {
+                last.get();
+            } catch (InterruptedException e) {
+                throw new JournalException("Interrupted while draining "
+                        + "journal replay threads", e);
+            } catch (ExecutionException e) {
+                throw new JournalException(e.getCause());
+            }
+            lastInLane[i] = null;
+        }
+        checkForFailure();
+    }
+
+    /**
+     * Stop the lane threads. Entries still waiting are not replayed.
+     */
+    void shutdown() {
+        for (ExecutorService lane : lanes) {
+            lane.shutdownNow();
+        }
+    }
+
+    private void checkForFailure() throws JournalException {
+        Throwable t = failure.get();
+        if (t != null) {
+            throw new JournalException("Journal replay failed", t);
+        }
+    }
+
+    /**
+     * The object that this entry applies to, or null if the entry must be
+     * replayed as a barrier. An ingest records the PID it was given in the
+     * recovery context, so we can find it even when the PID came from the
+     * serialization.
+     */
+    private String getObjectPid(ConsumerJournalEntry cje) {
+        String pid;
+        if (METHOD_INGEST.equals(cje.getMethodName())) {
+            pid =
+                    cje.getContext()
+                            .getRecoveryValue(Constants.RECOVERY.PID.attributeId);
+        } else {
+            pid = cje.getStringArgument(ARGUMENT_NAME_PID);
+        }
+        if (pid == null || pid.length() == 0) {
+            return null;
+        }
+        return pid;
+    }
+
+    private class ReplayTask
+            implements Runnable {
+
+        private final ConsumerJournalEntry cje;
+
+        ReplayTask(ConsumerJournalEntry cje) {
+            this.cje = cje;
+        }
+
+        public void run() {
+            try {
+                if (failure.get() == null) {
+                    cje.invokeMethod(delegate, recoveryLog);
+                }
+            } catch (Throwable e) {
+                failure.compareAndSet(null, e);
+            } finally {
+                cje.close();
+                capacity.release();
+            }
+        }
+    }
+
+    private static class LaneThreadFactory
+            implements ThreadFactory {
+
+        private final String name;
+
+        LaneThreadFactory(int lane) {
+            name = "JournalReplayLane-" + lane;
+        }
+
+        public Thread newThread(Runnable r) {
+            Thread t = new Thread(r, name);
+            t.setDaemon(true);
+            return t;
+        }
+    }
+
+}
@@ -4,11 +4,15 @@
  */
 package org.fcrepo.server.journal.entry;
 
+import java.util.concurrent.locks.Lock;
+
 import org.fcrepo.server.Context;
 import org.fcrepo.server.errors.ServerException;
+import org.fcrepo.server.journal.JournalConstants;
 import org.fcrepo.server.journal.JournalException;
 import org.fcrepo.server.journal.JournalOperatingMode;
 import org.fcrepo.server.journal.JournalWriter;
+import org.fcrepo.server.journal.helpers.ObjectLockTable;
 import org.fcrepo.server.management.ManagementDelegate;
 
 
@@ -21,7 +25,15 @@ import org.fcrepo.server.management.ManagementDelegate;
  * @author Jim Blake
  */
 public class CreatorJournalEntry
-        extends JournalEntry {
+        extends JournalEntry
+        implements JournalConstants {
+
+    /**
+     * In per-object mode, methods on the same object must be journaled in the
+     * same order that they were applied.
+     */
+    private static final ObjectLockTable OBJECT_LOCKS =
+            new ObjectLockTable(256);
 
     /**
      * Don't store the Context that was given; store a writable version of it.
@@ -42,18 +54,20 @@ public class CreatorJournalEntry
      * <li>Write the full journal entry, including any context changes from the
      * Management method.</li>
      * </ul>
-     * These operations occur within a synchronized block. We must be sure that
-     * any pending operations are complete before we get the repository hash, so
-     * we are confident that the hash accurately reflects the state of the
-     * repository. Since all API-M operations go through this synchronized
-     * block, we can be confident that the previous one had completed before the
-     * current one started.
+     * In serial mode, these operations occur within a synchronized block. We
+     * must be sure that any pending operations are complete before we get the
+     * repository hash, so we are confident that the hash accurately reflects
+     * the state of the repository. Since all API-M operations go through this
+     * synchronized block, we can be confident that the previous one had
+     * completed before the current one started.
      * <p>
-     * There might be a way to enforce the synchronization at a lower level,
-     * thus increasing throughput, but we haven't explored it yet.
+     * In per-object mode, see {@link #invokeConcurrently}.
      */
     public Object invokeMethod(ManagementDelegate delegate, JournalWriter writer)
             throws ServerException, JournalException {
+        if (writer.isPerObjectConcurrency()) {
+            return invokeConcurrently(delegate, writer);
+        }
         synchronized (JournalWriter.SYNCHRONIZER) {
             JournalOperatingMode.enforceCurrentMode();
             writer.prepareToWriteJournalEntry();
@@ -63,6 +77,68 @@ public class CreatorJournalEntry
         }
     }
 
+    /**
+     * Methods on different objects may run in parallel. The lock for the
+     * object is held from invocation until the entry is written, so entries
+     * for the same object appear in the journal in the order they were
+     * applied. The writer only waits for methods in progress to complete when
+     * it needs to open a new file, and the repository hash along with it.
+     * <p>
+     * Methods with no object (like getNextPID) take no object lock; their
+     * results are not visible to anyone until the entry has been written. An
+     * ingest that doesn't name its PID up front can't be locked in advance, so
+     * it runs exclusively, as it would in serial mode.
+     */
+    private Object invokeConcurrently(ManagementDelegate delegate,
+                                      JournalWriter writer)
+            throws ServerException, JournalException {
+        String pid = getStringArgument(ARGUMENT_NAME_PID);
+        if (METHOD_INGEST.equals(getMethodName())
+                && (pid == null || pid.length() == 0 || "new".equals(pid))) {
+            return invokeExclusively(delegate, writer);
+        }
+
+        Lock objectLock = pid == null ? null : OBJECT_LOCKS.getLock(pid);
+        if (objectLock != null) {
+            objectLock.lock();
+        }
+        try {
+            JournalOperatingMode.enforceCurrentMode();
+            writer.beginConcurrentEntry();
+            try {
+                Object result = super.getMethod().invoke(delegate);
+                writer.writeJournalEntry(this);
+                return result;
+            } finally {
+                writer.endConcurrentEntry();
+            }
+        } finally {
+            if (objectLock != null) {
+                objectLock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Wait until no other method is in progress, and keep them out until this
+     * one has been journaled.
+     */
+    private Object invokeExclusively(ManagementDelegate delegate,
+                                     JournalWriter writer)
+            throws ServerException, JournalException {
+        Lock lock = writer.getQuiescenceLock();
+        lock.lock();
+        try {
+            JournalOperatingMode.enforceCurrentMode();
+            writer.prepareToWriteJournalEntry();
+            Object result = super.getMethod().invoke(delegate);
+            writer.writeJournalEntry(this);
+            return result;
+        } finally {
+            lock.unlock();
+        }
+    }
+
     /**
      * A convenience method that invokes the management method and then closes
      * the JournalEntry, thereby cleaning up any temp files.
@@ -0,0 +1,81 @@
+/* The contents of this file are subject to the license and copyright terms
+ * detailed in the license directory at the root of the source tree (also
+ * available online at http://fedora-commons.org/license/).
+ */
+package org.fcrepo.server.journal.helpers;
+
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.fcrepo.common.Constants;
+
+
+/**
+ * A fixed-size table of locks, striped by object PID.
+ * <p>
+ * Used when journaling in per-object mode, so that management methods against
+ * the same object are invoked and journaled one at a time, while methods
+ * against different objects may proceed in parallel. Two PIDs may share a
+ * stripe, which costs some parallelism but never correctness.
+ */
+public class ObjectLockTable {
+
+    private static final String FEDORA_URI_PREFIX = Constants.FEDORA.uri;
+
+    private final ReentrantLock[] locks;
+
+    private final int mask;
+
+    /**
+     * The number of stripes is rounded up to a power of two.
+     */
+    public ObjectLockTable(int stripes) {
+        int size = 1;
+        while (size < stripes) {
+            size <<= 1;
+        }
+        locks = new ReentrantLock[size];
+        for (int i = 0; i < size; i++) {
+            locks[i] = new ReentrantLock();
+        }
+        mask = size - 1;
+    }
+
+    /**
+     * Get the lock that guards the given object.
+     */
+    public ReentrantLock getLock(String pid) {
+        return locks[getStripe(pid)];
+    }
+
+    /**
+     * Which stripe does this object belong to? Useful for callers that keep
+     * their own per-stripe resources, such as replay threads.
+     */
+    public int getStripe(String pid) {
+        int h = normalizePid(pid).hashCode();
+        h ^= (h >>> 16);
+        return h & mask;
+    }
+
+    public int getStripeCount() {
+        return locks.length;
+    }
+
+    /**
+     * Relationship methods may name their subject as a URI, either of the
+     * object itself or of one of its datastreams. Reduce any of those forms
+     * to the bare PID, so they all map to the same lock.
+     */
+    public static String normalizePid(String pid) {
+        String result = pid;
+        if (result.startsWith(FEDORA_URI_PREFIX)) {
+            result = result.substring(FEDORA_URI_PREFIX.length());
+        }
+        int slash = result.indexOf('/');
+        if (slash >= 0) {
+            result = result.substring(0, slash);
+        }
+        return result;
+    }
+
+}
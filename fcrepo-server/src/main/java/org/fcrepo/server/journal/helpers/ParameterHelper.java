@@ -185,4 +185,50 @@ public class ParameterHelper
         return age;
     }
 
+    /**
+     * Get the journal concurrency parameter (or let it default). Returns true
+     * if management methods on different objects may be journaled in
+     * parallel, false if all management methods are single-threaded.
+     */
+    public static boolean parseParametersForPerObjectConcurrency(Map<String, String> parameters)
+            throws JournalException {
+        String concurrency =
+                getOptionalStringParameter(parameters,
+                                           PARAMETER_JOURNAL_CONCURRENCY,
+                                           DEFAULT_JOURNAL_CONCURRENCY);
+        if (VALUE_JOURNAL_CONCURRENCY_PER_OBJECT.equals(concurrency)) {
+            return true;
+        } else if (VALUE_JOURNAL_CONCURRENCY_SERIAL.equals(concurrency)) {
+            return false;
+        } else {
+            throw new JournalException("'" + PARAMETER_JOURNAL_CONCURRENCY
+                    + "' parameter must be '"
+                    + VALUE_JOURNAL_CONCURRENCY_SERIAL + "'(default) or '"
+                    + VALUE_JOURNAL_CONCURRENCY_PER_OBJECT + "'");
+        }
+    }
+
+    /**
+     * Get the number of threads a journal consumer may use to replay entries
+     * for different objects in parallel (or let it default).
+     */
+    public static int parseParametersForReplayThreads(Map<String, String> parameters)
+            throws JournalException {
+        String threadString =
+                getOptionalStringParameter(parameters,
+                                           PARAMETER_JOURNAL_REPLAY_THREADS,
+                                           DEFAULT_JOURNAL_REPLAY_THREADS);
+        try {
+            int threads = Integer.parseInt(threadString);
+            if (threads < 1) {
+                throw new NumberFormatException(threadString);
+            }
+            return threads;
+        } catch (NumberFormatException e) {
+            throw new JournalException("Parameter '"
+                    + PARAMETER_JOURNAL_REPLAY_THREADS
+                    + "' must be a positive integer");
+        }
+    }
+
 }
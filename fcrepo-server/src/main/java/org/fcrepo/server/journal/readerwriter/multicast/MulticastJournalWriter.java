@@ -11,6 +11,7 @@ import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Timer;
 import java.util.TimerTask;
+import java.util.concurrent.locks.Lock;
 
 import javax.xml.stream.XMLEventWriter;
 
@@ -40,6 +41,13 @@ import static org.fcrepo.server.journal.readerwriter.multicast.Transport.State.S
  * {@link JournalWriter#SYNCHRONIZER}, as is the {@link #closeFile() closeFile}
  * method. This means that an asynchronous call by the timer task will not
  * interrupt a synchronous operation already in progress, or vice versa.
+ * <p>
+ * In per-object concurrency mode, the timer task also holds the
+ * {@link JournalWriter#getQuiescenceLock() quiescence lock}, and files that
+ * reach the size limit are closed by the next
+ * {@link #prepareToWriteJournalEntry()} rather than after the write, so a file
+ * is never closed while a management method is in progress. The Transports
+ * still receive the entries one at a time, in sequence.
  *
  * @author jblake
  */
@@ -307,12 +315,24 @@ public class MulticastJournalWriter
             sendRequestToAllTransports(new WriteEntryRequest(this, journalEntry));
             currentSize += sizeEstimator.estimateSize(journalEntry);
 
-            if (state == FILE_OPEN) {
+            if (state == FILE_OPEN && !perObjectConcurrency) {
                 closeFileIfAppropriate();
             }
         }
     }
 
+    /**
+     * In per-object mode, entries may be written while the file is open and
+     * below the size limit. Once we are shut down, entries are ignored anyway.
+     */
+    @Override
+    protected boolean isReadyForConcurrentEntry() {
+        synchronized (JournalWriter.SYNCHRONIZER) {
+            return state == SHUTDOWN || state == FILE_OPEN
+                    && !(sizeLimit != 0 && currentSize >= sizeLimit);
+        }
+    }
+
     /**
      * <p>
      * Shut it down
@@ -326,17 +346,23 @@ public class MulticastJournalWriter
      */
     @Override
     public void shutdown() throws JournalException {
-        synchronized (JournalWriter.SYNCHRONIZER) {
-            if (state == SHUTDOWN) {
-                return;
-            }
-            if (state == FILE_OPEN) {
-                closeFile();
-            }
+        Lock lock = getQuiescenceLock();
+        lock.lock();
+        try {
+            synchronized (JournalWriter.SYNCHRONIZER) {
+                if (state == SHUTDOWN) {
+                    return;
+                }
+                if (state == FILE_OPEN) {
+                    closeFile();
+                }
 
-            logger.debug("Shutting down.");
-            sendRequestToAllTransports(new ShutdownRequest());
-            state = SHUTDOWN;
+                logger.debug("Shutting down.");
+                sendRequestToAllTransports(new ShutdownRequest());
+                state = SHUTDOWN;
+            }
+        } finally {
+            lock.unlock();
         }
     }
 
@@ -386,6 +412,8 @@ public class MulticastJournalWriter
 
         @Override
         public void run() {
+            Lock lock = getQuiescenceLock();
+            lock.lock();
             try {
                 logger.debug("Timer task requests file close.");
                 closeFile();
@@ -396,6 +424,8 @@ public class MulticastJournalWriter
                  */
                 e.printStackTrace();
                 throw new IllegalStateException(e);
+            } finally {
+                lock.unlock();
             }
         }
     }
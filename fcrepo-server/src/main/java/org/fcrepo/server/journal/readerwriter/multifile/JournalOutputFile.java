@@ -11,6 +11,7 @@ import java.io.IOException;
 import java.util.Date;
 import java.util.Timer;
 import java.util.TimerTask;
+import java.util.concurrent.locks.Lock;
 
 import javax.xml.stream.FactoryConfigurationError;
 import javax.xml.stream.XMLEventWriter;
@@ -33,7 +34,9 @@ import org.fcrepo.server.journal.helpers.JournalHelper;
  * synchronized against the {@link JournalWriter#SYNCHRONIZER} to guard against
  * problems. Any other operations on the file or on its
  * <code>XMLEventWriter</code> should also be synchronized against the
- * {@link JournalWriter#SYNCHRONIZER}.
+ * {@link JournalWriter#SYNCHRONIZER}. The timer also holds the writer's
+ * {@link JournalWriter#getQuiescenceLock() quiescence lock} while it closes
+ * the file, so no management method is in progress at the time.
  * 
  * @author Jim Blake
  */
@@ -202,6 +205,14 @@ class JournalOutputFile
         }
     }
 
+    /**
+     * Has the file grown past the size limit? If the size limit is 0 or
+     * negative, treat it as "no limit".
+     */
+    public boolean isOverSizeLimit() {
+        return sizeLimit > 0 && tempFile.length() > sizeLimit;
+    }
+
     /**
      * Is this file available for writing?
      */
@@ -259,6 +270,8 @@ class JournalOutputFile
 
         @Override
         public void run() {
+            Lock lock = parent.getFileCloseLock();
+            lock.lock();
             try {
                 close();
             } catch (JournalException e) {
@@ -268,6 +281,8 @@ class JournalOutputFile
                  */
                 e.printStackTrace();
                 throw new IllegalStateException(e);
+            } finally {
+                lock.unlock();
             }
         }
     }
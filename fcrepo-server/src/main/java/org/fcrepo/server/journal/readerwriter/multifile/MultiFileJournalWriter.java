@@ -8,6 +8,7 @@ import java.io.File;
 
 import java.util.Date;
 import java.util.Map;
+import java.util.concurrent.locks.Lock;
 
 import javax.xml.stream.XMLEventWriter;
 import javax.xml.stream.XMLStreamException;
@@ -24,6 +25,11 @@ import org.fcrepo.server.journal.helpers.ParameterHelper;
  * An implementation of JournalWriter that writes a series of Journal files to a
  * specified directory. New files are begun when the current file becomes too
  * large or too old.
+ * <p>
+ * In per-object concurrency mode, entries are committed in groups: each
+ * entry is appended to the file as soon as its management method completes,
+ * and a single flush makes every entry appended so far durable, on behalf of
+ * all the threads that are waiting for it.
  * 
  * @author Jim Blake
  */
@@ -48,6 +54,12 @@ public class MultiFileJournalWriter
 
     private boolean open = true;
 
+    /** In per-object mode, only one thread flushes at a time. */
+    private final Object commitLock = new Object();
+
+    /** In per-object mode, the last sequence number known to be flushed. */
+    private long committedSequence;
+
     /**
      * Parse the parameters to find out how we are operating.
      */
@@ -122,6 +134,10 @@ public class MultiFileJournalWriter
     @Override
     public void writeJournalEntry(CreatorJournalEntry journalEntry)
             throws JournalException {
+        if (perObjectConcurrency) {
+            writeJournalEntryInGroup(journalEntry);
+            return;
+        }
         if (open) {
             try {
                 synchronized (JournalWriter.SYNCHRONIZER) {
@@ -136,17 +152,81 @@ public class MultiFileJournalWriter
         }
     }
 
+    /**
+     * Append the entry, then make sure that it has been flushed. If another
+     * thread flushed while we were waiting, our entry went with it, and we
+     * have nothing more to do. The file can't be closed in the meantime,
+     * because the caller holds the shared quiescence lock. For the same
+     * reason, we leave it to the next {@link #prepareToWriteJournalEntry()} to
+     * close the file if it has grown too large.
+     */
+    private void writeJournalEntryInGroup(CreatorJournalEntry journalEntry)
+            throws JournalException {
+        if (!open) {
+            return;
+        }
+        long sequence;
+        synchronized (JournalWriter.SYNCHRONIZER) {
+            sequence =
+                    super.appendJournalEntry(journalEntry, currentJournal
+                            .getXmlWriter());
+        }
+
+        try {
+            synchronized (commitLock) {
+                if (committedSequence >= sequence) {
+                    return;
+                }
+                long flushedThrough;
+                synchronized (JournalWriter.SYNCHRONIZER) {
+                    flushedThrough = getLastSequenceNumber();
+                    currentJournal.getXmlWriter().flush();
+                }
+                committedSequence = flushedThrough;
+            }
+        } catch (XMLStreamException e) {
+            throw new JournalException(e);
+        }
+    }
+
+    /**
+     * In per-object mode, entries may be written while the current file is
+     * open and not yet over the size limit. Once we are shut down, entries are
+     * ignored anyway.
+     */
+    @Override
+    protected boolean isReadyForConcurrentEntry() {
+        synchronized (JournalWriter.SYNCHRONIZER) {
+            return !open || currentJournal.isOpen()
+                    && !currentJournal.isOverSizeLimit();
+        }
+    }
+
     /**
      * Close the current journal file.
      */
     @Override
     public void shutdown() throws JournalException {
-        if (open) {
-            currentJournal.close();
-            open = false;
+        Lock lock = getQuiescenceLock();
+        lock.lock();
+        try {
+            if (open) {
+                currentJournal.close();
+                open = false;
+            }
+        } finally {
+            lock.unlock();
         }
     }
 
+    /**
+     * A convenience method so the JournalOutputFile can hold off management
+     * methods while it closes itself.
+     */
+    Lock getFileCloseLock() {
+        return super.getQuiescenceLock();
+    }
+
     /**
      * A convenience method so the JournalOutputFile can request its own header.
      */
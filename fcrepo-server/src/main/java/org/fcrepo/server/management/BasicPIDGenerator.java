@@ -33,6 +33,8 @@ public class BasicPIDGenerator
 
     private File m_oldPidGenDir;
 
+    private int m_blockSize = 1;
+
     /**
      * Constructs a BasicPIDGenerator.
      *
@@ -53,7 +55,7 @@ public class BasicPIDGenerator
     }
 
     @Override
-    public void initModule() {
+    public void initModule() throws ModuleInitializationException {
         // this parameter is no longer required; but if it's specified,
         // we can automatically upgrade from a pre-1.2 version of Fedora by
         // making sure the old "last pid generated" value is respected later.
@@ -66,6 +68,20 @@ public class BasicPIDGenerator
                 m_oldPidGenDir = new File(getServer().getHomeDir(), dir);
             }
         }
+        // how many ids to reserve from the database at a time
+        String blockSize = getParameter("pid_block_size");
+        if (blockSize != null && !blockSize.isEmpty()) {
+            try {
+                m_blockSize = Integer.parseInt(blockSize);
+            } catch (NumberFormatException e) {
+                throw new ModuleInitializationException("pid_block_size must "
+                        + "be an integer, if specified.", getRole());
+            }
+            if (m_blockSize < 1) {
+                throw new ModuleInitializationException("pid_block_size must "
+                        + "be 1 or more, if specified.", getRole());
+            }
+        }
     }
 
     /**
@@ -82,7 +98,8 @@ public class BasicPIDGenerator
                                                     getRole());
         }
         try {
-            m_pidGenerator = new DBPIDGenerator(mgr.getPool(), m_oldPidGenDir);
+            m_pidGenerator =
+                    new DBPIDGenerator(mgr.getPool(), m_oldPidGenDir, m_blockSize);
         } catch (Exception e) {
             String msg = "Can't get default connection pool";
             logger.error(msg, e);
@@ -11,11 +11,15 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.sql.Connection;
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -28,6 +32,18 @@ import org.fcrepo.server.utilities.SQLUtility;
 /**
  * A PIDGenerator that uses a database to keep track of the highest pid it knows
  * about for each namespace.
+ * <p>
+ * With a block size greater than one, ids are reserved from the database a
+ * block at a time for each namespace, by adding the block size to the
+ * highest id in one update, and are then handed out from memory without
+ * locking. Since each block is reserved by a single update, servers sharing
+ * the database never reserve the same ids. Ids left in a block when the
+ * server stops are never used, so generated pids may have gaps.
+ * </p>
+ * <p>
+ * The highest id in the database is only ever raised, so a server never
+ * undoes ids reserved or generated by another.
+ * </p>
  *
  * @author Chris Wilper
  */
@@ -39,10 +55,17 @@ public class DBPIDGenerator
 
     private final HashMap<String, Integer> m_highestID;
 
-    private PID m_lastPID;
+    private volatile PID m_lastPID;
 
     private final ConnectionPool m_connectionPool;
 
+    private final int m_blockSize;
+
+    private final Map<String, Block> m_blocks =
+            new ConcurrentHashMap<String, Block>();
+
+    private final Object m_reserveLock = new Object();
+
     /**
      * Initialize the DBPIDGenerator. This initializes the memory hash with
      * values in the database, if any. If oldPidGenDir is not null, the
@@ -55,7 +78,20 @@ public class DBPIDGenerator
      */
     public DBPIDGenerator(ConnectionPool cPool, File oldPidGenDir)
             throws IOException, ModuleInitializationException {
+        this(cPool, oldPidGenDir, 1);
+    }
+
+    /**
+     * Initialize the DBPIDGenerator, reserving ids blockSize at a time.
+     * @param blockSize the number of ids reserved from the database at once;
+     *        with 1, each pid generated is written to the database
+     * @throws IOException
+     * @throws ModuleInitializationException
+     */
+    public DBPIDGenerator(ConnectionPool cPool, File oldPidGenDir, int blockSize)
+            throws IOException, ModuleInitializationException {
         m_connectionPool = cPool;
+        m_blockSize = blockSize;
         try {
             String dbSpec =
                     "org/fcrepo/server/storage/resources/DBPIDGenerator.dbspec";
@@ -149,39 +185,62 @@ public class DBPIDGenerator
      * Generate a new pid that is guaranteed to be unique, within the given
      * namespace.
      */
-    public synchronized PID generatePID(String namespace) throws IOException {
+    public PID generatePID(String namespace) throws IOException {
+        if (m_blockSize > 1) {
+            return makePID(namespace, nextFromBlock(namespace));
+        }
+        return generatePIDSingly(namespace);
+    }
+
+    private synchronized PID generatePIDSingly(String namespace)
+            throws IOException {
         int i = getHighestID(namespace);
         i++;
 
+        PID pid = makePID(namespace, i);
+
+        setHighestID(namespace, i);
+
+        return pid;
+    }
+
+    private PID makePID(String namespace, int id) throws IOException {
         try {
-            m_lastPID = new PID(namespace + ":" + i);
+            m_lastPID = new PID(namespace + ":" + id);
         } catch (MalformedPIDException e) {
             throw new IOException(e.getMessage());
         }
-
-        setHighestID(namespace, i);
-
         return m_lastPID;
     }
 
     /**
      * Get the last pid that was generated.
      */
-    public synchronized PID getLastPID() {
+    public PID getLastPID() {
         return m_lastPID;
     }
 
     /**
      * Cause the given PID to never be generated by the PID generator.
      */
-    public synchronized void neverGeneratePID(String pid) throws IOException {
+    public void neverGeneratePID(String pid) throws IOException {
         logger.debug("Never generating PID: {}", pid);
         try {
             PID p = new PID(pid);
             String ns = p.getNamespaceId();
             int id = Integer.parseInt(p.getObjectId());
-            if (id > getHighestID(ns)) {
-                setHighestID(ns, id);
+            if (m_blockSize > 1) {
+                // blocks are only replaced under the lock, so no new block
+                // can start at or below id once it has been raised
+                synchronized (m_reserveLock) {
+                    Block block = m_blocks.get(ns);
+                    // ids up to the end of the block are already reserved
+                    if (block == null || !block.skipPast(id)) {
+                        raiseHighestID(ns, id);
+                    }
+                }
+            } else {
+                neverGenerateSingly(ns, id);
             }
         } catch (MalformedPIDException mpe) {
             throw new IOException(mpe.getMessage());
@@ -191,6 +250,37 @@ public class DBPIDGenerator
         }
     }
 
+    private synchronized void neverGenerateSingly(String ns, int id)
+            throws IOException {
+        if (id > getHighestID(ns)) {
+            setHighestID(ns, id);
+        }
+    }
+
+    /**
+     * Gets the next id from the namespace's block, reserving a new block
+     * when there is none or it is used up.
+     */
+    private int nextFromBlock(String namespace) throws IOException {
+        while (true) {
+            Block block = m_blocks.get(namespace);
+            if (block != null) {
+                int id = block.next();
+                if (id > 0) {
+                    return id;
+                }
+            }
+            synchronized (m_reserveLock) {
+                // unless another thread just did
+                if (m_blocks.get(namespace) == block) {
+                    int highest = reserveIDs(namespace, m_blockSize);
+                    m_blocks.put(namespace,
+                                 new Block(highest - m_blockSize + 1, highest));
+                }
+            }
+        }
+    }
+
     /**
      * Gets the highest id ever used for the given namespace.
      */
@@ -203,21 +293,67 @@ public class DBPIDGenerator
     }
 
     /**
-     * Sets the highest id ever used for the given namespace.
+     * Adds count to the highest id of the namespace in the database, and
+     * gets the result, in one transaction.
      */
-    private void setHighestID(String namespace, int id) throws IOException {
-        logger.debug("Setting highest ID for {} to {}", namespace, id);
-        m_highestID.put(namespace, new Integer(id));
-        // write the new highest id in the database, too
+    private int reserveIDs(String namespace, int count) throws IOException {
+        logger.debug("Reserving {} ids for {}", count, namespace);
         Connection conn = null;
         try {
             conn = m_connectionPool.getReadWriteConnection();
-            SQLUtility.replaceInto(conn,
-                                   "pidGen",
-                                   new String[] {"namespace", "highestID"},
-                                   new String[] {namespace, "" + id},
-                                   "namespace",
-                                   new boolean[] {false, true});
+            ensureNamespace(conn, namespace);
+            boolean autoCommit = conn.getAutoCommit();
+            conn.setAutoCommit(false);
+            try {
+                PreparedStatement update =
+                        conn.prepareStatement("UPDATE pidGen SET highestID = highestID + ? "
+                                + "WHERE namespace = ?");
+                try {
+                    update.setInt(1, count);
+                    update.setString(2, namespace);
+                    update.executeUpdate();
+                } finally {
+                    update.close();
+                }
+                int highest = getHighestID(conn, namespace);
+                conn.commit();
+                return highest;
+            } catch (SQLException sqle) {
+                conn.rollback();
+                throw sqle;
+            } finally {
+                conn.setAutoCommit(autoCommit);
+            }
+        } catch (SQLException sqle) {
+            throw new IOException("Error reserving ids for "
+                    + "namespace in db: " + sqle.getMessage());
+        } finally {
+            if (conn != null) {
+                m_connectionPool.free(conn);
+            }
+        }
+    }
+
+    /**
+     * Makes the highest id of the namespace in the database at least id.
+     */
+    private void raiseHighestID(String namespace, int id) throws IOException {
+        logger.debug("Raising highest ID for {} to {}", namespace, id);
+        Connection conn = null;
+        try {
+            conn = m_connectionPool.getReadWriteConnection();
+            ensureNamespace(conn, namespace);
+            PreparedStatement update =
+                    conn.prepareStatement("UPDATE pidGen SET highestID = ? "
+                            + "WHERE namespace = ? AND highestID < ?");
+            try {
+                update.setInt(1, id);
+                update.setString(2, namespace);
+                update.setInt(3, id);
+                update.executeUpdate();
+            } finally {
+                update.close();
+            }
         } catch (SQLException sqle) {
             throw new IOException("Error setting highest id for "
                     + "namespace in db: " + sqle.getMessage());
@@ -228,4 +364,131 @@ public class DBPIDGenerator
         }
     }
 
+    /**
+     * Adds a row for the namespace, with a highest id of 0, if there is none.
+     * The row is committed before any update, so a row added by another
+     * server at the same time is either rejected by the unique key on
+     * namespace or, in tables created without it, seen and updated by every
+     * later reservation; the greatest highest id then counts them all.
+     */
+    private static void ensureNamespace(Connection conn, String namespace)
+            throws SQLException {
+        if (namespaceExists(conn, namespace)) {
+            return;
+        }
+        boolean autoCommit = conn.getAutoCommit();
+        conn.setAutoCommit(true);
+        try {
+            PreparedStatement insert =
+                    conn.prepareStatement("INSERT INTO pidGen (namespace, highestID) "
+                            + "VALUES (?, 0)");
+            try {
+                insert.setString(1, namespace);
+                insert.executeUpdate();
+            } finally {
+                insert.close();
+            }
+        } catch (SQLException sqle) {
+            // a duplicate key, if another server just added the row
+            if (!namespaceExists(conn, namespace)) {
+                throw sqle;
+            }
+        } finally {
+            conn.setAutoCommit(autoCommit);
+        }
+    }
+
+    private static boolean namespaceExists(Connection conn, String namespace)
+            throws SQLException {
+        PreparedStatement select =
+                conn.prepareStatement("SELECT COUNT(*) FROM pidGen WHERE namespace = ?");
+        try {
+            select.setString(1, namespace);
+            ResultSet results = select.executeQuery();
+            try {
+                return results.next() && results.getInt(1) > 0;
+            } finally {
+                results.close();
+            }
+        } finally {
+            select.close();
+        }
+    }
+
+    private static int getHighestID(Connection conn, String namespace)
+            throws SQLException {
+        PreparedStatement select =
+                conn.prepareStatement("SELECT MAX(highestID) FROM pidGen WHERE namespace = ?");
+        try {
+            select.setString(1, namespace);
+            ResultSet results = select.executeQuery();
+            try {
+                results.next();
+                return results.getInt(1);
+            } finally {
+                results.close();
+            }
+        } finally {
+            select.close();
+        }
+    }
+
+    /**
+     * Sets the highest id ever used for the given namespace. The database is
+     * only changed if its highest id is lower.
+     */
+    private void setHighestID(String namespace, int id) throws IOException {
+        logger.debug("Setting highest ID for {} to {}", namespace, id);
+        m_highestID.put(namespace, new Integer(id));
+        // write the new highest id in the database, too
+        raiseHighestID(namespace, id);
+    }
+
+    /**
+     * Ids reserved for a namespace that have yet to be handed out.
+     */
+    private static class Block {
+
+        private final AtomicInteger m_next;
+
+        private final int m_last;
+
+        Block(int first, int last) {
+            m_next = new AtomicInteger(first);
+            m_last = last;
+        }
+
+        /**
+         * Get the next id, or -1 if they have all been handed out.
+         */
+        int next() {
+            int id;
+            do {
+                id = m_next.get();
+                if (id > m_last) {
+                    return -1;
+                }
+            } while (!m_next.compareAndSet(id, id + 1));
+            return id;
+        }
+
+        /**
+         * Make sure the id isn't handed out.
+         *
+         * @return whether the id is at most the last of the block
+         */
+        boolean skipPast(int id) {
+            if (id > m_last) {
+                return false;
+            }
+            int next;
+            do {
+                next = m_next.get();
+                if (next > id) {
+                    break;
+                }
+            } while (!m_next.compareAndSet(next, id + 1));
+            return true;
+        }
+    }
 }
@@ -7,9 +7,6 @@ package org.fcrepo.server.management;
 import java.io.BufferedWriter;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
-import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
@@ -20,14 +17,11 @@ import java.net.URI;
 import java.net.URISyntaxException;
 import java.nio.charset.Charset;
 import java.text.SimpleDateFormat;
-import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
-import java.util.Hashtable;
-import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
 import java.util.Set;
 import java.util.regex.Pattern;
 
@@ -69,7 +63,6 @@ import org.fcrepo.server.storage.types.RelationshipTuple;
 import org.fcrepo.server.storage.types.Validation;
 import org.fcrepo.server.storage.types.XMLDatastreamProcessor;
 import org.fcrepo.server.utilities.DCFields;
-import org.fcrepo.server.utilities.StreamUtility;
 import org.fcrepo.server.validation.ValidationConstants;
 import org.fcrepo.server.validation.ValidationUtility;
 import org.fcrepo.server.validation.ecm.EcmValidator;
@@ -100,17 +93,8 @@ public class DefaultManagement
 
     private final ExternalContentManager m_contentManager;
 
-    private final int m_uploadStorageMinutes;
+    private final UploadStore m_uploads;
 
-    private int m_lastId;
-
-    private final File m_tempDir;
-
-    private final Hashtable<String, Long> m_uploadStartTime;
-
-    private long m_lastPurgeInMillis = System.currentTimeMillis();
-
-    private final long m_purgeDelayInMillis;
     private final EcmValidator ecmValidator;
 
     // FCREPO-765: move to Admin module
@@ -118,27 +102,16 @@ public class DefaultManagement
             .getBytes(Charset.forName("UTF-8"));
 
     /**
-     * @param purgeDelayInMillis milliseconds to delay before removing
-     *                           old uploaded files
-     * @author Frederic Buffet &amp; Tommy Bourdin (Atos Worldline)
-     * @since August 1, 2008
+     * @param uploads where uploaded content is kept until it is used
      */
     public DefaultManagement(Authorization authz,
                              DOManager doMgr,
                              ExternalContentManager ecMgr,
-                             int uploadMinutes,
-                             int lastId,
-                             File tempDir,
-                             Hashtable<String, Long> uploadStartTime,
-                             long purgeDelayInMillis) {
+                             UploadStore uploads) {
         m_authz = authz;
         m_manager = doMgr;
         m_contentManager = ecMgr;
-        m_uploadStorageMinutes = uploadMinutes;
-        m_lastId = lastId;
-        m_tempDir = tempDir;
-        m_uploadStartTime = uploadStartTime;
-        m_purgeDelayInMillis = purgeDelayInMillis;
+        m_uploads = uploads;
         ecmValidator = new EcmValidator(doMgr,m_contentManager); //TODO, this should be controllable with the fcfg
     }
 
@@ -1323,36 +1296,20 @@ public class DefaultManagement
     public String putTempStream(Context context, InputStream in)
             throws StreamWriteException, AuthzException {
         m_authz.enforceUpload(context);
-        // first clean up after old stuff
-        purgeUploadedFiles();
-        // then generate an id
-        String id = Integer.toString(getNextTempId(context));
-        // and attempt to save the stream
-        File outFile = new File(m_tempDir, "" + id);
-        FileOutputStream out = null;
+        // generate an id
+        String id = getNextTempId(context);
+        // and attempt to save the stream, digesting it as it is written
         try {
-            out = new FileOutputStream(outFile);
-            StreamUtility.pipeStream(in, out, 32768);
+            m_uploads.put(id, in, getUploadDigestAlgorithms());
         } catch (Exception e) {
-            if (out != null) {
-                try {
-                    out.close();
-                } catch (Exception ex) {
-                }
-                outFile.delete();
-            }
             throw new StreamWriteException("Error writing temp stream", e);
         }
-        // if we got this far w/o an exception, add to hash with current time
-        // and return the identifier-that-looks-like-a-url
-        long now = System.currentTimeMillis();
-        m_uploadStartTime.put(id, new Long(now));
+        // if we got this far w/o an exception, return the
+        // identifier-that-looks-like-a-url
         return DatastreamManagedContent.UPLOADED_SCHEME + id;
     }
 
-    private synchronized int getNextTempId(Context context) {
-
-        int recoveryId = -1;
+    private String getNextTempId(Context context) {
 
         // If the RecoveryContext has an uploaded://n url, use n.
         if (context instanceof RecoveryContext) {
@@ -1360,21 +1317,31 @@ public class DefaultManagement
             String uploadURL =
                     rContext.getRecoveryValue(Constants.RECOVERY.UPLOAD_ID.attributeId);
             if (uploadURL != null) {
+                long recoveryId;
                 try {
                     String n = uploadURL.substring(11);
-                    recoveryId = Integer.parseInt(n);
+                    recoveryId = Long.parseLong(n);
                 } catch (Exception e) {
                     throw new IllegalArgumentException("Unable to parse UPLOAD_ID "
                                                        + "from recovery context: '" + uploadURL + "'");
                 }
+                return m_uploads.useId(recoveryId);
             }
         }
-        if (recoveryId == -1) {
-            m_lastId++;
-        } else {
-            m_lastId = recoveryId;
+        return m_uploads.nextId();
+    }
+
+    /**
+     * Uploads are digested with the default checksum type, if there is one,
+     * so that datastreams using them need not read them again to do so.
+     */
+    private static Set<String> getUploadDigestAlgorithms() {
+        String defaultType = Datastream.getDefaultChecksumType();
+        if (defaultType == null
+                || defaultType.equals(Datastream.CHECKSUMTYPE_DISABLED)) {
+            return Collections.emptySet();
         }
-        return m_lastId;
+        return Collections.singleton(defaultType);
     }
 
     @Override
@@ -1382,10 +1349,11 @@ public class DefaultManagement
         // it should come in starting with "uploaded://"
         if (id.startsWith(DatastreamManagedContent.UPLOADED_SCHEME) || id.length() < 12) {
             String internalId = id.substring(11);
-            if (m_uploadStartTime.get(internalId) != null) {
+            UploadStore.Upload upload = m_uploads.get(internalId);
+            if (upload != null) {
                 // found... return inputstream
                 try {
-                    return new FileInputStream(new File(m_tempDir, internalId));
+                    return upload.open();
                 } catch (Exception e) {
                     throw new StreamReadException(e.getMessage());
                 }
@@ -1897,64 +1865,6 @@ public class DefaultManagement
         }
     }
 
-    /**
-     * Deletes expired uploaded files.
-     * <p/>
-     * This method is called for each upload. But we respect a minimim delay
-     * between two purges. This delay is given by m_purgeDelayInMillis.
-     */
-    private void purgeUploadedFiles() {
-        long currentTimeMillis = System.currentTimeMillis();
-
-        // Do purge if purge delay is past before last purge
-        // -------------------------------------------------
-        long nextPurgeInMillis =
-                this.m_lastPurgeInMillis + this.m_purgeDelayInMillis;
-        if (nextPurgeInMillis < currentTimeMillis) {
-            this.m_lastPurgeInMillis = currentTimeMillis;
-
-            // Compute limit file time to purged
-            // ---------------------------------
-            long minStartTime =
-                    currentTimeMillis - (this.m_uploadStorageMinutes * 60000);
-
-            // List files to purge and remove filename to map
-            // This operation is synchronized to be thread-safe
-            // ------------------------------------------------
-            final List<String> removeList = new ArrayList<String>();
-            synchronized (this.m_uploadStartTime) {
-                for (Entry<String, Long> entry :
-                        m_uploadStartTime.entrySet()) {
-                    String filename = entry.getKey();
-                    long startTime = entry.getValue().longValue();
-                    if (startTime < minStartTime) {
-                        removeList.add(filename);
-                    }
-                }
-                for (String filename : removeList) {
-                    this.m_uploadStartTime.remove(filename);
-                }
-            }
-
-            // Delete file to purged
-            // This operation is out of synchronised block for performances
-            // ------------------------------------------------------------
-            for (int i = 0; i < removeList.size(); i++) {
-                String id = removeList.get(i);
-
-                File file = new File(this.m_tempDir, id);
-                if (file.exists()) {
-                    if (file.delete()) {
-                        logger.info("Removed uploaded file '{}' because it expired.", id);
-                    } else {
-                        logger.warn("Could not remove expired uploaded file '"
-                                    + id + "'. Check permissions in " + m_tempDir.getPath() + " directory.");
-                    }
-                }
-            }
-        }
-    }
-
     /**********************************************************************************
      * Administrative methods - see FCREPO-765
      *
@@ -4,12 +4,10 @@
  */
 package org.fcrepo.server.management;
 
-import java.io.File;
 import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Date;
-import java.util.Hashtable;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
@@ -29,6 +27,7 @@ import org.fcrepo.server.security.Authorization;
 import org.fcrepo.server.storage.DOManager;
 import org.fcrepo.server.storage.ExternalContentManager;
 import org.fcrepo.server.storage.types.Datastream;
+import org.fcrepo.server.storage.types.DatastreamManagedContent;
 import org.fcrepo.server.storage.types.RelationshipTuple;
 import org.fcrepo.server.storage.types.Validation;
 import org.slf4j.Logger;
@@ -53,11 +52,7 @@ public class ManagementModule
 
     private int m_uploadStorageMinutes;
 
-    private int m_lastId;
-
-    private File m_tempDir;
-
-    private Hashtable<String, Long> m_uploadStartTime;
+    private UploadStore m_uploads;
 
     private Management mgmt;
 
@@ -70,7 +65,7 @@ public class ManagementModule
     private AbstractInvocationHandler[] invocationHandlers;
 
     /**
-     * Delay between purge of two uploaded files.
+     * Delay between two purges of expired uploaded files.
      */
     private long m_purgeDelayInMillis;
 
@@ -104,32 +99,8 @@ public class ManagementModule
         // and 2) reading in the existing files, if any, and setting their
         // startTime to the current time.
         try {
-            m_tempDir = getServer().getUploadDir();
-            if (!m_tempDir.isDirectory()) {
-                m_tempDir.mkdirs();
-                if (!m_tempDir.isDirectory()) {
-                    throw new ModuleInitializationException(
-                            "Failed to create temp dir at " +
-                                    m_tempDir.toString(), getRole());
-                }
-            }
-
-            // put leftovers in hash, while saving highest id as m_lastId
-            m_uploadStartTime = new Hashtable<String, Long>();
-            String[] fNames = m_tempDir.list();
-            Long leftoverStartTime = new Long(System.currentTimeMillis());
-            m_lastId = 0;
-            for (String element : fNames) {
-                try {
-                    int id = Integer.parseInt(element);
-                    if (id > m_lastId) {
-                        m_lastId = id;
-                    }
-                    m_uploadStartTime.put(element, leftoverStartTime);
-                } catch (NumberFormatException nfe) {
-                    // skip files that aren't named numerically
-                }
-            }
+            m_uploads = new UploadStore(getServer().getUploadDir(),
+                                        m_uploadStorageMinutes * 60000L);
         } catch (Exception e) {
             throw new ModuleInitializationException("Error while initializing "
                                                     + "temporary storage area: " + e.getClass().getName()
@@ -145,6 +116,9 @@ public class ManagementModule
         }
         logger.debug("autoChecksum is " + auto);
         logger.debug("defaultChecksumType is " + Datastream.defaultChecksumType);
+        String trust = getParameter("trustStoredDigests");
+        DatastreamManagedContent.trustStoredDigests =
+                trust != null && trust.equalsIgnoreCase("true");
 
         // get delay between purge of two uploaded files (default 1 minute)
         String purgeDelayInMillis = getParameter("purgeDelayInMillis");
@@ -192,11 +166,8 @@ public class ManagementModule
                 new DefaultManagement(m_fedoraXACMLModule,
                                       m_manager,
                                       m_contentManager,
-                                      m_uploadStorageMinutes,
-                                      m_lastId,
-                                      m_tempDir,
-                                      m_uploadStartTime,
-                                      m_purgeDelayInMillis);
+                                      m_uploads);
+        m_uploads.start(m_purgeDelayInMillis);
 
         mgmt = getProxyChain(m);
         // FIXME: FCREPO-765
@@ -207,6 +178,9 @@ public class ManagementModule
 
     @Override
     public void shutdownModule() throws ModuleShutdownException {
+        if (m_uploads != null) {
+            m_uploads.shutdown();
+        }
         if (invocationHandlers != null) {
             for (AbstractInvocationHandler h : invocationHandlers) {
                 h.close();
@@ -214,6 +188,14 @@ public class ManagementModule
         }
     }
 
+    /**
+     * Get where uploaded content is kept until it is used, so that it can be
+     * moved into storage without reading it through {@link #getTempStream}.
+     */
+    public UploadStore getUploadStore() {
+        return m_uploads;
+    }
+
     /**
      * {@inheritDoc}
      */
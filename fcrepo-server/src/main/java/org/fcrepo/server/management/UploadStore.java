@@ -0,0 +1,391 @@
+/* The contents of this file are subject to the license and copyright terms
+ * detailed in the license directory at the root of the source tree (also
+ * available online at http://fedora-commons.org/license/).
+ */
+package org.fcrepo.server.management;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.fcrepo.server.storage.lowlevel.DigestingInputStream;
+import org.fcrepo.server.utilities.StreamUtility;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Keeps uploaded content until it is used by a datastream or expires.
+ * <p>
+ * Uploads are given increasing numeric ids, and are written to one of a
+ * number of sub-directories of the upload directory, chosen by id, so that
+ * no directory gets too large. Their sizes and digests are recorded as they
+ * are written. A background task removes uploads once they are older than
+ * the storage time.
+ * </p>
+ * <p>
+ * Uploads left from an earlier run, including those written directly to
+ * the upload directory by earlier versions, are kept as if they had just
+ * been uploaded.
+ * </p>
+ */
+public class UploadStore {
+
+    private static final Logger logger =
+            LoggerFactory.getLogger(UploadStore.class);
+
+    private static final int SHARDS = 256;
+
+    private static final String PARTIAL_SUFFIX = ".part";
+
+    private final File m_dir;
+
+    private final long m_storageMillis;
+
+    private final AtomicLong m_lastId = new AtomicLong();
+
+    private final Map<String, Upload> m_uploads =
+            new ConcurrentHashMap<String, Upload>();
+
+    private ScheduledExecutorService m_sweeper;
+
+    /**
+     * @param dir
+     *        the upload directory; it is created if need be
+     * @param storageMillis
+     *        how long to keep uploads
+     * @throws IOException
+     *         if the directory can't be created
+     */
+    public UploadStore(File dir, long storageMillis) throws IOException {
+        m_dir = dir;
+        m_storageMillis = storageMillis;
+        if (!m_dir.isDirectory()) {
+            m_dir.mkdirs();
+            if (!m_dir.isDirectory()) {
+                throw new IOException("Failed to create temp dir at "
+                        + m_dir.toString());
+            }
+        }
+        recover();
+    }
+
+    /**
+     * Get where an upload is kept.
+     */
+    public static File getFile(File dir, String id) {
+        return new File(new File(dir, getShard(id)), id);
+    }
+
+    private static String getShard(String id) {
+        return String.format("%02x", id.hashCode() & (SHARDS - 1));
+    }
+
+    /**
+     * Start removing expired uploads in the background.
+     *
+     * @param sweepDelayMillis
+     *        the time between looks for expired uploads
+     */
+    public synchronized void start(long sweepDelayMillis) {
+        if (m_sweeper != null) {
+            return;
+        }
+        m_sweeper =
+                Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+
+                    @Override
+                    public Thread newThread(Runnable r) {
+                        Thread t = new Thread(r, "UploadStore-sweeper");
+                        t.setDaemon(true);
+                        return t;
+                    }
+                });
+        m_sweeper.scheduleWithFixedDelay(new Runnable() {
+
+            @Override
+            public void run() {
+                try {
+                    purgeExpired();
+                } catch (RuntimeException e) {
+                    logger.warn("Error removing expired uploads", e);
+                }
+            }
+        }, sweepDelayMillis, sweepDelayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stop removing expired uploads. Uploads are left where they are.
+     */
+    public synchronized void shutdown() {
+        if (m_sweeper != null) {
+            m_sweeper.shutdownNow();
+            m_sweeper = null;
+        }
+    }
+
+    /**
+     * Get a new id for an upload.
+     */
+    public String nextId() {
+        return Long.toString(m_lastId.incrementAndGet());
+    }
+
+    /**
+     * Get an id given for an upload earlier, such as when the upload is
+     * being recovered from a journal. Ids given after it will be greater.
+     */
+    public String useId(long id) {
+        long last;
+        while ((last = m_lastId.get()) < id) {
+            if (m_lastId.compareAndSet(last, id)) {
+                break;
+            }
+        }
+        return Long.toString(id);
+    }
+
+    /**
+     * Keep content under an id, replacing anything kept under it already.
+     * The content is digested as it is written.
+     *
+     * @param in
+     *        the content; it is closed once written
+     * @param algorithms
+     *        the digests to compute, as understood by
+     *        {@link java.security.MessageDigest#getInstance(String)}
+     * @return the upload
+     * @throws IOException
+     *         if the content can't be written, in which case nothing is kept
+     */
+    public Upload put(String id, InputStream in, Collection<String> algorithms)
+            throws IOException {
+        File file = getFile(m_dir, id);
+        File partial = new File(file.getPath() + PARTIAL_SUFFIX);
+        file.getParentFile().mkdirs();
+
+        DigestingInputStream content = null;
+        try {
+            content = new DigestingInputStream(in, algorithms);
+        } catch (NoSuchAlgorithmException e) {
+            logger.warn("Not digesting upload " + id + ": " + e.getMessage());
+        }
+        OutputStream out = null;
+        boolean written = false;
+        try {
+            out = new FileOutputStream(partial);
+            StreamUtility.pipeStream(content != null ? content : in,
+                                     out,
+                                     32768);
+            written = partial.renameTo(file)
+                    || file.delete() && partial.renameTo(file);
+            if (!written) {
+                throw new IOException("Could not rename " + partial.getPath()
+                        + " to " + file.getPath());
+            }
+        } finally {
+            if (!written) {
+                if (out != null) {
+                    try {
+                        out.close();
+                    } catch (IOException e) {
+                    }
+                }
+                partial.delete();
+            }
+        }
+        Map<String, String> digests =
+                content != null ? content.getDigests() : Collections
+                        .<String, String> emptyMap();
+        Upload upload =
+                new Upload(id,
+                           file,
+                           file.length(),
+                           digests,
+                           System.currentTimeMillis());
+        m_uploads.put(id, upload);
+        return upload;
+    }
+
+    /**
+     * Get an upload, or null if there is none with the id, or it has expired
+     * and been removed.
+     */
+    public Upload get(String id) {
+        return m_uploads.get(id);
+    }
+
+    /**
+     * Get the number of uploads kept.
+     */
+    public int size() {
+        return m_uploads.size();
+    }
+
+    /**
+     * Remove uploads older than the storage time.
+     */
+    public void purgeExpired() {
+        long minStartTime = System.currentTimeMillis() - m_storageMillis;
+        Iterator<Upload> uploads = m_uploads.values().iterator();
+        while (uploads.hasNext()) {
+            Upload upload = uploads.next();
+            if (upload.getStartTime() < minStartTime) {
+                uploads.remove();
+                File file = upload.getFile();
+                if (file.exists()) {
+                    if (file.delete()) {
+                        logger.info("Removed uploaded file '{}' because it expired.",
+                                    upload.getId());
+                    } else {
+                        logger.warn("Could not remove expired uploaded file '"
+                                + upload.getId() + "'. Check permissions in "
+                                + m_dir.getPath() + " directory.");
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Take in the uploads left from an earlier run, moving any in the upload
+     * directory itself to their sub-directories, and removing any that were
+     * not completely written.
+     */
+    private void recover() {
+        long now = System.currentTimeMillis();
+        String[] names = m_dir.list();
+        if (names == null) {
+            return;
+        }
+        for (String name : names) {
+            File file = new File(m_dir, name);
+            if (file.isDirectory()) {
+                String[] shardNames = file.list();
+                if (shardNames == null) {
+                    continue;
+                }
+                for (String shardName : shardNames) {
+                    recover(new File(file, shardName), now);
+                }
+            } else if (isId(name)) {
+                File moved = getFile(m_dir, name);
+                moved.getParentFile().mkdirs();
+                if (file.renameTo(moved)) {
+                    recover(moved, now);
+                } else {
+                    logger.warn("Could not move uploaded file " + name
+                            + " to " + moved.getPath());
+                }
+            }
+        }
+    }
+
+    private void recover(File file, long startTime) {
+        String name = file.getName();
+        if (name.endsWith(PARTIAL_SUFFIX)) {
+            if (!file.delete()) {
+                logger.warn("Could not remove partial upload "
+                        + file.getPath());
+            }
+        } else if (isId(name)) {
+            useId(Long.parseLong(name));
+            m_uploads.put(name, new Upload(name,
+                                           file,
+                                           file.length(),
+                                           Collections
+                                                   .<String, String> emptyMap(),
+                                           startTime));
+        }
+    }
+
+    private static boolean isId(String name) {
+        if (name.length() == 0 || name.length() > 18) {
+            return false;
+        }
+        for (int i = 0; i < name.length(); i++) {
+            if (!Character.isDigit(name.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Content kept by the store.
+     */
+    public static class Upload {
+
+        private final String m_id;
+
+        private final File m_file;
+
+        private final long m_size;
+
+        private final Map<String, String> m_digests;
+
+        private final long m_startTime;
+
+        Upload(String id,
+               File file,
+               long size,
+               Map<String, String> digests,
+               long startTime) {
+            m_id = id;
+            m_file = file;
+            m_size = size;
+            m_digests = Collections.unmodifiableMap(digests);
+            m_startTime = startTime;
+        }
+
+        public String getId() {
+            return m_id;
+        }
+
+        public File getFile() {
+            return m_file;
+        }
+
+        public long getSize() {
+            return m_size;
+        }
+
+        /**
+         * Get the hex digests of the content, keyed by algorithm; uploads
+         * kept from an earlier run have none.
+         */
+        public Map<String, String> getDigests() {
+            return m_digests;
+        }
+
+        /**
+         * Get the time the upload was kept from.
+         */
+        public long getStartTime() {
+            return m_startTime;
+        }
+
+        /**
+         * Open the content.
+         *
+         * @throws IOException
+         *         if it is no longer there
+         */
+        public InputStream open() throws IOException {
+            return new FileInputStream(m_file);
+        }
+    }
+}
@@ -0,0 +1,174 @@
+/* The contents of this file are subject to the license and copyright terms
+ * detailed in the license directory at the root of the source tree (also
+ * available online at http://fedora-commons.org/license/).
+ */
+package org.fcrepo.server.messaging;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import javax.jms.Destination;
+
+import org.fcrepo.server.errors.MessagingException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Sends text messages in the background, grouping them into transacted
+ * sends.
+ * <p>
+ * Messages wait in a bounded buffer. When it is full, {@link #publish}
+ * blocks until there is room, so a slow broker slows down the callers rather
+ * than using up memory. A worker thread takes whatever is waiting, up to the
+ * batch size, and sends it in one transaction. If that fails, the messages in
+ * it are sent one at a time, and any that still fail are logged and dropped.
+ * </p>
+ */
+public class BatchingPublisher {
+
+    private static final Logger logger =
+            LoggerFactory.getLogger(BatchingPublisher.class);
+
+    /** How long the worker waits for a message before checking if closed. */
+    private static final long POLL_MILLIS = 100;
+
+    private final JMSManager m_jmsMgr;
+
+    private final BlockingQueue<Pending> m_queue;
+
+    private final int m_batchSize;
+
+    private final Thread m_worker;
+
+    private volatile boolean m_closed;
+
+    /**
+     * @param capacity
+     *        the most messages waiting to be sent
+     * @param batchSize
+     *        the most messages sent in one transaction
+     */
+    public BatchingPublisher(JMSManager jmsMgr, int capacity, int batchSize) {
+        m_jmsMgr = jmsMgr;
+        m_queue = new ArrayBlockingQueue<Pending>(capacity);
+        m_batchSize = batchSize;
+        m_worker = new Thread(new Runnable() {
+
+            public void run() {
+                work();
+            }
+        }, "BatchingPublisher");
+        m_worker.setDaemon(true);
+        m_worker.start();
+    }
+
+    /**
+     * Queue a text message to be sent, waiting for room if the buffer is
+     * full. The message itself is created when it is sent, on the sending
+     * session.
+     *
+     * @param properties
+     *        the message properties, or null if there are none
+     * @throws MessagingException
+     *         if the publisher is closed, or the wait is interrupted
+     */
+    public void publish(Destination dest,
+                        String text,
+                        Map<String, String> properties)
+            throws MessagingException {
+        if (m_closed) {
+            throw new MessagingException("Publisher is closed");
+        }
+        try {
+            m_queue.put(new Pending(dest, text, properties));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new MessagingException("Interrupted waiting to publish", e);
+        }
+    }
+
+    /**
+     * Get the number of messages waiting to be sent.
+     */
+    public int size() {
+        return m_queue.size();
+    }
+
+    /**
+     * Send the messages still waiting, and stop. Messages published after
+     * this is called are refused.
+     */
+    public void close() {
+        m_closed = true;
+        try {
+            m_worker.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            logger.warn("Interrupted while sending the last {} messages",
+                        m_queue.size());
+        }
+    }
+
+    private void work() {
+        List<Pending> batch = new ArrayList<Pending>(m_batchSize);
+        while (!m_closed || !m_queue.isEmpty()) {
+            try {
+                Pending first = m_queue.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+            } catch (InterruptedException e) {
+                continue;
+            }
+            m_queue.drainTo(batch, m_batchSize - 1);
+            send(batch);
+            batch.clear();
+        }
+    }
+
+    private void send(List<Pending> batch) {
+        List<Destination> dests = new ArrayList<Destination>(batch.size());
+        List<String> texts = new ArrayList<String>(batch.size());
+        List<Map<String, String>> properties =
+                new ArrayList<Map<String, String>>(batch.size());
+        for (Pending p : batch) {
+            dests.add(p.dest);
+            texts.add(p.text);
+            properties.add(p.properties);
+        }
+        try {
+            m_jmsMgr.send(dests, texts, properties);
+            return;
+        } catch (Throwable th) {
+            logger.warn("Unable to send " + batch.size()
+                    + " messages in one transaction; sending them singly", th);
+        }
+        for (Pending p : batch) {
+            try {
+                m_jmsMgr.send(p.dest, p.text, p.properties);
+            } catch (Throwable th) {
+                logger.error("Unable to send message to " + p.dest, th);
+            }
+        }
+    }
+
+    private static class Pending {
+
+        final Destination dest;
+
+        final String text;
+
+        final Map<String, String> properties;
+
+        Pending(Destination dest, String text, Map<String, String> properties) {
+            this.dest = dest;
+            this.text = text;
+            this.properties = properties;
+        }
+    }
+}
@@ -14,6 +14,8 @@ import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
 
 import javax.naming.Context;
 import javax.naming.InitialContext;
@@ -78,6 +80,17 @@ public class JMSManager {
     protected Map<String, MessageConsumer> durableSubscriptions =
             new HashMap<String, MessageConsumer>();
 
+    /** The most idle sessions kept in each pool. */
+    protected static final int MAX_IDLE_SESSIONS = 16;
+
+    // Idle sessions, with producers, for sending to any destination
+    private final BlockingQueue<PooledSession> idleSessions =
+            new LinkedBlockingQueue<PooledSession>(MAX_IDLE_SESSIONS);
+
+    // As above, but transacted, for sending several messages at once
+    private final BlockingQueue<PooledSession> idleTransactedSessions =
+            new LinkedBlockingQueue<PooledSession>(MAX_IDLE_SESSIONS);
+
     private final Properties jndiProps;
 
     // Destination type determines the method by which messages are transferred
@@ -504,24 +517,100 @@ public class JMSManager {
     }
 
     /**
-     * Allows the caller to send a Message object to a destination
+     * Allows the caller to send a Message object to a destination.
+     * The session and producer used are taken from, and returned to, a pool,
+     * so this may be called concurrently.
      */
     public void send(Destination dest, Message msg) throws MessagingException {
+        PooledSession ps = borrowSession(false);
         try {
-            Session s =
-                    connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
-            MessageProducer p = s.createProducer(dest);
-            p.send(msg);
-            s.close();
+            ps.producer.send(dest, msg);
+        } catch (JMSException e) {
+            ps.close();
+            throw new MessagingException(e.getMessage(), e);
+        }
+        returnSession(ps);
+
+        if(logger.isDebugEnabled()) {
+            logger.debug("send() - message sent to destination " + dest);
+        }
+    }
+
+    /**
+     * Sends a text message with the given string properties to a
+     * destination. The message is created on, and sent with, a session
+     * taken from the pool, so this may be called concurrently.
+     *
+     * @param dest - the destination
+     * @param text - the text of the message
+     * @param properties - the message properties, or null if there are none
+     */
+    public void send(Destination dest,
+                     String text,
+                     Map<String, String> properties) throws MessagingException {
+        PooledSession ps = borrowSession(false);
+        try {
+            ps.producer.send(dest,
+                             createTextMessage(ps.session, text, properties));
         } catch (JMSException e) {
+            ps.close();
             throw new MessagingException(e.getMessage(), e);
         }
+        returnSession(ps);
 
         if(logger.isDebugEnabled()) {
             logger.debug("send() - message sent to destination " + dest);
         }
     }
 
+    /**
+     * Sends text messages, each to the destination and with the properties
+     * at the same position, in a single transaction: either all of them are
+     * sent, or none are.
+     *
+     * @param dests - the destination of each message
+     * @param texts - the text of each message
+     * @param properties - the properties of each message; an entry may be
+     *        null if a message has none
+     * @throws MessagingException if the transaction could not be committed
+     */
+    public void send(List<Destination> dests,
+                     List<String> texts,
+                     List<Map<String, String>> properties)
+            throws MessagingException {
+        if (dests.size() != texts.size() || properties.size() != texts.size()) {
+            throw new IllegalArgumentException("Got " + dests.size()
+                    + " destinations and " + properties.size()
+                    + " sets of properties for " + texts.size() + " messages");
+        }
+        if (texts.isEmpty()) {
+            return;
+        }
+        PooledSession ps = borrowSession(true);
+        try {
+            for (int i = 0; i < texts.size(); i++) {
+                ps.producer.send(dests.get(i),
+                                 createTextMessage(ps.session,
+                                                   texts.get(i),
+                                                   properties.get(i)));
+            }
+            ps.session.commit();
+        } catch (JMSException e) {
+            try {
+                ps.session.rollback();
+            } catch (JMSException e2) {
+                logger.debug("Error rolling back send", e2);
+            }
+            ps.close();
+            throw new MessagingException(e.getMessage(), e);
+        }
+        returnSession(ps);
+
+        if(logger.isDebugEnabled()) {
+            logger.debug("send() - " + texts.size() + " messages sent");
+        }
+    }
+
     /**
      * Allows the caller to send a Serializable object to a destination
      */
@@ -659,6 +748,8 @@ public class JMSManager {
     }
 
     public void close() throws MessagingException {
+        idleSessions.clear();
+        idleTransactedSessions.clear();
         try {
             // Closing a connection also closes all sessions, producers,
             // and consumers established over that connection
@@ -886,6 +977,21 @@ public class JMSManager {
         }
     }
 
+    protected TextMessage createTextMessage(Session session,
+                                            String text,
+                                            Map<String, String> properties)
+            throws JMSException {
+        TextMessage textMsg = session.createTextMessage();
+        textMsg.setText(text);
+        if (properties != null) {
+            for (Map.Entry<String, String> property : properties.entrySet()) {
+                textMsg.setStringProperty(property.getKey(),
+                                          property.getValue());
+            }
+        }
+        return textMsg;
+    }
+
     protected Message createJMSMessage(Serializable obj, Session session)
             throws JMSException {
         if (obj instanceof String) {
@@ -972,6 +1078,69 @@ public class JMSManager {
         }
     }
 
+    /**
+     * Gets an idle session from the pool, or creates one if there are none.
+     */
+    protected PooledSession borrowSession(boolean transacted)
+            throws MessagingException {
+        PooledSession ps =
+                (transacted ? idleTransactedSessions : idleSessions).poll();
+        if (ps != null) {
+            return ps;
+        }
+        try {
+            Session session =
+                    connection.createSession(transacted, transacted
+                            ? Session.SESSION_TRANSACTED
+                            : Session.AUTO_ACKNOWLEDGE);
+            // An unidentified producer, which can send to any destination
+            return new PooledSession(session, session.createProducer(null),
+                                     transacted);
+        } catch (JMSException e) {
+            throw new MessagingException(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Returns a session to the pool, or closes it if the pool is full or
+     * the connection has been closed.
+     */
+    protected void returnSession(PooledSession ps) {
+        BlockingQueue<PooledSession> pool =
+                ps.transacted ? idleTransactedSessions : idleSessions;
+        if (!connected || !pool.offer(ps)) {
+            ps.close();
+        }
+    }
+
+    /**
+     * Nested class to encapsulate a pooled Session and its producer
+     */
+    class PooledSession {
+
+        final Session session;
+
+        final MessageProducer producer;
+
+        final boolean transacted;
+
+        PooledSession(Session session,
+                      MessageProducer producer,
+                      boolean transacted) {
+            this.session = session;
+            this.producer = producer;
+            this.transacted = transacted;
+        }
+
+        void close() {
+            try {
+                session.close();
+            } catch (JMSException e) {
+                logger.debug("Error closing pooled session", e);
+            }
+        }
+    }
+
     /**
      * Nested class to encapsulate JMS Destination objects
      */
@@ -4,12 +4,12 @@
  */
 package org.fcrepo.server.messaging;
 
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 
-import javax.jms.JMSException;
-import javax.jms.TextMessage;
+import javax.jms.Destination;
 
 import org.fcrepo.common.Constants;
 import org.fcrepo.server.Server;
@@ -33,6 +33,7 @@ public class MessagingImpl implements Messaging {
     private final Map<String, List<String>> mdMap;
     private final JMSManager jmsMgr;
     private final String fedoraBaseUrl;
+    private final BatchingPublisher publisher;
     private final static String messageFormat = Constants.ATOM_APIM1_0.uri;
 
     /**
@@ -58,28 +59,50 @@ public class MessagingImpl implements Messaging {
     }
 
     public MessagingImpl(String fedoraBaseUrl, Map<String, List<String>> mdMap, JMSManager jmsMgr) {
+        this(fedoraBaseUrl, mdMap, jmsMgr, null);
+    }
+
+    /**
+     * @param publisher if not null, messages about API-M methods are handed
+     * to it to be sent in the background, rather than sent before returning.
+     */
+    public MessagingImpl(String fedoraBaseUrl, Map<String, List<String>> mdMap, JMSManager jmsMgr, BatchingPublisher publisher) {
         this.fedoraBaseUrl = fedoraBaseUrl;
         this.mdMap = mdMap;
         this.jmsMgr = jmsMgr;
+        this.publisher = publisher;
     }
 
     public void send(String destName, FedoraMessage message)
             throws MessagingException {
-        jmsMgr.send(destName, message.toString());
+        send(destName, message.toString(), null);
     }
 
     public void send(String destName, FedoraMethod method, FedoraMessage message)
             throws MessagingException {
-        TextMessage jmsMessage = jmsMgr.createTextMessage(destName, message.toString());
-        try {
-            jmsMessage.setStringProperty("methodName", method.getName());
-            if(method.getPID() != null) {
-                jmsMessage.setStringProperty("pid", method.getPID().toString());
-            }
-        } catch(JMSException jmse) {
-            throw new MessagingException("Unable to set message properties.", jmse);
+        Map<String, String> properties = new HashMap<String, String>();
+        properties.put("methodName", method.getName());
+        if(method.getPID() != null) {
+            properties.put("pid", method.getPID().toString());
+        }
+        send(destName, message.toString(), properties);
+    }
+
+    /**
+     * Sends the text through the session pool, where it is also made into a
+     * message; the destination's own session and producer can't be shared
+     * between threads.
+     */
+    private void send(String destName,
+                      String text,
+                      Map<String, String> properties)
+            throws MessagingException {
+        Destination dest = jmsMgr.getDestination(destName);
+        if (publisher != null) {
+            publisher.publish(dest, text, properties);
+        } else {
+            jmsMgr.send(dest, text, properties);
         }
-        jmsMgr.send(destName, jmsMessage);
     }
 
     /**
@@ -116,6 +139,9 @@ public class MessagingImpl implements Messaging {
     }
 
     public void close() throws MessagingException {
+        if (publisher != null) {
+            publisher.close();
+        }
         if (jmsMgr != null) {
             jmsMgr.close();
         }
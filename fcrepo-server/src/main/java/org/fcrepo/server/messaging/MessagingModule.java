@@ -85,7 +85,8 @@ public class MessagingModule
             msg =
                     new MessagingImpl(fedoraBaseUrl,
                                       createDestinations(),
-                                      jmsMgr);
+                                      jmsMgr,
+                                      createPublisher());
         } catch (Exception e) {
             throw new ModuleInitializationException("Error connecting to JMS ",
                                                     getRole(),
@@ -235,6 +236,41 @@ public class MessagingModule
         return mdMap;
     }
 
+    /**
+     * @return a publisher for sending messages in the background, or null
+     * if messages are to be sent before the methods they describe return.
+     * @throws ModuleInitializationException
+     */
+    private BatchingPublisher createPublisher()
+            throws ModuleInitializationException {
+        String async = getParameter("asyncPublishing");
+        if (async == null || !async.equalsIgnoreCase("true")) {
+            return null;
+        }
+        int queueSize = getInt("publishQueueSize", 10000);
+        int batchSize = getInt("publishBatchSize", 100);
+        logger.info("Publishing messages asynchronously (queue size "
+                + queueSize + ", batch size " + batchSize + ")");
+        return new BatchingPublisher(jmsMgr, queueSize, batchSize);
+    }
+
+    private int getInt(String name, int defaultValue)
+            throws ModuleInitializationException {
+        String value = getParameter(name);
+        if (value == null || value.length() == 0) {
+            return defaultValue;
+        }
+        try {
+            int i = Integer.parseInt(value);
+            if (i > 0) {
+                return i;
+            }
+        } catch (NumberFormatException e) {
+        }
+        throw new ModuleInitializationException(name
+                + " must be a positive integer", getRole());
+    }
+
     private DatastoreConfig getDatastore(String name)
             throws ModuleInitializationException {
         String value = getParameter(name);
@@ -4,9 +4,16 @@
  */
 package org.fcrepo.server.oai;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.text.ParseException;
 import java.text.SimpleDateFormat;
 
 import java.util.ArrayList;
+import java.util.Base64;
 import java.util.Collections;
 import java.util.Date;
 import java.util.HashSet;
@@ -25,14 +32,15 @@ import org.fcrepo.oai.MetadataFormat;
 import org.fcrepo.oai.NoMetadataFormatsException;
 import org.fcrepo.oai.NoRecordsMatchException;
 import org.fcrepo.oai.NoSetHierarchyException;
-import org.fcrepo.oai.OAIProvider;
 import org.fcrepo.oai.Record;
 import org.fcrepo.oai.RepositoryException;
+import org.fcrepo.oai.ResumptionToken;
 import org.fcrepo.oai.SetInfo;
 import org.fcrepo.oai.SimpleHeader;
 import org.fcrepo.oai.SimpleMetadataFormat;
 import org.fcrepo.oai.SimpleRecord;
 import org.fcrepo.oai.SimpleResumptionToken;
+import org.fcrepo.oai.StreamingOAIProvider;
 import org.fcrepo.server.errors.ServerException;
 import org.fcrepo.server.errors.UnknownSessionTokenException;
 import org.fcrepo.server.search.Condition;
@@ -40,18 +48,27 @@ import org.fcrepo.server.search.FieldSearch;
 import org.fcrepo.server.search.FieldSearchQuery;
 import org.fcrepo.server.search.FieldSearchResult;
 import org.fcrepo.server.search.ObjectFields;
+import org.fcrepo.server.search.ObjectFieldsHandler;
 import org.fcrepo.server.utilities.DCFields;
+import org.fcrepo.utilities.DateUtility;
 
 
 
 
 /**
  * Simple FieldSearch-based OAI provider.
+ * <p>
+ * ListRecords and ListIdentifiers responses are listed in order of the date
+ * each object's DC datastream was last modified, which is its OAI datestamp,
+ * a page at a time with FieldSearch.listByDCMDate. The resumption token holds
+ * the range and the datestamp and pid of the last item, so harvests can be
+ * resumed for as long as needed, and by any server using the same database.
+ * </p>
  * 
  * @author Chris Wilper
  */
 public class FedoraOAIProvider
-        implements Constants, OAIProvider {
+        implements Constants, StreamingOAIProvider {
 
     private final String m_repositoryName;
 
@@ -430,6 +447,141 @@ public class FedoraOAIProvider
         return ret;
     }
 
+    public ResumptionToken listRecords(Date from,
+                                       Date until,
+                                       String metadataPrefix,
+                                       String set,
+                                       Handler<Record> handler)
+            throws CannotDisseminateFormatException, NoRecordsMatchException,
+            NoSetHierarchyException, RepositoryException {
+        if (!metadataPrefix.equals("oai_dc")) {
+            throw new CannotDisseminateFormatException("Repository does not provide that format in OAI-PMH responses.");
+        }
+        return listRecords(new Harvest(getIndexDate(from, false),
+                                       getIndexDate(until, true)), handler);
+    }
+
+    public ResumptionToken listRecords(String resumptionToken,
+                                       Handler<Record> handler)
+            throws NoRecordsMatchException, BadResumptionTokenException,
+            RepositoryException {
+        return listRecords(Harvest.decode(resumptionToken), handler);
+    }
+
+    private ResumptionToken listRecords(final Harvest harvest,
+                                        final Handler<Record> handler)
+            throws NoRecordsMatchException, RepositoryException {
+        final Set<String> abouts = Collections.emptySet();
+        return list(harvest,
+                    s_headerAndDCFields,
+                    m_maxRecords,
+                    new ObjectFieldsHandler() {
+
+                        public void handle(ObjectFields f) {
+                            harvest.passed(f);
+                            handler.handle(new SimpleRecord(getHeader(f),
+                                                            getDCXML(f),
+                                                            abouts));
+                        }
+                    });
+    }
+
+    public ResumptionToken listHeaders(Date from,
+                                       Date until,
+                                       String metadataPrefix,
+                                       String set,
+                                       Handler<Header> handler)
+            throws CannotDisseminateFormatException, NoRecordsMatchException,
+            NoSetHierarchyException, RepositoryException {
+        if (!metadataPrefix.equals("oai_dc")) {
+            throw new CannotDisseminateFormatException("Repository does not provide that format in OAI-PMH responses.");
+        }
+        return listHeaders(new Harvest(getIndexDate(from, false),
+                                       getIndexDate(until, true)), handler);
+    }
+
+    public ResumptionToken listHeaders(String resumptionToken,
+                                       Handler<Header> handler)
+            throws NoRecordsMatchException, BadResumptionTokenException,
+            RepositoryException {
+        return listHeaders(Harvest.decode(resumptionToken), handler);
+    }
+
+    private ResumptionToken listHeaders(final Harvest harvest,
+                                        final Handler<Header> handler)
+            throws NoRecordsMatchException, RepositoryException {
+        return list(harvest,
+                    s_headerFields,
+                    m_maxHeaders,
+                    new ObjectFieldsHandler() {
+
+                        public void handle(ObjectFields f) {
+                            harvest.passed(f);
+                            handler.handle(getHeader(f));
+                        }
+                    });
+    }
+
+    /**
+     * List the next page of a harvest with the given handler, which must call
+     * Harvest.passed for each object.
+     *
+     * @return the resumption token for the rest of the list. When a resumed
+     *         list is complete, this has no value, as the protocol requires.
+     */
+    private ResumptionToken list(Harvest harvest,
+                                 String[] resultFields,
+                                 long maxResults,
+                                 ObjectFieldsHandler handler)
+            throws NoRecordsMatchException, RepositoryException {
+        long cursor = harvest.cursor;
+        boolean more;
+        try {
+            more =
+                    m_fieldSearch.listByDCMDate(resultFields,
+                                                harvest.from,
+                                                harvest.until,
+                                                harvest.lastDate,
+                                                harvest.lastPid,
+                                                (int) maxResults,
+                                                handler);
+        } catch (ServerException se) {
+            throw new RepositoryException(se.getClass().getName() + ": "
+                    + se.getMessage());
+        }
+        if (harvest.cursor == cursor) {
+            throw new NoRecordsMatchException("No records match the given criteria.");
+        }
+        if (more) {
+            return new SimpleResumptionToken(harvest.encode(), null, -1, cursor);
+        } else if (cursor > 0) {
+            return new SimpleResumptionToken(null, null, -1, cursor);
+        }
+        return null;
+    }
+
+    /**
+     * Get the instant a datestamp from the responder stands for in the
+     * index. The responder parses datestamps in the local time zone, but they
+     * are in UTC. Datestamps are only to the second, so an until date covers
+     * the whole of its second.
+     */
+    private static Date getIndexDate(Date date, boolean isUntil)
+            throws RepositoryException {
+        if (date == null) {
+            return null;
+        }
+        SimpleDateFormat formatter =
+                new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss");
+        try {
+            Date utc = DateUtility.parseDateStrict(formatter.format(date));
+            return isUntil ? new Date(utc.getTime() + 999) : utc;
+        } catch (ParseException pe) {
+            throw new RepositoryException("Error parsing date: "
+                    + pe.getMessage());
+        }
+    }
+
     public List<?> getSets() throws NoSetHierarchyException, RepositoryException {
         return m_setInfos;
     }
@@ -507,4 +659,86 @@ public class FedoraOAIProvider
         return m_maxHeaders;
     }
 
+    /**
+     * Where a ListRecords or ListIdentifiers harvest is up to, and its
+     * encoding as a resumption token.
+     */
+    private static class Harvest {
+
+        /** Incremented if the token format changes. */
+        private static final byte TOKEN_VERSION = 1;
+
+        final Date from;
+
+        final Date until;
+
+        Date lastDate;
+
+        String lastPid;
+
+        long cursor;
+
+        Harvest(Date from, Date until) {
+            this.from = from;
+            this.until = until;
+        }
+
+        /**
+         * Note that an object was listed.
+         */
+        void passed(ObjectFields f) {
+            lastDate = f.getDCMDate();
+            lastPid = f.getPid();
+            cursor++;
+        }
+
+        String encode() throws RepositoryException {
+            try {
+                ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                DataOutputStream out = new DataOutputStream(bytes);
+                out.writeByte(TOKEN_VERSION);
+                out.writeLong(from == null ? -1 : from.getTime());
+                out.writeLong(until == null ? -1 : until.getTime());
+                out.writeLong(lastDate.getTime());
+                out.writeUTF(lastPid);
+                out.writeLong(cursor);
+                out.flush();
+                return Base64.getUrlEncoder().withoutPadding()
+                        .encodeToString(bytes.toByteArray());
+            } catch (IOException e) {
+                // can't happen with a ByteArrayOutputStream
+                throw new RepositoryException("Error encoding resumption "
+                        + "token: " + e.getMessage());
+            }
+        }
+
+        static Harvest decode(String token)
+                throws BadResumptionTokenException {
+            try {
+                DataInputStream in =
+                        new DataInputStream(new ByteArrayInputStream(Base64
+                                .getUrlDecoder().decode(token)));
+                if (in.readByte() != TOKEN_VERSION) {
+                    throw new IOException("Unsupported token version");
+                }
+                long from = in.readLong();
+                long until = in.readLong();
+                Harvest harvest =
+                        new Harvest(from < 0 ? null : new Date(from),
+                                    until < 0 ? null : new Date(until));
+                harvest.lastDate = new Date(in.readLong());
+                harvest.lastPid = in.readUTF();
+                harvest.cursor = in.readLong();
+                if (harvest.cursor < 1) {
+                    throw new IOException("Bad cursor");
+                }
+                return harvest;
+            } catch (IOException e) {
+                throw new BadResumptionTokenException("Not a known resumptionToken.");
+            } catch (IllegalArgumentException e) {
+                throw new BadResumptionTokenException("Not a known resumptionToken.");
+            }
+        }
+    }
+
 }
\ No newline at end of file
@@ -4,9 +4,11 @@
  */
 package org.fcrepo.server.resourceIndex;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
@@ -60,6 +62,12 @@ public class ResourceIndexImpl
      */
     private final boolean _syncUpdates;
 
+    /**
+     * If not null, updates are queued here and applied to the triplestore in
+     * the background.
+     */
+    private final ResourceIndexUpdateQueue _queue;
+
     ////////////////////
     // Initialization //
     ////////////////////
@@ -73,6 +81,44 @@ public class ResourceIndexImpl
         _generator = generator;
         _indexLevel = indexLevel;
         _syncUpdates = syncUpdates;
+        _queue = null;
+    }
+
+    /**
+     * Create a ResourceIndex that writes updates to a durable queue and
+     * applies them to the triplestore in the background, merged into batches.
+     * Any updates left in the queue directory by a previous run are applied
+     * first.
+     *
+     * @param queueDir
+     *        the directory for the queue's log files
+     * @param batchSize
+     *        the number of queued updates that start a batch early
+     * @param maxQueued
+     *        the number of queued updates at which writers wait for the
+     *        triplestore to catch up
+     * @param flushMillis
+     *        the longest an update is queued before it is applied
+     */
+    public ResourceIndexImpl(TriplestoreConnector connector,
+                             TripleGenerator generator,
+                             int indexLevel,
+                             File queueDir,
+                             int batchSize,
+                             int maxQueued,
+                             long flushMillis)
+            throws IOException {
+        _connector = connector;
+        _writer = _connector.getWriter();
+        _generator = generator;
+        _indexLevel = indexLevel;
+        _syncUpdates = false;
+        _queue = new ResourceIndexUpdateQueue(queueDir,
+                                              _writer,
+                                              _connector.getElementFactory(),
+                                              batchSize,
+                                              maxQueued,
+                                              flushMillis);
     }
 
     ///////////////////////////
@@ -159,7 +205,10 @@ public class ResourceIndexImpl
     private void updateTriples(Set<Triple> set, boolean delete)
             throws ResourceIndexException {
         try {
-            if (delete) {
+            if (_queue != null) {
+                enqueue(getTripleIterator(set),
+                        delete ? TripleUpdate.DELETE : TripleUpdate.ADD);
+            } else if (delete) {
                 _writer.delete(getTripleIterator(set), _syncUpdates);
             } else {
                 _writer.add(getTripleIterator(set), _syncUpdates);
@@ -190,6 +239,35 @@ public class ResourceIndexImpl
 
     }
 
+    /**
+     * Durably queues the given triples, as updates of the given type.
+     */
+    private void enqueue(TripleIterator triples, int updateType)
+            throws IOException, TrippiException {
+        List<TripleUpdate> updates = new ArrayList<TripleUpdate>();
+        try {
+            while (triples.hasNext()) {
+                updates.add(new TripleUpdate(triples.next(), updateType));
+            }
+        } finally {
+            triples.close();
+        }
+        _queue.enqueue(updates);
+    }
+
+    /**
+     * Durably queues the given triples, as updates of the given type.
+     */
+    private void enqueue(List<Triple> triples, int updateType)
+            throws IOException {
+        List<TripleUpdate> updates =
+                new ArrayList<TripleUpdate>(triples.size());
+        for (Triple triple : triples) {
+            updates.add(new TripleUpdate(triple, updateType));
+        }
+        _queue.enqueue(updates);
+    }
+
     /**
      * Gets a Trippi TripleIterator for the given set.
      */
@@ -395,6 +473,13 @@ public class ResourceIndexImpl
      * {@inheritDoc}
      */
     public void close() throws TrippiException {
+        if (_queue != null) {
+            try {
+                _queue.close();
+            } catch (IOException e) {
+                throw new TrippiException("Error closing RI update queue", e);
+            }
+        }
         _connector.close();
     }
 
@@ -407,6 +492,10 @@ public class ResourceIndexImpl
      */
     public void add(List<Triple> triples, boolean flush) throws IOException,
             TrippiException {
+        if (_queue != null) {
+            enqueue(triples, TripleUpdate.ADD);
+            return;
+        }
         _writer.add(triples, flush);
     }
 
@@ -415,6 +504,10 @@ public class ResourceIndexImpl
      */
     public void add(TripleIterator triples, boolean flush) throws IOException,
             TrippiException {
+        if (_queue != null) {
+            enqueue(triples, TripleUpdate.ADD);
+            return;
+        }
         _writer.add(triples, flush);
     }
 
@@ -423,6 +516,10 @@ public class ResourceIndexImpl
      */
     public void add(Triple triple, boolean flush) throws IOException,
             TrippiException {
+        if (_queue != null) {
+            enqueue(Collections.singletonList(triple), TripleUpdate.ADD);
+            return;
+        }
         _writer.add(triple, flush);
     }
 
@@ -431,6 +528,10 @@ public class ResourceIndexImpl
      */
     public void delete(List<Triple> triples, boolean flush) throws IOException,
             TrippiException {
+        if (_queue != null) {
+            enqueue(triples, TripleUpdate.DELETE);
+            return;
+        }
         _writer.delete(triples, flush);
     }
 
@@ -439,6 +540,10 @@ public class ResourceIndexImpl
      */
     public void delete(TripleIterator triples, boolean flush)
             throws IOException, TrippiException {
+        if (_queue != null) {
+            enqueue(triples, TripleUpdate.DELETE);
+            return;
+        }
         _writer.delete(triples, flush);
     }
 
@@ -447,6 +552,10 @@ public class ResourceIndexImpl
      */
     public void delete(Triple triple, boolean flush) throws IOException,
             TrippiException {
+        if (_queue != null) {
+            enqueue(Collections.singletonList(triple), TripleUpdate.DELETE);
+            return;
+        }
         _writer.delete(triple, flush);
     }
 
@@ -454,6 +563,9 @@ public class ResourceIndexImpl
      * {@inheritDoc}
      */
     public void flushBuffer() throws IOException, TrippiException {
+        if (_queue != null) {
+            _queue.drain();
+        }
         _writer.flushBuffer();
     }
 
@@ -468,20 +580,37 @@ public class ResourceIndexImpl
      * {@inheritDoc}
      */
     public int getBufferSize() {
+        if (_queue != null) {
+            return _queue.size() + _writer.getBufferSize();
+        }
         return _writer.getBufferSize();
     }
 
     /**
      * {@inheritDoc}
+     * <p>
+     * Updates still in the update queue, if there is one, are included after
+     * those in the writer's buffer.
+     * </p>
      */
     public List<TripleUpdate> findBufferedUpdates(SubjectNode subject,
                                                   PredicateNode predicate,
                                                   ObjectNode object,
                                                   int updateType) {
-        return _writer.findBufferedUpdates(subject,
-                                           predicate,
-                                           object,
-                                           updateType);
+        List<TripleUpdate> buffered =
+                _writer.findBufferedUpdates(subject,
+                                            predicate,
+                                            object,
+                                            updateType);
+        if (_queue == null) {
+            return buffered;
+        }
+        List<TripleUpdate> updates = new ArrayList<TripleUpdate>(buffered);
+        updates.addAll(_queue.findQueuedUpdates(subject,
+                                                predicate,
+                                                object,
+                                                updateType));
+        return updates;
     }
 
 }
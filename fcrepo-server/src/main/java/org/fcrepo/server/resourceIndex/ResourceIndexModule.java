@@ -4,6 +4,7 @@
  */
 package org.fcrepo.server.resourceIndex;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.util.HashMap;
@@ -83,6 +84,22 @@ public class ResourceIndexModule
      * triple buffer before returning from object modification operations.
      * Specifying this as true will ensure that RI queries always reflect the
      * latest triples.</li>
+     * <li> asyncUpdates (optional, default is false)<br> Whether to write
+     * updates to a durable queue, to be applied to the triplestore in
+     * merged batches by a background thread. If true, syncUpdates is
+     * ignored, and RI queries reflect the latest triples once the queue
+     * has caught up.</li>
+     * <li> asyncQueueDir (optional, default is data/ri-queue)<br> Where the
+     * queue's log files are kept; relative paths are relative to
+     * FEDORA_HOME.</li>
+     * <li> asyncBatchSize (optional, default is 10000)<br> The number of
+     * queued updates that will start a batch early.</li>
+     * <li> asyncMaxQueued (optional, default is 100000)<br> The number of
+     * queued updates at which object modification operations wait for the
+     * queue to be applied, so it can't grow without bound while the
+     * triplestore is unavailable. At least asyncBatchSize.</li>
+     * <li> asyncFlushMillis (optional, default is 1000)<br> The longest an
+     * update will wait in the queue.</li>
      * <li> alias:xyz (optional, uri)<br> Any parameter starting with "alias:"
      * will be put into Trippi's alias map, and can be used for queries. For
      * example, alias:xyz with a value of urn:example:long:uri:x:y:z: will make
@@ -98,6 +115,10 @@ public class ResourceIndexModule
             return;
         }
         boolean syncUpdates = getBoolean("syncUpdates", false);
+        boolean asyncUpdates = getBoolean("asyncUpdates", false);
+        if (asyncUpdates && syncUpdates) {
+            logger.warn("syncUpdates is ignored when asyncUpdates is true");
+        }
         try {
             TriplestoreConnector connector = null;
             String ds = getParameter("datastore");
@@ -115,10 +136,26 @@ public class ResourceIndexModule
             TripleGenerator generator =
                 getServer().getBean(TripleGenerator.class.getName(), TripleGenerator.class);
 
-            _ri = new ResourceIndexImpl(connector,
-                                        generator,
-                                        level,
-                                        syncUpdates);
+            if (asyncUpdates) {
+                String dir = getParameter("asyncQueueDir", true);
+                File queueDir =
+                        dir != null ? new File(dir)
+                                : new File(getServer().getHomeDir(),
+                                           "data/ri-queue");
+                logger.info("Queueing RI updates in {}", queueDir.getPath());
+                _ri = new ResourceIndexImpl(connector,
+                                            generator,
+                                            level,
+                                            queueDir,
+                                            getInt("asyncBatchSize", 10000),
+                                            getInt("asyncMaxQueued", 100000),
+                                            getInt("asyncFlushMillis", 1000));
+            } else {
+                _ri = new ResourceIndexImpl(connector,
+                                            generator,
+                                            level,
+                                            syncUpdates);
+            }
             setAliasMap(getAliases());
 
         } catch (Exception e) {
@@ -188,6 +225,25 @@ public class ResourceIndexModule
         }
     }
 
+    private int getInt(String name, int defaultValue)
+            throws ModuleInitializationException {
+        String value = getParameter(name);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            int i = Integer.parseInt(value);
+            if (i < 1) {
+                throw new ModuleInitializationException(name
+                        + " parameter must be positive", getRole());
+            }
+            return i;
+        } catch (NumberFormatException e) {
+            throw new ModuleInitializationException(name
+                    + " parameter must be " + "an integer", getRole());
+        }
+    }
+
     private boolean getBoolean(String name, boolean defaultValue)
             throws ModuleInitializationException {
         String value = getParameter(name);
@@ -0,0 +1,636 @@
+/* The contents of this file are subject to the license and copyright terms
+ * detailed in the license directory at the root of the source tree (also
+ * available online at http://fedora-commons.org/license/).
+ */
+package org.fcrepo.server.resourceIndex;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.URI;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.jrdf.graph.GraphElementFactory;
+import org.jrdf.graph.GraphElementFactoryException;
+import org.jrdf.graph.Literal;
+import org.jrdf.graph.Node;
+import org.jrdf.graph.ObjectNode;
+import org.jrdf.graph.PredicateNode;
+import org.jrdf.graph.SubjectNode;
+import org.jrdf.graph.Triple;
+import org.jrdf.graph.URIReference;
+import org.trippi.TripleUpdate;
+import org.trippi.TriplestoreWriter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+
+/**
+ * A durable queue of triple updates, applied to the triplestore by a
+ * background thread.
+ * <p>
+ * Each call to {@link #enqueue(List)} appends the updates to a log file in the
+ * queue directory, and forces it to disk, before returning. Appends are
+ * serialized, but the force is not: one force covers every append made before
+ * it, so callers enqueueing at the same time share it. The worker thread
+ * takes everything queued so far, merges it so that only the last update to
+ * each triple remains, applies it to the triplestore in one batch and flushes.
+ * Only then are the log files it came from deleted. Adds and deletes are
+ * idempotent, so if the server stops before that, the files are simply
+ * applied again at the next startup.
+ * </p>
+ * <p>
+ * If a batch can't be applied, it is kept and retried. Once maxQueued updates
+ * are queued or being applied, writers wait for the worker to catch up, so
+ * the queue doesn't grow without bound while the triplestore is unavailable.
+ * </p>
+ *
+ */
+class ResourceIndexUpdateQueue
+        implements Runnable {
+
+    private static final Logger logger =
+            LoggerFactory.getLogger(ResourceIndexUpdateQueue.class);
+
+    private static final String FILE_PREFIX = "ri-updates-";
+
+    private static final String FILE_SUFFIX = ".log";
+
+    private static final int URI_NODE = 0;
+
+    private static final int PLAIN_LITERAL = 1;
+
+    private static final int LANGUAGE_LITERAL = 2;
+
+    private static final int TYPED_LITERAL = 3;
+
+    private static final long RETRY_MILLIS = 5000;
+
+    private final File _dir;
+
+    private final TriplestoreWriter _writer;
+
+    private final GraphElementFactory _factory;
+
+    private final int _batchSize;
+
+    private final int _maxQueued;
+
+    private final long _flushMillis;
+
+    private final Object _lock = new Object();
+
+    /** Held while the log file is forced, so callers can share a force. */
+    private final Object _syncLock = new Object();
+
+    /** Held while a batch is applied, so batches are applied in order. */
+    private final Object _applyLock = new Object();
+
+    /** Queued updates that the worker has not taken yet. */
+    private List<TripleUpdate> _pending = new ArrayList<TripleUpdate>();
+
+    /** The updates the worker is applying now. */
+    private List<TripleUpdate> _applying = Collections.emptyList();
+
+    private int _fileNumber;
+
+    private FileOutputStream _fileOut;
+
+    /** The length of the current log file up to the last complete append. */
+    private long _fileLength;
+
+    /** The number of appends made, and the number known to be on disk. */
+    private long _appended;
+
+    private long _synced;
+
+    /** Set if an append failed and could not be undone. */
+    private IOException _writeFailure;
+
+    private boolean _closed;
+
+    private Thread _worker;
+
+    /**
+     * Open the queue, reading back any updates that were queued but not
+     * applied before the last shutdown, and start the worker thread.
+     *
+     * @param dir
+     *        the directory for the log files
+     * @param writer
+     *        where the updates are applied
+     * @param factory
+     *        used to re-create the triples read from the log files
+     * @param batchSize
+     *        how many updates wake the worker before flushMillis has passed
+     * @param maxQueued
+     *        how many updates may be queued or applied before enqueue() waits;
+     *        at least batchSize
+     * @param flushMillis
+     *        the most time an update will wait before the worker applies it
+     */
+    ResourceIndexUpdateQueue(File dir,
+                             TriplestoreWriter writer,
+                             GraphElementFactory factory,
+                             int batchSize,
+                             int maxQueued,
+                             long flushMillis)
+            throws IOException {
+        _dir = dir;
+        _writer = writer;
+        _factory = factory;
+        _batchSize = batchSize;
+        _maxQueued = Math.max(maxQueued, batchSize);
+        _flushMillis = flushMillis;
+        if (!_dir.isDirectory() && !_dir.mkdirs()) {
+            throw new IOException("Unable to create RI update queue directory "
+                    + _dir.getPath());
+        }
+        for (File file : listFiles()) {
+            read(file, _pending);
+            _fileNumber = Math.max(_fileNumber, getNumber(file));
+        }
+        if (_pending.size() > 0) {
+            logger.info("Found {} unapplied RI updates in {}",
+                        _pending.size(), _dir.getPath());
+        }
+        openNextFile();
+        _worker = new Thread(this, "ResourceIndexUpdateQueue");
+        _worker.setDaemon(true);
+        _worker.start();
+    }
+
+    /**
+     * Durably queue some updates. When this returns, the updates will be
+     * applied, even if the server stops first. If the queue is full, wait
+     * until the worker has applied what is in it.
+     */
+    void enqueue(List<TripleUpdate> updates) throws IOException {
+        if (updates.isEmpty()) {
+            return;
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(updates.size());
+        for (TripleUpdate update : updates) {
+            write(out, update);
+        }
+        out.flush();
+
+        long appended;
+        synchronized (_lock) {
+            while (!_closed && isFull(updates.size())) {
+                try {
+                    _lock.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted waiting for "
+                            + "space in the RI update queue");
+                }
+            }
+            if (_closed) {
+                throw new IOException("RI update queue is closed");
+            }
+            if (_writeFailure != null) {
+                throw new IOException("RI update queue is unusable after a "
+                        + "failed write", _writeFailure);
+            }
+            try {
+                _fileOut.write(bytes.toByteArray());
+            } catch (IOException e) {
+                discardPartialAppend(e);
+                throw e;
+            }
+            _fileLength += bytes.size();
+            appended = ++_appended;
+            _pending.addAll(updates);
+            if (_pending.size() >= _batchSize) {
+                _lock.notifyAll();
+            }
+        }
+        sync(appended);
+    }
+
+    /**
+     * Whether adding the given number of updates would put more than
+     * maxQueued in memory. An empty queue takes any number, so a large group
+     * of updates can't wait forever. Call with the queue locked.
+     */
+    private boolean isFull(int adding) {
+        int size = _pending.size() + _applying.size();
+        return size > 0 && size + adding > _maxQueued;
+    }
+
+    /**
+     * Cut the log file back to the end of the last complete append, so that
+     * later appends aren't read as part of the failed one. If that fails too,
+     * refuse any more appends. Call with the queue locked.
+     */
+    private void discardPartialAppend(IOException cause) {
+        try {
+            _fileOut.getChannel().truncate(_fileLength);
+        } catch (IOException e) {
+            logger.error("Unable to truncate RI update queue file after a "
+                    + "failed write; no more updates will be queued", e);
+            _writeFailure = cause;
+        }
+    }
+
+    /**
+     * Wait until the given append is on disk, forcing the log file unless a
+     * force started since then has already covered it.
+     */
+    private void sync(long appended) throws IOException {
+        synchronized (_syncLock) {
+            FileChannel channel;
+            long upTo;
+            synchronized (_lock) {
+                if (_synced >= appended) {
+                    return;
+                }
+                channel = _fileOut.getChannel();
+                upTo = _appended;
+            }
+            try {
+                channel.force(false);
+            } catch (ClosedChannelException e) {
+                // the file was rotated, and forced as it was closed
+                synchronized (_lock) {
+                    if (_synced < appended) {
+                        throw e;
+                    }
+                }
+                return;
+            }
+            synchronized (_lock) {
+                _synced = Math.max(_synced, upTo);
+            }
+        }
+    }
+
+    /**
+     * Get the queued updates that match the given pattern and have not yet
+     * been passed to the triplestore writer, oldest first.
+     */
+    List<TripleUpdate> findQueuedUpdates(SubjectNode subject,
+                                         PredicateNode predicate,
+                                         ObjectNode object,
+                                         int updateType) {
+        List<TripleUpdate> result = new ArrayList<TripleUpdate>();
+        synchronized (_lock) {
+            for (List<TripleUpdate> updates : Arrays.asList(_applying, _pending)) {
+                for (TripleUpdate update : updates) {
+                    Triple t = update.triple;
+                    if (update.type == updateType
+                            && (subject == null || subject.equals(t.getSubject()))
+                            && (predicate == null || predicate.equals(t.getPredicate()))
+                            && (object == null || object.equals(t.getObject()))) {
+                        result.add(update);
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Get the number of updates queued or being applied.
+     */
+    int size() {
+        synchronized (_lock) {
+            return _pending.size() + _applying.size();
+        }
+    }
+
+    /**
+     * Apply everything queued so far, in the calling thread, waiting for the
+     * worker to finish any batch it is applying.
+     */
+    void drain() throws IOException {
+        if (!applyPending()) {
+            throw new IOException("Unable to apply queued RI updates");
+        }
+    }
+
+    /**
+     * Stop the worker, applying anything still queued if possible. Updates
+     * that can't be applied stay in the log files.
+     */
+    void close() throws IOException {
+        synchronized (_lock) {
+            _closed = true;
+            _lock.notifyAll();
+        }
+        try {
+            _worker.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        applyPending();
+        synchronized (_lock) {
+            closeFile();
+        }
+    }
+
+    public void run() {
+        while (true) {
+            try {
+                synchronized (_lock) {
+                    if (!_closed && _pending.size() < _batchSize) {
+                        _lock.wait(_flushMillis);
+                    }
+                    if (_closed) {
+                        return;
+                    }
+                }
+                if (!applyPending()) {
+                    synchronized (_lock) {
+                        if (!_closed) {
+                            _lock.wait(RETRY_MILLIS);
+                        }
+                    }
+                }
+            } catch (InterruptedException e) {
+                return;
+            } catch (IOException e) {
+                logger.error("Error rotating RI update queue file", e);
+            }
+        }
+    }
+
+    /**
+     * Take the pending updates, start a new log file, and apply them. The
+     * queue isn't locked while the updates are applied, so enqueue() doesn't
+     * wait for the triplestore.
+     *
+     * @return whether the updates were applied.
+     */
+    private boolean applyPending() throws IOException {
+        synchronized (_applyLock) {
+            List<TripleUpdate> batch;
+            int firstUnapplied;
+            synchronized (_lock) {
+                if (_pending.isEmpty()) {
+                    return true;
+                }
+                closeFile();
+                batch = _pending;
+                _applying = batch;
+                _pending = new ArrayList<TripleUpdate>();
+                firstUnapplied = openNextFile();
+            }
+
+            boolean applied = false;
+            try {
+                apply(batch);
+                applied = true;
+            } catch (Exception e) {
+                logger.error("Error applying " + batch.size()
+                        + " queued RI updates; will retry", e);
+            }
+
+            synchronized (_lock) {
+                if (applied) {
+                    for (File file : listFiles()) {
+                        if (getNumber(file) < firstUnapplied && !file.delete()) {
+                            logger.warn("Unable to delete applied RI update "
+                                    + "file {}", file.getPath());
+                        }
+                    }
+                    // wake any writers waiting for space
+                    _lock.notifyAll();
+                } else {
+                    // put them back in front of anything queued meanwhile;
+                    // they are still in the old log files
+                    List<TripleUpdate> retry =
+                            new ArrayList<TripleUpdate>(batch);
+                    retry.addAll(_pending);
+                    _pending = retry;
+                }
+                _applying = Collections.emptyList();
+            }
+            return applied;
+        }
+    }
+
+    /**
+     * Merge the updates so only the last update to each triple remains, and
+     * apply them.
+     */
+    private void apply(List<TripleUpdate> batch) throws Exception {
+        Map<String, TripleUpdate> merged =
+                new LinkedHashMap<String, TripleUpdate>();
+        for (TripleUpdate update : batch) {
+            String key = getKey(update.triple);
+            // remove first, so the map keeps the order of the last updates
+            merged.remove(key);
+            merged.put(key, update);
+        }
+        List<Triple> adds = new ArrayList<Triple>();
+        List<Triple> deletes = new ArrayList<Triple>();
+        for (TripleUpdate update : merged.values()) {
+            if (update.type == TripleUpdate.DELETE) {
+                deletes.add(update.triple);
+            } else {
+                adds.add(update.triple);
+            }
+        }
+        logger.debug("Applying {} queued RI updates as {} deletes and {} adds",
+                     new Object[] {batch.size(), deletes.size(), adds.size()});
+        if (!deletes.isEmpty()) {
+            _writer.delete(deletes, false);
+        }
+        if (!adds.isEmpty()) {
+            _writer.add(adds, false);
+        }
+        _writer.flushBuffer();
+    }
+
+    private int openNextFile() throws IOException {
+        _fileNumber++;
+        File file = new File(_dir, FILE_PREFIX + _fileNumber + FILE_SUFFIX);
+        _fileOut = new FileOutputStream(file);
+        _fileLength = 0;
+        return _fileNumber;
+    }
+
+    /**
+     * Force and close the current log file, so appends to it that are still
+     * waiting for a force are on disk. Call with the queue locked.
+     */
+    private void closeFile() throws IOException {
+        if (_synced < _appended) {
+            _fileOut.getChannel().force(false);
+            _synced = _appended;
+        }
+        _fileOut.close();
+    }
+
+    private File[] listFiles() {
+        File[] files = _dir.listFiles();
+        List<File> result = new ArrayList<File>();
+        if (files != null) {
+            for (File file : files) {
+                if (getNumber(file) > 0) {
+                    result.add(file);
+                }
+            }
+        }
+        File[] sorted = result.toArray(new File[result.size()]);
+        Arrays.sort(sorted, new Comparator<File>() {
+
+            public int compare(File a, File b) {
+                return getNumber(a) - getNumber(b);
+            }
+        });
+        return sorted;
+    }
+
+    private static int getNumber(File file) {
+        String name = file.getName();
+        if (!name.startsWith(FILE_PREFIX) || !name.endsWith(FILE_SUFFIX)) {
+            return 0;
+        }
+        try {
+            return Integer.parseInt(name.substring(FILE_PREFIX.length(),
+                                                   name.length()
+                                                           - FILE_SUFFIX.length()));
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * Read the updates in a log file. A group of updates that was only
+     * partly written (the server stopped while enqueueing it) is ignored; it
+     * was never acknowledged.
+     */
+    private void read(File file, List<TripleUpdate> updates)
+            throws IOException {
+        DataInputStream in =
+                new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+        try {
+            while (true) {
+                int count;
+                try {
+                    count = in.readInt();
+                } catch (EOFException e) {
+                    return;
+                }
+                List<TripleUpdate> group = new ArrayList<TripleUpdate>(count);
+                try {
+                    for (int i = 0; i < count; i++) {
+                        group.add(readUpdate(in));
+                    }
+                } catch (EOFException e) {
+                    logger.warn("Ignoring incomplete RI updates at the end of "
+                            + file.getPath());
+                    return;
+                }
+                updates.addAll(group);
+            }
+        } catch (GraphElementFactoryException e) {
+            throw new IOException("Error reading RI update file "
+                    + file.getPath() + ": " + e.getMessage());
+        } finally {
+            in.close();
+        }
+    }
+
+    private static void write(DataOutputStream out, TripleUpdate update)
+            throws IOException {
+        Triple t = update.triple;
+        out.writeByte(update.type);
+        writeString(out, ((URIReference) t.getSubject()).getURI().toString());
+        writeString(out, ((URIReference) t.getPredicate()).getURI().toString());
+        Node o = t.getObject();
+        if (o instanceof URIReference) {
+            out.writeByte(URI_NODE);
+            writeString(out, ((URIReference) o).getURI().toString());
+        } else {
+            Literal l = (Literal) o;
+            if (l.getDatatypeURI() != null) {
+                out.writeByte(TYPED_LITERAL);
+                writeString(out, l.getLexicalForm());
+                writeString(out, l.getDatatypeURI().toString());
+            } else if (l.getLanguage() != null && l.getLanguage().length() > 0) {
+                out.writeByte(LANGUAGE_LITERAL);
+                writeString(out, l.getLexicalForm());
+                writeString(out, l.getLanguage());
+            } else {
+                out.writeByte(PLAIN_LITERAL);
+                writeString(out, l.getLexicalForm());
+            }
+        }
+    }
+
+    private TripleUpdate readUpdate(DataInputStream in) throws IOException,
+            GraphElementFactoryException {
+        int type = in.readByte();
+        URIReference s = _factory.createResource(URI.create(readString(in)));
+        URIReference p = _factory.createResource(URI.create(readString(in)));
+        ObjectNode o;
+        int nodeType = in.readByte();
+        if (nodeType == URI_NODE) {
+            o = _factory.createResource(URI.create(readString(in)));
+        } else if (nodeType == TYPED_LITERAL) {
+            String lex = readString(in);
+            o = _factory.createLiteral(lex, URI.create(readString(in)));
+        } else if (nodeType == LANGUAGE_LITERAL) {
+            String lex = readString(in);
+            o = _factory.createLiteral(lex, readString(in));
+        } else {
+            o = _factory.createLiteral(readString(in));
+        }
+        return new TripleUpdate(_factory.createTriple(s, p, o), type);
+    }
+
+    /** Like writeUTF, but not limited to 64K. */
+    private static void writeString(DataOutputStream out, String s)
+            throws IOException {
+        byte[] bytes = s.getBytes("UTF-8");
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, "UTF-8");
+    }
+
+    private static String getKey(Triple t) {
+        StringBuilder key = new StringBuilder();
+        key.append(((URIReference) t.getSubject()).getURI()).append(' ');
+        key.append(((URIReference) t.getPredicate()).getURI()).append(' ');
+        Node o = t.getObject();
+        if (o instanceof URIReference) {
+            key.append('<').append(((URIReference) o).getURI()).append('>');
+        } else {
+            Literal l = (Literal) o;
+            key.append('"').append(l.getLexicalForm()).append('"');
+            if (l.getDatatypeURI() != null) {
+                key.append("^^").append(l.getDatatypeURI());
+            } else if (l.getLanguage() != null) {
+                key.append('@').append(l.getLanguage());
+            }
+        }
+        return key.toString();
+    }
+
+}
@@ -0,0 +1,199 @@
+/* The contents of this file are subject to the license and copyright terms
+ * detailed in the license directory at the root of the source tree (also
+ * available online at http://fedora-commons.org/license/).
+ */
+package org.fcrepo.server.search;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import org.fcrepo.server.errors.ServerException;
+import org.fcrepo.server.errors.StorageDeviceException;
+import org.fcrepo.server.storage.ConnectionPool;
+import org.fcrepo.server.storage.RepositoryReader;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Lists objects in order of the date their DC datastream was last modified,
+ * and then pid, as needed for selective harvesting.
+ * <p>
+ * Each call lists one page, with a query on doFields.dcmDate for the objects
+ * after the (dcmDate, pid) of the last object on the previous page, so nothing
+ * is kept between pages and each one costs the same however far into the list
+ * it is. When all of the result fields can be taken from doFields, the page
+ * is read from the result set. Otherwise only the pids and dates of the page
+ * are read first, and the objects are read one at a time afterwards. Either
+ * way, the objects are only given to the handler once the connection is back
+ * in the pool, so a slow handler doesn't hold it.
+ * </p>
+ */
+class DCMDateHarvest {
+
+    private static final Logger logger =
+            LoggerFactory.getLogger(DCMDateHarvest.class);
+
+    private DCMDateHarvest() {
+    }
+
+    /**
+     * List one page of objects.
+     *
+     * @param from
+     *        the earliest dcmDate to list, or null
+     * @param until
+     *        the latest dcmDate to list, or null
+     * @param afterDate
+     *        the dcmDate of the last object on the previous page, or null if
+     *        this is the first page
+     * @param afterPid
+     *        the pid of the last object on the previous page, or null if this
+     *        is the first page
+     * @param maxResults
+     *        the most objects to list
+     * @return whether there are more objects after the last one listed
+     */
+    static boolean list(ConnectionPool cPool,
+                        RepositoryReader repoReader,
+                        String[] resultFields,
+                        Date from,
+                        Date until,
+                        Date afterDate,
+                        String afterPid,
+                        int maxResults,
+                        ObjectFieldsHandler handler) throws ServerException {
+        boolean project = FieldSearchResultSQLImpl.canProject(resultFields);
+        boolean after = afterDate != null && afterPid != null;
+        String queryText =
+                getQueryText(from != null,
+                             until != null,
+                             after,
+                             project ? resultFields : null);
+        List<ObjectFields> page = new ArrayList<ObjectFields>();
+        List<String> pids = new ArrayList<String>();
+        List<Long> dates = new ArrayList<Long>();
+        boolean more = false;
+        Connection conn = null;
+        PreparedStatement st = null;
+        ResultSet results = null;
+        try {
+            conn = cPool.getReadOnlyConnection();
+            st = conn.prepareStatement(queryText);
+            st.setMaxRows(maxResults + 1);
+            int i = 1;
+            if (from != null) {
+                st.setLong(i++, from.getTime());
+            }
+            if (until != null) {
+                st.setLong(i++, until.getTime());
+            }
+            if (after) {
+                st.setLong(i++, afterDate.getTime());
+                st.setLong(i++, afterDate.getTime());
+                st.setString(i++, afterPid);
+            }
+            results = st.executeQuery();
+            int count = 0;
+            while (results.next()) {
+                if (count++ == maxResults) {
+                    more = true;
+                    break;
+                }
+                if (project) {
+                    ObjectFields f =
+                            FieldSearchResultSQLImpl
+                                    .getObjectFields(results, resultFields);
+                    setKey(f, results.getString(1), results.getLong(2));
+                    page.add(f);
+                } else {
+                    pids.add(results.getString(1));
+                    dates.add(results.getLong(2));
+                }
+            }
+        } catch (SQLException sqle) {
+            throw new StorageDeviceException("Error with sql database. "
+                    + sqle.getMessage(), sqle);
+        } finally {
+            try {
+                if (results != null) {
+                    results.close();
+                }
+                if (st != null) {
+                    st.close();
+                }
+            } catch (SQLException sqle) {
+                logger.warn("Error closing statement or result set", sqle);
+            } finally {
+                if (conn != null) {
+                    cPool.free(conn);
+                }
+            }
+        }
+        for (ObjectFields f : page) {
+            handler.handle(f);
+        }
+        for (int i = 0; i < pids.size(); i++) {
+            ObjectFields f =
+                    FieldSearchResultSQLImpl.getObjectFields(repoReader,
+                                                             resultFields,
+                                                             pids.get(i));
+            setKey(f, pids.get(i), dates.get(i));
+            handler.handle(f);
+        }
+        return more;
+    }
+
+    /**
+     * The pid and dcmDate are always given, and from the index, so that the
+     * caller can say where the next page starts.
+     */
+    private static void setKey(ObjectFields f, String pid, long dcmDate) {
+        f.setPid(pid);
+        f.setDCMDate(new Date(dcmDate));
+    }
+
+    /**
+     * Get the text of the query for a page. Its parameters are, in order and
+     * if wanted, the from date, the until date, and the date (twice) and pid
+     * of the last object on the previous page. Objects without a DC datastream
+     * are never selected.
+     *
+     * @param projectedFields
+     *        the result fields to select, or null to select only the pid and
+     *        dcmDate
+     */
+    static String getQueryText(boolean from,
+                               boolean until,
+                               boolean after,
+                               String[] projectedFields) {
+        StringBuilder qt =
+                new StringBuilder("SELECT doFields.pid, doFields.dcmDate");
+        if (projectedFields != null) {
+            for (String field : projectedFields) {
+                if (!field.equals("pid") && !field.equals("dcmDate")) {
+                    qt.append(", doFields.").append(field);
+                }
+            }
+        }
+        qt.append(" FROM doFields WHERE doFields.dcmDate > 0");
+        if (from) {
+            qt.append(" AND doFields.dcmDate >= ?");
+        }
+        if (until) {
+            qt.append(" AND doFields.dcmDate <= ?");
+        }
+        if (after) {
+            qt.append(" AND (doFields.dcmDate > ?"
+                    + " OR (doFields.dcmDate = ? AND doFields.pid > ?))");
+        }
+        qt.append(" ORDER BY doFields.dcmDate, doFields.pid");
+        logger.debug(qt.toString());
+        return qt.toString();
+    }
+
+}
@@ -4,6 +4,8 @@
  */
 package org.fcrepo.server.search;
 
+import java.util.Date;
+
 import org.fcrepo.server.errors.ServerException;
 import org.fcrepo.server.storage.DOReader;
 
@@ -79,4 +81,40 @@ public interface FieldSearch {
     public FieldSearchResult resumeFindObjects(String sessionToken)
             throws ServerException;
 
+    /**
+     * Pass the objects whose DC datastream was last modified within a range
+     * to a handler, one at a time as they are read, in order of that date and
+     * then pid. One page is listed per call; the next page starts after the
+     * dcmDate and pid of the last object passed, which are always given
+     * whatever the result fields.
+     * 
+     * @param resultFields
+     *        the desired fields
+     * @param from
+     *        the earliest dcmDate to list, or null
+     * @param until
+     *        the latest dcmDate to list, or null
+     * @param afterDate
+     *        the dcmDate of the last object of the previous page, or null to
+     *        start at the beginning
+     * @param afterPid
+     *        the pid of the last object of the previous page, or null to start
+     *        at the beginning
+     * @param maxResults
+     *        the maximum number of objects the client wants
+     * @param handler
+     *        receives each object
+     * @return true if there are more objects in the range
+     * @throws ServerException
+     *         if anything went wrong, including in the handler
+     */
+    public boolean listByDCMDate(String[] resultFields,
+                                 Date from,
+                                 Date until,
+                                 Date afterDate,
+                                 String afterPid,
+                                 int maxResults,
+                                 ObjectFieldsHandler handler)
+            throws ServerException;
+
 }
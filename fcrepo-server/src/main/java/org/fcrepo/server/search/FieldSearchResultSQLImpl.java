@@ -12,8 +12,11 @@ import java.sql.SQLException;
 import java.text.ParseException;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Date;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -51,6 +54,15 @@ public class FieldSearchResultSQLImpl
     private static final Logger logger =
             LoggerFactory.getLogger(FieldSearchResultSQLImpl.class);
 
+    /**
+     * The result fields whose values are kept as-is in doFields, and so can be
+     * returned without reading the object. The others are stored in lowercase
+     * (and repeated DC values are run together) for searching, so they can't.
+     */
+    private static final Set<String> PROJECTED_FIELDS =
+            new HashSet<String>(Arrays.asList("pid", "state", "cDate",
+                                              "mDate", "dcmDate"));
+
     /* fields supporting public accessors */
     private ArrayList<ObjectFields> m_objectFields;
 
@@ -77,6 +89,8 @@ public class FieldSearchResultSQLImpl
 
     private final int m_maxSeconds;
 
+    private final boolean m_project;
+
     private long m_startMillis;
 
     /* internal state */
@@ -124,11 +138,12 @@ public class FieldSearchResultSQLImpl
         m_resultFields = resultFields;
         m_maxResults = maxResults;
         m_maxSeconds = maxSeconds;
+        m_project = canProject(resultFields);
         m_conn = m_cPool.getReadOnlyConnection();
         boolean success = false;
         try {
             m_statement = m_conn.prepareStatement(logAndGetQueryText(query,
-                    m_resultFields));
+                    m_resultFields, m_project));
             m_resultSet =
                     m_statement.executeQuery(); //2004.05.02 wdn5e
             success = true;
@@ -155,11 +170,20 @@ public class FieldSearchResultSQLImpl
     }
 
     //2004.05.02 wdn5e -- sort on selected fields
-    private String logAndGetQueryText(FieldSearchQuery query,
-                                      String[] resultFields) //2004.05.02 wdn5e
+    private static String logAndGetQueryText(FieldSearchQuery query,
+                                      String[] resultFields, //2004.05.02 wdn5e
+                                      boolean project)
             throws SQLException, QueryParseException {
         StringBuffer queryText = new StringBuffer("SELECT");
-        if (query.getType() == FieldSearchQuery.TERMS_TYPE) {
+        if (project) {
+            queryText.append(getProjectedColumns(resultFields));
+            queryText.append(" FROM doFields");
+            if (query.getType() == FieldSearchQuery.TERMS_TYPE) {
+                queryText.append(getWhereClause(query.getTerms()));
+            } else {
+                queryText.append(getWhereClause(query.getConditions()));
+            }
+        } else if (query.getType() == FieldSearchQuery.TERMS_TYPE) {
             queryText.append(" doFields.pid FROM doFields"
                     + getWhereClause(query.getTerms()));
         } else {
@@ -185,7 +209,7 @@ public class FieldSearchResultSQLImpl
         return qt;
     }
 
-    private String getWhereClause(String terms) throws QueryParseException {
+    private static String getWhereClause(String terms) throws QueryParseException {
         StringBuffer whereClause = new StringBuffer();
         if (!terms.equals("*") && !terms.isEmpty()) {
             whereClause.append(" WHERE");
@@ -221,7 +245,7 @@ public class FieldSearchResultSQLImpl
         return whereClause.toString();
     }
 
-    private String getWhereClause(List<Condition> conditions) throws QueryParseException {
+    private static String getWhereClause(List<Condition> conditions) throws QueryParseException {
         StringBuffer whereClause = new StringBuffer();
         boolean willJoin = false;
         if (conditions.size() > 0) {
@@ -338,6 +362,64 @@ public class FieldSearchResultSQLImpl
         return whereClause.toString();
     }
 
+    /**
+     * Get the text of a query for one page of results, in pid order, starting
+     * after a given pid. The query selects only the pid, and has a single
+     * parameter (the last pid of the previous page) unless this is the first
+     * page. The caller is expected to limit the number of rows returned.
+     *
+     * @param query
+     *        the end-user query
+     * @param afterPid
+     *        whether the query should only return pids after the one given as
+     *        its parameter
+     */
+    static String getKeysetQueryText(FieldSearchQuery query, boolean afterPid)
+            throws QueryParseException {
+        return getKeysetQueryText(query, null, afterPid);
+    }
+
+    /**
+     * Get the text of a keyset query that also selects the columns for the
+     * given result fields. See canProject(String[]).
+     *
+     * @param projectedFields
+     *        the result fields to select, or null to select only the pid
+     */
+    static String getKeysetQueryText(FieldSearchQuery query,
+                                     String[] projectedFields,
+                                     boolean afterPid)
+            throws QueryParseException {
+        String whereClause;
+        if (query.getType() == FieldSearchQuery.TERMS_TYPE) {
+            whereClause = getWhereClause(query.getTerms());
+            if (afterPid && whereClause.length() > 0) {
+                // terms are OR'd together, so they must be grouped
+                whereClause = " WHERE ("
+                        + whereClause.substring(" WHERE".length()).trim()
+                        + ")";
+            }
+        } else {
+            whereClause = getWhereClause(query.getConditions());
+        }
+        if (afterPid) {
+            if (whereClause.indexOf(" WHERE") == -1) {
+                whereClause += " WHERE doFields.pid > ?";
+            } else {
+                whereClause += " AND doFields.pid > ?";
+            }
+        }
+        // a join on dcDates can repeat a pid
+        String select = whereClause.startsWith(" LEFT JOIN")
+                ? "SELECT DISTINCT" : "SELECT";
+        String columns = projectedFields == null
+                ? " doFields.pid" : getProjectedColumns(projectedFields);
+        String qt = select + columns + " FROM doFields" + whereClause
+                + " ORDER BY doFields.pid";
+        logger.debug(qt);
+        return qt;
+    }
+
     protected boolean isExpired() {
         long passedSeconds =
                 (System.currentTimeMillis() - m_startMillis) / 1000;
@@ -394,7 +476,16 @@ public class FieldSearchResultSQLImpl
                     pid = m_nextPID;
                     m_nextPID = null;
                 }
-                m_objectFields.add(getObjectFields(pid));
+                if (m_project) {
+                    // the cursor is on this pid's row, even if it was
+                    // read in the previous chunk
+                    m_objectFields.add(getObjectFields(m_resultSet,
+                                                       m_resultFields));
+                } else {
+                    m_objectFields.add(getObjectFields(m_repoReader,
+                                                       m_resultFields,
+                                                       pid));
+                }
             }
             // done with this block. now, are there more results?
             if (resultCount == m_maxResults && m_resultSet.next()) {
@@ -461,6 +552,10 @@ public class FieldSearchResultSQLImpl
      * For the given pid, get a reader on the object from the repository and
      * return an ObjectFields object with resultFields fields populated.
      *
+     * @param repoReader
+     *        the provider of object field information
+     * @param resultFields
+     *        which fields should be populated
      * @param pid
      *        the unique identifier of the object for which the information is
      *        requested.
@@ -478,14 +573,16 @@ public class FieldSearchResultSQLImpl
      *         if any other kind of error occurs while reading the underlying
      *         object
      */
-    private ObjectFields getObjectFields(String pid)
+    static ObjectFields getObjectFields(RepositoryReader repoReader,
+                                        String[] resultFields,
+                                        String pid)
             throws UnrecognizedFieldException, ObjectIntegrityException,
             RepositoryConfigurationException, StreamIOException,
             ServerException {
         DOReader r =
-                m_repoReader.getReader(Server.USE_DEFINITIVE_STORE,
-                                       ReadOnlyContext.EMPTY,
-                                       pid);
+                repoReader.getReader(Server.USE_DEFINITIVE_STORE,
+                                     ReadOnlyContext.EMPTY,
+                                     pid);
         ObjectFields f;
         // If there's a DC record available, use SAX to parse the most
         // recent version of it into f.
@@ -497,9 +594,9 @@ public class FieldSearchResultSQLImpl
                     + " has a DC datastream, but it's not inline XML.");
         }
         if (dcmd != null) {
-            f = new ObjectFields(m_resultFields, dcmd.getContentStream());
+            f = new ObjectFields(resultFields, dcmd.getContentStream());
             // add dcmDate if wanted
-            for (String element : m_resultFields) {
+            for (String element : resultFields) {
                 if (element.equals("dcmDate")) {
                     f.setDCMDate(dcmd.DSCreateDT);
                 }
@@ -509,7 +606,7 @@ public class FieldSearchResultSQLImpl
         }
         // add non-dc values from doReader for the others in m_resultFields[]
         //        Disseminator[] disses=null;
-        for (String n : m_resultFields) {
+        for (String n : resultFields) {
             if (n.equals("pid")) {
                 f.setPid(pid);
             }
@@ -532,6 +629,63 @@ public class FieldSearchResultSQLImpl
         return f;
     }
 
+    /**
+     * Tell whether all of the given result fields can be taken from doFields,
+     * without reading the objects.
+     */
+    static boolean canProject(String[] resultFields) {
+        for (String field : resultFields) {
+            if (!PROJECTED_FIELDS.contains(field)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Get the select list for the given projected result fields. The pid is
+     * always selected, and comes first.
+     */
+    private static String getProjectedColumns(String[] resultFields) {
+        StringBuilder columns = new StringBuilder(" doFields.pid");
+        for (String field : resultFields) {
+            if (!field.equals("pid")) {
+                columns.append(", doFields.").append(field);
+            }
+        }
+        return columns.toString();
+    }
+
+    /**
+     * Get an ObjectFields with the given result fields populated from the
+     * current row of a result set, as selected with getProjectedColumns().
+     * All of the fields must be ones for which canProject(String[]) is true.
+     */
+    static ObjectFields getObjectFields(ResultSet results,
+                                        String[] resultFields)
+            throws SQLException {
+        ObjectFields f = new ObjectFields();
+        for (String n : resultFields) {
+            if (n.equals("pid")) {
+                f.setPid(results.getString("pid"));
+            } else if (n.equals("state")) {
+                // stored in lowercase, but always a single letter
+                f.setState(results.getString("state").toUpperCase());
+            } else if (n.equals("cDate")) {
+                f.setCDate(new Date(results.getLong("cDate")));
+            } else if (n.equals("mDate")) {
+                f.setMDate(new Date(results.getLong("mDate")));
+            } else if (n.equals("dcmDate")) {
+                // zero or null if there is no DC datastream
+                long dcmDate = results.getLong("dcmDate");
+                if (dcmDate != 0) {
+                    f.setDCMDate(new Date(dcmDate));
+                }
+            }
+        }
+        return f;
+    }
+
     public List<ObjectFields> objectFieldsList() {
         return m_objectFields;
     }
@@ -57,6 +57,9 @@ public class FieldSearchSQLImpl
 
     private final int m_maxSecondsPerSession;
 
+    /** Whether sessions are stateless, keyset-paginated ones. */
+    private final boolean m_keysetPagination;
+
     public static String[] DB_COLUMN_NAMES =
             new String[] {"pid", "label", "state", "ownerId", "cDate", "mDate",
                     "dcmDate", "dcTitle", "dcCreator", "dcSubject",
@@ -129,12 +132,48 @@ public class FieldSearchSQLImpl
                               int maxResults,
                               int maxSecondsPerSession,
                               boolean indexDCFields) throws ModuleInitializationException {
+        this(cPool, repoReader, maxResults, maxSecondsPerSession, indexDCFields, false);
+    }
+
+    /**
+     * Construct a FieldSearchSQLImpl, specifying how search sessions are kept.
+     *
+     * @param cPool
+     *        the ConnectionPool with connections to the db containing the
+     *        fields
+     * @param repoReader
+     *        the RepositoryReader to use when getting the original values of
+     *        the fields
+     * @param maxResults
+     *        the maximum number of results to return at a time, regardless of
+     *        what the user might request
+     * @param maxSecondsPerSession
+     *        maximum number of seconds per session.
+     * @param indexDCFields
+     *        whether DC field values should be examined and updated in the
+     *        database.
+     * @param keysetPagination
+     *        if true, no database connection is held between pages of a
+     *        search; each page is a new query for the pids following the last
+     *        one returned, and the session token carries the whole session
+     *        (see KeysetFieldSearchResult). If false, each session holds a
+     *        connection and an open result set until it is exhausted or
+     *        expires.
+     * @throws ModuleInitializationException
+     */
+    public FieldSearchSQLImpl(ConnectionPool cPool,
+                              RepositoryReader repoReader,
+                              int maxResults,
+                              int maxSecondsPerSession,
+                              boolean indexDCFields,
+                              boolean keysetPagination) throws ModuleInitializationException {
         logger.debug("Entering constructor");
         m_cPool = cPool;
         m_repoReader = repoReader;
         m_maxResults = maxResults;
         m_maxSecondsPerSession = maxSecondsPerSession;
         m_indexDCFields = indexDCFields;
+        m_keysetPagination = keysetPagination;
         try {
             String dbSpec =
                     "org/fcrepo/server/storage/resources/FieldSearchSQLImpl.dbspec";
@@ -344,6 +383,14 @@ public class FieldSearchSQLImpl
         if (m_maxResults < maxResults) {
             actualMax = m_maxResults;
         }
+        if (m_keysetPagination) {
+            return KeysetFieldSearchResult.getFirstPage(m_cPool,
+                                                        m_repoReader,
+                                                        resultFields,
+                                                        actualMax,
+                                                        m_maxSecondsPerSession,
+                                                        query);
+        }
         try {
             return stepAndRemember(new FieldSearchResultSQLImpl(m_cPool,
                                                                 m_repoReader,
@@ -366,12 +413,42 @@ public class FieldSearchSQLImpl
                 m_currentResults
                 .remove(sessionToken);
         if (result == null) {
+            if (m_keysetPagination) {
+                return KeysetFieldSearchResult.getNextPage(m_cPool,
+                                                           m_repoReader,
+                                                           sessionToken,
+                                                           m_maxResults,
+                                                           m_maxSecondsPerSession);
+            }
             throw new UnknownSessionTokenException("Session is expired "
                     + "or never existed.");
         }
         return stepAndRemember(result);
     }
 
+    public boolean listByDCMDate(String[] resultFields,
+                                 Date from,
+                                 Date until,
+                                 Date afterDate,
+                                 String afterPid,
+                                 int maxResults,
+                                 ObjectFieldsHandler handler)
+            throws ServerException {
+        int actualMax = maxResults;
+        if (m_maxResults < maxResults) {
+            actualMax = m_maxResults;
+        }
+        return DCMDateHarvest.list(m_cPool,
+                                   m_repoReader,
+                                   resultFields,
+                                   from,
+                                   until,
+                                   afterDate,
+                                   afterPid,
+                                   actualMax,
+                                   handler);
+    }
+
     private FieldSearchResult stepAndRemember(FieldSearchResultSQLImpl result)
             throws UnrecognizedFieldException, ObjectIntegrityException,
             RepositoryConfigurationException, StreamIOException,
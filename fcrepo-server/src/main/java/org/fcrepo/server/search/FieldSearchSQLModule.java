@@ -4,6 +4,7 @@
  */
 package org.fcrepo.server.search;
 
+import java.util.Date;
 import java.util.Map;
 
 import org.fcrepo.server.Module;
@@ -92,6 +93,21 @@ public class FieldSearchSQLModule
             }
         }
 
+        //
+        // get keysetPagination parameter (default to false if unspecified)
+        //
+        boolean keysetPagination = false;
+        String keysetPaginationValue = getParameter("keysetPagination");
+        if (keysetPaginationValue != null) {
+            String val = keysetPaginationValue.trim().toLowerCase();
+            if (val.equals("true") || val.equals("yes")) {
+                keysetPagination = true;
+            } else if (!val.equals("false") && !val.equals("no")) {
+                throw new ModuleInitializationException("keysetPagination param "
+                        + "was not a boolean", getRole());
+            }
+        }
+
         //
         // get connectionPool from ConnectionPoolManager
         //
@@ -137,7 +153,8 @@ public class FieldSearchSQLModule
                                        doManager,
                                        maxResults,
                                        maxSecondsPerSession,
-                                       indexDCFields);
+                                       indexDCFields,
+                                       keysetPagination);
     }
 
     @Override
@@ -167,4 +184,21 @@ public class FieldSearchSQLModule
         return m_wrappedFieldSearch.resumeFindObjects(sessionToken);
     }
 
+    public boolean listByDCMDate(String[] resultFields,
+                                 Date from,
+                                 Date until,
+                                 Date afterDate,
+                                 String afterPid,
+                                 int maxResults,
+                                 ObjectFieldsHandler handler)
+            throws ServerException {
+        return m_wrappedFieldSearch.listByDCMDate(resultFields,
+                                                  from,
+                                                  until,
+                                                  afterDate,
+                                                  afterPid,
+                                                  maxResults,
+                                                  handler);
+    }
+
 }
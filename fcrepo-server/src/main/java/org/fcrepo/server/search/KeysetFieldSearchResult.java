@@ -0,0 +1,372 @@
+/* The contents of this file are subject to the license and copyright terms
+ * detailed in the license directory at the root of the source tree (also
+ * available online at http://fedora-commons.org/license/).
+ */
+package org.fcrepo.server.search;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Date;
+import java.util.List;
+
+import org.fcrepo.server.errors.InvalidOperatorException;
+import org.fcrepo.server.errors.QueryParseException;
+import org.fcrepo.server.errors.ServerException;
+import org.fcrepo.server.errors.StorageDeviceException;
+import org.fcrepo.server.errors.UnknownSessionTokenException;
+import org.fcrepo.server.storage.ConnectionPool;
+import org.fcrepo.server.storage.RepositoryReader;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+
+/**
+ * One page of FieldSearch results, obtained with a keyset query.
+ * <p>
+ * Unlike FieldSearchResultSQLImpl, nothing is held open between pages. Each
+ * page is a fresh query, in pid order, for the pids after the last one on the
+ * previous page. The session token carries the query itself, the last pid,
+ * the cursor and the expiration date, so a session can be resumed by any
+ * server that shares the database, including after a restart.
+ * </p>
+ * <p>
+ * Objects that are added or removed while a session is in progress may or may
+ * not be seen, depending on where their pids fall relative to the last pid.
+ * </p>
+ */
+public class KeysetFieldSearchResult
+        implements FieldSearchResult {
+
+    private static final Logger logger =
+            LoggerFactory.getLogger(KeysetFieldSearchResult.class);
+
+    /** Incremented if the token format changes. */
+    private static final byte TOKEN_VERSION = 1;
+
+    private final List<ObjectFields> m_objectFields;
+
+    private final String m_token;
+
+    private final long m_cursor;
+
+    private final Date m_expirationDate;
+
+    private KeysetFieldSearchResult(List<ObjectFields> objectFields,
+                                    String token,
+                                    long cursor,
+                                    Date expirationDate) {
+        m_objectFields = objectFields;
+        m_token = token;
+        m_cursor = cursor;
+        m_expirationDate = expirationDate;
+    }
+
+    /**
+     * Get the first page of results for a query.
+     *
+     * @param maxResults
+     *        how many results should be returned at one time. This should be
+     *        the smaller of the server limit and the client limit.
+     * @param maxSeconds
+     *        how long the session token will be valid
+     */
+    static KeysetFieldSearchResult getFirstPage(ConnectionPool cPool,
+                                                RepositoryReader repoReader,
+                                                String[] resultFields,
+                                                int maxResults,
+                                                int maxSeconds,
+                                                FieldSearchQuery query)
+            throws ServerException {
+        return getPage(cPool,
+                       repoReader,
+                       new Session(resultFields, maxResults, query, null, 0),
+                       maxSeconds);
+    }
+
+    /**
+     * Get the next page of results for a session.
+     *
+     * @param maxResults
+     *        the server limit; if the token asks for more, this is used
+     *        instead.
+     * @throws UnknownSessionTokenException
+     *         if the token is malformed or has expired
+     */
+    static KeysetFieldSearchResult getNextPage(ConnectionPool cPool,
+                                               RepositoryReader repoReader,
+                                               String token,
+                                               int maxResults,
+                                               int maxSeconds)
+            throws ServerException {
+        Session session = Session.decode(token);
+        if (session.maxResults > maxResults) {
+            session.maxResults = maxResults;
+        }
+        return getPage(cPool, repoReader, session, maxSeconds);
+    }
+
+    private static KeysetFieldSearchResult getPage(ConnectionPool cPool,
+                                                   RepositoryReader repoReader,
+                                                   Session session,
+                                                   int maxSeconds)
+            throws ServerException {
+        boolean project =
+                FieldSearchResultSQLImpl.canProject(session.resultFields);
+        List<String> pids = new ArrayList<String>(session.maxResults + 1);
+        List<ObjectFields> objectFields =
+                new ArrayList<ObjectFields>(session.maxResults + 1);
+        getRows(cPool, session, pids, project ? objectFields : null);
+
+        // we asked for one more than we need, to find out if there are more
+        boolean more = pids.size() > session.maxResults;
+        if (more) {
+            pids = pids.subList(0, session.maxResults);
+            if (project) {
+                objectFields = objectFields.subList(0, session.maxResults);
+            }
+        }
+
+        if (!project) {
+            // the connection is back in the pool before we read any objects
+            for (String pid : pids) {
+                objectFields.add(FieldSearchResultSQLImpl
+                        .getObjectFields(repoReader, session.resultFields, pid));
+            }
+        }
+
+        long cursor = session.cursor;
+        if (!more) {
+            // the last page; there is no session to report on
+            return new KeysetFieldSearchResult(objectFields,
+                                               null,
+                                               cursor == 0 ? -1 : cursor,
+                                               null);
+        }
+        Date expirationDate =
+                new Date(System.currentTimeMillis() + 1000L * maxSeconds);
+        session.lastPid = pids.get(pids.size() - 1);
+        session.cursor = cursor + pids.size();
+        session.expires = expirationDate.getTime();
+        return new KeysetFieldSearchResult(objectFields,
+                                           session.encode(),
+                                           cursor,
+                                           expirationDate);
+    }
+
+    /**
+     * Run the query for a page, adding the pids found to the given list. If a
+     * list of ObjectFields is given, the result fields are selected too, and
+     * the ObjectFields for each row are added to it.
+     */
+    private static void getRows(ConnectionPool cPool,
+                                Session session,
+                                List<String> pids,
+                                List<ObjectFields> objectFields)
+            throws ServerException {
+        String queryText =
+                FieldSearchResultSQLImpl
+                        .getKeysetQueryText(session.query,
+                                            objectFields == null ? null
+                                                    : session.resultFields,
+                                            session.lastPid != null);
+        Connection conn = null;
+        PreparedStatement st = null;
+        ResultSet results = null;
+        try {
+            conn = cPool.getReadOnlyConnection();
+            st = conn.prepareStatement(queryText);
+            st.setMaxRows(session.maxResults + 1);
+            if (session.lastPid != null) {
+                st.setString(1, session.lastPid);
+            }
+            results = st.executeQuery();
+            while (results.next()) {
+                pids.add(results.getString(1));
+                if (objectFields != null) {
+                    objectFields.add(FieldSearchResultSQLImpl
+                            .getObjectFields(results, session.resultFields));
+                }
+            }
+        } catch (SQLException sqle) {
+            throw new StorageDeviceException("Error with sql database. "
+                    + sqle.getMessage(), sqle);
+        } finally {
+            try {
+                if (results != null) {
+                    results.close();
+                }
+                if (st != null) {
+                    st.close();
+                }
+            } catch (SQLException sqle) {
+                logger.warn("Error closing statement or result set", sqle);
+            } finally {
+                if (conn != null) {
+                    cPool.free(conn);
+                }
+            }
+        }
+    }
+
+    public List<ObjectFields> objectFieldsList() {
+        return m_objectFields;
+    }
+
+    public String getToken() {
+        return m_token;
+    }
+
+    public long getCursor() {
+        return m_cursor;
+    }
+
+    public long getCompleteListSize() {
+        return -1;
+    }
+
+    public Date getExpirationDate() {
+        return m_expirationDate;
+    }
+
+    /**
+     * Everything needed to get the next page of a search, and its encoding as
+     * a URL-safe session token.
+     */
+    private static class Session {
+
+        final String[] resultFields;
+
+        int maxResults;
+
+        final FieldSearchQuery query;
+
+        String lastPid;
+
+        long cursor;
+
+        long expires;
+
+        Session(String[] resultFields,
+                int maxResults,
+                FieldSearchQuery query,
+                String lastPid,
+                long cursor) {
+            this.resultFields = resultFields;
+            this.maxResults = maxResults;
+            this.query = query;
+            this.lastPid = lastPid;
+            this.cursor = cursor;
+        }
+
+        String encode() throws ServerException {
+            try {
+                ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                DataOutputStream out = new DataOutputStream(bytes);
+                out.writeByte(TOKEN_VERSION);
+                out.writeLong(expires);
+                out.writeLong(cursor);
+                out.writeInt(maxResults);
+                out.writeUTF(lastPid);
+                out.writeInt(resultFields.length);
+                for (String field : resultFields) {
+                    out.writeUTF(field);
+                }
+                out.writeInt(query.getType());
+                if (query.getType() == FieldSearchQuery.TERMS_TYPE) {
+                    out.writeUTF(query.getTerms());
+                } else {
+                    List<Condition> conditions = query.getConditions();
+                    out.writeInt(conditions.size());
+                    for (Condition cond : conditions) {
+                        out.writeUTF(cond.getProperty());
+                        out.writeUTF(cond.getOperator().getAbbreviation());
+                        out.writeUTF(cond.getValue());
+                    }
+                }
+                out.flush();
+                return Base64.getUrlEncoder().withoutPadding()
+                        .encodeToString(bytes.toByteArray());
+            } catch (IOException e) {
+                // can't happen with a ByteArrayOutputStream
+                throw new StorageDeviceException("Error encoding session "
+                        + "token: " + e.getMessage(), e);
+            }
+        }
+
+        static Session decode(String token)
+                throws UnknownSessionTokenException {
+            try {
+                DataInputStream in =
+                        new DataInputStream(new ByteArrayInputStream(Base64
+                                .getUrlDecoder().decode(token)));
+                if (in.readByte() != TOKEN_VERSION) {
+                    throw new UnknownSessionTokenException("Session token "
+                            + "is from an unsupported version.");
+                }
+                long expires = in.readLong();
+                if (expires < System.currentTimeMillis()) {
+                    throw new UnknownSessionTokenException("Session is "
+                            + "expired.");
+                }
+                long cursor = in.readLong();
+                int maxResults = in.readInt();
+                String lastPid = in.readUTF();
+                String[] resultFields = new String[in.readInt()];
+                for (int i = 0; i < resultFields.length; i++) {
+                    resultFields[i] = in.readUTF();
+                }
+                FieldSearchQuery query;
+                int type = in.readInt();
+                if (type == FieldSearchQuery.TERMS_TYPE) {
+                    query = new FieldSearchQuery(in.readUTF());
+                } else if (type == FieldSearchQuery.CONDITIONS_TYPE) {
+                    int count = in.readInt();
+                    List<Condition> conditions = new ArrayList<Condition>();
+                    for (int i = 0; i < count; i++) {
+                        conditions.add(new Condition(in.readUTF(),
+                                                     in.readUTF(),
+                                                     in.readUTF()));
+                    }
+                    query = new FieldSearchQuery(conditions);
+                } else {
+                    throw new IOException("Unknown query type: " + type);
+                }
+                if (maxResults < 1 || cursor < 0) {
+                    throw new IOException("Bad page size or cursor");
+                }
+                Session session =
+                        new Session(resultFields,
+                                    maxResults,
+                                    query,
+                                    lastPid,
+                                    cursor);
+                session.expires = expires;
+                return session;
+            } catch (IOException e) {
+                throw badToken(e);
+            } catch (IllegalArgumentException e) {
+                throw badToken(e);
+            } catch (InvalidOperatorException e) {
+                throw badToken(e);
+            } catch (QueryParseException e) {
+                throw badToken(e);
+            }
+        }
+
+        private static UnknownSessionTokenException badToken(Exception e) {
+            logger.debug("Unusable session token", e);
+            return new UnknownSessionTokenException("Session is expired "
+                    + "or never existed.");
+        }
+    }
+
+}
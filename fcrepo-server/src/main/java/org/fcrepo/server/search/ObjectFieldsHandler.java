@@ -0,0 +1,25 @@
+/* The contents of this file are subject to the license and copyright terms
+ * detailed in the license directory at the root of the source tree (also
+ * available online at http://fedora-commons.org/license/).
+ */
+package org.fcrepo.server.search;
+
+import org.fcrepo.server.errors.ServerException;
+
+/**
+ * Receives search results one at a time, as they are read.
+ *
+ * @see FieldSearch#listByDCMDate(String[], java.util.Date, java.util.Date,
+ *      java.util.Date, String, int, ObjectFieldsHandler)
+ */
+public interface ObjectFieldsHandler {
+
+    /**
+     * Handle one result. The ObjectFields isn't used again once this returns.
+     *
+     * @throws ServerException
+     *         to stop listing
+     */
+    public void handle(ObjectFields fields) throws ServerException;
+
+}
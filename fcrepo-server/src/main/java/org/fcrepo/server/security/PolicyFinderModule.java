@@ -12,6 +12,7 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Hashtable;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -23,6 +24,8 @@ import org.fcrepo.common.Constants;
 import org.fcrepo.server.Server;
 import org.fcrepo.server.config.ModuleConfiguration;
 import org.fcrepo.server.errors.GeneralException;
+import org.fcrepo.server.errors.ServerException;
+import org.fcrepo.server.storage.types.Datastream;
 import org.fcrepo.server.validation.ValidationUtility;
 import org.fcrepo.utilities.FileUtils;
 import org.fcrepo.utilities.XmlTransformUtility;
@@ -92,6 +95,14 @@ public class PolicyFinderModule
     private static final String VALIDATE_OBJECT_POLICIES_FROM_DATASTREAM_KEY =
             "VALIDATE-OBJECT-POLICIES-FROM-DATASTREAM";
 
+    private static final String OBJECT_POLICY_CACHE_SIZE_KEY =
+            "OBJECT-POLICY-CACHE-SIZE";
+
+    private static final int DEFAULT_OBJECT_POLICY_CACHE_SIZE = 1000;
+
+    // the version of objects with no POLICY, for negative caching
+    private static final String NO_POLICY = "";
+
     private static final URI STRING_ATTRIBUTE = URI.create(StringAttribute.identifier);
     
     private static final URI EMPTY_URI = URI.create("");
@@ -117,7 +128,12 @@ public class PolicyFinderModule
 
     private final List<AbstractPolicy> m_repositoryPolicies;
 
-    private PolicySet m_repositoryPolicySet = EMPTY_SET;
+    private volatile PolicySet m_repositoryPolicySet = EMPTY_SET;
+
+    /**
+     * The policy sets for recently seen objects, by pid; null if not cached.
+     */
+    private final Map<String, ObjectPolicySet> m_objectPolicySets;
 
     public PolicyFinderModule(Server server,
                               PolicyLoader policyLoader,
@@ -185,6 +201,28 @@ public class PolicyFinderModule
         }
 
         m_repositoryPolicies = new ArrayList<AbstractPolicy>();
+
+        String cacheSize = authorizationConfig.getParameter(OBJECT_POLICY_CACHE_SIZE_KEY);
+        final int objectPolicyCacheSize;
+        try {
+            objectPolicyCacheSize = (cacheSize != null) ? Integer.parseInt(cacheSize) : DEFAULT_OBJECT_POLICY_CACHE_SIZE;
+        } catch (NumberFormatException e) {
+            throw new GeneralException("bad init parm integer value for "
+                                                    + OBJECT_POLICY_CACHE_SIZE_KEY, e);
+        }
+        if (objectPolicyCacheSize > 0) {
+            m_objectPolicySets = new LinkedHashMap<String, ObjectPolicySet>(16, 0.75f, true) {
+
+                private static final long serialVersionUID = 1L;
+
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, ObjectPolicySet> eldest) {
+                    return size() > objectPolicyCacheSize;
+                }
+            };
+        } else {
+            m_objectPolicySets = null;
+        }
     }
 
     /**
@@ -206,6 +244,11 @@ public class PolicyFinderModule
                                  new File(m_repositoryPolicyDirectoryPath)));
             m_repositoryPolicies.addAll(repositoryPolicies.values());
             m_repositoryPolicySet = toPolicySet(m_repositoryPolicies, m_combiningAlgorithm);
+            if (m_objectPolicySets != null) {
+                synchronized (m_objectPolicySets) {
+                    m_objectPolicySets.clear();
+                }
+            }
         } catch (Throwable t) {
             logger.error("Error loading repository policies: " + t.toString(), t);
         }
@@ -282,15 +325,7 @@ public class PolicyFinderModule
         try {
             String pid = getPid(context);
             if (pid != null && !pid.isEmpty()) {
-                AbstractPolicy objectPolicyFromObject = 
-                        m_policyLoader.loadObjectPolicy(m_policyParser.copy(),
-                                                         pid,
-                                                         m_validateObjectPoliciesFromDatastream);
-                if (objectPolicyFromObject != null) {
-                    List<AbstractPolicy> policies = new ArrayList<AbstractPolicy>(m_repositoryPolicies);
-                    policies.add(objectPolicyFromObject);
-                    policySet = toPolicySet(policies, m_combiningAlgorithm);
-                }
+                policySet = getObjectPolicySet(pid);
             }
             policyFinderResult = new PolicyFinderResult(policySet);
         } catch (Exception e) {
@@ -302,6 +337,59 @@ public class PolicyFinderModule
         return policyFinderResult;
     }
 
+    /**
+     * Gets the repository-wide policies combined with the object's POLICY,
+     * if it has one. The result is cached until the POLICY changes, which
+     * is seen from its version id and creation date, or the repository
+     * policies are reloaded.
+     */
+    PolicySet getObjectPolicySet(String pid) throws ServerException {
+        PolicySet repositoryPolicySet = m_repositoryPolicySet;
+        Datastream ds = m_policyLoader.getObjectPolicyDatastream(pid);
+        String version = getVersion(ds);
+        if (m_objectPolicySets != null && version != null) {
+            ObjectPolicySet cached;
+            synchronized (m_objectPolicySets) {
+                cached = m_objectPolicySets.get(pid);
+            }
+            if (cached != null
+                    && cached.repositoryPolicySet == repositoryPolicySet
+                    && cached.version.equals(version)) {
+                return cached.policySet;
+            }
+        }
+
+        PolicySet policySet = repositoryPolicySet;
+        if (ds != null) {
+            AbstractPolicy objectPolicyFromObject =
+                    m_policyLoader.parseObjectPolicy(m_policyParser.copy(),
+                                                      ds,
+                                                      m_validateObjectPoliciesFromDatastream);
+            if (objectPolicyFromObject != null) {
+                List<AbstractPolicy> policies = new ArrayList<AbstractPolicy>(m_repositoryPolicies);
+                policies.add(objectPolicyFromObject);
+                policySet = toPolicySet(policies, m_combiningAlgorithm);
+            }
+        }
+        if (m_objectPolicySets != null && version != null) {
+            synchronized (m_objectPolicySets) {
+                m_objectPolicySets.put(pid, new ObjectPolicySet(repositoryPolicySet, version, policySet));
+            }
+        }
+        return policySet;
+    }
+
+    // identifies a version of a POLICY datastream, or null if it can't be
+    private static String getVersion(Datastream ds) {
+        if (ds == null) {
+            return NO_POLICY;
+        }
+        if (ds.DSVersionID == null || ds.DSCreateDT == null) {
+            return null;
+        }
+        return ds.DSVersionID + " " + ds.DSCreateDT.getTime();
+    }
+
     // get the pid from the context, or null if unable
     public static String getPid(EvaluationCtx context) {
         EvaluationResult attribute
@@ -350,4 +438,20 @@ public class PolicyFinderModule
                                */,
                               policies);
     }
+
+    private static class ObjectPolicySet {
+
+        // the repository policies this was combined with
+        final PolicySet repositoryPolicySet;
+
+        final String version;
+
+        final PolicySet policySet;
+
+        ObjectPolicySet(PolicySet repositoryPolicySet, String version, PolicySet policySet) {
+            this.repositoryPolicySet = repositoryPolicySet;
+            this.version = version;
+            this.policySet = policySet;
+        }
+    }
 }
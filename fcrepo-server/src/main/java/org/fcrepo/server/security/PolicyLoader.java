@@ -36,6 +36,13 @@ public abstract class PolicyLoader {
     // if the object exists and has a POLICY datastream, parse and return it
     // the passed parser must be safe to use in this thread
     protected AbstractPolicy loadObjectPolicy(PolicyParser policyParser, String pid, boolean validate) throws ServerException {
+        Datastream ds = getObjectPolicyDatastream(pid);
+        return (ds != null) ? parseObjectPolicy(policyParser, ds, validate) : null;
+    }
+
+    // the current version of the object's POLICY datastream, or null if the
+    // object doesn't exist or has no POLICY
+    protected Datastream getObjectPolicyDatastream(String pid) throws ServerException {
         try {
             DOReader reader = m_repoReader.getReader(Server.USE_DEFINITIVE_STORE,
                                                      ReadOnlyContext.EMPTY,
@@ -43,12 +50,16 @@ public abstract class PolicyLoader {
             Datastream ds = reader.GetDatastream("POLICY", null);
             if (ds != null) {
                 logger.debug("Using POLICY for {}", pid);
-                return policyParser.parse(ds.getContentStream(), validate);
-            } else {
-                return null;
             }
+            return ds;
         } catch (ObjectNotInLowlevelStorageException e) {
             return null;
         }
     }
+
+    // parse a POLICY datastream
+    // the passed parser must be safe to use in this thread
+    protected AbstractPolicy parseObjectPolicy(PolicyParser policyParser, Datastream ds, boolean validate) throws ServerException {
+        return policyParser.parse(ds.getContentStream(), validate);
+    }
 }
\ No newline at end of file
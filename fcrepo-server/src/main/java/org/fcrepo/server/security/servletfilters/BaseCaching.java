@@ -6,10 +6,10 @@ package org.fcrepo.server.security.servletfilters;
 
 import java.security.Principal;
 
-import java.util.Hashtable;
 import java.util.Map;
 import java.util.Set;
 import java.util.Vector;
+import java.util.concurrent.ConcurrentHashMap;
 
 import javax.servlet.FilterConfig;
 
@@ -27,7 +27,7 @@ public abstract class BaseCaching
             LoggerFactory.getLogger(BaseCaching.class);
 
     //use additional indirection level to distinguish multiple uses of the same code for different filter instances
-    private static final Map<String, Cache> superCache = new Hashtable<String, Cache>();
+    private static final Map<String, Cache> superCache = new ConcurrentHashMap<String, Cache>();
 
     protected final Cache getCache(String filterName) {
         String method = "getCache()";
@@ -78,6 +78,17 @@ public abstract class BaseCaching
             logger.debug(enter(method));
         }
         super.destroy();
+        Cache cache = getCache(FILTER_NAME);
+        if (cache != null && logger.isInfoEnabled()) {
+            logger.info(format(method, null, "cache hits",
+                               Long.toString(cache.getHitCount())));
+            logger.info(format(method, null, "cache misses",
+                               Long.toString(cache.getMissCount())));
+            logger.info(format(method, null, "backend lookups",
+                               Long.toString(cache.getLookupCount())));
+            logger.info(format(method, null, "mean lookup ms",
+                               Double.toString(cache.getAverageLookupMillis())));
+        }
         if (logger.isDebugEnabled()) {
             logger.debug(exit(method));
         }
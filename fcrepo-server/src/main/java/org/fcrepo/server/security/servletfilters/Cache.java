@@ -4,14 +4,25 @@
  */
 package org.fcrepo.server.security.servletfilters;
 
-import java.util.Hashtable;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
+ * The cache of what a filter's backend has said about each user. Elements
+ * are made once per user and never removed; see {@link CacheElement} for how
+ * each is kept up to date. Hit, miss and backend lookup counts are kept so
+ * that the backend's load and latency can be watched.
+ *
  * @author Bill Niebel
  */
 public class Cache {
@@ -19,6 +30,23 @@ public class Cache {
     private static final Logger logger =
             LoggerFactory.getLogger(Cache.class);
 
+    private static final int REFRESH_THREADS = 4;
+
+    /** Shared by all caches for refreshing elements in the background. */
+    private static final ExecutorService REFRESHER =
+            Executors.newFixedThreadPool(REFRESH_THREADS, new ThreadFactory() {
+
+                private final AtomicInteger m_count = new AtomicInteger();
+
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread t = new Thread(r, "CacheRefresh-"
+                            + m_count.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+
     static boolean firstCall = true;
 
     private final String cacheId;
@@ -103,7 +131,63 @@ public class Cache {
         cacheAbbrev = FilterSetup.getFilterNameAbbrev(getCacheId());
     }
 
-    private final Map<String, CacheElement> cache = new Hashtable<String, CacheElement>();
+    private final ConcurrentMap<String, CacheElement> cache =
+            new ConcurrentHashMap<String, CacheElement>();
+
+    private final AtomicLong m_hits = new AtomicLong();
+
+    private final AtomicLong m_misses = new AtomicLong();
+
+    private final AtomicLong m_lookups = new AtomicLong();
+
+    private final AtomicLong m_lookupNanos = new AtomicLong();
+
+    /**
+     * @return the number of requests answered without waiting for the backend
+     */
+    public final long getHitCount() {
+        return m_hits.get();
+    }
+
+    /**
+     * @return the number of requests that needed a backend lookup, including
+     *         those that waited for another request's lookup
+     */
+    public final long getMissCount() {
+        return m_misses.get();
+    }
+
+    /**
+     * @return the number of backend lookups, including background refreshes
+     */
+    public final long getLookupCount() {
+        return m_lookups.get();
+    }
+
+    /**
+     * @return the mean time taken by a backend lookup, in milliseconds
+     */
+    public final double getAverageLookupMillis() {
+        long lookups = m_lookups.get();
+        return lookups == 0 ? 0 : m_lookupNanos.get() / (lookups * 1000000.0);
+    }
+
+    final void recordHit() {
+        m_hits.incrementAndGet();
+    }
+
+    final void recordMiss() {
+        m_misses.incrementAndGet();
+    }
+
+    final void recordLookup(long nanos) {
+        m_lookups.incrementAndGet();
+        m_lookupNanos.addAndGet(nanos);
+    }
+
+    final void refresh(Runnable refresh) {
+        REFRESHER.execute(refresh);
+    }
 
     public final void audit(String userid) {
         String m = getCacheAbbrev() + " audit() ";
@@ -124,29 +208,25 @@ public class Cache {
     }
 
     /*
-     * synchronize so that each access gets the same item instance (protect
-     * against overlapping calls) note that expiration logic of cache element
-     * changes the element's state -- elements are never removed from cache or
-     * replaced
+     * each access gets the same item instance, even if calls overlap; note
+     * that expiration logic of cache element changes the element's state --
+     * elements are never removed from cache or replaced
      */
-    private final synchronized CacheElement getCacheElement(String userid) {
+    private final CacheElement getCacheElement(String userid) {
         String m = getCacheAbbrev() + " getCacheElement() ";
-        CacheElement cacheElement = null;
         String key = getKey(userid);
         logger.debug(m + "key==" + key);
-        if (cache.containsKey(key)) {
-            logger.debug(m + "cache already has element");
-        } else {
+        CacheElement cacheElement = cache.get(key);
+        if (cacheElement == null) {
             logger.debug(m + "cache does not have element; create and put");
             CacheElement itemtemp =
                     new CacheElement(userid, getCacheId(), getCacheAbbrev());
-            cache.put(key, itemtemp);
-        }
-        cacheElement = (CacheElement) cache.get(key);
-        if (cacheElement == null) {
-            logger.error(m + "cache does not contain element");
+            cacheElement = cache.putIfAbsent(key, itemtemp);
+            if (cacheElement == null) {
+                cacheElement = itemtemp;
+            }
         } else {
-            logger.debug(m + "element retrieved from cache successfully");
+            logger.debug(m + "cache already has element");
         }
         return cacheElement;
     }
@@ -4,16 +4,34 @@
  */
 package org.fcrepo.server.security.servletfilters;
 
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
 import java.util.Calendar;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
+ * What a filter knows about one user: whether the user authenticated, and
+ * the user's named values.
+ * <p>
+ * The state is replaced, never changed, so requests read it without locking.
+ * Only one request at a time looks the user up in the backend; any others
+ * that need the answer wait for it rather than making their own lookups.
+ * After a successful lookup has been used for most of its lifetime, the next
+ * request with the same password starts a refresh in the background and
+ * carries on with the old answer until it expires. The password is kept only
+ * as a salted hash.
+ * </p>
+ *
  * @author Bill Niebel
  */
 public class CacheElement {
@@ -21,31 +39,39 @@ public class CacheElement {
     private static final Logger logger =
             LoggerFactory.getLogger(CacheElement.class);
 
-    private static final Calendar EARLIER;
-    private static final boolean s_expired_default = true; // safest
     private static final long MILLIS_IN_SECOND = 1000;
     private static final long MILLIS_IN_MINUTE = 60 * MILLIS_IN_SECOND;
     private static final long MILLIS_IN_HOUR = 60 * MILLIS_IN_MINUTE;
     private static final long MILLIS_IN_DAY = 24 * MILLIS_IN_HOUR;
 
+    /**
+     * How far through a successful lookup's lifetime it is refreshed in the
+     * background.
+     */
+    static final double REFRESH_AHEAD_FRACTION = 0.8;
+
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    private static final int SALT_LENGTH = 16;
+
     private final String m_userid;
     private final String m_cacheid;
     private final String m_cacheabbrev;
 
-    private String m_password = null;
+    private volatile State m_state = State.INVALID;
+
+    /** Held while looking the user up, so there's one lookup at a time. */
+    private final Object m_lookupLock = new Object();
+
+    private final AtomicBoolean m_refreshing = new AtomicBoolean();
+
+    // set by populate() during a lookup; guarded by m_lookupLock
     private boolean m_valid = false;
-    private Calendar m_expiration = null;
     private Boolean m_authenticated = null;
     // a map of String to Set<String>
     private Map<String, Set<?>> m_namedValues = null;
     private String m_errorMessage = null;
 
-    static {
-        Calendar temp = Calendar.getInstance();
-        temp.set(Calendar.YEAR, 1999);
-        EARLIER = temp;
-    }
-
     ///////////////////////////////////////////////////////////////////////////
     // Primary Contract
     ///////////////////////////////////////////////////////////////////////////
@@ -59,7 +85,6 @@ public class CacheElement {
         m_userid = userid;
         m_cacheid = cacheid;
         m_cacheabbrev = cacheabbrev;
-        this.invalidate();
     }
 
     /**
@@ -71,7 +96,9 @@ public class CacheElement {
 
     /**
      * Populates this cache element with the given authenticated state
-     * and named values, then puts it in the valid state.
+     * and named values, then puts it in the valid state. This is called back
+     * by the {@link CacheElementPopulator} while the element is being
+     * looked up.
      *
      * Note: Prior to the call, the element must be in the invalid state.
      * TODO: The predicates parameter is deprecated and should be removed.
@@ -93,8 +120,6 @@ public class CacheElement {
                 throw new Exception(errorMessage);
             } else {
                 validate(authenticated, map);
-                // can't set expiration here -- don't have cache reference
-                // can't set pwd here, don't have it
             }
         } catch (Throwable t) {
             logger.error(m + "invalidating to be sure");
@@ -105,128 +130,46 @@ public class CacheElement {
     }
 
     /**
-     * If in the valid state and not expired:
-     *   If authenticated and given password is instance password, return true.
-     *   Else return false.
-     * If invalid or expired:
-     *   Re-initialize this element by setting it to invalid state and running
-     *     the underlying authN code.
-     *   If never authenticated or currently not valid, return m_authenticated
-     *   If authenticated, set thekkkk instance password to the given one and return true.
-     *   If not authenticated, return false.
+     * If the element holds an unexpired answer:
+     *   If authenticated and the given password is the one that was
+     *     authenticated, return true.
+     *   If authenticated with another password, return false.
+     *   If not authenticated, return the stored answer.
+     * Otherwise look the user up with the given password and return whether
+     *   the user authenticated.
      */
-    public final synchronized Boolean authenticate(Cache cache, String pwd) {
-        // Original Comment:
-        // Synchronized so evaluation of cache item state will be sequential,
-        // non-interlaced.  This protects against overlapping calls resulting in
-        // redundant authenticator calls.
+    public final Boolean authenticate(Cache cache, String pwd) {
         String m = m_cacheabbrev + " authenticate() ";
         logger.debug("{}>", m);
-        Boolean rc = null;
-        try {
-            logger.debug("{}m_valid=={}", m, m_valid);
-            if (m_valid && !CacheElement.isExpired(m_expiration)) {
-                logger.debug("{}valid and not expired, so use", m);
-                if (!isAuthenticated()) {
-                    logger.debug("{}auth=={}", m, m_authenticated);
-                    rc = m_authenticated;
-                } else {
-                    logger.debug("{}already authd, request password=={}", m, pwd);
-                    if (pwd == null) {
-                        logger.debug("{}null request password", m);
-                        rc = Boolean.FALSE;
-                    } else if ("".equals(pwd)) {
-                        logger.debug("{}zero-length request password", m);
-                        rc = Boolean.FALSE;
-                    } else {
-                        logger.debug("{}stored password=={}", m, m_password);
-                        rc = pwd.equals(m_password);
-                    }
-                }
-            } else { // expired or invalid
-                logger.debug("{}expired or invalid, so try to repopulate", m);
-                this.invalidate();
-                CacheElementPopulator cePop = cache.getCacheElementPopulator();
-                cePop.populateCacheElement(this, pwd);
-                int duration = 0;
-                String unit = null;
-                m_password = null;
-                if (m_authenticated == null || !m_valid) {
-                    duration = cache.getAuthExceptionTimeoutDuration();
-                    unit = cache.getAuthExceptionTimeoutUnit();
-                    logger.debug("{}couldn't complete population", m);
-                } else {
-                    logger.debug("{}populate completed", m);
-                    if (isAuthenticated()) {
-                        m_password = pwd;
-                        duration = cache.getAuthSuccessTimeoutDuration();
-                        unit = cache.getAuthSuccessTimeoutUnit();
-                        logger.debug("{}populate succeeded", m);
-                    } else {
-                        duration = cache.getAuthFailureTimeoutDuration();
-                        unit = cache.getAuthFailureTimeoutUnit();
-                        logger.debug("{}populate failed", m);
-                    }
-                }
-                m_expiration = CacheElement.calcExpiration(duration, unit);
-                rc = m_authenticated;
-            }
-        } catch (Throwable th) {
-            this.invalidate();
-            rc = m_authenticated;
-            logger.error(m + "invalidating to be sure");
-        } finally {
-            audit();
-            logger.debug("{}< {}", m, rc);
+        State state = getState(cache, pwd, true);
+        Boolean rc;
+        if (!state.isAuthenticated()) {
+            logger.debug("{}auth=={}", m, state.authenticated);
+            rc = state.authenticated;
+        } else if (pwd == null) {
+            logger.debug("{}null request password", m);
+            rc = Boolean.FALSE;
+        } else if ("".equals(pwd)) {
+            logger.debug("{}zero-length request password", m);
+            rc = Boolean.FALSE;
+        } else {
+            rc = state.matches(pwd);
         }
+        audit();
+        logger.debug("{}< {}", m, rc);
         return rc;
     }
 
-    public final synchronized Map<String, Set<?>> getNamedValues(Cache cache, String pwd) {
-        // Original Comment:
-        // Synchronized so evaluation of cache item state will be sequential,
-        // non-interlaced.  This protects against overlapping calls resulting in
-        // redundant (authenticator?) calls.
+    public final Map<String, Set<?>> getNamedValues(Cache cache, String pwd) {
         // TODO: refactor method name so that it doesn't look like "getter"
         String m = m_cacheabbrev + " namedValues ";
         logger.debug("{}>", m);
-        Map<String, Set<?>> rc = null;
-        try {
-            logger.debug("{}valid=={}",m, m_valid);
-            if (m_valid && !CacheElement.isExpired(m_expiration)) {
-                logger.debug("{}valid and not expired, so use",m);
-            } else {
-                logger.debug("{}expired or invalid, so try to repopulate", m);
-                this.invalidate();
-                CacheElementPopulator cePop = cache.getCacheElementPopulator();
-                cePop.populateCacheElement(this, pwd);
-                int duration = 0;
-                String unit = null;
-                if (m_namedValues == null || !m_valid) {
-                    duration = cache.getAuthExceptionTimeoutDuration();
-                    unit = cache.getAuthExceptionTimeoutUnit();
-                    logger.debug("{}couldn't complete population", m);
-                } else {
-                    logger.debug("{}populate completed", m);
-                    m_password = pwd;
-                    duration = cache.getAuthSuccessTimeoutDuration();
-                    unit = cache.getAuthSuccessTimeoutUnit();
-                    logger.debug("{}populate succeeded", m);
-                }
-                m_expiration = CacheElement.calcExpiration(duration, unit);
-            }
-        } catch (Throwable th) {
-            String msg = m + "invalidating to be sure";
-            this.invalidate(msg);
-            logger.error(msg);
-        } finally {
-            audit();
-            rc = m_namedValues;
-            if (rc == null) {
-                rc = new HashMap<String, Set<?>>();
-            }
-            logger.debug("{}< {}", m, rc);
+        Map<String, Set<?>> rc = getState(cache, pwd, false).namedValues;
+        audit();
+        if (rc == null) {
+            rc = new HashMap<String, Set<?>>();
         }
+        logger.debug("{}< {}", m, rc);
         return rc;
     }
 
@@ -247,20 +190,23 @@ public class CacheElement {
         String m = m_cacheabbrev + " audit() ";
         if (logger.isDebugEnabled()) {
             try {
+                State state = m_state;
                 Calendar now = Calendar.getInstance();
+                Calendar expiration = Calendar.getInstance();
+                expiration.setTimeInMillis(state.expiration);
                 logger.debug(m + "> " + m_cacheid + " " + getInstanceId()
                         + " @ " + format(now));
-                logger.debug(m + "valid==" + m_valid);
+                logger.debug(m + "valid==" + state.valid);
                 logger.debug(m + "userid==" + getUserid());
-                logger.debug(m + "password==" + m_password);
-                logger.debug(m + "authenticated==" + m_authenticated);
-                logger.debug(m + "errorMessage==" + m_errorMessage);
-                logger.debug(m + "expiration==" + format(m_expiration));
-                logger.debug(m + compareForExpiration(now, m_expiration));
-                if (m_namedValues == null) {
+                logger.debug(m + "password held==" + (state.passwordHash != null));
+                logger.debug(m + "authenticated==" + state.authenticated);
+                logger.debug(m + "errorMessage==" + state.errorMessage);
+                logger.debug(m + "expiration==" + format(expiration));
+                logger.debug(m + compareForExpiration(now, expiration));
+                if (state.namedValues == null) {
                     logger.debug(m + "(no named attributes");
                 } else {
-                    CacheElement.auditNamedValues(m, m_namedValues);
+                    CacheElement.auditNamedValues(m, state.namedValues);
                 }
             } finally {
                 logger.debug(m + "<");
@@ -272,6 +218,126 @@ public class CacheElement {
     // Private Instance Methods
     ///////////////////////////////////////////////////////////////////////////
 
+    /**
+     * Get an unexpired answer, looking the user up if there isn't one, and
+     * starting a background refresh if the answer is due one.
+     */
+    private State getState(Cache cache, String pwd, boolean authn) {
+        State state = m_state;
+        long now = System.currentTimeMillis();
+        if (state.isUsable(now)) {
+            logger.debug("{} valid and not expired, so use", m_cacheabbrev);
+            cache.recordHit();
+            if (now >= state.refreshAt && state.matches(pwd)) {
+                refresh(cache, pwd, authn);
+            }
+            return state;
+        }
+        logger.debug("{} expired or invalid, so try to repopulate",
+                     m_cacheabbrev);
+        cache.recordMiss();
+        synchronized (m_lookupLock) {
+            state = m_state;
+            if (state.isUsable(System.currentTimeMillis())) {
+                // looked up by another request while this one waited
+                return state;
+            }
+            state = lookup(cache, pwd, authn);
+            m_state = state;
+            return state;
+        }
+    }
+
+    /**
+     * Look the user up in the background, keeping the current answer if the
+     * lookup can't be completed.
+     */
+    private void refresh(final Cache cache,
+                         final String pwd,
+                         final boolean authn) {
+        if (!m_refreshing.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            cache.refresh(new Runnable() {
+
+                @Override
+                public void run() {
+                    try {
+                        synchronized (m_lookupLock) {
+                            State state = lookup(cache, pwd, authn);
+                            if (state.complete
+                                    || !m_state.isUsable(System.currentTimeMillis())) {
+                                m_state = state;
+                            }
+                        }
+                    } finally {
+                        m_refreshing.set(false);
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            m_refreshing.set(false);
+        }
+    }
+
+    /**
+     * Run the underlying authN code and make a new state from what it
+     * populated. Must hold m_lookupLock.
+     */
+    private State lookup(Cache cache, String pwd, boolean authn) {
+        String m = m_cacheabbrev + " lookup() ";
+        invalidate();
+        long start = System.nanoTime();
+        try {
+            cache.getCacheElementPopulator().populateCacheElement(this, pwd);
+        } catch (Throwable th) {
+            logger.error(m + "invalidating to be sure", th);
+            invalidate();
+        } finally {
+            cache.recordLookup(System.nanoTime() - start);
+        }
+        int duration = 0;
+        String unit = null;
+        boolean complete = true;
+        boolean success = false;
+        if (!m_valid || (authn ? m_authenticated == null : m_namedValues == null)) {
+            duration = cache.getAuthExceptionTimeoutDuration();
+            unit = cache.getAuthExceptionTimeoutUnit();
+            complete = false;
+            logger.debug("{}couldn't complete population", m);
+        } else if (!authn || isAuthenticated()) {
+            duration = cache.getAuthSuccessTimeoutDuration();
+            unit = cache.getAuthSuccessTimeoutUnit();
+            success = true;
+            logger.debug("{}populate succeeded", m);
+        } else {
+            duration = cache.getAuthFailureTimeoutDuration();
+            unit = cache.getAuthFailureTimeoutUnit();
+            logger.debug("{}populate failed", m);
+        }
+        long now = System.currentTimeMillis();
+        long expiration =
+                CacheElement.calcExpiration(duration, unit).getTimeInMillis();
+        long refreshAt = expiration;
+        byte[] salt = null;
+        byte[] passwordHash = null;
+        if (success) {
+            refreshAt = now + (long) ((expiration - now) * REFRESH_AHEAD_FRACTION);
+            if (pwd != null) {
+                salt = new byte[SALT_LENGTH];
+                RANDOM.nextBytes(salt);
+                passwordHash = hash(salt, pwd);
+            }
+        }
+        State state =
+                new State(m_valid, complete, m_authenticated, m_namedValues,
+                          m_errorMessage, salt, passwordHash, expiration,
+                          refreshAt);
+        invalidate();
+        return state;
+    }
+
     private boolean isAuthenticated() {
         if (m_authenticated == null) return false;
         return m_authenticated.booleanValue();
@@ -287,8 +353,6 @@ public class CacheElement {
         m_errorMessage = errorMessage;
         m_authenticated = null;
         m_namedValues = null;
-        m_expiration = EARLIER;
-        m_password = null;
         if (m_errorMessage != null) {
             logger.debug(m + m_errorMessage);
         }
@@ -298,8 +362,6 @@ public class CacheElement {
         assert m_authenticated == null;
         assert m_namedValues == null;
         assert !m_valid;
-        assert isExpired(m_expiration, false);
-        assert m_password == null;
     }
 
     private static final void checkCalcExpiration(int duration, int unit)
@@ -326,6 +388,67 @@ public class CacheElement {
         m_valid = true;
     }
 
+    /**
+     * One lookup's answer. Never changed once made.
+     */
+    private static final class State {
+
+        static final State INVALID =
+                new State(false, false, null, null, null, null, null, 0, 0);
+
+        final boolean valid;
+
+        /** Whether the backend gave an answer, rather than failing. */
+        final boolean complete;
+
+        final Boolean authenticated;
+
+        final Map<String, Set<?>> namedValues;
+
+        final String errorMessage;
+
+        final byte[] salt;
+
+        final byte[] passwordHash;
+
+        final long expiration;
+
+        final long refreshAt;
+
+        State(boolean valid,
+              boolean complete,
+              Boolean authenticated,
+              Map<String, Set<?>> namedValues,
+              String errorMessage,
+              byte[] salt,
+              byte[] passwordHash,
+              long expiration,
+              long refreshAt) {
+            this.valid = valid;
+            this.complete = complete;
+            this.authenticated = authenticated;
+            this.namedValues = namedValues;
+            this.errorMessage = errorMessage;
+            this.salt = salt;
+            this.passwordHash = passwordHash;
+            this.expiration = expiration;
+            this.refreshAt = refreshAt;
+        }
+
+        boolean isUsable(long now) {
+            return valid && now < expiration;
+        }
+
+        boolean isAuthenticated() {
+            return authenticated != null && authenticated.booleanValue();
+        }
+
+        boolean matches(String pwd) {
+            return passwordHash != null && pwd != null
+                    && MessageDigest.isEqual(passwordHash, hash(salt, pwd));
+        }
+    }
+
     ///////////////////////////////////////////////////////////////////////////
     // Private Class Methods
     ///////////////////////////////////////////////////////////////////////////
@@ -517,62 +640,17 @@ public class CacheElement {
         return rc;
     }
 
-    private static final boolean isExpired(Calendar now,
-                                          Calendar expiration,
-                                          boolean verbose) {
-        String m = "- isExpired() ";
-        if (verbose) {
-            logger.debug(m + ">");
-        }
-        boolean rc = CacheElement.s_expired_default;
-        try {
-            if (now == null) {
-                String msg = "illegal parm now==" + now;
-                logger.error(m + "(" + msg + ")");
-                throw new IllegalArgumentException(msg);
-            }
-            if (expiration == null) {
-                String msg = "illegal parm expiration==" + expiration;
-                logger.error(m + "(" + msg + ")");
-                throw new IllegalArgumentException(msg);
-            }
-            if (verbose) {
-                logger.debug(m + "now==" + format(now));
-                logger.debug(m + "exp==" + format(expiration));
-            }
-            rc = !now.before(expiration);
-        } catch (Throwable th) {
-            logger.error(m + "failed comparison");
-            rc = CacheElement.s_expired_default;
-        } finally {
-            if (verbose) {
-                logger.debug(m + compareForExpiration(now, expiration));
-                logger.debug(m + "< " + rc);
-            }
-        }
-        return rc;
-    }
 
-    private static final boolean isExpired(Calendar expiration, boolean verbose) {
-        String m = "- isExpired() ";
-        boolean rc = CacheElement.s_expired_default;
+    private static final byte[] hash(byte[] salt, String pwd) {
         try {
-            if (expiration == null) {
-                String msg = "illegal parm expiration==" + expiration;
-                logger.error(m + "(" + msg + ")");
-                throw new IllegalArgumentException(msg);
-            }
-            Calendar now = Calendar.getInstance();
-            rc = CacheElement.isExpired(now, expiration, verbose);
-        } catch (Throwable th) {
-            logger.error(m + "failed comparison");
-            rc = CacheElement.s_expired_default;
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(salt);
+            return digest.digest(pwd.getBytes("UTF-8"));
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        } catch (UnsupportedEncodingException e) {
+            throw new RuntimeException(e);
         }
-        return rc;
-    }
-
-    private static final boolean isExpired(Calendar now) {
-        return isExpired(now, true);
     }
 
 }
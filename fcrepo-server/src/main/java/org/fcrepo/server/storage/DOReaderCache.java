@@ -1,17 +1,22 @@
 /* The contents of this file are subject to the license and copyright terms
- * detailed in the license directory at the root of the source tree (also 
+ * detailed in the license directory at the root of the source tree (also
  * available online at http://fedora-commons.org/license/).
  */
 package org.fcrepo.server.storage;
 
+import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
-import java.util.Map;
+import java.util.List;
 import java.util.Map.Entry;
 import java.util.TimerTask;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.ReentrantLock;
 
 import org.fcrepo.server.errors.ServerException;
+import org.fcrepo.server.storage.types.Datastream;
+import org.fcrepo.server.storage.types.DatastreamXMLMetadata;
+import org.fcrepo.server.storage.types.DigitalObject;
 import org.fcrepo.utilities.TimestampedCacheEntry;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -19,12 +24,24 @@ import org.slf4j.LoggerFactory;
 /**
  * DOReader Cache to be used by DOManager to make object retrieval more
  * efficient
- * 
+ * <p>
+ * The cache is split into segments by pid, each with its own lock, so readers
+ * of different objects rarely contend. Each segment is kept in LRU order and
+ * is bounded by entry count and, optionally, by weight: one unit for the
+ * object, one per datastream version, and one per KB of inline XML.
+ * </p>
+ * <p>
+ * When a segment is full, a new reader is only admitted if its object has been
+ * asked for more often, recently, than the objects it would displace
+ * (TinyLFU). Request frequencies are estimated with a small count-min sketch
+ * per segment, which is halved periodically so that old popularity fades.
+ * </p>
+ *
  * @author Frank Asseg
  * @author Benjamin Armintor
- * 
+ *
  */
-public class DOReaderCache extends TimerTask {
+public class DOReaderCache extends TimerTask implements DOReaderCacheMBean {
 
 	private static final Logger LOG = LoggerFactory
 			.getLogger(DOReaderCache.class);
@@ -32,24 +49,33 @@ public class DOReaderCache extends TimerTask {
 	private int maxSeconds;
 	// default the max entries to default initial size of the map
 	private int maxEntries = 16;
-	
-	// since we need to synchronize access, we might as well
-	// gain the utility of a linked map
-	private final Map<String, TimestampedCacheEntry<DOReader>> cacheMap =
-	    new FiniteLinkedMap<String, TimestampedCacheEntry<DOReader>>();
+	// zero means the cache is bounded by entry count alone
+	private long maxWeight = 0;
+	// the most segments to split the cache into
+	private int concurrencyLevel = 16;
+
+	private volatile Segment[] segments;
+
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private final AtomicLong evictions = new AtomicLong();
+	private final AtomicLong expirations = new AtomicLong();
+	private final AtomicLong rejections = new AtomicLong();
+	private final AtomicLong loads = new AtomicLong();
+	private final AtomicLong loadMillis = new AtomicLong();
 
-	private final ReentrantLock mapLock = new ReentrantLock();
 	/**
 	 * create a new {@link DOReaderCache} instance
 	 */
 	public DOReaderCache() {
 		super();
+		configure();
 		LOG.debug("{} initialized",DOReaderCache.class.getName());
 	}
 
 	/**
 	 * set the maximal time in seconds an object should live in the cache
-	 * 
+	 *
 	 * @param maxSeconds
 	 *            the seconds objects will live in the cache before expiring
 	 */
@@ -58,18 +84,62 @@ public class DOReaderCache extends TimerTask {
 	}
 
 	/**
-	 * set the max number of entries the cache can hold
-	 * 
+	 * set the max number of entries the cache can hold. Any cached entries
+	 * are discarded.
+	 *
 	 * @param maxEntries
 	 *            the number of entries
 	 */
 	public void setMaxEntries(int maxEntries) {
 		this.maxEntries = maxEntries;
+		configure();
+	}
+
+	/**
+	 * set the max total weight of the entries in the cache, or zero for no
+	 * limit. Any cached entries are discarded.
+	 *
+	 * @param maxWeight
+	 *            the weight, in units of one datastream version or one KB of
+	 *            inline XML
+	 */
+	public void setMaxWeight(long maxWeight) {
+		this.maxWeight = maxWeight;
+		configure();
+	}
+
+	/**
+	 * set the max number of segments the cache is split into. Small caches
+	 * use fewer, so that each segment holds several entries. Any cached
+	 * entries are discarded.
+	 *
+	 * @param concurrencyLevel
+	 *            the number of segments
+	 */
+	public void setConcurrencyLevel(int concurrencyLevel) {
+		this.concurrencyLevel = concurrencyLevel;
+		configure();
+	}
+
+	private void configure() {
+		// a power of two, no more than the concurrency level, and no more
+		// than one segment per four entries
+		int count = 1;
+		while (count * 2 <= concurrencyLevel && count * 2 * 4 <= maxEntries) {
+			count *= 2;
+		}
+		int segmentEntries = Math.max(1, (maxEntries + count - 1) / count);
+		long segmentWeight = (maxWeight + count - 1) / count;
+		Segment[] newSegments = new Segment[count];
+		for (int i = 0; i < count; i++) {
+			newSegments[i] = new Segment(segmentEntries, segmentWeight);
+		}
+		segments = newSegments;
 	}
 
 	/**
 	 * add a new entry to the cache
-	 * 
+	 *
 	 * @param reader
 	 *            the {@link DOReader} to be cached
 	 */
@@ -77,52 +147,57 @@ public class DOReaderCache extends TimerTask {
 		put(reader, System.currentTimeMillis());
 	}
 
-    public final void put(final DOReader reader, long cacheTime) {
-        try {
-            String pid = reader.GetObjectPID();
-            LOG.debug("adding {} to cache", pid);
-            mapLock.lock();
-            cacheMap.put(pid,
-                    new TimestampedCacheEntry<DOReader>(cacheTime, reader));
-            mapLock.unlock();
-        } catch (ServerException e) {
-            throw new RuntimeException(
-                    "Unable to retrieve PID from reader for caching");
-        }
-    }
+	/**
+	 * add a new entry to the cache
+	 *
+	 * @param reader
+	 *            the {@link DOReader} to be cached
+	 * @param cacheTime
+	 *            when the reader was requested; the time since then is
+	 *            counted as load time
+	 */
+	public final void put(final DOReader reader, long cacheTime) {
+		String pid;
+		try {
+			pid = reader.GetObjectPID();
+		} catch (ServerException e) {
+			throw new RuntimeException(
+					"Unable to retrieve PID from reader for caching");
+		}
+		loads.incrementAndGet();
+		loadMillis.addAndGet(Math.max(0, System.currentTimeMillis() - cacheTime));
+		LOG.debug("adding {} to cache", pid);
+		segmentFor(pid).put(pid,
+				new WeightedEntry(cacheTime, reader, weigh(reader)));
+	}
+
 	/**
 	 * remove an entry from the cache
-	 * 
+	 *
 	 * @param pid
 	 *            the entry's pid
 	 */
 	public final void remove(final String pid) {
-        mapLock.lock();
-		cacheMap.remove(pid);
-        mapLock.unlock();
+		segmentFor(pid).remove(pid);
 	}
 
 	/**
 	 * get an {@link DOReader} from the cache
-	 * 
+	 *
 	 * @param pid
 	 *            the pid of the {@link DOReader}
 	 * @return the corresponding {@link DOReader} or null if there is no
 	 *         applicable cache content
 	 */
 	public final DOReader get(final String pid) {
-	    DOReader result = null;
-	    mapLock.lock();
-		if (cacheMap.containsKey(pid)) {
-			TimestampedCacheEntry<DOReader> e = cacheMap.remove(pid);
+		DOReader result = segmentFor(pid).get(pid);
+		if (result != null) {
+			hits.incrementAndGet();
 			LOG.debug("cache hit for {}", pid);
-			result = e.value();
-			// put the cache hit at the end of the FIFO list
-			cacheMap.put(pid, e.refresh());
 		} else {
-		    LOG.debug("cache miss for {}", pid);
+			misses.incrementAndGet();
+			LOG.debug("cache miss for {}", pid);
 		}
-		mapLock.unlock();
 		return result;
 	}
 
@@ -139,31 +214,321 @@ public class DOReaderCache extends TimerTask {
 	 * remove expired entries from the cache
 	 */
 	public final void removeExpired() {
-		mapLock.lock();
-		Iterator<Entry<String, TimestampedCacheEntry<DOReader>>> entries = cacheMap.entrySet().iterator();
-		if (entries.hasNext()) {
-		    long now = System.currentTimeMillis();
-		    while (entries.hasNext()) {
-		        Entry<String, TimestampedCacheEntry<DOReader>> entry = entries.next();
-		        TimestampedCacheEntry<DOReader> e = entry.getValue();
-		        long age = e.ageAt(now);
-		        if (age > (maxSeconds * 1000)) {
-		            entries.remove();
-		            String pid = entry.getKey();
-		            LOG.debug("removing entry {} after {} milliseconds",
-		                    pid, age);
-		        }
-
-		    }
-		}
-		mapLock.unlock();
-	}
-
-	@SuppressWarnings("serial")
-    private class FiniteLinkedMap<K, V> extends LinkedHashMap<K, V> {
-	    @Override
-	    protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
-	        return this.size() > maxEntries;
-	    }
-	}
-}
\ No newline at end of file
+		long now = System.currentTimeMillis();
+		for (Segment segment : segments) {
+			segment.removeExpired(now);
+		}
+	}
+
+	public long getHitCount() {
+		return hits.get();
+	}
+
+	public long getMissCount() {
+		return misses.get();
+	}
+
+	public long getEvictionCount() {
+		return evictions.get();
+	}
+
+	public long getExpirationCount() {
+		return expirations.get();
+	}
+
+	public long getRejectionCount() {
+		return rejections.get();
+	}
+
+	public long getLoadCount() {
+		return loads.get();
+	}
+
+	public long getTotalLoadMillis() {
+		return loadMillis.get();
+	}
+
+	public int getSize() {
+		int size = 0;
+		for (Segment segment : segments) {
+			size += segment.size();
+		}
+		return size;
+	}
+
+	public long getWeight() {
+		long weight = 0;
+		for (Segment segment : segments) {
+			weight += segment.weight();
+		}
+		return weight;
+	}
+
+	public int getMaxEntries() {
+		return maxEntries;
+	}
+
+	public long getMaxWeight() {
+		return maxWeight;
+	}
+
+	public int getMaxSeconds() {
+		return maxSeconds;
+	}
+
+	private Segment segmentFor(String pid) {
+		Segment[] current = segments;
+		int h = pid.hashCode();
+		h ^= (h >>> 16);
+		return current[h & (current.length - 1)];
+	}
+
+	/**
+	 * Estimate the memory held by a reader. Readers that don't expose their
+	 * object weigh one unit.
+	 */
+	private static int weigh(DOReader reader) {
+		DigitalObject obj = reader.getObject();
+		if (obj == null) {
+			return 1;
+		}
+		long weight = 1;
+		Iterator<String> ids = obj.datastreamIdIterator();
+		while (ids.hasNext()) {
+			for (Datastream ds : obj.datastreams(ids.next())) {
+				weight++;
+				if (ds instanceof DatastreamXMLMetadata) {
+					byte[] xml = ((DatastreamXMLMetadata) ds).xmlContent;
+					if (xml != null) {
+						weight += xml.length / 1024;
+					}
+				}
+			}
+		}
+		return (int) Math.min(weight, Integer.MAX_VALUE);
+	}
+
+	private static class WeightedEntry extends TimestampedCacheEntry<DOReader> {
+
+		private final int weight;
+
+		WeightedEntry(long timeStamp, DOReader reader, int weight) {
+			super(timeStamp, reader);
+			this.weight = weight;
+		}
+	}
+
+	/**
+	 * One lock's worth of the cache.
+	 */
+	private class Segment {
+
+		private final ReentrantLock lock = new ReentrantLock();
+
+		// in access order, so the eldest entry is the least recently used
+		private final LinkedHashMap<String, WeightedEntry> map =
+				new LinkedHashMap<String, WeightedEntry>(16, 0.75f, true);
+
+		private final FrequencySketch sketch;
+
+		private final int maxEntries;
+
+		private final long maxWeight;
+
+		private long weight;
+
+		Segment(int maxEntries, long maxWeight) {
+			this.maxEntries = maxEntries;
+			this.maxWeight = maxWeight;
+			sketch = new FrequencySketch(maxEntries);
+		}
+
+		DOReader get(String pid) {
+			lock.lock();
+			try {
+				sketch.increment(pid);
+				WeightedEntry e = map.get(pid);
+				if (e == null) {
+					return null;
+				}
+				e.refresh();
+				return e.value();
+			} finally {
+				lock.unlock();
+			}
+		}
+
+		void put(String pid, WeightedEntry entry) {
+			lock.lock();
+			try {
+				WeightedEntry old = map.remove(pid);
+				if (old != null) {
+					weight -= old.weight;
+				}
+				if (maxWeight > 0 && entry.weight > maxWeight) {
+					rejections.incrementAndGet();
+					return;
+				}
+
+				// find the least recently used entries that would have to go
+				List<String> victims = new ArrayList<String>();
+				int count = map.size();
+				long total = weight;
+				long now = System.currentTimeMillis();
+				boolean admit = true;
+				Iterator<Entry<String, WeightedEntry>> entries =
+						map.entrySet().iterator();
+				while (isOver(count + 1, total + entry.weight)
+						&& entries.hasNext()) {
+					Entry<String, WeightedEntry> victim = entries.next();
+					boolean expired = victim.getValue().ageAt(now) > maxSeconds * 1000L;
+					// an object that was in the cache is let back in
+					if (!expired && old == null
+							&& sketch.frequency(pid) <= sketch.frequency(victim.getKey())) {
+						admit = false;
+						break;
+					}
+					victims.add(victim.getKey());
+					count--;
+					total -= victim.getValue().weight;
+				}
+				if (!admit) {
+					rejections.incrementAndGet();
+					LOG.debug("not admitting {} to cache", pid);
+					return;
+				}
+				for (String victim : victims) {
+					weight -= map.remove(victim).weight;
+					evictions.incrementAndGet();
+				}
+				map.put(pid, entry);
+				weight += entry.weight;
+			} finally {
+				lock.unlock();
+			}
+		}
+
+		private boolean isOver(int count, long total) {
+			return count > maxEntries || (maxWeight > 0 && total > maxWeight);
+		}
+
+		void remove(String pid) {
+			lock.lock();
+			try {
+				WeightedEntry old = map.remove(pid);
+				if (old != null) {
+					weight -= old.weight;
+				}
+			} finally {
+				lock.unlock();
+			}
+		}
+
+		void removeExpired(long now) {
+			lock.lock();
+			try {
+				Iterator<Entry<String, WeightedEntry>> entries =
+						map.entrySet().iterator();
+				while (entries.hasNext()) {
+					Entry<String, WeightedEntry> entry = entries.next();
+					WeightedEntry e = entry.getValue();
+					long age = e.ageAt(now);
+					if (age > (maxSeconds * 1000L)) {
+						entries.remove();
+						weight -= e.weight;
+						expirations.incrementAndGet();
+						LOG.debug("removing entry {} after {} milliseconds",
+								entry.getKey(), age);
+					}
+				}
+			} finally {
+				lock.unlock();
+			}
+		}
+
+		int size() {
+			lock.lock();
+			try {
+				return map.size();
+			} finally {
+				lock.unlock();
+			}
+		}
+
+		long weight() {
+			lock.lock();
+			try {
+				return weight;
+			} finally {
+				lock.unlock();
+			}
+		}
+	}
+
+	/**
+	 * A count-min sketch of how often each pid has been asked for. Counts
+	 * saturate at 15, and are all halved once the number of increments
+	 * reaches ten times the width, so the estimate follows recent demand.
+	 * Not thread safe; guarded by the owning segment's lock.
+	 */
+	static class FrequencySketch {
+
+		private static final int[] SEEDS = new int[] {0x9E3779B9,
+				0xC2B2AE35, 0x27D4EB2F, 0x85EBCA6B};
+
+		private static final int MAX_COUNT = 15;
+
+		private final byte[][] rows;
+
+		private final int shift;
+
+		private final int sampleSize;
+
+		private int additions;
+
+		FrequencySketch(int capacity) {
+			int width = 16;
+			while (width < capacity * 2 && width < (1 << 24)) {
+				width <<= 1;
+			}
+			rows = new byte[SEEDS.length][width];
+			shift = 32 - Integer.numberOfTrailingZeros(width);
+			sampleSize = width * 10;
+		}
+
+		void increment(String key) {
+			int h = key.hashCode();
+			for (int i = 0; i < rows.length; i++) {
+				int index = index(h, i);
+				if (rows[i][index] < MAX_COUNT) {
+					rows[i][index]++;
+				}
+			}
+			if (++additions >= sampleSize) {
+				reset();
+			}
+		}
+
+		int frequency(String key) {
+			int h = key.hashCode();
+			int min = MAX_COUNT;
+			for (int i = 0; i < rows.length; i++) {
+				min = Math.min(min, rows[i][index(h, i)]);
+			}
+			return min;
+		}
+
+		private int index(int h, int row) {
+			return (h * SEEDS[row]) >>> shift;
+		}
+
+		private void reset() {
+			for (byte[] row : rows) {
+				for (int i = 0; i < row.length; i++) {
+					row[i] = (byte) (row[i] >> 1);
+				}
+			}
+			additions /= 2;
+		}
+	}
+}
@@ -0,0 +1,46 @@
+/* The contents of this file are subject to the license and copyright terms
+ * detailed in the license directory at the root of the source tree (also
+ * available online at http://fedora-commons.org/license/).
+ */
+package org.fcrepo.server.storage;
+
+/**
+ * Management interface of the {@link DOReaderCache}, exposing its counters as
+ * read-only JMX attributes.
+ */
+public interface DOReaderCacheMBean {
+
+    /** Number of requests answered from the cache. */
+    long getHitCount();
+
+    /** Number of requests for objects that were not in the cache. */
+    long getMissCount();
+
+    /** Number of entries removed to make room for others. */
+    long getEvictionCount();
+
+    /** Number of entries removed because they had been cached too long. */
+    long getExpirationCount();
+
+    /** Number of readers that were not admitted to the cache. */
+    long getRejectionCount();
+
+    /** Number of readers loaded and offered to the cache. */
+    long getLoadCount();
+
+    /** Total time spent loading the readers offered to the cache. */
+    long getTotalLoadMillis();
+
+    /** Number of entries now in the cache. */
+    int getSize();
+
+    /** Total weight of the entries now in the cache. */
+    long getWeight();
+
+    int getMaxEntries();
+
+    long getMaxWeight();
+
+    int getMaxSeconds();
+
+}
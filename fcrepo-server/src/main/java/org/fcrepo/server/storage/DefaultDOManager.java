@@ -15,11 +15,15 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
+import java.net.URI;
+import java.net.URISyntaxException;
 import java.nio.charset.Charset;
+import java.security.NoSuchAlgorithmException;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Statement;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Date;
@@ -36,6 +40,8 @@ import java.util.regex.Pattern;
 
 import org.fcrepo.common.Constants;
 import org.fcrepo.common.Models;
+import org.fcrepo.common.PID;
+import org.fcrepo.common.rdf.SimpleURIReference;
 import org.fcrepo.server.Context;
 import org.fcrepo.server.Module;
 import org.fcrepo.server.RecoveryContext;
@@ -50,16 +56,22 @@ import org.fcrepo.server.errors.ObjectExistsException;
 import org.fcrepo.server.errors.ObjectLockedException;
 import org.fcrepo.server.errors.ObjectNotFoundException;
 import org.fcrepo.server.errors.ObjectNotInLowlevelStorageException;
+import org.fcrepo.server.errors.ResourceIndexException;
 import org.fcrepo.server.errors.ServerException;
 import org.fcrepo.server.errors.StorageDeviceException;
 import org.fcrepo.server.errors.StreamIOException;
 import org.fcrepo.server.management.Management;
+import org.fcrepo.server.management.ManagementModule;
 import org.fcrepo.server.management.PIDGenerator;
+import org.fcrepo.server.management.UploadStore;
 import org.fcrepo.server.resourceIndex.ResourceIndex;
 import org.fcrepo.server.search.FieldSearch;
 import org.fcrepo.server.search.FieldSearchQuery;
 import org.fcrepo.server.search.FieldSearchResult;
+import org.fcrepo.server.storage.lowlevel.DigestingInputStream;
 import org.fcrepo.server.storage.lowlevel.ICheckable;
+import org.fcrepo.server.storage.lowlevel.ILinkable;
+import org.fcrepo.server.storage.lowlevel.IListable;
 import org.fcrepo.server.storage.lowlevel.ILowlevelStorage;
 import org.fcrepo.server.storage.translation.DOTranslationUtility;
 import org.fcrepo.server.storage.translation.DOTranslator;
@@ -71,6 +83,7 @@ import org.fcrepo.server.storage.types.DigitalObjectUtil;
 import org.fcrepo.server.storage.types.MIMETypedStream;
 import org.fcrepo.server.storage.types.RelationshipTuple;
 import org.fcrepo.server.storage.types.XMLDatastreamProcessor;
+import org.fcrepo.server.utilities.BloomFilter;
 import org.fcrepo.server.utilities.DCField;
 import org.fcrepo.server.utilities.DCFields;
 import org.fcrepo.server.utilities.SQLUtility;
@@ -78,10 +91,16 @@ import org.fcrepo.server.utilities.StreamUtility;
 import org.fcrepo.server.validation.DOObjectValidator;
 import org.fcrepo.server.validation.DOValidator;
 import org.fcrepo.server.validation.ValidationUtility;
+import org.fcrepo.server.validation.ecm.EcmValidator;
 import org.fcrepo.utilities.ReadableByteArrayOutputStream;
+import org.jrdf.graph.ObjectNode;
+import org.jrdf.graph.SubjectNode;
 import org.jrdf.graph.Triple;
+import org.jrdf.graph.URIReference;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.trippi.TripleIterator;
+import org.trippi.TrippiException;
 
 /**
  * Manages the reading and writing of digital objects by instantiating an
@@ -154,6 +173,22 @@ implements DOManager {
 
     protected Management m_management;
 
+    private UploadStore m_uploads;
+
+    private boolean m_useRegistryFilter;
+
+    /**
+     * Every pid in the registry, and possibly some that were removed, so
+     * that pids that don't exist needn't be looked up; null if not used.
+     */
+    private BloomFilter m_registryFilter;
+
+    private long m_reconcileIntervalMillis;
+
+    private int m_reconcileMaxPerSecond;
+
+    private IndexReconciler m_reconciler;
+
     protected Set<String> m_retainPIDs;
 
     protected ResourceIndex m_resourceIndex;
@@ -168,6 +203,17 @@ implements DOManager {
 
     private int m_ingestValidationLevel;
 
+    /** No check of the final serialization before it is stored. */
+    public static final int COMMIT_VERIFICATION_NONE = 0;
+
+    /** XML Schema validation of the final serialization. */
+    public static final int COMMIT_VERIFICATION_SCHEMA = 1;
+
+    /** Deserialization of the final serialization (the default). */
+    public static final int COMMIT_VERIFICATION_FULL = 2;
+
+    private int m_commitVerificationLevel;
+
     private Map<String, ReentrantLock> m_pidLocks;
 
     /**
@@ -285,6 +331,29 @@ implements DOManager {
                             e.getMessage(), getRole());
         }
 
+        // registryFilter (optional, default = false)
+        m_useRegistryFilter =
+                Boolean.parseBoolean(getParameter("registryFilter"));
+
+        // reconcileIntervalMinutes (optional, default = 0, meaning never)
+        // reconcileMaxPerSecond (optional, default = 50, 0 meaning no limit)
+        try {
+            String interval = getParameter("reconcileIntervalMinutes");
+            m_reconcileIntervalMillis =
+                    interval == null ? 0 : Long.parseLong(interval) * 60000;
+            String rate = getParameter("reconcileMaxPerSecond");
+            m_reconcileMaxPerSecond =
+                    rate == null ? 50 : Integer.parseInt(rate);
+            if (m_reconcileIntervalMillis < 0 || m_reconcileMaxPerSecond < 0) {
+                throw new Exception("Cannot be negative");
+            }
+        } catch (Exception e) {
+            throw new ModuleInitializationException(
+                    "Bad value for reconcileIntervalMinutes or "
+                            + "reconcileMaxPerSecond parameter: "
+                            + e.getMessage(), getRole());
+        }
+
         // configuration of ingest validation
         String ingestValidationLevel = getParameter("ingestValidationLevel");
         if (ingestValidationLevel == null) {
@@ -299,6 +368,22 @@ implements DOManager {
                         "Bad value for ingestValidationLevel", getRole());
             }
         }
+
+        // configuration of the check made on the final serialization at commit
+        String commitVerificationLevel = getParameter("commitVerificationLevel");
+        if (commitVerificationLevel == null
+                || commitVerificationLevel.equals("full")) {
+            m_commitVerificationLevel = COMMIT_VERIFICATION_FULL;
+        } else if (commitVerificationLevel.equals("schema")) {
+            m_commitVerificationLevel = COMMIT_VERIFICATION_SCHEMA;
+        } else if (commitVerificationLevel.equals("none")) {
+            m_commitVerificationLevel = COMMIT_VERIFICATION_NONE;
+        } else {
+            throw new ModuleInitializationException(
+                    "Bad value for commitVerificationLevel: "
+                            + commitVerificationLevel
+                            + " (expected none, schema or full)", getRole());
+        }
     }
 
     protected void initRetainPID() {
@@ -333,6 +418,9 @@ implements DOManager {
             throw new ModuleInitializationException(
                     "Management module not loaded.", getRole());
         }
+        if (m_management instanceof ManagementModule) {
+            m_uploads = ((ManagementModule) m_management).getUploadStore();
+        }
 
         // get ref to contentmanager module
         m_contentManager =
@@ -404,6 +492,9 @@ implements DOManager {
         ensureTableSpec("org/fcrepo/server/storage/resources/DefaultDOManager.dbspec");
         // the cModel cache relies on the lastMod date from doFields table
         ensureTableSpec("org/fcrepo/server/storage/resources/FieldSearchSQLImpl.dbspec");
+        if (m_useRegistryFilter) {
+            m_registryFilter = loadRegistryFilter();
+        }
 
         // get ref to lowlevelstorage module
         m_permanentStore =
@@ -415,6 +506,18 @@ implements DOManager {
                     "LowlevelStorage not loaded", getRole());
         }
         m_checkableStore = (m_permanentStore instanceof ICheckable);
+        if (m_reconcileIntervalMillis > 0) {
+            if (m_permanentStore instanceof IListable) {
+                m_reconciler =
+                        new IndexReconciler(this, m_connectionPool,
+                                m_permanentStore, m_fieldSearch,
+                                m_reconcileMaxPerSecond);
+                m_reconciler.start(m_reconcileIntervalMillis);
+            } else {
+                logger.warn("Indexes won't be reconciled: the object store "
+                        + "can't list its objects");
+            }
+        }
         // get ref to DOReaderCache module
         m_readerCache = (DOReaderCache) getServer().getBean("org.fcrepo.server.readerCache");
         
@@ -605,6 +708,9 @@ implements DOManager {
 
     @Override
     public void shutdownModule() {
+        if (m_reconciler != null) {
+            m_reconciler.shutdown();
+        }
     }
 
     @Override
@@ -674,6 +780,112 @@ implements DOManager {
 		lock.lock();
     }
 
+    /**
+     * Brings the field search and resource index entries for an object into
+     * line with the object as stored. The object is locked against writers
+     * while this is done.
+     *
+     * @param pid
+     *        the object to reindex
+     * @param modifiedSince
+     *        leave the object alone if it was last modified before this time,
+     *        or -1 to reindex it regardless
+     * @return true if the object was reindexed, false if it was left alone
+     *         or no longer exists
+     */
+    boolean reindexObject(String pid, long modifiedSince)
+            throws ServerException {
+        getWriteLock(pid);
+        try {
+            DOReader reader;
+            try {
+                reader = getReader(Server.USE_DEFINITIVE_STORE, null, pid);
+            } catch (ObjectNotInLowlevelStorageException e) {
+                return false;
+            } catch (ObjectNotFoundException e) {
+                return false;
+            }
+            if (modifiedSince >= 0 && reader.getLastModDate() != null
+                    && reader.getLastModDate().getTime() < modifiedSince) {
+                return false;
+            }
+            m_fieldSearch.update(reader);
+            if (m_resourceIndex != null
+                    && m_resourceIndex.getIndexLevel() != ResourceIndex.INDEX_LEVEL_OFF) {
+                List<Triple> expected = m_resourceIndex.exportObject(reader);
+                List<Triple> stored = getIndexedTriples(pid, expected);
+                List<Triple> deletes = new ArrayList<Triple>(stored);
+                deletes.removeAll(expected);
+                List<Triple> adds = new ArrayList<Triple>(expected);
+                adds.removeAll(stored);
+                if (!deletes.isEmpty() || !adds.isEmpty()) {
+                    logger.info("Reindexing {}: {} triples removed, {} added",
+                            new Object[] {pid, deletes.size(), adds.size()});
+                    try {
+                        m_resourceIndex.delete(deletes, false);
+                        m_resourceIndex.add(adds, m_resourceIndex.getSync());
+                    } catch (IOException e) {
+                        throw new ResourceIndexException(
+                                "Error reindexing " + pid, e);
+                    } catch (TrippiException e) {
+                        throw new ResourceIndexException(
+                                "Error reindexing " + pid, e);
+                    }
+                }
+            }
+            return true;
+        } finally {
+            releaseWriteLock(pid);
+        }
+    }
+
+    /**
+     * Gets the triples in the resource index about an object and about the
+     * datastreams it disseminates, now or according to the given triples.
+     */
+    private List<Triple> getIndexedTriples(String pid, List<Triple> expected)
+            throws ServerException {
+        Set<SubjectNode> subjects = new HashSet<SubjectNode>();
+        try {
+            URIReference objURI =
+                    new SimpleURIReference(new URI(PID.toURI(pid)));
+            subjects.add(objURI);
+            TripleIterator it =
+                    m_resourceIndex.findTriples(objURI,
+                            Constants.VIEW.DISSEMINATES, null, 0);
+            try {
+                while (it.hasNext()) {
+                    ObjectNode o = it.next().getObject();
+                    if (o instanceof URIReference) {
+                        subjects.add((URIReference) o);
+                    }
+                }
+            } finally {
+                it.close();
+            }
+            for (Triple t : expected) {
+                subjects.add(t.getSubject());
+            }
+            List<Triple> triples = new ArrayList<Triple>();
+            for (SubjectNode subject : subjects) {
+                it = m_resourceIndex.findTriples(subject, null, null, 0);
+                try {
+                    while (it.hasNext()) {
+                        triples.add(it.next());
+                    }
+                } finally {
+                    it.close();
+                }
+            }
+            return triples;
+        } catch (URISyntaxException e) {
+            throw new GeneralException("Bad pid: " + pid, e);
+        } catch (TrippiException e) {
+            throw new ResourceIndexException(
+                    "Error reading triples for " + pid, e);
+        }
+    }
+
     public ConnectionPool getConnectionPool() {
         return m_connectionPool;
     }
@@ -725,6 +937,7 @@ implements DOManager {
                     reader = m_readerCache.get(pid);
                 }
                 if (reader == null) {
+                    long loadStartTime = System.currentTimeMillis();
                     reader =
                             new SimpleDOReader(context, this, m_translator,
                                     m_defaultExportFormat,
@@ -733,7 +946,7 @@ implements DOManager {
                                     m_permanentStore.retrieveObject(pid));
                     source = "filesystem";
                     if (m_readerCache != null) {
-                        m_readerCache.put(reader, getReaderStartTime);
+                        m_readerCache.put(reader, loadStartTime);
                     }
                 } else {
                     source = "memory";
@@ -1099,6 +1312,23 @@ implements DOManager {
         dcxml.setXMLContent(bytes.toByteArray());
     }
 
+    /**
+     * Add the objects of some triples to a map of them by predicate.
+     */
+    private static Map<String, Set<String>> addRelationships(
+            Map<String, Set<String>> relationships, List<Triple> triples) {
+        for (Triple triple : triples) {
+            String predicate = triple.getPredicate().toString();
+            Set<String> objects = relationships.get(predicate);
+            if (objects == null) {
+                objects = new HashSet<String>();
+                relationships.put(predicate, objects);
+            }
+            objects.add(triple.getObject().stringValue());
+        }
+        return relationships;
+    }
+
     /**
      * The doCommit method finalizes an ingest/update/remove of a digital
      * object. The process makes updates the object modified date, stores
@@ -1115,9 +1345,13 @@ implements DOManager {
 
         String pid = obj.getPid();
 
+        // forget anything kept for validation if this is a content model
+        EcmValidator.getContentModelCache().invalidate(pid);
+
         // OBJECT REMOVAL...
         if (remove) {
             removeObject(obj, false);
+            RelationshipChanges.fire(pid, null);
 
             // OBJECT INGEST (ADD) OR MODIFY...
         } else {
@@ -1151,6 +1385,10 @@ implements DOManager {
                             String internalId =
                                     pid + "+" + dmc.DatastreamID + "+" +
                                             dmc.DSVersionID;
+                            // if it's an upload, link it into storage if we can
+                            if (storeUpload(obj, dmc, internalId)) {
+                                continue;
+                            }
                             // if it's a url, we need to grab content for this
                             // version
                             if (URL_PROTOCOL.matcher(dmc.DSLocation).matches()) {
@@ -1216,11 +1454,18 @@ implements DOManager {
                                         m_hintProvider
                                                 .getHintsForAboutToBeStoredDatastream(
                                                         obj, dmc.DatastreamID);
+                                // digest the content on its way into storage,
+                                // rather than reading it back afterwards
+                                DigestingInputStream content =
+                                        digestingStream(dmc, mimeTypedStream
+                                                .getStream());
+                                InputStream toStore =
+                                        content != null ? content
+                                                : mimeTypedStream.getStream();
                                 if (obj.isNew()) {
                                     dmc.DSSize =
                                             m_permanentStore.addDatastream(
-                                                    internalId, mimeTypedStream
-                                                            .getStream(),
+                                                    internalId, toStore,
                                                     dsHints);
                                 } else {
                                     // object already existed...so we may need
@@ -1231,18 +1476,25 @@ implements DOManager {
                                         dmc.DSSize =
                                                 m_permanentStore.addDatastream(
                                                         internalId,
-                                                        mimeTypedStream
-                                                                .getStream(),
+                                                        toStore,
                                                         dsHints);
                                     } catch (ObjectAlreadyInLowlevelStorageException oailse) {
+                                        DatastreamManagedContent
+                                                .getStoredDigests().remove(
+                                                        internalId);
                                         dmc.DSSize =
                                                 m_permanentStore.replaceDatastream(
                                                                 internalId,
-                                                                mimeTypedStream
-                                                                        .getStream(),
+                                                                toStore,
                                                                 dsHints);
                                     }
                                 }
+                                if (content != null) {
+                                    recordDigests(internalId,
+                                                  dmc,
+                                                  content.getByteCount(),
+                                                  content.getDigests());
+                                }
                                 if (mimeTypedStream != null) {
                                     mimeTypedStream.close();
                                     if (dmc.DSLocation
@@ -1323,8 +1575,8 @@ implements DOManager {
                 }
 
                 // FINAL VALIDATION:
-                // As of version 2.0, final validation is only performed in
-                // DEBUG mode.
+                // As of version 2.0, full final validation is only performed
+                // in DEBUG mode.
                 // This is to help performance during the ingest process since
                 // validation
                 // is a large amount of the overhead of ingest. Instead of a
@@ -1333,8 +1585,9 @@ implements DOManager {
                 // code to
                 // create valid XML files for persistent storage of digital
                 // objects. As
-                // a sanity check, we check that we can deserialize the object
-                // we just serialized
+                // a sanity check, and depending on commitVerificationLevel,
+                // we check the serialization against the schema, or that we
+                // can deserialize the object we just serialized
                 if (logger.isDebugEnabled()) {
                     logger.debug("Final Validation (storage phase)");
                     m_validator.validate(serialized, m_defaultStorageFormat,
@@ -1343,12 +1596,18 @@ implements DOManager {
                     m_validator.validate(serialized, m_defaultStorageFormat,
                             DOValidator.VALIDATE_SCHEMATRON, DOValidator.PHASE_STORE);
                     serialized.reset();
+                } else if (m_commitVerificationLevel == COMMIT_VERIFICATION_SCHEMA) {
+                    m_validator.validate(serialized, m_defaultStorageFormat,
+                            DOValidator.VALIDATE_XML_SCHEMA, DOValidator.PHASE_STORE);
+                    serialized.reset();
+                }
+                if (m_commitVerificationLevel == COMMIT_VERIFICATION_FULL) {
+                    /* Verify that we can deserialize our object. */
+                    m_translator.deserialize(serialized, new BasicDigitalObject(),
+                            m_defaultStorageFormat, m_storageCharacterEncoding,
+                            DOTranslationUtility.SERIALIZE_STORAGE_INTERNAL);
+                    serialized.reset();
                 }
-                /* Verify that we can deserialize our object. */
-                m_translator.deserialize(serialized, new BasicDigitalObject(),
-                        m_defaultStorageFormat, m_storageCharacterEncoding,
-                        DOTranslationUtility.SERIALIZE_STORAGE_INTERNAL);
-                serialized.reset();
 
                 // RESOURCE INDEX:
                 if (m_resourceIndex != null &&
@@ -1360,6 +1619,8 @@ implements DOManager {
 
                     if (obj.isNew()) {
                         m_resourceIndex.add(after,m_resourceIndex.getSync());
+                        RelationshipChanges.fire(pid, addRelationships(
+                                new HashMap<String, Set<String>>(), after));
                     } else {
                         List<Triple> deletes = new ArrayList<Triple>(before);
                         deletes.removeAll(after);
@@ -1372,6 +1633,15 @@ implements DOManager {
                                 .getPid()), new SimpleDOReader(null, null,
                                 null, null, null, obj));
                                 */
+                        // from the diff rather than the RI, which may not
+                        // have applied it yet
+                        Map<String, Set<String>> changed =
+                                new HashMap<String, Set<String>>();
+                        addRelationships(changed, deletes);
+                        addRelationships(changed, adds);
+                        if (!changed.isEmpty()) {
+                            RelationshipChanges.fire(pid, changed);
+                        }
                     }
                     logger.debug("Finished adding {} to ResourceIndex.", pid);
                 }
@@ -1536,6 +1806,7 @@ implements DOManager {
                                     dmc.DSVersionID;
                     logger.info("Deleting managed datastream: {} for {}",
                             id, pid);
+                    DatastreamManagedContent.getStoredDigests().remove(id);
                     try {
                         m_permanentStore.removeDatastream(id);
                     } catch (LowlevelStorageException llse) {
@@ -1642,6 +1913,107 @@ implements DOManager {
         return dates;
     }
 
+    /**
+     * Wrap the content of a managed datastream so that, as it is stored, it
+     * is digested with the datastream's checksum algorithm and the
+     * repository's default one. Returns null if neither is enabled.
+     */
+    private DigestingInputStream digestingStream(Datastream dmc,
+                                                 InputStream in) {
+        Set<String> algorithms = new HashSet<String>();
+        String csType = dmc.getChecksumType();
+        if (csType != null && !csType.equals(Datastream.CHECKSUMTYPE_DISABLED)) {
+            algorithms.add(csType);
+        }
+        String defaultType = Datastream.getDefaultChecksumType();
+        if (defaultType != null
+                && !defaultType.equals(Datastream.CHECKSUMTYPE_DISABLED)) {
+            algorithms.add(defaultType);
+        }
+        if (algorithms.isEmpty()) {
+            return null;
+        }
+        try {
+            return new DigestingInputStream(in, algorithms);
+        } catch (NoSuchAlgorithmException e) {
+            logger.warn("Not digesting " + dmc.DatastreamID
+                    + " as it is stored: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Store a datastream's uploaded content from the file it was uploaded
+     * to, where low-level storage can link to it, so the content is neither
+     * copied nor read again to digest it.
+     *
+     * @return whether the content was stored
+     */
+    private boolean storeUpload(DigitalObject obj,
+                                Datastream dmc,
+                                String internalId) throws ServerException {
+        if (m_uploads == null || !(m_permanentStore instanceof ILinkable)
+                || !dmc.DSLocation
+                        .startsWith(DatastreamManagedContent.UPLOADED_SCHEME)) {
+            return false;
+        }
+        UploadStore.Upload upload =
+                m_uploads.get(dmc.DSLocation
+                        .substring(DatastreamManagedContent.UPLOADED_SCHEME
+                                .length()));
+        if (upload == null) {
+            return false;
+        }
+        ILinkable store = (ILinkable) m_permanentStore;
+        Map<String, String> dsHints =
+                m_hintProvider.getHintsForAboutToBeStoredDatastream(
+                        obj, dmc.DatastreamID);
+        try {
+            dmc.DSSize =
+                    store.addDatastream(internalId, upload.getFile(), dsHints);
+        } catch (ObjectAlreadyInLowlevelStorageException oailse) {
+            DatastreamManagedContent.getStoredDigests().remove(internalId);
+            dmc.DSSize =
+                    store.replaceDatastream(internalId,
+                                            upload.getFile(),
+                                            dsHints);
+        }
+        if (!upload.getDigests().isEmpty()) {
+            recordDigests(internalId, dmc, upload.getSize(), upload.getDigests());
+        }
+        logger.info("Stored managed datastream from internal uploaded "
+                + "location: {} as {}", dmc.DSLocation, internalId);
+        dmc.DSLocation = internalId;
+        dmc.DSLocationType = Datastream.DS_LOCATION_TYPE_INTERNAL;
+        return true;
+    }
+
+    /**
+     * Record the digests of content just stored, and, if the datastream has
+     * no checksum yet, set it, so that serializing the object doesn't read
+     * the content back to compute it.
+     */
+    private void recordDigests(String internalId,
+                               Datastream dmc,
+                               long size,
+                               Map<String, String> digests) {
+        DatastreamManagedContent.getStoredDigests().put(internalId,
+                                                        size,
+                                                        digests);
+        String digest = digests.get(dmc.getChecksumType());
+        if (digest == null) {
+            return;
+        }
+        if (dmc.DSChecksum == null
+                || dmc.DSChecksum.equals(Datastream.CHECKSUM_NONE)) {
+            dmc.DSChecksum = digest;
+        } else if (!dmc.DSChecksum.equals(digest)) {
+            logger.warn("Content stored for " + internalId + " has "
+                    + dmc.DSChecksumType + " digest " + digest
+                    + ", but the datastream's checksum is " + dmc.DSChecksum);
+        }
+    }
+
     private void deletePurgedDatastreams(DigitalObject obj, Context context) {
         try {
             // for each datastream that existed before the change:
@@ -1670,6 +2042,8 @@ implements DOManager {
                                             dsID +
                                             "+" +
                                             reader.GetDatastream(dsID, dt).DSVersionID;
+                            DatastreamManagedContent.getStoredDigests()
+                                    .remove(token);
                             try {
                                 m_permanentStore.removeDatastream(token);
                                 logger.info("Removed purged datastream version " +
@@ -1717,6 +2091,9 @@ implements DOManager {
     protected boolean objectExistsInRegistry(String pid)
         throws StorageDeviceException {
         logger.debug("Checking if {} already exists", pid);
+        if (m_registryFilter != null && !m_registryFilter.mightContain(pid)) {
+            return false;
+        }
         Connection conn = null;
         PreparedStatement s = null;
         ResultSet results = null;
@@ -1752,6 +2129,48 @@ implements DOManager {
         }
     }
 
+    /**
+     * Reads every pid in the registry into a filter sized for twice as many.
+     */
+    private BloomFilter loadRegistryFilter()
+            throws ModuleInitializationException {
+        Connection conn = null;
+        Statement s = null;
+        ResultSet results = null;
+        try {
+            conn = m_connectionPool.getReadOnlyConnection();
+            s = conn.createStatement();
+            results = s.executeQuery("SELECT COUNT(*) FROM doRegistry");
+            int count = results.next() ? results.getInt(1) : 0;
+            results.close();
+            BloomFilter filter = new BloomFilter(Math.max(2 * count, 100000));
+            results = s.executeQuery("SELECT doPID FROM doRegistry");
+            while (results.next()) {
+                filter.add(results.getString(1));
+            }
+            logger.info("Loaded {} pids into the registry filter", count);
+            return filter;
+        } catch (SQLException sqle) {
+            throw new ModuleInitializationException(
+                    "Error loading the registry filter: " + sqle.getMessage(),
+                    getRole(), sqle);
+        } finally {
+            try {
+                if (results != null) {
+                    results.close();
+                }
+                if (s != null) {
+                    s.close();
+                }
+                if (conn != null) {
+                    m_connectionPool.free(conn);
+                }
+            } catch (SQLException sqle) {
+                logger.warn("Error closing db resources", sqle);
+            }
+        }
+    }
+
     /**
      * Adds a new object. The caller *must* ensure the object does not already
      * exist in the registry before calling this method.
@@ -1762,6 +2181,10 @@ implements DOManager {
         String ownerID = "the ownerID field is no longer used";
         String pid = obj.getPid();
 
+        // added before the row, so the filter never misses a registered pid
+        if (m_registryFilter != null) {
+            m_registryFilter.add(pid);
+        }
         Connection conn = null;
         PreparedStatement st = null;
         try {
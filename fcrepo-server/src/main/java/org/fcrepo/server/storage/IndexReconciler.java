@@ -0,0 +1,428 @@
+/* The contents of this file are subject to the license and copyright terms
+ * detailed in the license directory at the root of the source tree (also
+ * available online at http://fedora-commons.org/license/).
+ */
+package org.fcrepo.server.storage;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.fcrepo.server.errors.LowlevelStorageException;
+import org.fcrepo.server.errors.ServerException;
+import org.fcrepo.server.search.FieldSearch;
+import org.fcrepo.server.storage.lowlevel.IListable;
+import org.fcrepo.server.storage.lowlevel.ILowlevelStorage;
+import org.fcrepo.server.storage.lowlevel.ITimestamped;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Brings the field search and resource indexes back in line with the object
+ * store while the repository is running, as an alternative to rebuilding
+ * them offline.
+ * <p>
+ * Each pass looks at the objects written since the last pass (the watermark,
+ * kept in the fcrepoReconcileStatus table) and reindexes them, no faster than
+ * a given number of objects a second so that other work isn't starved.
+ * Objects that fail to reindex are kept in the fcrepoReconcileFailure table
+ * and retried on the following passes, up to {@link #MAX_ATTEMPTS} times;
+ * after that, they are left alone until they are written again. If the
+ * store can tell when objects were written without reading them, objects
+ * older than the watermark aren't read at all; otherwise each object is read
+ * and its own last modified date is used. The first pass, when there is no
+ * watermark, looks at every object. Field search rows for objects no longer
+ * in the registry are removed on every pass.
+ * </p>
+ */
+class IndexReconciler {
+
+    private static final Logger logger =
+            LoggerFactory.getLogger(IndexReconciler.class);
+
+    /**
+     * How far before the start of a pass the new watermark is put, to allow
+     * for coarse or slightly skewed file modification times.
+     */
+    static final long WATERMARK_SLACK_MILLIS = 60000;
+
+    /**
+     * How many passes in a row may fail to reindex an object before it is no
+     * longer retried.
+     */
+    static final int MAX_ATTEMPTS = 5;
+
+    private static final String SELECT_WATERMARK =
+            "SELECT watermark FROM fcrepoReconcileStatus";
+
+    private static final String UPDATE_WATERMARK =
+            "UPDATE fcrepoReconcileStatus SET watermark = ?";
+
+    private static final String INSERT_WATERMARK =
+            "INSERT INTO fcrepoReconcileStatus (watermark) VALUES (?)";
+
+    private static final String SELECT_FAILURES =
+            "SELECT pid, attempts FROM fcrepoReconcileFailure";
+
+    private static final String UPDATE_FAILURE =
+            "UPDATE fcrepoReconcileFailure SET attempts = ? WHERE pid = ?";
+
+    private static final String INSERT_FAILURE =
+            "INSERT INTO fcrepoReconcileFailure (attempts, pid) VALUES (?, ?)";
+
+    private static final String DELETE_FAILURE =
+            "DELETE FROM fcrepoReconcileFailure WHERE pid = ?";
+
+    private static final String SELECT_ORPHANS =
+            "SELECT pid FROM doFields WHERE pid NOT IN "
+                    + "(SELECT doPID FROM doRegistry)";
+
+    private final DefaultDOManager m_manager;
+
+    private final ConnectionPool m_connectionPool;
+
+    private final ILowlevelStorage m_store;
+
+    private final FieldSearch m_fieldSearch;
+
+    private final long m_minMillisPerObject;
+
+    private ScheduledExecutorService m_executor;
+
+    /**
+     * @param manager
+     *        the manager that reindexes each object
+     * @param connectionPool
+     *        the pool holding the registry, field search and watermark tables
+     * @param store
+     *        the object store, which must be {@link IListable}
+     * @param fieldSearch
+     *        the field search index
+     * @param maxPerSecond
+     *        the most objects to reindex in a second, or 0 for no limit
+     */
+    IndexReconciler(DefaultDOManager manager,
+                    ConnectionPool connectionPool,
+                    ILowlevelStorage store,
+                    FieldSearch fieldSearch,
+                    int maxPerSecond) {
+        if (!(store instanceof IListable)) {
+            throw new IllegalArgumentException(
+                    "Object store must be able to list its objects");
+        }
+        m_manager = manager;
+        m_connectionPool = connectionPool;
+        m_store = store;
+        m_fieldSearch = fieldSearch;
+        m_minMillisPerObject = maxPerSecond > 0 ? 1000 / maxPerSecond : 0;
+    }
+
+    /**
+     * Start reconciling in the background.
+     *
+     * @param intervalMillis
+     *        the time between the end of one pass and the start of the next
+     */
+    synchronized void start(long intervalMillis) {
+        if (m_executor != null) {
+            return;
+        }
+        m_executor =
+                Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+
+                    @Override
+                    public Thread newThread(Runnable r) {
+                        Thread t = new Thread(r, "IndexReconciler");
+                        t.setDaemon(true);
+                        t.setPriority(Thread.MIN_PRIORITY);
+                        return t;
+                    }
+                });
+        m_executor.scheduleWithFixedDelay(new Runnable() {
+
+            @Override
+            public void run() {
+                try {
+                    reconcile();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } catch (Exception e) {
+                    logger.warn("Error reconciling indexes", e);
+                }
+            }
+        }, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stop reconciling, abandoning any pass in progress.
+     */
+    synchronized void shutdown() {
+        if (m_executor != null) {
+            m_executor.shutdownNow();
+            m_executor = null;
+        }
+    }
+
+    /**
+     * Make one pass. The watermark is always moved on, and the objects that
+     * failed are recorded, so that they are retried on the next pass without
+     * holding back the others.
+     *
+     * @return the number of objects reindexed
+     */
+    int reconcile() throws SQLException, InterruptedException {
+        long passStart = System.currentTimeMillis();
+        long watermark = readWatermark();
+        Map<String, Integer> failures = readFailures();
+        Map<String, Integer> stillFailing =
+                new HashMap<String, Integer>(failures);
+        Set<String> listedFailures = new HashSet<String>();
+        ITimestamped timestamps =
+                m_store instanceof ITimestamped ? (ITimestamped) m_store
+                        : null;
+        logger.info("Reconciling indexes with objects written since {}",
+                watermark);
+
+        int seen = 0;
+        int reindexed = 0;
+        int failed = 0;
+        long next = System.currentTimeMillis();
+        Iterator<String> pids = ((IListable) m_store).listObjects();
+        while (pids.hasNext()) {
+            if (Thread.currentThread().isInterrupted()) {
+                throw new InterruptedException();
+            }
+            String pid = pids.next();
+            seen++;
+            Integer attempts = failures.get(pid);
+            if (attempts != null) {
+                listedFailures.add(pid);
+            }
+            boolean retry = attempts != null && attempts < MAX_ATTEMPTS;
+            long since = retry ? -1 : watermark;
+            if (timestamps != null && watermark >= 0 && !retry) {
+                try {
+                    if (timestamps.getObjectLastModified(pid) < watermark) {
+                        continue;
+                    }
+                    // already known to be new enough
+                    since = -1;
+                } catch (LowlevelStorageException e) {
+                    // removed since it was listed
+                    logger.debug("Skipping {}: {}", pid, e.getMessage());
+                    continue;
+                }
+            }
+            long wait = next - System.currentTimeMillis();
+            if (wait > 0) {
+                Thread.sleep(wait);
+            }
+            next = System.currentTimeMillis() + m_minMillisPerObject;
+            try {
+                if (m_manager.reindexObject(pid, since)) {
+                    reindexed++;
+                }
+                stillFailing.remove(pid);
+            } catch (ServerException e) {
+                failed++;
+                recordFailure(pid, attempts, stillFailing, e);
+            } catch (RuntimeException e) {
+                failed++;
+                recordFailure(pid, attempts, stillFailing, e);
+            }
+        }
+
+        // objects that are gone can't be retried
+        for (String pid : failures.keySet()) {
+            if (!listedFailures.contains(pid)) {
+                stillFailing.remove(pid);
+            }
+        }
+        int orphans = removeOrphans();
+        writeFailures(failures, stillFailing);
+        writeWatermark(passStart - WATERMARK_SLACK_MILLIS);
+        logger.info("Reconciled indexes: {} objects seen, {} reindexed, {} "
+                + "failed, {} field search orphans removed", new Object[] {
+                seen, reindexed, failed, orphans});
+        return reindexed;
+    }
+
+    private static void recordFailure(String pid,
+                                      Integer attempts,
+                                      Map<String, Integer> stillFailing,
+                                      Exception e) {
+        // an object given up on has been written again since
+        int failedAttempts =
+                attempts == null || attempts >= MAX_ATTEMPTS ? 1
+                        : attempts + 1;
+        stillFailing.put(pid, failedAttempts);
+        if (failedAttempts == MAX_ATTEMPTS) {
+            logger.error("Error reindexing " + pid + "; giving up after "
+                    + failedAttempts + " attempts", e);
+        } else {
+            logger.warn("Error reindexing " + pid, e);
+        }
+    }
+
+    /**
+     * @return the watermark, or -1 if no pass has finished
+     */
+    long readWatermark() throws SQLException {
+        Connection conn = m_connectionPool.getReadOnlyConnection();
+        Statement s = null;
+        ResultSet rs = null;
+        try {
+            s = conn.createStatement();
+            rs = s.executeQuery(SELECT_WATERMARK);
+            return rs.next() ? rs.getLong(1) : -1;
+        } finally {
+            close(rs, s);
+            m_connectionPool.free(conn);
+        }
+    }
+
+    private void writeWatermark(long watermark) throws SQLException {
+        Connection conn = m_connectionPool.getReadWriteConnection();
+        PreparedStatement s = null;
+        try {
+            s = conn.prepareStatement(UPDATE_WATERMARK);
+            s.setLong(1, watermark);
+            if (s.executeUpdate() == 0) {
+                s.close();
+                s = conn.prepareStatement(INSERT_WATERMARK);
+                s.setLong(1, watermark);
+                s.executeUpdate();
+            }
+        } finally {
+            close(null, s);
+            m_connectionPool.free(conn);
+        }
+    }
+
+    /**
+     * @return the number of passes in a row that failed to reindex each
+     *         object, by pid
+     */
+    Map<String, Integer> readFailures() throws SQLException {
+        Map<String, Integer> failures = new HashMap<String, Integer>();
+        Connection conn = m_connectionPool.getReadOnlyConnection();
+        Statement s = null;
+        ResultSet rs = null;
+        try {
+            s = conn.createStatement();
+            rs = s.executeQuery(SELECT_FAILURES);
+            while (rs.next()) {
+                failures.put(rs.getString(1), rs.getInt(2));
+            }
+        } finally {
+            close(rs, s);
+            m_connectionPool.free(conn);
+        }
+        return failures;
+    }
+
+    /**
+     * Record the failures of this pass, changing only the rows that differ
+     * from those read at the start of it.
+     */
+    private void writeFailures(Map<String, Integer> before,
+                               Map<String, Integer> after)
+            throws SQLException {
+        Connection conn = m_connectionPool.getReadWriteConnection();
+        PreparedStatement update = null;
+        PreparedStatement insert = null;
+        PreparedStatement delete = null;
+        try {
+            for (Map.Entry<String, Integer> failure : after.entrySet()) {
+                Integer previous = before.get(failure.getKey());
+                if (failure.getValue().equals(previous)) {
+                    continue;
+                }
+                PreparedStatement s;
+                if (previous == null) {
+                    if (insert == null) {
+                        insert = conn.prepareStatement(INSERT_FAILURE);
+                    }
+                    s = insert;
+                } else {
+                    if (update == null) {
+                        update = conn.prepareStatement(UPDATE_FAILURE);
+                    }
+                    s = update;
+                }
+                s.setInt(1, failure.getValue());
+                s.setString(2, failure.getKey());
+                s.executeUpdate();
+            }
+            for (String pid : before.keySet()) {
+                if (after.containsKey(pid)) {
+                    continue;
+                }
+                if (delete == null) {
+                    delete = conn.prepareStatement(DELETE_FAILURE);
+                }
+                delete.setString(1, pid);
+                delete.executeUpdate();
+            }
+        } finally {
+            close(null, update);
+            close(null, insert);
+            close(null, delete);
+            m_connectionPool.free(conn);
+        }
+    }
+
+    private int removeOrphans() throws SQLException {
+        List<String> orphans = new ArrayList<String>();
+        Connection conn = m_connectionPool.getReadOnlyConnection();
+        Statement s = null;
+        ResultSet rs = null;
+        try {
+            s = conn.createStatement();
+            rs = s.executeQuery(SELECT_ORPHANS);
+            while (rs.next()) {
+                orphans.add(rs.getString(1));
+            }
+        } finally {
+            close(rs, s);
+            m_connectionPool.free(conn);
+        }
+        int removed = 0;
+        for (String pid : orphans) {
+            try {
+                if (m_fieldSearch.delete(pid)) {
+                    removed++;
+                }
+            } catch (ServerException e) {
+                logger.warn("Error removing " + pid + " from field search", e);
+            }
+        }
+        return removed;
+    }
+
+    private static void close(ResultSet rs, Statement s) {
+        try {
+            if (rs != null) {
+                rs.close();
+            }
+            if (s != null) {
+                s.close();
+            }
+        } catch (SQLException e) {
+            logger.warn("Error closing statement", e);
+        }
+    }
+}
@@ -0,0 +1,67 @@
+/* The contents of this file are subject to the license and copyright terms
+ * detailed in the license directory at the root of the source tree (also
+ * available online at http://fedora-commons.org/license/).
+ */
+package org.fcrepo.server.storage;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Tells anything that keeps objects' relationships, such as the parent
+ * hierarchies used for authorization, when they change. Listeners are
+ * registered statically, since they may live outside the module context, so
+ * they must be removed again when they are discarded.
+ */
+public final class RelationshipChanges {
+
+    private static final Logger logger =
+            LoggerFactory.getLogger(RelationshipChanges.class);
+
+    /**
+     * Notified after an object's relationships have changed in the resource
+     * index.
+     */
+    public interface Listener {
+
+        /**
+         * @param pid
+         *        the object whose relationships changed
+         * @param changes
+         *        the relationships added or removed, as the objects of each
+         *        predicate, or null if the object was purged
+         */
+        public void relationshipsChanged(String pid,
+                                         Map<String, Set<String>> changes);
+    }
+
+    private static final List<Listener> s_listeners =
+            new CopyOnWriteArrayList<Listener>();
+
+    private RelationshipChanges() {
+    }
+
+    public static void addListener(Listener listener) {
+        s_listeners.add(listener);
+    }
+
+    public static void removeListener(Listener listener) {
+        s_listeners.remove(listener);
+    }
+
+    static void fire(String pid, Map<String, Set<String>> changes) {
+        for (Listener listener : s_listeners) {
+            try {
+                listener.relationshipsChanged(pid, changes);
+            } catch (RuntimeException e) {
+                logger.warn("Error notifying " + listener
+                        + " of relationship changes to " + pid, e);
+            }
+        }
+    }
+}
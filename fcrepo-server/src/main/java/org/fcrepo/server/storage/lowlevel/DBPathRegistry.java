@@ -20,6 +20,7 @@ import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.Enumeration;
+import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.NoSuchElementException;
 
@@ -27,11 +28,21 @@ import org.fcrepo.server.errors.LowlevelStorageException;
 import org.fcrepo.server.errors.LowlevelStorageInconsistencyException;
 import org.fcrepo.server.errors.ObjectNotInLowlevelStorageException;
 import org.fcrepo.server.storage.ConnectionPool;
+import org.fcrepo.server.utilities.BloomFilter;
 import org.fcrepo.server.utilities.SQLUtility;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
+ * A PathRegistry kept in a database table.
+ * <p>
+ * Optionally, the most recently used paths are cached, and a
+ * {@link BloomFilter} of all the tokens is loaded at startup, so that
+ * lookups of hot tokens and of tokens that aren't registered don't go to
+ * the database. Both assume that nothing else changes the table while the
+ * registry is in use.
+ * </p>
+ *
  * @author Bill Niebel
  */
 public class DBPathRegistry
@@ -52,6 +63,10 @@ public class DBPathRegistry
 
     private final boolean backslashIsEscape;
 
+    private final Map<String, String> pathCache;
+
+    private final BloomFilter tokenFilter;
+
     public DBPathRegistry(Map<String, ?> configuration) throws LowlevelStorageException {
         super(configuration);
         connectionPool = (ConnectionPool) configuration.get("connectionPool");
@@ -81,6 +96,110 @@ public class DBPathRegistry
                     e.getClass().getName() + ": " + e.getMessage(), e);
         }
 
+        final int cacheSize = configuration.get("pathCacheSize") == null ? 0
+                : Integer.parseInt((String) configuration.get("pathCacheSize"));
+        if (cacheSize > 0) {
+            pathCache = new LinkedHashMap<String, String>(16, 0.75f, true) {
+
+                private static final long serialVersionUID = 1L;
+
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+                    return size() > cacheSize;
+                }
+            };
+        } else {
+            pathCache = null;
+        }
+        if (Boolean.valueOf((String) configuration.get("tokenFilter"))
+                .booleanValue()) {
+            tokenFilter = loadTokenFilter();
+        } else {
+            tokenFilter = null;
+        }
+    }
+
+    /**
+     * Reads all the tokens into a filter sized for twice as many.
+     */
+    private BloomFilter loadTokenFilter() throws LowlevelStorageException {
+        Connection connection = null;
+        Statement statement = null;
+        ResultSet rs = null;
+        try {
+            connection = connectionPool.getReadOnlyConnection();
+            statement = connection.createStatement();
+            rs = statement.executeQuery("SELECT COUNT(*) FROM "
+                    + this.registryName);
+            int count = rs.next() ? rs.getInt(1) : 0;
+            rs.close();
+            BloomFilter filter =
+                    new BloomFilter(Math.max(2 * count, 100000));
+            rs = statement.executeQuery(selectAllQuery);
+            while (rs.next()) {
+                String token = rs.getString(1);
+                if (token != null) {
+                    filter.add(token);
+                }
+            }
+            logger.info("Loaded {} tokens of {} into filter", count,
+                        this.registryName);
+            return filter;
+        } catch (SQLException e1) {
+            throw new LowlevelStorageException(true, "sql failure (load)", e1);
+        } finally {
+            try {
+                if (rs != null) {
+                    rs.close();
+                }
+                if (statement != null) {
+                    statement.close();
+                }
+                if (connection != null) {
+                    connectionPool.free(connection);
+                }
+            } catch (Exception e2) { // purposely general to include uninstantiated statement, connection
+                throw new LowlevelStorageException(true,
+                                                   "sql failure closing statement, connection, pool (load)",
+                                                   e2);
+            }
+        }
+    }
+
+    /**
+     * Whether the pid is certainly not registered.
+     */
+    private boolean isAbsent(String pid) {
+        return tokenFilter != null && !tokenFilter.mightContain(pid);
+    }
+
+    private String getCachedPath(String pid) {
+        if (pathCache == null) {
+            return null;
+        }
+        synchronized (pathCache) {
+            return pathCache.get(pid);
+        }
+    }
+
+    private void cachePath(String pid, String path) {
+        if (pathCache != null) {
+            synchronized (pathCache) {
+                pathCache.put(pid, path);
+            }
+        }
+    }
+
+    private void uncachePath(String pid) {
+        if (pathCache != null) {
+            synchronized (pathCache) {
+                if (pid == null) {
+                    pathCache.clear();
+                } else {
+                    pathCache.remove(pid);
+                }
+            }
+        }
     }
     
     /**
@@ -91,6 +210,12 @@ public class DBPathRegistry
     @Override
     public boolean exists(String pid)
     throws LowlevelStorageException {
+        if (isAbsent(pid)) {
+            return false;
+        }
+        if (getCachedPath(pid) != null) {
+            return true;
+        }
         Connection connection = null;
         PreparedStatement statement = null;
         ResultSet rs = null;
@@ -129,7 +254,14 @@ public class DBPathRegistry
     @Override
     public String get(String pid) throws ObjectNotInLowlevelStorageException,
             LowlevelStorageInconsistencyException, LowlevelStorageException {
-        String path = null;
+        if (isAbsent(pid)) {
+            throw new ObjectNotInLowlevelStorageException("no path in db registry for ["
+                    + pid + "]");
+        }
+        String path = getCachedPath(pid);
+        if (path != null) {
+            return path;
+        }
         Connection connection = null;
         PreparedStatement statement = null;
         ResultSet rs = null;
@@ -178,6 +310,7 @@ public class DBPathRegistry
                 connection = null;
             }
         }
+        cachePath(pid, path);
         return path;
     }
 
@@ -237,6 +370,12 @@ public class DBPathRegistry
     public void put(String pid, String path)
             throws ObjectNotInLowlevelStorageException,
             LowlevelStorageInconsistencyException, LowlevelStorageException {
+        // added before the row, so the filter never misses a registered pid
+        if (tokenFilter != null) {
+            tokenFilter.add(pid);
+        }
+        uncachePath(pid);
+        String unescapedPath = path;
         if (backslashIsEscape) {
             StringBuffer buffer = new StringBuffer();
             /*
@@ -255,6 +394,7 @@ public class DBPathRegistry
             conn = connectionPool.getReadWriteConnection();
             SQLUtility.replaceInto(conn, getRegistryName(), new String[] {
                     "token", "path"}, new String[] {pid, path}, "token");
+            cachePath(pid, unescapedPath);
         } catch (SQLException e1) {
             throw new ObjectNotInLowlevelStorageException("put into db registry failed for ["
                                                                   + pid + "]",
@@ -270,9 +410,11 @@ public class DBPathRegistry
     @Override
     public void remove(String pid) throws ObjectNotInLowlevelStorageException,
             LowlevelStorageInconsistencyException, LowlevelStorageException {
+        uncachePath(pid);
         try {
             executeUpdate(deleteByIdQuery, pid);
-
+            // again, in case it was read while being deleted
+            uncachePath(pid);
         } catch (ObjectNotInLowlevelStorageException e1) {
             throw new ObjectNotInLowlevelStorageException("[" + pid
                     + "] not in db registry to delete", e1);
@@ -285,6 +427,7 @@ public class DBPathRegistry
     @Override
     public void rebuild() throws LowlevelStorageException {
         int report = FULL_REPORT;
+        uncachePath(null);
         try {
         	executeUpdate("DELETE FROM " + getRegistryName(), null);
         } catch (ObjectNotInLowlevelStorageException e1) {
@@ -4,6 +4,7 @@
  */
 package org.fcrepo.server.storage.lowlevel;
 
+import java.io.File;
 import java.io.InputStream;
 
 
@@ -24,7 +25,8 @@ import org.slf4j.LoggerFactory;
  * @author Bill Niebel
  */
 public class DefaultLowlevelStorage
-        implements ILowlevelStorage, IListable, ISizable, ICheckable {
+        implements ILowlevelStorage, IListable, ISizable, ICheckable, ISeekable,
+        ILinkable, ITimestamped {
 
     private static final Logger logger =
             LoggerFactory.getLogger(DefaultLowlevelStorage.class);
@@ -152,6 +154,33 @@ public class DefaultLowlevelStorage
         return datastreamStore.getSize(dsKey);
     }
 
+    //ISeekable methods
+    @Override
+    public InputStream retrieveDatastream(String dsKey, long offset, long length)
+            throws LowlevelStorageException {
+        return datastreamStore.retrieve(dsKey, offset, length);
+    }
+
+    //ITimestamped methods
+    @Override
+    public long getObjectLastModified(String pid)
+            throws LowlevelStorageException {
+        return objectStore.getLastModified(pid);
+    }
+
+    //ILinkable methods
+    @Override
+    public long addDatastream(String pid, File content, Map<String, String> hints)
+            throws LowlevelStorageException {
+        return datastreamStore.add(pid, content);
+    }
+
+    @Override
+    public long replaceDatastream(String pid, File content, Map<String, String> hints)
+            throws LowlevelStorageException {
+        return datastreamStore.replace(pid, content);
+    }
+
     // ICheckable methods
     @Override
     public boolean objectExists(String objectKey) {
@@ -4,6 +4,7 @@
  */
 package org.fcrepo.server.storage.lowlevel;
 
+import java.io.File;
 import java.io.InputStream;
 
 import java.util.HashMap;
@@ -25,7 +26,8 @@ import org.fcrepo.server.storage.ConnectionPoolManager;
  */
 public class DefaultLowlevelStorageModule
         extends Module
-        implements ILowlevelStorage, IListable, ISizable, ICheckable {
+        implements ILowlevelStorage, IListable, ISizable, ICheckable, ISeekable,
+        ILinkable, ITimestamped {
 
     private DefaultLowlevelStorage m_llstore;
 
@@ -73,6 +75,28 @@ public class DefaultLowlevelStorageModule
                                                     getRole());
         }
 
+        // optional parameters for DBPathRegistry
+        String pathCacheSize = getParameter("path_registry_cache_size");
+        if (pathCacheSize == null) {
+            pathCacheSize = "0";
+        }
+        try {
+            if (Integer.parseInt(pathCacheSize) < 0) {
+                throw new NumberFormatException();
+            }
+        } catch (NumberFormatException e) {
+            throw new ModuleInitializationException("path_registry_cache_size parameter must be a non-negative integer",
+                                                    getRole());
+        }
+        String tokenFilter = getParameter("path_registry_filter");
+        if (tokenFilter == null) {
+            tokenFilter = "false";
+        } else if (!tokenFilter.equalsIgnoreCase("true")
+                && !tokenFilter.equalsIgnoreCase("false")) {
+            throw new ModuleInitializationException("path_registry_filter parameter must be either true or false",
+                                                    getRole());
+        }
+
         // get connectionPool from ConnectionPoolManager
         ConnectionPoolManager cpm =
                 (ConnectionPoolManager) getServer()
@@ -101,6 +125,8 @@ public class DefaultLowlevelStorageModule
                           datastreamStoreBase);
         configuration.put("connectionPool", cPool);
         configuration.put("backslashIsEscape", backslashIsEscape);
+        configuration.put("pathCacheSize", pathCacheSize);
+        configuration.put("tokenFilter", tokenFilter.toLowerCase());
 
         return configuration;
     }
@@ -189,6 +215,36 @@ public class DefaultLowlevelStorageModule
         return m_llstore.getDatastreamSize(dsKey);
     }
     
+    // ISeekable methods
+
+    @Override
+    public InputStream retrieveDatastream(String dsKey, long offset, long length)
+            throws LowlevelStorageException {
+        return m_llstore.retrieveDatastream(dsKey, offset, length);
+    }
+
+    // ILinkable methods
+
+    @Override
+    public long addDatastream(String pid, File content, Map<String, String> hints)
+            throws LowlevelStorageException {
+        return m_llstore.addDatastream(pid, content, hints);
+    }
+
+    @Override
+    public long replaceDatastream(String pid, File content, Map<String, String> hints)
+            throws LowlevelStorageException {
+        return m_llstore.replaceDatastream(pid, content, hints);
+    }
+
+    // ITimestamped methods
+
+    @Override
+    public long getObjectLastModified(String pid)
+            throws LowlevelStorageException {
+        return m_llstore.getObjectLastModified(pid);
+    }
+
     // ICheckable methods
     @Override
     public boolean objectExists(String objectKey) {
@@ -0,0 +1,133 @@
+/* The contents of this file are subject to the license and copyright terms
+ * detailed in the license directory at the root of the source tree (also
+ * available online at http://fedora-commons.org/license/).
+ */
+package org.fcrepo.server.storage.lowlevel;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.fcrepo.server.utilities.StringUtility;
+
+/**
+ * An InputStream that computes digests of, and counts, the bytes read
+ * through it, so that content can be checksummed as it is stored rather than
+ * read again afterwards.
+ * <p>
+ * The digests are only complete once the stream has been read to the end.
+ * Skipped bytes are read and digested too. Mark and reset are not supported.
+ * </p>
+ */
+public class DigestingInputStream
+        extends FilterInputStream {
+
+    private static final int SKIP_BUFFER_SIZE = 4096;
+
+    private final Map<String, MessageDigest> m_digests =
+            new LinkedHashMap<String, MessageDigest>();
+
+    private Map<String, String> m_hex;
+
+    private long m_count;
+
+    /**
+     * @param algorithms
+     *        the names of the digests to compute, as understood by
+     *        {@link MessageDigest#getInstance(String)}
+     * @throws NoSuchAlgorithmException
+     *         if any of the algorithms is not available
+     */
+    public DigestingInputStream(InputStream in, Collection<String> algorithms)
+            throws NoSuchAlgorithmException {
+        super(in);
+        for (String algorithm : algorithms) {
+            if (!m_digests.containsKey(algorithm)) {
+                m_digests.put(algorithm, MessageDigest.getInstance(algorithm));
+            }
+        }
+    }
+
+    @Override
+    public int read() throws IOException {
+        int b = in.read();
+        if (b != -1) {
+            for (MessageDigest md : m_digests.values()) {
+                md.update((byte) b);
+            }
+            m_count++;
+        }
+        return b;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        int n = in.read(b, off, len);
+        if (n > 0) {
+            for (MessageDigest md : m_digests.values()) {
+                md.update(b, off, n);
+            }
+            m_count += n;
+        }
+        return n;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        byte[] buf = new byte[(int) Math.min(SKIP_BUFFER_SIZE, Math.max(n, 1))];
+        long skipped = 0;
+        while (skipped < n) {
+            int read = read(buf, 0, (int) Math.min(buf.length, n - skipped));
+            if (read < 0) {
+                break;
+            }
+            skipped += read;
+        }
+        return skipped;
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+    @Override
+    public void mark(int readlimit) {
+    }
+
+    @Override
+    public void reset() throws IOException {
+        throw new IOException("mark/reset not supported");
+    }
+
+    /**
+     * Get the number of bytes read so far.
+     */
+    public long getByteCount() {
+        return m_count;
+    }
+
+    /**
+     * Get the digests of the bytes read, as hex strings in the form used for
+     * datastream checksums, keyed by algorithm. Once this has been called,
+     * further bytes read are not digested.
+     */
+    public synchronized Map<String, String> getDigests() {
+        if (m_hex == null) {
+            Map<String, String> hex = new HashMap<String, String>();
+            for (Map.Entry<String, MessageDigest> e : m_digests.entrySet()) {
+                hex.put(e.getKey(), StringUtility.byteArraytoHexString(e
+                        .getValue().digest()));
+            }
+            m_hex = hex;
+            m_digests.clear();
+        }
+        return m_hex;
+    }
+}
@@ -5,11 +5,15 @@
 package org.fcrepo.server.storage.lowlevel;
 
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
 import java.io.InputStream;
 
 import java.util.Map;
 
+import org.apache.commons.io.input.BoundedInputStream;
 import org.fcrepo.server.errors.LowlevelStorageException;
+import org.fcrepo.server.utilities.StreamUtility;
 
 
 /**
@@ -23,12 +27,59 @@ public abstract class FileSystem {
 
     public abstract InputStream read(File file) throws LowlevelStorageException;
 
+    /**
+     * Read at most <code>length</code> bytes, starting at
+     * <code>offset</code>. This implementation skips to the offset;
+     * subclasses that can seek should override it.
+     */
+    public InputStream read(File file, long offset, long length)
+            throws LowlevelStorageException {
+        InputStream in = read(file);
+        try {
+            StreamUtility.skip(in, offset);
+        } catch (IOException e) {
+            try {
+                in.close();
+            } catch (IOException e2) {
+            }
+            throw new LowlevelStorageException(true, "file " + file.getPath()
+                    + " couldn't be read", e);
+        }
+        return new BoundedInputStream(in, length);
+    }
+
     public abstract void write(File file, InputStream content)
             throws LowlevelStorageException;
 
     public abstract void rewrite(File file, InputStream content)
             throws LowlevelStorageException;
 
+    /**
+     * Write a file with the content of another. This implementation copies
+     * the content; subclasses that can link files should override it.
+     */
+    public void link(File source, File file) throws LowlevelStorageException {
+        write(file, open(source));
+    }
+
+    /**
+     * Rewrite a file with the content of another. This implementation copies
+     * the content; subclasses that can link files should override it.
+     */
+    public void relink(File source, File file) throws LowlevelStorageException {
+        rewrite(file, open(source));
+    }
+
+    private static InputStream open(File source)
+            throws LowlevelStorageException {
+        try {
+            return new FileInputStream(source);
+        } catch (IOException e) {
+            throw new LowlevelStorageException(true, "file "
+                    + source.getPath() + " couldn't be opened for reading", e);
+        }
+    }
+
     public abstract void delete(File file) throws LowlevelStorageException;
 
     public abstract String[] list(File directory);
@@ -15,10 +15,14 @@ import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
 import java.util.Map;
 
 import org.fcrepo.server.errors.LowlevelStorageException;
 import org.fcrepo.utilities.FileUtils;
+import org.fcrepo.utilities.io.FileChannelInputStream;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -200,6 +204,95 @@ public class GenericFileSystem
         return fileInputStream;
     }
 
+    /**
+     * Opens the file's channel at the offset, so nothing before it is read,
+     * and so the web tier can transfer the content from the channel.
+     */
+    @Override
+    public InputStream read(File file, long offset, long length)
+            throws LowlevelStorageException {
+        if (!file.exists()) {
+            throw new LowlevelStorageException(true, "file "
+                    + getPath(file) + "doesn't exist for reading");
+        }
+        RandomAccessFile raf = null;
+        try {
+            raf = new RandomAccessFile(file, "r");
+            FileChannel channel = raf.getChannel();
+            return new FileChannelInputStream(channel, offset, length);
+        } catch (IOException e) {
+            if (raf != null) {
+                try {
+                    raf.close();
+                } catch (IOException e2) {
+                    logger.warn("Could not close file " + getPath(file), e2);
+                }
+            }
+            throw new LowlevelStorageException(true,
+                                               "file "
+                                                       + getPath(file)
+                                                       + "couldn't be opened for reading",
+                                               e);
+        }
+    }
+
+    /**
+     * Makes the file a hard link to the source, so its content isn't copied.
+     * Where that can't be done, such as across file systems, it is copied.
+     */
+    @Override
+    public void link(File source, File file) throws LowlevelStorageException {
+        File containingDirectories = file.getParentFile();
+        if (containingDirectories != null) {
+            containingDirectories.mkdirs();
+        }
+        if (!createLink(source, file)) {
+            super.link(source, file);
+        }
+    }
+
+    /**
+     * Like {@link #link(File, File)}, keeping the file's old content until
+     * the link is made.
+     */
+    @Override
+    public void relink(File source, File file) throws LowlevelStorageException {
+        File backupFile = wrappedNewFile(file, ".bak");
+
+        if (!file.renameTo(backupFile)) {
+            throw new LowlevelStorageException(true, "failed to rename with "
+                    + ".bak extension " + getPath(file));
+        }
+        if (!createLink(source, file)) {
+            if (!backupFile.renameTo(file)) {
+                throw new LowlevelStorageException(true, "failed to link "
+                        + getPath(file) + ", AND failed to revert to "
+                        + "original from .bak!");
+            }
+            super.relink(source, file);
+            return;
+        }
+        if (!backupFile.delete()) {
+            logger.warn("Could not delete backup file {}",
+                    backupFile.getPath());
+        }
+    }
+
+    private final boolean createLink(File source, File file) {
+        String reason;
+        try {
+            Files.createLink(file.toPath(), source.toPath());
+            return true;
+        } catch (UnsupportedOperationException e) {
+            reason = e.toString();
+        } catch (IOException e) {
+            reason = e.toString();
+        }
+        logger.debug("Could not link {} to {}, so copying it: {}",
+                     getPath(file), source.getPath(), reason);
+        return false;
+    }
+
     @Override
     public final void delete(File file) throws LowlevelStorageException {
         file.delete();
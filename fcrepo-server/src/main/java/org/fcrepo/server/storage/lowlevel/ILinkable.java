@@ -0,0 +1,47 @@
+/* The contents of this file are subject to the license and copyright terms
+ * detailed in the license directory at the root of the source tree (also
+ * available online at http://fedora-commons.org/license/).
+ */
+package org.fcrepo.server.storage.lowlevel;
+
+import java.io.File;
+import java.util.Map;
+
+import org.fcrepo.server.errors.LowlevelStorageException;
+
+/**
+ * Interface for {@link ILowlevelStorage} implementations that are
+ * capable of storing a datastream from a local file without copying its
+ * content, for instance by linking to it. The file itself is left in place.
+ */
+public interface ILinkable {
+
+    /**
+     * Add a datastream with the content of a file
+     * @param dsKey
+     * @param content the file; it is not changed or removed
+     * @param dsStorageHints
+     * @return the size of the datastream stored
+     * @throws LowlevelStorageException
+     * @see ILowlevelStorage#addDatastream(String, java.io.InputStream, Map)
+     */
+    public long addDatastream(String dsKey,
+                              File content,
+                              Map<String, String> dsStorageHints)
+            throws LowlevelStorageException;
+
+    /**
+     * Replace a datastream with the content of a file
+     * @param dsKey
+     * @param content the file; it is not changed or removed
+     * @param dsHints
+     * @return the size of the datastream stored
+     * @throws LowlevelStorageException
+     * @see ILowlevelStorage#replaceDatastream(String, java.io.InputStream, Map)
+     */
+    public long replaceDatastream(String dsKey,
+                                  File content,
+                                  Map<String, String> dsHints)
+            throws LowlevelStorageException;
+
+}
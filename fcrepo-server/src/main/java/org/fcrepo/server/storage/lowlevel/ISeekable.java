@@ -0,0 +1,30 @@
+/* The contents of this file are subject to the license and copyright terms
+ * detailed in the license directory at the root of the source tree (also
+ * available online at http://fedora-commons.org/license/).
+ */
+package org.fcrepo.server.storage.lowlevel;
+
+import java.io.InputStream;
+
+import org.fcrepo.server.errors.LowlevelStorageException;
+
+/**
+ * Interface for {@link ILowlevelStorage} implementations that are
+ * capable of retrieving part of a datastream without reading the part
+ * before it.
+ */
+public interface ISeekable {
+
+    /**
+     * Return part of the contents of a datastream
+     * @param dsKey
+     * @param offset the position of the first byte to return
+     * @param length the most bytes to return
+     * @return the bytes from offset to offset + length, or to the end of
+     *         the datastream if that comes first
+     * @throws LowlevelStorageException
+     */
+    public InputStream retrieveDatastream(String dsKey, long offset, long length)
+            throws LowlevelStorageException;
+
+}
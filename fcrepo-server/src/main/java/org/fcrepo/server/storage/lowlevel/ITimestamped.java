@@ -0,0 +1,28 @@
+/* The contents of this file are subject to the license and copyright terms
+ * detailed in the license directory at the root of the source tree (also
+ * available online at http://fedora-commons.org/license/).
+ */
+package org.fcrepo.server.storage.lowlevel;
+
+import org.fcrepo.server.errors.LowlevelStorageException;
+
+/**
+ * Interface for {@link ILowlevelStorage} implementations that can tell when
+ * each stored object was last written, without reading it. This lets indexes
+ * be brought up to date by looking only at the objects written since they
+ * were last known to be right.
+ */
+public interface ITimestamped {
+
+    /**
+     * Get the time the given object was last written.
+     *
+     * @param pid
+     *        the pid of the object
+     * @return milliseconds since the epoch
+     * @throws LowlevelStorageException
+     *         if the object isn't stored or its time can't be read
+     */
+    long getObjectLastModified(String pid) throws LowlevelStorageException;
+
+}
@@ -0,0 +1,99 @@
+/* The contents of this file are subject to the license and copyright terms
+ * detailed in the license directory at the root of the source tree (also
+ * available online at http://fedora-commons.org/license/).
+ */
+package org.fcrepo.server.storage.lowlevel;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The digests and sizes of datastream content, recorded as it was written
+ * to low-level storage.
+ * <p>
+ * Records are keyed by the datastream's internal id, and must be removed or
+ * replaced whenever the content is. Only the most recently used records are
+ * kept.
+ * </p>
+ */
+public class StoredDigests {
+
+    private final Map<String, Record> m_records;
+
+    /**
+     * @param maxRecords
+     *        the most records kept; beyond this the least recently used are
+     *        forgotten
+     */
+    public StoredDigests(final int maxRecords) {
+        m_records = new LinkedHashMap<String, Record>(16, 0.75f, true) {
+
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Record> eldest) {
+                return size() > maxRecords;
+            }
+        };
+    }
+
+    /**
+     * Record what was just written for a datastream, replacing any earlier
+     * record.
+     *
+     * @param digests
+     *        hex digests of the content, keyed by algorithm
+     */
+    public synchronized void put(String dsKey,
+                                 long size,
+                                 Map<String, String> digests) {
+        m_records.put(dsKey, new Record(size, digests));
+    }
+
+    /**
+     * Get the record for a datastream, or null if there is none.
+     */
+    public synchronized Record get(String dsKey) {
+        return m_records.get(dsKey);
+    }
+
+    /**
+     * Forget a datastream, because its content has been removed or replaced
+     * other than by {@link #put}.
+     */
+    public synchronized void remove(String dsKey) {
+        m_records.remove(dsKey);
+    }
+
+    public synchronized int size() {
+        return m_records.size();
+    }
+
+    /**
+     * What was written for one datastream.
+     */
+    public static class Record {
+
+        private final long m_size;
+
+        private final Map<String, String> m_digests;
+
+        Record(long size, Map<String, String> digests) {
+            m_size = size;
+            m_digests = Collections.unmodifiableMap(digests);
+        }
+
+        public long getSize() {
+            return m_size;
+        }
+
+        /**
+         * Get the digest computed with the given algorithm, or null if it
+         * wasn't computed.
+         */
+        public String getDigest(String algorithm) {
+            return m_digests.get(algorithm);
+        }
+    }
+}
@@ -22,6 +22,7 @@ import org.akubraproject.BlobStoreConnection;
 import org.akubraproject.DuplicateBlobException;
 import org.akubraproject.MissingBlobException;
 import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.input.BoundedInputStream;
 import org.fcrepo.common.Constants;
 import org.fcrepo.common.FaultException;
 import org.fcrepo.common.MalformedPIDException;
@@ -32,7 +33,9 @@ import org.fcrepo.server.errors.ObjectNotInLowlevelStorageException;
 import org.fcrepo.server.storage.lowlevel.ICheckable;
 import org.fcrepo.server.storage.lowlevel.IListable;
 import org.fcrepo.server.storage.lowlevel.ILowlevelStorage;
+import org.fcrepo.server.storage.lowlevel.ISeekable;
 import org.fcrepo.server.storage.lowlevel.ISizable;
+import org.fcrepo.server.utilities.StreamUtility;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -47,7 +50,7 @@ import org.slf4j.LoggerFactory;
  * @author Chris Wilper
  */
 public class AkubraLowlevelStorage
-        implements ILowlevelStorage, IListable, ISizable, ICheckable {
+        implements ILowlevelStorage, IListable, ISizable, ICheckable, ISeekable {
 
     private static final Logger logger =
             LoggerFactory.getLogger(AkubraLowlevelStorage.class);
@@ -203,6 +206,31 @@ public class AkubraLowlevelStorage
         return getSize(datastreamStore, dsKey);
     }
     
+    //
+    // ISeekable methods
+    //
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Akubra blobs can only be read as streams, so this skips to the offset.
+     * For file-backed blob stores, skipping is a seek of the underlying
+     * file, so nothing before the offset is read.
+     * </p>
+     */
+    @Override
+    public InputStream retrieveDatastream(String dsKey, long offset, long length)
+            throws LowlevelStorageException {
+        InputStream content = retrieve(datastreamStore, dsKey);
+        try {
+            StreamUtility.skip(content, offset);
+        } catch (IOException e) {
+            IOUtils.closeQuietly(content);
+            throw new FaultException("System error reading blob " + dsKey, e);
+        }
+        return new BoundedInputStream(content, length);
+    }
+
     //
     // ICheckable methods
     //
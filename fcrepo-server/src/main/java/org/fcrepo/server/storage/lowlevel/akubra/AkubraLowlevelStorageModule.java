@@ -16,6 +16,7 @@ import org.fcrepo.server.errors.ModuleInitializationException;
 import org.fcrepo.server.storage.lowlevel.ICheckable;
 import org.fcrepo.server.storage.lowlevel.IListable;
 import org.fcrepo.server.storage.lowlevel.ILowlevelStorage;
+import org.fcrepo.server.storage.lowlevel.ISeekable;
 import org.fcrepo.server.storage.lowlevel.ISizable;
 import org.springframework.beans.factory.annotation.Required;
 
@@ -38,7 +39,7 @@ import org.springframework.beans.factory.annotation.Required;
  */
 public class AkubraLowlevelStorageModule
         extends Module
-        implements ILowlevelStorage, IListable, ISizable, ICheckable {
+        implements ILowlevelStorage, IListable, ISizable, ICheckable, ISeekable {
 
     private AkubraLowlevelStorage m_impl;
 
@@ -140,6 +141,14 @@ public class AkubraLowlevelStorageModule
         return m_impl.getDatastreamSize(dsKey);
     }
 
+    // ISeekable methods
+
+    @Override
+    public InputStream retrieveDatastream(String dsKey, long offset, long length)
+            throws LowlevelStorageException {
+        return m_impl.retrieveDatastream(dsKey, offset, length);
+    }
+
     // ICheckable methods
     @Override
     public boolean objectExists(String objectKey)
@@ -103,28 +103,39 @@ public class Store {
      */
     public final long add(String pid, InputStream content)
             throws LowlevelStorageException {
-        String filePath;
-        File file = null;
+        String filePath = getNewPath(pid);
+        File file = new File(filePath);
+        fileSystem.write(file, content);
+        pathRegistry.put(pid, filePath);
+        return file.length();
+    }
+
+    /**
+     * add to lowlevel store the content of a file, linking to it where the
+     * file system can
+     * @return size - size of the object stored
+     */
+    public final long add(String pid, File content)
+            throws LowlevelStorageException {
+        String filePath = getNewPath(pid);
+        File file = new File(filePath);
+        fileSystem.link(content, file);
+        pathRegistry.put(pid, filePath);
+        return file.length();
+    }
+
+    private String getNewPath(String pid) throws LowlevelStorageException {
         //check that object is not already in store
         if (pathRegistry.exists(pid)){
             throw new ObjectAlreadyInLowlevelStorageException(pid);
         }
 
-        filePath = pathAlgorithm.get(pid);
+        String filePath = pathAlgorithm.get(pid);
         if (filePath == null || filePath.equals("")) { //guard against algorithm implementation
             throw new LowlevelStorageException(true,
                     "null path from algorithm for pid " + pid);
         }
-
-        try {
-            file = new File(filePath);
-        } catch (Exception eFile) { //purposefully general catch-all
-            throw new LowlevelStorageException(true,
-                    "couldn't make File for " + filePath, eFile);
-        }
-        fileSystem.write(file, content);
-        pathRegistry.put(pid, filePath);
-        return file.length();
+        return filePath;
     }
 
     /**
@@ -138,6 +149,17 @@ public class Store {
         return file.length();
     }
 
+    /**
+     * replace into low-level store the content of a file, linking to it
+     * where the file system can
+     */
+    public final long replace(String pid, File content)
+            throws LowlevelStorageException {
+        File file = getFile(pid);
+        fileSystem.relink(content, file);
+        return file.length();
+    }
+
     /** get content of Fedora object from low-level store */
     public final InputStream retrieve(String pid)
             throws LowlevelStorageException {
@@ -145,6 +167,13 @@ public class Store {
         return fileSystem.read(file);
     }
 
+    /** get part of the content of Fedora object from low-level store */
+    public final InputStream retrieve(String pid, long offset, long length)
+            throws LowlevelStorageException {
+        File file = getFile(pid);
+        return fileSystem.read(file, offset, length);
+    }
+
     /** get size of datastream  */
     public final long getSize(String pid) throws LowlevelStorageException {
         File file = getFile(pid);
@@ -152,6 +181,19 @@ public class Store {
     }
 
 
+    /** get the time the content was last written */
+    public final long getLastModified(String pid)
+            throws LowlevelStorageException {
+        File file = getFile(pid);
+        long lastModified = file.lastModified();
+        if (lastModified == 0) {
+            throw new LowlevelStorageException(true,
+                    "could not get modification time of " + pid + " at "
+                    + file.getPath());
+        }
+        return lastModified;
+    }
+
     /** remove Fedora object from low-level store */
     public final void remove(String pid) throws LowlevelStorageException {
         File file = getFile(pid);
@@ -11,6 +11,7 @@ import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.util.Date;
 
+import org.apache.commons.io.input.BoundedInputStream;
 import org.fcrepo.common.Constants;
 import org.fcrepo.server.Context;
 import org.fcrepo.server.MultiValueMap;
@@ -18,6 +19,7 @@ import org.fcrepo.server.ReadOnlyContext;
 import org.fcrepo.server.errors.GeneralException;
 import org.fcrepo.server.errors.StreamIOException;
 import org.fcrepo.server.utilities.MD5Utility;
+import org.fcrepo.server.utilities.StreamUtility;
 import org.fcrepo.server.utilities.StringUtility;
 import org.fcrepo.utilities.DateUtility;
 import org.slf4j.Logger;
@@ -132,6 +134,29 @@ public class Datastream {
         return null;
     }
 
+    /**
+     * Get at most <code>length</code> bytes of the content, starting at
+     * <code>offset</code>. This implementation skips to the offset;
+     * subclasses that can open the content there should override it.
+     */
+    public InputStream getContentStream(Context context, long offset, long length)
+            throws StreamIOException {
+        InputStream in = getContentStream(context);
+        if (in == null) {
+            return null;
+        }
+        try {
+            StreamUtility.skip(in, offset);
+        } catch (IOException e) {
+            try {
+                in.close();
+            } catch (IOException e2) {
+            }
+            throw new StreamIOException(e.getMessage(), e);
+        }
+        return new BoundedInputStream(in, length);
+    }
+
     public InputStream getContentStreamForChecksum() throws StreamIOException {
         /**
          * What should the context be here?
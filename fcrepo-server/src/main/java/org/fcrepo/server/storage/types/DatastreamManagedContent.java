@@ -17,10 +17,13 @@ import org.fcrepo.server.ReadOnlyContext;
 import org.fcrepo.server.Server;
 import org.fcrepo.server.errors.InitializationException;
 import org.fcrepo.server.errors.StreamIOException;
+import org.fcrepo.server.management.UploadStore;
 import org.fcrepo.server.storage.ContentManagerParams;
 import org.fcrepo.server.storage.ExternalContentManager;
 import org.fcrepo.server.storage.lowlevel.ILowlevelStorage;
+import org.fcrepo.server.storage.lowlevel.ISeekable;
 import org.fcrepo.server.storage.lowlevel.ISizable;
+import org.fcrepo.server.storage.lowlevel.StoredDigests;
 import org.fcrepo.server.utilities.StreamUtility;
 import org.fcrepo.server.validation.ValidationUtility;
 import org.slf4j.Logger;
@@ -58,6 +61,20 @@ public class DatastreamManagedContent
 
     private static File m_tempUploadDir;
 
+    /**
+     * Digests of managed content computed as it was written to low-level
+     * storage (see DefaultDOManager).
+     */
+    private static final StoredDigests s_storedDigests =
+            new StoredDigests(10000);
+
+    /**
+     * Whether compareChecksum() may use a digest recorded when the content
+     * was written, instead of reading the content again, if the stored size
+     * shows the content hasn't changed since.
+     */
+    public static boolean trustStoredDigests = false;
+
     public int DSMDClass = 0;
 
     public DatastreamManagedContent() {
@@ -70,6 +87,51 @@ public class DatastreamManagedContent
         return ds;
     }
 
+    public static StoredDigests getStoredDigests() {
+        return s_storedDigests;
+    }
+
+    @Override
+    public boolean compareChecksum() {
+        if (trustStoredDigests && DSChecksum != null
+                && DSChecksumType != null
+                && !DSChecksumType.equals(CHECKSUMTYPE_DISABLED)) {
+            String stored = getStoredDigest(DSChecksumType);
+            if (stored != null) {
+                logger.debug("Using stored {} digest of {}", DSChecksumType,
+                             DSLocation);
+                return stored.equals(DSChecksum);
+            }
+        }
+        return super.compareChecksum();
+    }
+
+    /**
+     * Get the digest recorded when this version's content was written, or
+     * null if there is none or the content may have changed since.
+     */
+    private String getStoredDigest(String algorithm) {
+        if (!Datastream.DS_LOCATION_TYPE_INTERNAL.equals(DSLocationType)) {
+            return null;
+        }
+        StoredDigests.Record record = s_storedDigests.get(DSLocation);
+        if (record == null || record.getDigest(algorithm) == null) {
+            return null;
+        }
+        try {
+            ILowlevelStorage llstore = getLLStore();
+            if (!s_llsizable
+                    || ((ISizable) llstore).getDatastreamSize(DSLocation) != record
+                            .getSize()) {
+                return null;
+            }
+        } catch (Exception e) {
+            logger.warn("Unable to get size of " + DSLocation, e);
+            return null;
+        }
+        return record.getDigest(algorithm);
+    }
+
     private static ILowlevelStorage getLLStore() throws Exception {
         if (s_llstore == null) {
             try {
@@ -137,8 +199,8 @@ public class DatastreamManagedContent
                 // TODO: refactor to use proper temp file management - FCREPO-718
                 // for now, just get the file directly (see also DefaultManagement.getTempStream(...))
                 String internalId = DSLocation.substring(UPLOADED_SCHEME.length());
-                File uploadedFile = new File(getTempUploadDir(), internalId);
-                // check it has not been automatically purged (see DefaultManagement.purgeUploadedFiles())
+                File uploadedFile = UploadStore.getFile(getTempUploadDir(), internalId);
+                // check it has not been automatically purged (see UploadStore.purgeExpired())
                 if (uploadedFile.exists()) {
                     return new FileInputStream(uploadedFile);
                 } else {
@@ -189,6 +251,32 @@ public class DatastreamManagedContent
         throw new StreamIOException("[DatastreamManagedContent] could not resolve dsLocation " + DSLocation + " dsLocationType " + DSLocationType);
     }
 
+    /**
+     * Once stored, content is opened at the offset if low-level storage
+     * can do so (see {@link ISeekable}).
+     */
+    @Override
+    public InputStream getContentStream(Context ctx, long offset, long length)
+            throws StreamIOException {
+        if (Datastream.DS_LOCATION_TYPE_INTERNAL.equals(DSLocationType)
+                && !DSLocation.startsWith(UPLOADED_SCHEME)
+                && !DSLocation.startsWith(TEMP_SCHEME)) {
+            try {
+                ILowlevelStorage llstore = getLLStore();
+                if (llstore instanceof ISeekable) {
+                    return ((ISeekable) llstore).retrieveDatastream(DSLocation,
+                                                                    offset,
+                                                                    length);
+                }
+            } catch (Throwable th) {
+                throw new StreamIOException("[DatastreamManagedContent] returned "
+                        + " the error: \"" + th.getClass().getName()
+                        + "\". Reason: " + th.getMessage(), th);
+            }
+        }
+        return super.getContentStream(ctx, offset, length);
+    }
+
     /**
      * Return the size of the data if possible
      * (IE, it is a file or LLStore implements ISizable)
@@ -206,8 +294,8 @@ public class DatastreamManagedContent
                 // TODO: refactor to use proper temp file management - FCREPO-718
                 // for now, just get the file directly (see also DefaultManagement.getTempStream(...))
                 String internalId = DSLocation.substring(UPLOADED_SCHEME.length());
-                File uploadedFile = new File(getTempUploadDir(), internalId);
-                // check it has not been automatically purged (see DefaultManagement.purgeUploadedFiles())
+                File uploadedFile = UploadStore.getFile(getTempUploadDir(), internalId);
+                // check it has not been automatically purged (see UploadStore.purgeExpired())
                 if (uploadedFile.exists()) {
                     return uploadedFile.length();
                 } else {
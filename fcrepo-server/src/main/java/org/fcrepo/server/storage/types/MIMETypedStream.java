@@ -145,14 +145,30 @@ public class MIMETypedStream {
     }
 
     public void setRange(String rangeRequest) throws ServerException {
+        if(rangeRequest != null && !rangeRequest.isEmpty() && !m_gotStream){
+            try{
+                setRange(new ByteRangeInputStream(m_stream, m_size, rangeRequest));
+            } catch (IOException e) {
+                throw new StreamIOException(e.getMessage(),e);
+            } catch (IndexOutOfBoundsException e) {
+                throw new RangeNotSatisfiableException(e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Like {@link #setRange(String)}, but the range is opened from the
+     * given source instead of skipped to in the current stream, which is
+     * closed.
+     */
+    public void setRange(String rangeRequest, ByteRangeInputStream.Source source)
+            throws ServerException {
         if(rangeRequest != null && !rangeRequest.isEmpty() && !m_gotStream){
             try{
                 ByteRangeInputStream range =
-                        new ByteRangeInputStream(m_stream, m_size, rangeRequest);
-                setStream(range);
-                m_size = range.length;
-                m_httpStatus = HttpStatus.SC_PARTIAL_CONTENT;
-                setContentRange(range.contentRange);
+                        new ByteRangeInputStream(source, m_size, rangeRequest);
+                close();
+                setRange(range);
             } catch (IOException e) {
                 throw new StreamIOException(e.getMessage(),e);
             } catch (IndexOutOfBoundsException e) {
@@ -160,6 +176,14 @@ public class MIMETypedStream {
             }
         }
     }
+
+    private void setRange(ByteRangeInputStream range) {
+        setStream(range);
+        m_size = range.length;
+        m_httpStatus = HttpStatus.SC_PARTIAL_CONTENT;
+        setContentRange(range.contentRange);
+    }
+
     /**
      * Typically 200, but control group R datastream content responses will use
      * 302, and conditional GET of datastream contents may return a 304
@@ -0,0 +1,98 @@
+/* The contents of this file are subject to the license and copyright terms
+ * detailed in the license directory at the root of the source tree (also
+ * available online at http://fedora-commons.org/license/).
+ */
+package org.fcrepo.server.utilities;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A set of strings that can say for certain that a string was never added,
+ * but only that one probably was.
+ * <p>
+ * It is used to answer lookups for keys that don't exist, such as pids
+ * being checked before ingest, without going to the database. Strings can't
+ * be removed, so a removed key is still reported as probably there. About
+ * one in a hundred lookups of absent keys is a false positive while no more
+ * than the expected number of strings have been added; beyond that the rate
+ * rises.
+ * </p>
+ * <p>
+ * Adding and checking are thread-safe and don't lock.
+ * </p>
+ */
+public class BloomFilter {
+
+    private static final int BITS_PER_ELEMENT = 10;
+
+    private static final int HASHES = 7;
+
+    private final AtomicLongArray m_words;
+
+    private final long m_bits;
+
+    /**
+     * @param expectedElements
+     *        the number of strings the filter is sized for
+     */
+    public BloomFilter(int expectedElements) {
+        long bits = Math.max(64L, (long) expectedElements * BITS_PER_ELEMENT);
+        int words = (int) Math.min(Integer.MAX_VALUE, (bits + 63) / 64);
+        m_words = new AtomicLongArray(words);
+        m_bits = words * 64L;
+    }
+
+    public void add(String s) {
+        long h1 = hash1(s);
+        long h2 = hash2(s);
+        for (int i = 0; i < HASHES; i++) {
+            long bit = index(h1, h2, i);
+            int word = (int) (bit >>> 6);
+            long mask = 1L << (bit & 63);
+            long old;
+            do {
+                old = m_words.get(word);
+                if ((old & mask) != 0) {
+                    break;
+                }
+            } while (!m_words.compareAndSet(word, old, old | mask));
+        }
+    }
+
+    /**
+     * @return false if the string was certainly never added, true if it
+     *         probably was
+     */
+    public boolean mightContain(String s) {
+        long h1 = hash1(s);
+        long h2 = hash2(s);
+        for (int i = 0; i < HASHES; i++) {
+            long bit = index(h1, h2, i);
+            if ((m_words.get((int) (bit >>> 6)) & 1L << (bit & 63)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private long index(long h1, long h2, int i) {
+        long h = h1 + i * h2;
+        return (h & Long.MAX_VALUE) % m_bits;
+    }
+
+    private static long hash1(String s) {
+        // spread String.hashCode over 64 bits
+        long h = s.hashCode() * 0x9E3779B97F4A7C15L;
+        return h ^ h >>> 32;
+    }
+
+    private static long hash2(String s) {
+        // 64-bit FNV-1a, forced odd so that successive indexes differ
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < s.length(); i++) {
+            h ^= s.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        return h | 1;
+    }
+}
@@ -0,0 +1,102 @@
+/* The contents of this file are subject to the license and copyright terms
+ * detailed in the license directory at the root of the source tree (also
+ * available online at http://fedora-commons.org/license/).
+ */
+package org.fcrepo.server.utilities;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs a batch of independent, CPU-bound tasks across the available cores,
+ * such as the authorization decisions for every object in a search result.
+ * <p>
+ * The pool is shared, sized to the number of processors and made of daemon
+ * threads. The calling thread runs one of the tasks itself. Tasks submitted
+ * from a pool thread, and batches of a single task, are run in the calling
+ * thread, so nested batches can't deadlock the pool.
+ * </p>
+ */
+public final class ParallelTasks {
+
+    private static final int THREADS =
+            Runtime.getRuntime().availableProcessors();
+
+    private static final ThreadLocal<Boolean> IN_POOL =
+            new ThreadLocal<Boolean>();
+
+    private static final ExecutorService EXECUTOR =
+            Executors.newFixedThreadPool(THREADS, new ThreadFactory() {
+
+                private final AtomicInteger m_count = new AtomicInteger();
+
+                @Override
+                public Thread newThread(final Runnable r) {
+                    Thread t = new Thread(new Runnable() {
+
+                        @Override
+                        public void run() {
+                            IN_POOL.set(Boolean.TRUE);
+                            r.run();
+                        }
+                    }, "ParallelTasks-" + m_count.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+
+    private ParallelTasks() {
+    }
+
+    /**
+     * Run the tasks and return their results in the same order. If any task
+     * fails, the tasks not yet started are cancelled and the first failure
+     * (in task order) is thrown as it was thrown by the task.
+     *
+     * @param tasks
+     *        the tasks to run
+     * @return the result of each task
+     */
+    public static <T> List<T> invokeAll(List<? extends Callable<T>> tasks)
+            throws Exception {
+        List<T> results = new ArrayList<T>(tasks.size());
+        if (tasks.size() < 2 || THREADS < 2 || IN_POOL.get() != null) {
+            for (Callable<T> task : tasks) {
+                results.add(task.call());
+            }
+            return results;
+        }
+
+        List<Future<T>> futures = new ArrayList<Future<T>>(tasks.size() - 1);
+        try {
+            for (Callable<T> task : tasks.subList(1, tasks.size())) {
+                futures.add(EXECUTOR.submit(task));
+            }
+            results.add(tasks.get(0).call());
+            for (Future<T> future : futures) {
+                results.add(future.get());
+            }
+            return results;
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof Exception) {
+                throw (Exception) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw e;
+        } finally {
+            for (Future<T> future : futures) {
+                future.cancel(false);
+            }
+        }
+    }
+}
@@ -14,6 +14,7 @@ import java.io.UnsupportedEncodingException;
 import java.io.Writer;
 
 import org.fcrepo.common.FaultException;
+import org.fcrepo.utilities.io.FileChannelInputStream;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -234,6 +235,28 @@ public abstract class StreamUtility {
         }
     }
 
+    /**
+     * Skips count bytes of a stream, or as many as there are, with
+     * {@link InputStream#skip(long)}, so that streams that can seek do so
+     * rather than reading.
+     *
+     * @return the number of bytes skipped; less than count if skip stopped
+     *         making progress first, as it does at the end of the stream.
+     * @throws IOException
+     *         If the stream can't be skipped.
+     */
+    public static long skip(InputStream in, long count) throws IOException {
+        long skipped = 0;
+        while (skipped < count) {
+            long n = in.skip(count - skipped);
+            if (n <= 0) {
+                break;
+            }
+            skipped += n;
+        }
+        return skipped;
+    }
+
     /**
      * Copies the contents of an InputStream to an OutputStream, then closes
      * both.
@@ -250,6 +273,10 @@ public abstract class StreamUtility {
     public static void pipeStream(InputStream in, OutputStream out, int bufSize)
             throws IOException {
         try {
+            if (FileChannelInputStream.isTransferable(in, out)) {
+                FileChannelInputStream.transferTo(in, out);
+                return;
+            }
             byte[] buf = new byte[bufSize];
             int len;
             while ((len = in.read(buf)) > 0) {
@@ -9,7 +9,6 @@ import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
-import java.io.InputStream;
 import java.io.InputStreamReader;
 
 import java.util.HashMap;
@@ -30,11 +29,6 @@ import org.fcrepo.server.config.ServerConfigurationParser;
 import org.fcrepo.server.errors.InitializationException;
 import org.fcrepo.server.storage.lowlevel.IListable;
 import org.fcrepo.server.storage.lowlevel.ILowlevelStorage;
-import org.fcrepo.server.storage.translation.DODeserializer;
-import org.fcrepo.server.storage.translation.DOTranslationUtility;
-import org.fcrepo.server.storage.translation.FOXML1_1DODeserializer;
-import org.fcrepo.server.storage.types.BasicDigitalObject;
-import org.fcrepo.server.storage.types.DigitalObject;
 import org.fcrepo.server.utilities.ServerUtility;
 
 import org.fcrepo.utilities.LogConfig;
@@ -113,9 +107,25 @@ public class Rebuild implements Constants, Runnable {
             if (m_options != null && m_rebuilder != null) {
                 System.err.println();
                 System.err.println("Rebuilding...");
+                File checkpointFile = null;
+                RebuildPipeline.Checkpoint checkpoint = null;
+                if (m_rebuilder instanceof ResumableRebuilder) {
+                    checkpointFile = getCheckpointFile(m_rebuilder);
+                    checkpoint =
+                            RebuildPipeline.readCheckpoint(checkpointFile,
+                                                           m_rebuilder);
+                    if (checkpoint != null && !shouldResume(checkpoint)) {
+                        checkpoint = null;
+                    }
+                }
+                boolean completed = false;
                 try {
                     // looks good, so init the rebuilder
-                    m_rebuilder.start(m_options);
+                    if (checkpoint != null) {
+                        ((ResumableRebuilder) m_rebuilder).resume(m_options);
+                    } else {
+                        m_rebuilder.start(m_options);
+                    }
 
                     // add each object in llstore
                     ILowlevelStorage llstore =
@@ -128,19 +138,23 @@ public class Rebuild implements Constants, Runnable {
                         logger.info("Loaded bean/module {} with impl ",
                                 llstoreInterface, llstore.getClass().getName());
                     }
-                    Iterator<String> pids = ((IListable) llstore).listObjects();
-                    int total = 0;
-                    int errors = 0;
-                    DODeserializer deser = new FOXML1_1DODeserializer();
-
-                    while (pids.hasNext()) {
-                        total++;
-                        String pid = pids.next();
-                        System.out.println("Adding object #" + total + ": " +
-                                pid);
-                        if (!addObject(m_rebuilder, llstore, deser, pid)) {
-                            errors++;
-                        }
+                    RebuildPipeline pipeline =
+                            new RebuildPipeline(m_rebuilder,
+                                                llstore,
+                                                getIntProperty("rebuild.threads",
+                                                               Runtime.getRuntime()
+                                                                       .availableProcessors()),
+                                                getIntProperty("rebuild.queueSize",
+                                                               1000),
+                                                getIntProperty("rebuild.checkpointInterval",
+                                                               10000),
+                                                checkpointFile);
+                    pipeline.run(checkpoint);
+                    int total = pipeline.getTotal();
+                    int errors = pipeline.getErrors();
+                    if (checkpoint != null) {
+                        System.out.println("Resumed after " + checkpoint.count
+                                + " objects.");
                     }
                     if (errors == 0) {
                         System.out.println("SUCCESS: " + total +
@@ -150,8 +164,12 @@ public class Rebuild implements Constants, Runnable {
                                 total +
                                 " objects failed to rebuild due to errors.");
                     }
+                    completed = true;
                 } finally {
                     m_rebuilder.finish();
+                    if (completed && checkpointFile != null) {
+                        checkpointFile.delete();
+                    }
                     if (server != null) {
                         server.shutdown(null);
                         server = null;
@@ -176,29 +194,36 @@ public class Rebuild implements Constants, Runnable {
         }
     }
 
-    private boolean addObject(Rebuilder rebuilder, ILowlevelStorage llstore,
-            DODeserializer deser, String pid) {
-        InputStream in = null;
-        try {
-            in = llstore.retrieveObject(pid);
-            DigitalObject obj = new BasicDigitalObject();
-            deser.deserialize(in, obj, "UTF-8",
-                    DOTranslationUtility.SERIALIZE_STORAGE_INTERNAL);
-            rebuilder.addObject(obj);
-            return true;
-        } catch (Exception e) {
-            System.out.println("WARNING: Skipped " + pid +
-                    " due to exception: ");
-            e.printStackTrace();
-            return false;
-        } finally {
-            if (in != null) {
-                try {
-                    in.close();
-                } catch (IOException e) {
-                }
-            }
+    /**
+     * Where checkpoints are kept for the given rebuilder.
+     */
+    private static File getCheckpointFile(Rebuilder rebuilder) {
+        return new File(Constants.FEDORA_HOME, "data/rebuild-"
+                + rebuilder.getClass().getSimpleName() + ".checkpoint");
+    }
+
+    /**
+     * Decide whether to resume from a checkpoint. When not interactive, the
+     * rebuild.resume system property decides.
+     */
+    private static boolean shouldResume(RebuildPipeline.Checkpoint checkpoint)
+            throws IOException {
+        if (System.getProperty("rebuilder") != null) {
+            return Boolean.getBoolean("rebuild.resume");
+        }
+        return getChoice("A previous rebuild was interrupted after "
+                + checkpoint.count + " objects (the last was "
+                + checkpoint.pid + ").",
+                         new String[] {"Resume it.",
+                                 "Start over."}) == 0;
+    }
+
+    private static int getIntProperty(String name, int defaultValue) {
+        int value = Integer.getInteger(name, defaultValue);
+        if (value < 1) {
+            throw new IllegalArgumentException(name + " must be positive");
         }
+        return value;
     }
 
     /**
@@ -0,0 +1,438 @@
+/* The contents of this file are subject to the license and copyright terms
+ * detailed in the license directory at the root of the source tree (also
+ * available online at http://fedora-commons.org/license/).
+ */
+package org.fcrepo.server.utilities.rebuild;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Iterator;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.fcrepo.server.storage.lowlevel.IListable;
+import org.fcrepo.server.storage.lowlevel.ILowlevelStorage;
+import org.fcrepo.server.storage.translation.DODeserializer;
+import org.fcrepo.server.storage.translation.DOTranslationUtility;
+import org.fcrepo.server.storage.translation.FOXML1_1DODeserializer;
+import org.fcrepo.server.storage.types.BasicDigitalObject;
+import org.fcrepo.server.storage.types.DigitalObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Feeds every object in low-level storage to a Rebuilder.
+ * <p>
+ * One thread lists the pids, several threads retrieve and deserialize the
+ * objects, and the calling thread adds them to the rebuilder, so rebuilders
+ * need not be thread-safe. The stages are joined by bounded queues, so
+ * memory use doesn't depend on the size of the repository.
+ * </p>
+ * <p>
+ * If the rebuilder is a {@link ResumableRebuilder}, every
+ * <code>checkpointInterval</code> objects it is asked to commit, and a
+ * checkpoint is written: the number of pids, in listing order, that have all
+ * been added, and the last of them. A later run given that checkpoint skips
+ * those pids, after checking that the listing still has the same pid at the
+ * same position.
+ * </p>
+ */
+class RebuildPipeline {
+
+    private static final Logger logger =
+            LoggerFactory.getLogger(RebuildPipeline.class);
+
+    /** How often progress is printed, in objects. */
+    private static final int PROGRESS_INTERVAL = 1000;
+
+    /** Tells a stage that the previous one has finished. */
+    private static final Item END = new Item(-1, null);
+
+    private final Rebuilder m_rebuilder;
+
+    private final ILowlevelStorage m_llstore;
+
+    private final int m_threads;
+
+    private final int m_queueSize;
+
+    private final int m_checkpointInterval;
+
+    private final File m_checkpointFile;
+
+    private int m_total;
+
+    private int m_errors;
+
+    /**
+     * @param threads
+     *        the number of threads retrieving and deserializing objects
+     * @param queueSize
+     *        the capacity of each queue between stages
+     * @param checkpointInterval
+     *        how often to commit and write a checkpoint, in objects
+     * @param checkpointFile
+     *        where to write checkpoints, or null if the rebuilder is not a
+     *        ResumableRebuilder
+     */
+    RebuildPipeline(Rebuilder rebuilder,
+                    ILowlevelStorage llstore,
+                    int threads,
+                    int queueSize,
+                    int checkpointInterval,
+                    File checkpointFile) {
+        m_rebuilder = rebuilder;
+        m_llstore = llstore;
+        m_threads = threads;
+        m_queueSize = queueSize;
+        m_checkpointInterval = checkpointInterval;
+        m_checkpointFile = checkpointFile;
+    }
+
+    /**
+     * Add each object to the rebuilder.
+     *
+     * @param from
+     *        the checkpoint to resume from, or null to add every object
+     * @throws Exception
+     *         if the objects can't be listed, a reader fails other than by
+     *         failing to read an object, or the rebuilder can't commit.
+     *         Errors with individual objects are counted, not thrown.
+     */
+    void run(Checkpoint from) throws Exception {
+        BlockingQueue<Item> pids = new ArrayBlockingQueue<Item>(m_queueSize);
+        BlockingQueue<Item> objects =
+                new ArrayBlockingQueue<Item>(m_queueSize);
+        AtomicReference<Throwable> listError = new AtomicReference<Throwable>();
+        AtomicReference<Throwable> readError = new AtomicReference<Throwable>();
+        ExecutorService executor = Executors.newFixedThreadPool(m_threads + 1);
+        try {
+            executor.execute(new Lister(pids, from, listError));
+            for (int i = 0; i < m_threads; i++) {
+                executor.execute(new Reader(pids, objects, readError));
+            }
+            write(objects, from);
+        } finally {
+            executor.shutdownNow();
+        }
+        if (listError.get() != null) {
+            throw new Exception("Error listing objects: "
+                    + listError.get().getMessage(), listError.get());
+        }
+        if (readError.get() != null) {
+            throw new Exception("Error reading objects: "
+                    + readError.get().getMessage(), readError.get());
+        }
+    }
+
+    /**
+     * Get the number of objects this run has tried to add.
+     */
+    int getTotal() {
+        return m_total;
+    }
+
+    /**
+     * Get the number of objects this run failed to add.
+     */
+    int getErrors() {
+        return m_errors;
+    }
+
+    /**
+     * Add the objects to the rebuilder as they arrive, writing checkpoints.
+     */
+    private void write(BlockingQueue<Item> objects, Checkpoint from)
+            throws Exception {
+        long next = from == null ? 0 : from.count;
+        String lastPid = from == null ? null : from.pid;
+        // objects added ahead of the next in listing order, by position
+        TreeMap<Long, String> added = new TreeMap<Long, String>();
+        int sinceCheckpoint = 0;
+        long startTime = System.currentTimeMillis();
+        int ends = 0;
+        while (ends < m_threads) {
+            Item item = objects.take();
+            if (item == END) {
+                ends++;
+                continue;
+            }
+            m_total++;
+            if (item.obj == null || !add(item)) {
+                m_errors++;
+            }
+            added.put(item.seq, item.pid);
+            while (!added.isEmpty() && added.firstKey().longValue() == next) {
+                lastPid = added.remove(added.firstKey());
+                next++;
+            }
+            if (m_total % PROGRESS_INTERVAL == 0) {
+                long seconds =
+                        Math.max(1,
+                                 (System.currentTimeMillis() - startTime) / 1000);
+                System.out.println("Added " + m_total + " objects ("
+                        + m_total / seconds + " per second)");
+            }
+            if (m_checkpointFile != null
+                    && ++sinceCheckpoint >= m_checkpointInterval) {
+                ((ResumableRebuilder) m_rebuilder).commit();
+                writeCheckpoint(m_checkpointFile,
+                                m_rebuilder,
+                                new Checkpoint(next, lastPid));
+                sinceCheckpoint = 0;
+            }
+        }
+    }
+
+    private boolean add(Item item) {
+        try {
+            m_rebuilder.addObject(item.obj);
+            return true;
+        } catch (Exception e) {
+            System.out.println("WARNING: Skipped " + item.pid
+                    + " due to exception: ");
+            e.printStackTrace();
+            return false;
+        }
+    }
+
+    /**
+     * Read an object, or return null if it can't be read.
+     */
+    private DigitalObject read(DODeserializer deser, String pid) {
+        logger.debug("Reading {}", pid);
+        InputStream in = null;
+        try {
+            in = m_llstore.retrieveObject(pid);
+            DigitalObject obj = new BasicDigitalObject();
+            deser.deserialize(in, obj, "UTF-8",
+                    DOTranslationUtility.SERIALIZE_STORAGE_INTERNAL);
+            return obj;
+        } catch (Exception e) {
+            System.out.println("WARNING: Skipped " + pid
+                    + " due to exception: ");
+            e.printStackTrace();
+            return null;
+        } finally {
+            if (in != null) {
+                try {
+                    in.close();
+                } catch (IOException e) {
+                }
+            }
+        }
+    }
+
+    /**
+     * Get the checkpoint left by an interrupted rebuild with the given
+     * rebuilder, or null if there is none.
+     */
+    static Checkpoint readCheckpoint(File file, Rebuilder rebuilder)
+            throws IOException {
+        if (!file.exists()) {
+            return null;
+        }
+        Properties props = new Properties();
+        InputStream in = new FileInputStream(file);
+        try {
+            props.load(in);
+        } finally {
+            in.close();
+        }
+        if (!rebuilder.getClass().getName().equals(props
+                .getProperty("rebuilder"))) {
+            return null;
+        }
+        try {
+            return new Checkpoint(Long.parseLong(props.getProperty("count")),
+                                  props.getProperty("pid"));
+        } catch (NumberFormatException e) {
+            throw new IOException("Malformed checkpoint file: "
+                    + file.getPath());
+        }
+    }
+
+    /**
+     * Replace the checkpoint file, so that it is never left half-written.
+     */
+    static void writeCheckpoint(File file,
+                                Rebuilder rebuilder,
+                                Checkpoint checkpoint) throws IOException {
+        Properties props = new Properties();
+        props.setProperty("rebuilder", rebuilder.getClass().getName());
+        props.setProperty("count", Long.toString(checkpoint.count));
+        if (checkpoint.pid != null) {
+            props.setProperty("pid", checkpoint.pid);
+        }
+        File temp = new File(file.getPath() + ".tmp");
+        FileOutputStream out = new FileOutputStream(temp);
+        try {
+            props.store(out, "Rebuild checkpoint");
+            out.getFD().sync();
+        } finally {
+            out.close();
+        }
+        if (!temp.renameTo(file)) {
+            // Windows won't rename over an existing file
+            file.delete();
+            if (!temp.renameTo(file)) {
+                throw new IOException("Unable to write checkpoint file "
+                        + file.getPath());
+            }
+        }
+    }
+
+    /**
+     * How far a rebuild has got: the first <code>count</code> pids listed,
+     * ending with <code>pid</code>, have been added and committed.
+     */
+    static class Checkpoint {
+
+        final long count;
+
+        final String pid;
+
+        Checkpoint(long count, String pid) {
+            this.count = count;
+            this.pid = pid;
+        }
+    }
+
+    /**
+     * A pid, its position in the listing and, once read, its object.
+     */
+    private static class Item {
+
+        final long seq;
+
+        final String pid;
+
+        DigitalObject obj;
+
+        Item(long seq, String pid) {
+            this.seq = seq;
+            this.pid = pid;
+        }
+    }
+
+    /**
+     * Lists the pids, skipping those before the checkpoint.
+     */
+    private class Lister
+            implements Runnable {
+
+        private final BlockingQueue<Item> m_pids;
+
+        private final Checkpoint m_from;
+
+        private final AtomicReference<Throwable> m_error;
+
+        Lister(BlockingQueue<Item> pids,
+               Checkpoint from,
+               AtomicReference<Throwable> error) {
+            m_pids = pids;
+            m_from = from;
+            m_error = error;
+        }
+
+        public void run() {
+            try {
+                list();
+            } catch (InterruptedException e) {
+                return;
+            } catch (Throwable th) {
+                m_error.set(th);
+            }
+            try {
+                for (int i = 0; i < m_threads; i++) {
+                    m_pids.put(END);
+                }
+            } catch (InterruptedException e) {
+            }
+        }
+
+        private void list() throws Exception {
+            long skip = m_from == null ? 0 : m_from.count;
+            long seq = 0;
+            Iterator<String> iter = ((IListable) m_llstore).listObjects();
+            while (iter.hasNext()) {
+                String pid = iter.next();
+                if (seq < skip) {
+                    if (seq == skip - 1 && !pid.equals(m_from.pid)) {
+                        throw new Exception("Objects are no longer listed in "
+                                + "the order they were when the checkpoint "
+                                + "was written: expected " + m_from.pid
+                                + " at position " + skip + ", found " + pid);
+                    }
+                    seq++;
+                    continue;
+                }
+                m_pids.put(new Item(seq++, pid));
+            }
+            if (seq < skip) {
+                throw new Exception("Only " + seq + " objects were listed, "
+                        + "but the checkpoint is at " + skip);
+            }
+        }
+    }
+
+    /**
+     * Retrieves and deserializes objects. A reader always tells the writer
+     * when it stops, unless it was interrupted, so the writer isn't left
+     * waiting for it; the object it was reading when it failed is not added,
+     * so no later checkpoint passes it.
+     */
+    private class Reader
+            implements Runnable {
+
+        private final BlockingQueue<Item> m_pids;
+
+        private final BlockingQueue<Item> m_objects;
+
+        private final AtomicReference<Throwable> m_error;
+
+        private final DODeserializer m_deser = new FOXML1_1DODeserializer();
+
+        Reader(BlockingQueue<Item> pids,
+               BlockingQueue<Item> objects,
+               AtomicReference<Throwable> error) {
+            m_pids = pids;
+            m_objects = objects;
+            m_error = error;
+        }
+
+        public void run() {
+            boolean interrupted = false;
+            try {
+                while (true) {
+                    Item item = m_pids.take();
+                    if (item == END) {
+                        return;
+                    }
+                    item.obj = read(m_deser, item.pid);
+                    m_objects.put(item);
+                }
+            } catch (InterruptedException e) {
+                interrupted = true;
+            } catch (Throwable th) {
+                m_error.compareAndSet(null, th);
+            } finally {
+                if (!interrupted) {
+                    try {
+                        m_objects.put(END);
+                    } catch (InterruptedException e) {
+                    }
+                }
+            }
+        }
+    }
+
+}
@@ -0,0 +1,34 @@
+/* The contents of this file are subject to the license and copyright terms
+ * detailed in the license directory at the root of the source tree (also
+ * available online at http://fedora-commons.org/license/).
+ */
+package org.fcrepo.server.utilities.rebuild;
+
+import java.util.Map;
+
+/**
+ * A Rebuilder that can continue a rebuild that was interrupted.
+ * <p>
+ * While rebuilding, Rebuild periodically calls {@link #commit()} and then
+ * records how far it has got. If the rebuild is interrupted, the next run can
+ * call {@link #resume(Map)} instead of {@link #start(Map)}, and continue from
+ * there.
+ * </p>
+ */
+public interface ResumableRebuilder
+        extends Rebuilder {
+
+    /**
+     * Make the data added so far durable, so that it survives an interrupted
+     * rebuild.
+     */
+    public void commit() throws Exception;
+
+    /**
+     * Like {@link #start(Map)}, but keeps the data committed by an earlier,
+     * interrupted rebuild. Objects added after its last commit may be added
+     * again.
+     */
+    public void resume(Map<String, String> options) throws Exception;
+
+}
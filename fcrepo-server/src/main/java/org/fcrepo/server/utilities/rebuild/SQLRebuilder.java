@@ -16,6 +16,7 @@ import java.sql.SQLException;
 import java.sql.Statement;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.Iterator;
@@ -36,15 +37,14 @@ import org.fcrepo.server.config.ServerConfiguration;
 import org.fcrepo.server.errors.InitializationException;
 import org.fcrepo.server.errors.LowlevelStorageException;
 import org.fcrepo.server.errors.ModuleInitializationException;
-import org.fcrepo.server.errors.ObjectNotFoundException;
 import org.fcrepo.server.errors.ServerException;
 import org.fcrepo.server.errors.StorageDeviceException;
 import org.fcrepo.server.management.PIDGenerator;
 import org.fcrepo.server.search.FieldSearch;
 import org.fcrepo.server.storage.ConnectionPool;
 import org.fcrepo.server.storage.ConnectionPoolManager;
-import org.fcrepo.server.storage.DOManager;
 import org.fcrepo.server.storage.DOReader;
+import org.fcrepo.server.storage.SimpleDOReader;
 import org.fcrepo.server.storage.lowlevel.ILowlevelStorage;
 import org.fcrepo.server.storage.types.Datastream;
 import org.fcrepo.server.storage.types.DigitalObject;
@@ -56,7 +56,7 @@ import org.fcrepo.server.utilities.TableSpec;
  * A Rebuilder for the SQL database.
  */
 public class SQLRebuilder
-        implements Rebuilder {
+        implements ResumableRebuilder {
 
     private static final Logger logger =
             LoggerFactory.getLogger(Rebuilder.class);
@@ -67,6 +67,21 @@ public class SQLRebuilder
     public static final String UPDATE_REBUILD_STATUS =
             "UPDATE fcrepoRebuildStatus SET complete=? WHERE rebuildDate=?";
 
+    public static final String REGISTER_OBJECT =
+            "INSERT INTO doRegistry (doPID, systemVersion, ownerId, label) VALUES (?, 1, ?, ?)";
+
+    public static final String ADD_DEPLOYMENT =
+            "INSERT INTO modelDeploymentMap (cModel, sDef, sDep) VALUES (?, ?, ?)";
+
+    public static final String UNREGISTER_OBJECT =
+            "DELETE FROM doRegistry WHERE doPID=?";
+
+    public static final String REMOVE_DEPLOYMENTS =
+            "DELETE FROM modelDeploymentMap WHERE sDep=?";
+
+    /** How many objects are registered in each JDBC batch. */
+    private static final int BATCH_SIZE = 500;
+
     public static final String DBSPEC_LOCATION =
             "org/fcrepo/server/storage/resources/DefaultDOManager.dbspec";
 
@@ -80,6 +95,19 @@ public class SQLRebuilder
     
     private long m_now = -1;
 
+    private FieldSearch m_fieldSearch;
+
+    private PIDGenerator m_pidGenerator;
+
+    /**
+     * Whether we are resuming an interrupted rebuild, so objects may already
+     * be registered.
+     */
+    private boolean m_resumed;
+
+    /** Objects added but not yet registered. */
+    private final List<DigitalObject> m_batch = new ArrayList<DigitalObject>();
+
     /**
      * Get a short phrase describing what the user can do with this rebuilder.
      */
@@ -133,6 +161,20 @@ public class SQLRebuilder
         // (in particular the hash map held by PIDGenerator)
         // don't get out of sync with the database.
         blankExistingTables();
+        startServer(true);
+    }
+
+    /**
+     * Continue an interrupted rebuild, keeping the tables as they are.
+     * Objects already registered are registered again.
+     */
+    @Override
+    public void resume(Map<String, String> options) throws Exception {
+        m_resumed = true;
+        startServer(false);
+    }
+
+    private void startServer(boolean rebuildLowlevel) throws Exception {
         try {
             m_server = Rebuild.getServer();
             // now get the connectionpool
@@ -152,6 +194,15 @@ public class SQLRebuilder
             m_context =
                     ReadOnlyContext.getContext("utility", "fedoraAdmin", "", /* null, */
                     ReadOnlyContext.DO_OP);
+            m_fieldSearch =
+                    (FieldSearch) m_server
+                            .getModule("org.fcrepo.server.search.FieldSearch");
+            m_pidGenerator =
+                    (PIDGenerator) m_server
+                            .getModule("org.fcrepo.server.management.PIDGenerator");
+            if (!rebuildLowlevel) {
+                return;
+            }
 
             ILowlevelStorage llstore =
                     (ILowlevelStorage) m_server
@@ -312,27 +363,16 @@ public class SQLRebuilder
     }
 
     /**
-     * Add the data of interest for the given object.
+     * Add the data of interest for the given object. The object is indexed
+     * for FieldSearch immediately; it is registered with the next batch.
      */
     @Override
-    public void addObject(DigitalObject obj) {
+    public void addObject(DigitalObject obj) throws Exception {
         // CURRENT TIME:
         // Get the current time to use for created dates on object
         // and object components (if they are not already there).
         Date nowUTC = new Date();
 
-        // DOReplicator replicator=(DOReplicator)
-        // m_server.getModule("org.fcrepo.server.storage.replication.DOReplicator");
-        DOManager manager =
-                (DOManager) m_server
-                        .getModule("org.fcrepo.server.storage.DOManager");
-        FieldSearch fieldSearch =
-                (FieldSearch) m_server
-                        .getModule("org.fcrepo.server.search.FieldSearch");
-        PIDGenerator pidGenerator =
-                (PIDGenerator) m_server
-                        .getModule("org.fcrepo.server.management.PIDGenerator");
-
         // SET OBJECT PROPERTIES:
         logger.debug("Rebuild: Setting object/component states and create dates if unset...");
         // set object state to "A" (Active) if not already set
@@ -343,21 +383,6 @@ public class SQLRebuilder
         if (obj.getCreateDate() == null) {
             obj.setCreateDate(nowUTC);
         }
-        // set object last modified date to UTC
-        obj.setLastModDate(nowUTC);
-
-        // SET OBJECT PROPERTIES:
-        logger.debug("Rebuild: Setting object/component states and create dates if unset...");
-        // set object state to "A" (Active) if not already set
-        if (obj.getState() == null || obj.getState().isEmpty()) {
-            obj.setState("A");
-        }
-        // set object create date to UTC if not already set
-        if (obj.getCreateDate() == null) {
-            obj.setCreateDate(nowUTC);
-        }
-        // set object last modified date to UTC
-        obj.setLastModDate(nowUTC);
 
         // SET DATASTREAM PROPERTIES...
         Iterator<String> dsIter = obj.datastreamIdIterator();
@@ -378,7 +403,7 @@ public class SQLRebuilder
         // have the system generate a PID if one was not provided
         logger.debug("INGEST: Stream contained PID with retainable namespace-id... will use PID from stream.");
         try {
-            pidGenerator.neverGeneratePID(obj.getPid());
+            m_pidGenerator.neverGeneratePID(obj.getPid());
         } catch (IOException e) {
             throw new RuntimeException("Error calling pidGenerator.neverGeneratePID(): "
                                                + e.getMessage(),
@@ -388,21 +413,17 @@ public class SQLRebuilder
         // REGISTRY:
         // at this point the object is valid, so make a record
         // of it in the digital object registry
-        try {
-            registerObject(obj);
-        } catch (StorageDeviceException e) {
-            // continue past individual errors
-            logger.error(e.getMessage());
+        m_batch.add(obj);
+        if (m_batch.size() >= BATCH_SIZE) {
+            registerBatch();
         }
 
         try {
-            logger.info("COMMIT: Attempting replication: {}", obj.getPid());
+            // the object is as stored, so there's no need to read it again
             DOReader reader =
-                    manager.getReader(Server.USE_DEFINITIVE_STORE,
-                                      m_context,
-                                      obj.getPid());
+                    new SimpleDOReader(m_context, null, null, null, null, obj);
             logger.info("COMMIT: Updating FieldSearch indexes...");
-            fieldSearch.update(reader);
+            m_fieldSearch.update(reader);
 
         } catch (ServerException se) {
             System.out.println("Error while replicating: "
@@ -416,90 +437,123 @@ public class SQLRebuilder
     }
 
     /**
-     * Adds a new object.
+     * Register the objects added since the last batch.
      */
-    private void registerObject(DigitalObject obj)
-            throws StorageDeviceException {
-        String pid = obj.getPid();
-        String userId = "the userID field is no longer used";
-        String label = "the label field is no longer used";
+    @Override
+    public void commit() throws Exception {
+        registerBatch();
+    }
 
+    /**
+     * Register the objects in the batch, in one transaction. If that fails,
+     * register them one at a time, so an error with one object (for example,
+     * a duplicate pid) doesn't lose the others.
+     */
+    private void registerBatch() throws StorageDeviceException {
+        if (m_batch.isEmpty()) {
+            return;
+        }
         Connection conn = null;
-        PreparedStatement s1 = null;
         try {
-            String query =
-                    "INSERT INTO doRegistry (doPID, ownerId, label) VALUES (?, ?, ?)";
             conn = m_connectionPool.getReadWriteConnection();
-            s1 = conn.prepareStatement(query);
-            s1.setString(1,pid);
-            s1.setString(2,userId);
-            s1.setString(3, label);
-            s1.executeUpdate();
-
-            if (obj.hasContentModel(Models.SERVICE_DEPLOYMENT_3_0)){
-                updateDeploymentMap(obj, conn);
+            boolean autoCommit = conn.getAutoCommit();
+            conn.setAutoCommit(false);
+            try {
+                try {
+                    registerObjects(m_batch, conn);
+                    conn.commit();
+                } catch (SQLException sqle) {
+                    conn.rollback();
+                    logger.warn("Unable to register a batch of "
+                            + m_batch.size()
+                            + " objects; registering them one at a time", sqle);
+                    for (DigitalObject obj : m_batch) {
+                        try {
+                            registerObjects(Collections.singletonList(obj),
+                                            conn);
+                            conn.commit();
+                        } catch (SQLException e) {
+                            conn.rollback();
+                            // continue past individual errors
+                            logger.error("Unexpected error from SQL database "
+                                    + "while registering object "
+                                    + obj.getPid() + ": " + e.getMessage());
+                        }
+                    }
+                }
+            } finally {
+                conn.setAutoCommit(autoCommit);
             }
         } catch (SQLException sqle) {
-            throw new StorageDeviceException("Unexpected error from SQL database while registering object: "
+            throw new StorageDeviceException("Unexpected error from SQL database while registering objects: "
                     + sqle.getMessage(), sqle);
         } finally {
-            try {
-                if (s1 != null) {
-                    s1.close();
-                }
-            } catch (Exception sqle) {
-                throw new StorageDeviceException("Unexpected error from SQL database while registering object: "
-                        + sqle.getMessage(), sqle);
-            } finally {
-                s1 = null;
+            m_batch.clear();
+            if (conn != null) {
+                m_connectionPool.free(conn);
             }
         }
+    }
+
+    /**
+     * Adds the objects to the registry and, for service deployments, the
+     * deployment map, using JDBC batches.
+     */
+    private void registerObjects(List<DigitalObject> objects, Connection conn)
+            throws SQLException {
+        String userId = "the userID field is no longer used";
+        String label = "the label field is no longer used";
 
-        PreparedStatement s2 = null;
-        ResultSet results = null;
+        PreparedStatement unregister = null;
+        PreparedStatement removeDeployments = null;
+        PreparedStatement register = null;
+        PreparedStatement addDeployment = null;
         try {
-            // REGISTRY:
-            // update systemVersion in doRegistry (add one)
-            logger.debug("COMMIT: Updating registry...");
-            String query =
-                    "SELECT systemVersion FROM doRegistry WHERE doPID=?";
-            s2 = conn.prepareStatement(query);
-            s2.setString(1, pid);
-            results = s2.executeQuery();
-            if (!results.next()) {
-                throw new ObjectNotFoundException("Error creating replication job: The requested object doesn't exist in the registry.");
-            }
-            int systemVersion = results.getInt("systemVersion");
-            systemVersion++;
-            query = "UPDATE doRegistry SET systemVersion=? WHERE doPID=?";
-            s2.close();
-            s2 = conn.prepareStatement(query);
-            s2.setInt(1, systemVersion);
-            s2.setString(2,pid);
-            s2.executeUpdate();
-        } catch (SQLException sqle) {
-            throw new StorageDeviceException("Error creating replication job: "
-                    + sqle.getMessage());
-        } catch (ObjectNotFoundException e) {
-            // TODO Auto-generated catch block
-            e.printStackTrace();
-        } finally {
-            try {
-                if (results != null) {
-                    results.close();
+            if (m_resumed) {
+                // objects added after the last commit of an interrupted
+                // rebuild may have been registered already
+                unregister = conn.prepareStatement(UNREGISTER_OBJECT);
+                removeDeployments = conn.prepareStatement(REMOVE_DEPLOYMENTS);
+                for (DigitalObject obj : objects) {
+                    unregister.setString(1, obj.getPid());
+                    unregister.addBatch();
+                    removeDeployments.setString(1, obj.getPid());
+                    removeDeployments.addBatch();
                 }
-                if (s2 != null) {
-                    s2.close();
+                unregister.executeBatch();
+                removeDeployments.executeBatch();
+            }
+
+            register = conn.prepareStatement(REGISTER_OBJECT);
+            addDeployment = conn.prepareStatement(ADD_DEPLOYMENT);
+            boolean deployments = false;
+            for (DigitalObject obj : objects) {
+                register.setString(1, obj.getPid());
+                register.setString(2, userId);
+                register.setString(3, label);
+                register.addBatch();
+                if (obj.hasContentModel(Models.SERVICE_DEPLOYMENT_3_0)) {
+                    deployments |= addDeployments(obj, addDeployment);
                 }
-                if (conn != null) {
-                    m_connectionPool.free(conn);
+            }
+            register.executeBatch();
+            if (deployments) {
+                addDeployment.executeBatch();
+            }
+        } finally {
+            closeStatements(unregister, removeDeployments, register,
+                            addDeployment);
+        }
+    }
+
+    private static void closeStatements(PreparedStatement... statements) {
+        for (PreparedStatement s : statements) {
+            if (s != null) {
+                try {
+                    s.close();
+                } catch (SQLException e) {
+                    logger.warn("Unable to close statement", e);
                 }
-            } catch (SQLException sqle) {
-                throw new StorageDeviceException("Unexpected error from SQL database: "
-                        + sqle.getMessage());
-            } finally {
-                results = null;
-                s2 = null;
             }
         }
     }
@@ -512,18 +566,20 @@ public class SQLRebuilder
         if (m_now == -1) {
             throw new RuntimeException("Called finish() without calling start()");
         }
+        registerBatch();
         finishStatus(m_now);
     }
 
     /**
-     * Update the registry and deployment cache to reflect the latest state of
-     * reality.
+     * Add the deployment map entries for a service deployment object to the
+     * statement's batch.
      *
      * @param obj
-     *        DOReader of a service deployment object
+     *        a service deployment object
+     * @return whether any entries were added.
      */
-    private synchronized void updateDeploymentMap(DigitalObject obj,
-                                                  Connection c)
+    private static boolean addDeployments(DigitalObject obj,
+                                          PreparedStatement s)
             throws SQLException {
 
         Set<RelationshipTuple> sDefs =
@@ -531,33 +587,17 @@ public class SQLRebuilder
         Set<RelationshipTuple> models =
                 obj.getRelationships(Constants.MODEL.IS_CONTRACTOR_OF, null);
 
+        boolean added = false;
         for (RelationshipTuple sDefTuple : sDefs) {
             String sDef = sDefTuple.getObjectPID();
             for (RelationshipTuple cModelTuple : models) {
-                String cModel = cModelTuple.getObjectPID();
-                addDeployment(cModel, sDef, obj, c);
-            }
-        }
-    }
-
-    private void addDeployment(String cModel,
-                               String sDef,
-                               DigitalObject sDep,
-                               Connection c) throws SQLException {
-
-        String query =
-        	"INSERT INTO modelDeploymentMap (cModel, sDef, sDep) VALUES (?, ?, ?)";
-        PreparedStatement s = c.prepareStatement(query);
-
-        try {
-            s.setString(1, cModel);
-            s.setString(2, sDef);
-            s.setString(3, sDep.getPid());
-            s.executeUpdate();
-        } finally {
-            if (s != null) {
-                s.close();
+                s.setString(1, cModelTuple.getObjectPID());
+                s.setString(2, sDef);
+                s.setString(3, obj.getPid());
+                s.addBatch();
+                added = true;
             }
         }
+        return added;
     }
 }
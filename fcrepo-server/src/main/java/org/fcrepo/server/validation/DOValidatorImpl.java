@@ -17,6 +17,7 @@ import java.util.zip.ZipEntry;
 import java.util.zip.ZipInputStream;
 
 import javax.xml.XMLConstants;
+import javax.xml.transform.dom.DOMResult;
 import javax.xml.validation.SchemaFactory;
 
 import org.fcrepo.common.Constants;
@@ -27,6 +28,7 @@ import org.fcrepo.server.storage.types.Validation;
 import org.fcrepo.utilities.FileUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.xml.sax.ContentHandler;
 import org.xml.sax.SAXException;
 
 
@@ -210,26 +212,10 @@ public class DOValidatorImpl
             case VALIDATE_NONE:
                 break;
             case VALIDATE_ALL:
-                try {
-                    // FIXME We need to use the object Inputstream twice, once for XML
-                    // Schema validation and once for Schematron validation.
-                    // We may want to consider implementing some form of a rewindable
-                    // InputStream. For now, I will just write the object InputStream to
-                    // disk so I can read it multiple times.
-                    if (logger.isDebugEnabled()) {
-                        logger.debug(
-                                "Validating streams against schema and schematron" +
-                                        " requires caching tempfiles to disk; consider" +
-                                        "calling validations seperately with a buffered" +
-                                        "InputStream"
-                                );
-                    }
-                    File objectAsFile = streamtoFile(objectAsStream);
-                    validate(objectAsFile, format, validationType, phase);
-                } catch (IOException ioe) {
-                    throw new ObjectValidityException("[DOValidatorImpl]: "
-                            + "ERROR in validate(InputStream objectAsStream...). " + ioe.getMessage());
+                if (format.equals(Constants.ATOM_ZIP1_1.uri)) {
+                    objectAsStream = getAtomManifest(objectAsStream);
                 }
+                validateAll(objectAsStream, format, phase);
                 break;
             case VALIDATE_XML_SCHEMA:
                 validateXMLSchema(objectAsStream, m_xmlSchemaMap.get(format));
@@ -334,6 +320,79 @@ public class DOValidatorImpl
         }
     }
 
+    /**
+     * Do XML Schema and Schematron rules validation in a single parse of the
+     * object, feeding the Schematron validating stylesheet with the events
+     * of the XML Schema validation. This spares reading the object twice, and
+     * so having to keep a copy of it.
+     */
+    private void validateAll(InputStream objectAsStream,
+                             String format,
+                             String phase) throws ObjectValidityException,
+            GeneralException {
+        DOValidatorSchematron schtron;
+        ContentHandler rules;
+        DOMResult rulesResult = new DOMResult();
+        try {
+            schtron = new DOValidatorSchematron(m_ruleSchemaMap.get(format),
+                                                schematronPreprocessorPath,
+                                                phase);
+            rules = schtron.newValidatingHandler(rulesResult);
+        } catch (ObjectValidityException e) {
+            logger.error("VALIDATE: ERROR - failed Schematron rules validation.",
+                      e);
+            throw e;
+        } catch (Exception e) {
+            logger.error("VALIDATE: ERROR - failed Schematron rules validation.",
+                      e);
+            throw new ObjectValidityException("[DOValidatorImpl]: "
+                    + "failed Schematron rules validation. " + e.getMessage());
+        }
+
+        try {
+            m_xmlSchemaMap.get(format).validate(objectAsStream, rules);
+        } catch (ObjectValidityException e) {
+            logger.error("VALIDATE: ERROR - failed XML Schema validation.", e);
+            throw e;
+        }
+        logger.debug("VALIDATE: SUCCESS - passed XML Schema validation.");
+
+        try {
+            schtron.validate(rulesResult);
+        } catch (ObjectValidityException e) {
+            logger.error("VALIDATE: ERROR - failed Schematron rules validation.",
+                      e);
+            throw e;
+        } catch (ServerException e) {
+            logger.error("VALIDATE: ERROR - failed Schematron rules validation.",
+                      e);
+            throw new ObjectValidityException("[DOValidatorImpl]: "
+                    + "failed Schematron rules validation. " + e.getMessage());
+        }
+        logger.debug("VALIDATE: SUCCESS - passed Schematron rules validation.");
+    }
+
+    /**
+     * Get the atom manifest of a Zip serialization, as the stream is read.
+     */
+    private static InputStream getAtomManifest(InputStream objectAsStream)
+            throws ObjectValidityException, GeneralException {
+        try {
+            ZipInputStream zip = new ZipInputStream(objectAsStream);
+            ZipEntry entry;
+            while ((entry = zip.getNextEntry()) != null) {
+                if (entry.getName().equals("atommanifest.xml")) {
+                    return zip;
+                }
+            }
+            zip.close();
+        } catch (IOException e) {
+            throw new GeneralException(e.getMessage(), e);
+        }
+        throw new ObjectValidityException("[DOValidatorImpl]: "
+                + "no atommanifest.xml in Zip serialization");
+    }
+
     private void checkFormat(String format) throws ObjectValidityException {
         if (!m_xmlSchemaMap.containsKey(format)) {
         	Validation validation = new Validation("unknown");
@@ -8,13 +8,16 @@ import java.io.File;
 import java.io.InputStream;
 import java.net.URL;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import javax.xml.transform.Templates;
 import javax.xml.transform.Transformer;
 import javax.xml.transform.TransformerException;
+import javax.xml.transform.TransformerFactory;
 import javax.xml.transform.dom.DOMResult;
+import javax.xml.transform.sax.SAXTransformerFactory;
+import javax.xml.transform.sax.TransformerHandler;
 import javax.xml.transform.stream.StreamResult;
 import javax.xml.transform.stream.StreamSource;
 
@@ -25,6 +28,7 @@ import org.fcrepo.utilities.ReadableCharArrayWriter;
 import org.fcrepo.utilities.XmlTransformUtility;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.xml.sax.ContentHandler;
 
 
 
@@ -50,8 +54,9 @@ public class DOValidatorSchematron {
 
     private final Templates validatingStyleSheet;
 
+    /** Validating stylesheets, shared by schema and phase. */
     private static Map<String, Templates> generatedStyleSheets =
-        new HashMap<String, Templates>(2);
+        new ConcurrentHashMap<String, Templates>(4);
 
     /**
      * Constructs a DOValidatorSchematron instance with a Schematron
@@ -105,22 +110,63 @@ public class DOValidatorSchematron {
      * @throws ServerException
      */
     public void validate(StreamSource objectSource) throws ServerException {
-        DOValidatorSchematronResult result = null;
+        DOMResult validationResult = new DOMResult();
         try {
             // Create a transformer that uses the validating stylesheet.
             // Run the Schematron validation of the Fedora object and
             // output results in DOM format.
             Transformer vtransformer =
                     validatingStyleSheet.newTransformer();
-            DOMResult validationResult = new DOMResult();
             vtransformer.transform(objectSource, validationResult);
+        } catch (Exception e) {
+            throw failed(e);
+        }
+        validate(validationResult);
+    }
+
+    /**
+     * Get a handler that runs the Schematron validation on the SAX events
+     * of a Fedora object, for when the object is being parsed anyway. Once
+     * the whole object has been passed to the handler, check the result with
+     * {@link #validate(DOMResult)}.
+     *
+     * @param validationResult
+     *        receives the result of the validation
+     * @throws ServerException
+     */
+    public ContentHandler newValidatingHandler(DOMResult validationResult)
+            throws ServerException {
+        TransformerFactory factory = null;
+        try {
+            factory = XmlTransformUtility.borrowTransformerFactory();
+            TransformerHandler handler =
+                    ((SAXTransformerFactory) factory)
+                            .newTransformerHandler(validatingStyleSheet);
+            handler.setResult(validationResult);
+            return handler;
+        } catch (Exception e) {
+            throw failed(e);
+        } finally {
+            if (factory != null) {
+                XmlTransformUtility.returnTransformerFactory(factory);
+            }
+        }
+    }
+
+    /**
+     * Check the result of a Schematron validation.
+     *
+     * @param validationResult
+     *        the result of the validating stylesheet
+     * @throws ServerException
+     *         if the result reports the object invalid
+     */
+    public void validate(DOMResult validationResult) throws ServerException {
+        DOValidatorSchematronResult result = null;
+        try {
             result = new DOValidatorSchematronResult(validationResult);
         } catch (Exception e) {
-        	Validation validation = new Validation("unknown");
-        	String problem = "Schematron validation failed:".concat(e.getMessage());
-        	validation.setObjectProblems(Collections.singletonList(problem));
-            logger.error("Schematron validation failed", e);
-            throw new ObjectValidityException(e.getMessage(), validation);
+            throw failed(e);
         }
 
         if (!result.isValid()) {
@@ -139,6 +185,14 @@ public class DOValidatorSchematron {
         }
     }
 
+    private static ObjectValidityException failed(Exception e) {
+        Validation validation = new Validation("unknown");
+        String problem = "Schematron validation failed:".concat(String.valueOf(e.getMessage()));
+        validation.setObjectProblems(Collections.singletonList(problem));
+        logger.error("Schematron validation failed", e);
+        return new ObjectValidityException(e.getMessage(), validation);
+    }
+
     /**
      * Run setup to prepare for Schematron validation. This entails dynamically
      * creating the validating stylesheet using the preprocessor and the schema.
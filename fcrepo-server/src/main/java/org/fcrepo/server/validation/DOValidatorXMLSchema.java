@@ -11,10 +11,12 @@ import java.io.InputStream;
 import java.util.Collections;
 
 import javax.xml.XMLConstants;
+import javax.xml.parsers.SAXParserFactory;
 import javax.xml.transform.stream.StreamSource;
 import javax.xml.validation.Schema;
 import javax.xml.validation.SchemaFactory;
 import javax.xml.validation.Validator;
+import javax.xml.validation.ValidatorHandler;
 
 import org.fcrepo.common.Constants;
 import org.fcrepo.server.errors.GeneralException;
@@ -22,9 +24,11 @@ import org.fcrepo.server.errors.ObjectValidityException;
 import org.fcrepo.server.storage.types.Validation;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.xml.sax.ContentHandler;
 import org.xml.sax.EntityResolver;
 import org.xml.sax.InputSource;
 import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
 
 
 
@@ -89,24 +93,62 @@ public class DOValidatorXMLSchema
 
             xsv.validate(doXML);
         }  catch (SAXException e) {
-            String msg =
-                    "DOValidatorXMLSchema returned validation exception.\n"
-                            + "The underlying exception was a "
-                            + e.getClass().getName() + ".\n"
-                            + "The message was " + "\"" + e.getMessage() + "\"";
-            Validation validation = new Validation("unknown");
-            validation.setObjectProblems(Collections.singletonList(msg));
-            throw new ObjectValidityException(msg, validation, e);
+            throw validationException(e);
         } catch (Exception e) {
-            String msg =
-                    "DOValidatorXMLSchema returned error.\n"
-                            + "The underlying error was a "
-                            + e.getClass().getName() + ".\n"
-                            + "The message was " + "\"" + e.getMessage() + "\"";
-            throw new GeneralException(msg, e);
+            throw error(e);
         }
     }
 
+    /**
+     * Validate the object while passing the events of the same parse on to
+     * another handler, so that it need not be parsed again.
+     *
+     * @param objectAsStream
+     *        the object; it is closed when it has been read
+     * @param alsoTo
+     *        receives the object's content events as they are validated
+     */
+    public void validate(InputStream objectAsStream, ContentHandler alsoTo)
+            throws ObjectValidityException, GeneralException {
+        try {
+            ValidatorHandler xsv = m_schema.newValidatorHandler();
+            DOValidatorXMLErrorHandler errorHandler =
+                    new DOValidatorXMLErrorHandler();
+            xsv.setErrorHandler(errorHandler);
+
+            SAXParserFactory factory = SAXParserFactory.newInstance();
+            factory.setNamespaceAware(true);
+            XMLReader reader = factory.newSAXParser().getXMLReader();
+            reader.setErrorHandler(errorHandler);
+            reader.setContentHandler(new TeeContentHandler(xsv, alsoTo));
+            reader.parse(new InputSource(objectAsStream));
+        } catch (SAXException e) {
+            throw validationException(e);
+        } catch (Exception e) {
+            throw error(e);
+        }
+    }
+
+    private static ObjectValidityException validationException(SAXException e) {
+        String msg =
+                "DOValidatorXMLSchema returned validation exception.\n"
+                        + "The underlying exception was a "
+                        + e.getClass().getName() + ".\n"
+                        + "The message was " + "\"" + e.getMessage() + "\"";
+        Validation validation = new Validation("unknown");
+        validation.setObjectProblems(Collections.singletonList(msg));
+        return new ObjectValidityException(msg, validation, e);
+    }
+
+    private static GeneralException error(Exception e) {
+        String msg =
+                "DOValidatorXMLSchema returned error.\n"
+                        + "The underlying error was a "
+                        + e.getClass().getName() + ".\n"
+                        + "The message was " + "\"" + e.getMessage() + "\"";
+        return new GeneralException(msg, e);
+    }
+
     /**
      * Resolve the entity if it's referring to a local schema. Otherwise, return
      * an empty InputSource. This behavior is required in order to ensure that
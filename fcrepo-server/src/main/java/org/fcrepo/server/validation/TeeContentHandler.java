@@ -0,0 +1,90 @@
+/* The contents of this file are subject to the license and copyright terms
+ * detailed in the license directory at the root of the source tree (also
+ * available online at http://fedora-commons.org/license/).
+ */
+package org.fcrepo.server.validation;
+
+import org.xml.sax.Attributes;
+import org.xml.sax.ContentHandler;
+import org.xml.sax.Locator;
+import org.xml.sax.SAXException;
+
+/**
+ * Passes each SAX content event to two handlers in turn, so that one parse
+ * of a document can feed two consumers.
+ */
+public class TeeContentHandler
+        implements ContentHandler {
+
+    private final ContentHandler m_first;
+
+    private final ContentHandler m_second;
+
+    public TeeContentHandler(ContentHandler first, ContentHandler second) {
+        m_first = first;
+        m_second = second;
+    }
+
+    public void setDocumentLocator(Locator locator) {
+        m_first.setDocumentLocator(locator);
+        m_second.setDocumentLocator(locator);
+    }
+
+    public void startDocument() throws SAXException {
+        m_first.startDocument();
+        m_second.startDocument();
+    }
+
+    public void endDocument() throws SAXException {
+        m_first.endDocument();
+        m_second.endDocument();
+    }
+
+    public void startPrefixMapping(String prefix, String uri)
+            throws SAXException {
+        m_first.startPrefixMapping(prefix, uri);
+        m_second.startPrefixMapping(prefix, uri);
+    }
+
+    public void endPrefixMapping(String prefix) throws SAXException {
+        m_first.endPrefixMapping(prefix);
+        m_second.endPrefixMapping(prefix);
+    }
+
+    public void startElement(String uri,
+                             String localName,
+                             String qName,
+                             Attributes atts) throws SAXException {
+        m_first.startElement(uri, localName, qName, atts);
+        m_second.startElement(uri, localName, qName, atts);
+    }
+
+    public void endElement(String uri, String localName, String qName)
+            throws SAXException {
+        m_first.endElement(uri, localName, qName);
+        m_second.endElement(uri, localName, qName);
+    }
+
+    public void characters(char[] ch, int start, int length)
+            throws SAXException {
+        m_first.characters(ch, start, length);
+        m_second.characters(ch, start, length);
+    }
+
+    public void ignorableWhitespace(char[] ch, int start, int length)
+            throws SAXException {
+        m_first.ignorableWhitespace(ch, start, length);
+        m_second.ignorableWhitespace(ch, start, length);
+    }
+
+    public void processingInstruction(String target, String data)
+            throws SAXException {
+        m_first.processingInstruction(target, data);
+        m_second.processingInstruction(target, data);
+    }
+
+    public void skippedEntity(String name) throws SAXException {
+        m_first.skippedEntity(name);
+        m_second.skippedEntity(name);
+    }
+}
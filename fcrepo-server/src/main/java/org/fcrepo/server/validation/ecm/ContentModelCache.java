@@ -0,0 +1,123 @@
+/* The contents of this file are subject to the license and copyright terms
+ * detailed in the license directory at the root of the source tree (also
+ * available online at http://fedora-commons.org/license/).
+ */
+package org.fcrepo.server.validation.ecm;
+
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.fcrepo.server.errors.ServerException;
+import org.fcrepo.server.storage.DOReader;
+
+/**
+ * Things parsed or compiled from content models for validation, such as
+ * schemas and ontologies, kept so that objects sharing a content model do
+ * not each parse them again.
+ * <p>
+ * Values are kept for one version of each content model, identified by its
+ * last modified date; when a newer version is seen, the values for the
+ * older one are dropped. They are only used when validating as of a time
+ * at or after the last modification, since earlier validations may see
+ * earlier versions of the content model's datastreams. Only the most
+ * recently used content models are kept.
+ * </p>
+ */
+public class ContentModelCache {
+
+    private final Map<String, Version> m_versions;
+
+    /**
+     * @param maxContentModels
+     *        the most content models whose values are kept
+     */
+    public ContentModelCache(final int maxContentModels) {
+        m_versions = new LinkedHashMap<String, Version>(16, 0.75f, true) {
+
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Version> eldest) {
+                return size() > maxContentModels;
+            }
+        };
+    }
+
+    /**
+     * Get a value kept for the content model, or null if there is none that
+     * can be used as of the given time.
+     *
+     * @param asOfDateTime
+     *        the time as of which the object is being validated, or null for
+     *        now
+     */
+    public Object get(DOReader contentModel, Date asOfDateTime, String name)
+            throws ServerException {
+        Version version = getVersion(contentModel, asOfDateTime, false);
+        return version == null ? null : version.values.get(name);
+    }
+
+    /**
+     * Keep a value for the content model, if it was computed from its current
+     * version (see {@link #get}).
+     */
+    public void put(DOReader contentModel,
+                    Date asOfDateTime,
+                    String name,
+                    Object value) throws ServerException {
+        Version version = getVersion(contentModel, asOfDateTime, true);
+        if (version != null) {
+            version.values.put(name, value);
+        }
+    }
+
+    /**
+     * Forget the values for a content model, because it has changed.
+     */
+    public synchronized void invalidate(String pid) {
+        m_versions.remove(pid);
+    }
+
+    public synchronized int size() {
+        return m_versions.size();
+    }
+
+    private Version getVersion(DOReader contentModel,
+                               Date asOfDateTime,
+                               boolean create) throws ServerException {
+        Date lastModified = contentModel.getLastModDate();
+        if (lastModified == null
+                || asOfDateTime != null && asOfDateTime.before(lastModified)) {
+            return null;
+        }
+        String pid = contentModel.GetObjectPID();
+        synchronized (this) {
+            Version version = m_versions.get(pid);
+            if (version != null && version.lastModified.equals(lastModified)) {
+                return version;
+            }
+            if (!create
+                    || version != null
+                    && version.lastModified.after(lastModified)) {
+                return null;
+            }
+            version = new Version(lastModified);
+            m_versions.put(pid, version);
+            return version;
+        }
+    }
+
+    private static class Version {
+
+        final Date lastModified;
+
+        final Map<String, Object> values =
+                new ConcurrentHashMap<String, Object>();
+
+        Version(Date lastModified) {
+            this.lastModified = lastModified;
+        }
+    }
+}
@@ -25,14 +25,23 @@ import org.fcrepo.server.validation.ecm.jaxb.DsTypeModel;
  */
 public class DatastreamValidator {
 
+    static final String COMPOSITE_MODEL = "DS-COMPOSITE-MODEL";
+
     private SchemaValidator schemaValidator;
 
     private FormValidator formValidator;
     private RepositoryReader doMgr;
 
+    private final ContentModelCache cache;
+
     public DatastreamValidator(RepositoryReader doMgr) {
+        this(doMgr, EcmValidator.getContentModelCache());
+    }
+
+    public DatastreamValidator(RepositoryReader doMgr, ContentModelCache cache) {
         this.doMgr = doMgr;
-        schemaValidator = new SchemaValidator();
+        this.cache = cache;
+        schemaValidator = new SchemaValidator(cache);
         formValidator = new FormValidator();
     }
 
@@ -50,12 +59,11 @@ public class DatastreamValidator {
             contentmodel = contentmodel.substring("info:fedora/".length());
 
             DOReader contentmodelReader = doMgr.getReader(false, context, contentmodel);
-            Datastream dscompmodelDS = contentmodelReader.GetDatastream("DS-COMPOSITE-MODEL", asOfDateTime);
+            DsCompositeModel dscompobject = getCompositeModel(contentmodelReader, asOfDateTime, cache);
 
-            if (dscompmodelDS == null) {//NO ds composite model, thats okay, continue to next content model
+            if (dscompobject == null) {//NO ds composite model, thats okay, continue to next content model
                 continue;
             }
-            DsCompositeModel dscompobject = JAXB.unmarshal(dscompmodelDS.getContentStream(), DsCompositeModel.class);
             for (DsTypeModel typeModel : dscompobject.getDsTypeModel()) {
                 String DSID = typeModel.getID();
                 Datastream objectDatastream = currentObjectReader.GetDatastream(DSID, asOfDateTime);
@@ -80,6 +88,25 @@ public class DatastreamValidator {
 
     }
 
+    /**
+     * Get the parsed DS-COMPOSITE-MODEL of a content model, or null if it
+     * has none.
+     */
+    static DsCompositeModel getCompositeModel(DOReader contentmodelReader, Date asOfDateTime,
+                                              ContentModelCache cache) throws ServerException {
+        DsCompositeModel dscompobject =
+                (DsCompositeModel) cache.get(contentmodelReader, asOfDateTime, COMPOSITE_MODEL);
+        if (dscompobject == null) {
+            Datastream dscompmodelDS = contentmodelReader.GetDatastream(COMPOSITE_MODEL, asOfDateTime);
+            if (dscompmodelDS == null) {
+                return null;
+            }
+            dscompobject = JAXB.unmarshal(dscompmodelDS.getContentStream(), DsCompositeModel.class);
+            cache.put(contentmodelReader, asOfDateTime, COMPOSITE_MODEL, dscompobject);
+        }
+        return dscompobject;
+    }
+
     private void reportMissingDatastreamError(String contentmodel, String dsid, Validation validation) {
         List<String> problems = validation.getDatastreamProblems().get(dsid);
         if (problems == null) {
@@ -21,6 +21,13 @@ import org.fcrepo.server.validation.DOObjectValidator;
  * To change this template use File | Settings | File Templates.
  */
 public class EcmValidator implements DOObjectValidator {
+
+    /** The most content models whose schemas and ontologies are kept. */
+    private static final int MAX_CACHED_CONTENT_MODELS = 1000;
+
+    private static final ContentModelCache s_contentModelCache =
+            new ContentModelCache(MAX_CACHED_CONTENT_MODELS);
+
     private final RepositoryReader doMgr;
     private final ExternalContentManager m_exExternalContentManager;
 
@@ -33,9 +40,17 @@ public class EcmValidator implements DOObjectValidator {
 
         this.doMgr = doMgr;
         this.m_exExternalContentManager = m_exExternalContentManager;
-        relsExtValidator = new OwlValidator(doMgr);
+        relsExtValidator = new OwlValidator(doMgr, s_contentModelCache);
+
+        datastreamValidator = new DatastreamValidator(doMgr, s_contentModelCache);
+    }
 
-        datastreamValidator = new DatastreamValidator(doMgr);
+    /**
+     * Get the schemas, ontologies and composite models kept from content
+     * models, shared by all validators.
+     */
+    public static ContentModelCache getContentModelCache() {
+        return s_contentModelCache;
     }
 
     public Validation validate(Context context, String pid, Date asOfDateTime)
@@ -17,7 +17,6 @@ import org.semanticweb.owlapi.util.OWLOntologyMerger;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import javax.xml.bind.JAXB;
 import java.io.InputStream;
 import java.util.*;
 
@@ -29,14 +28,22 @@ import java.util.*;
  * To change this template use File | Settings | File Templates.
  */
 public class OwlValidator {
+    private static final String ONTOLOGY = "ONTOLOGY";
+
     private RepositoryReader doMgr;
 
+    private final ContentModelCache cache;
+
     private static final Logger logger =
             LoggerFactory.getLogger(OwlValidator.class);
 
     public OwlValidator(RepositoryReader doMgr) {
-        //To change body of created methods use File | Settings | File Templates.
+        this(doMgr, EcmValidator.getContentModelCache());
+    }
+
+    public OwlValidator(RepositoryReader doMgr, ContentModelCache cache) {
         this.doMgr = doMgr;
+        this.cache = cache;
     }
 
 
@@ -61,6 +68,7 @@ public class OwlValidator {
 
         List<String> contentmodels = currentObjectReader.getContentModels();
 
+        final Set<OWLOntology> ontologies = new HashSet<OWLOntology>();
         for (String contentmodel : contentmodels) {
             contentmodel = contentmodel.substring("info:fedora/".length());
             DOReader contentmodelReader;
@@ -76,19 +84,19 @@ public class OwlValidator {
                 }
             }
 
-            Datastream ontologyDS = contentmodelReader.GetDatastream("ONTOLOGY", asOfDateTime);
+            OWLOntology ontology = getOntology(contentmodelReader, asOfDateTime, currentObjectReader.GetObjectPID());
 
-            if (ontologyDS == null) {//No ontology in the content model, continue
+            if (ontology == null) {//No ontology in the content model, continue
                 continue;
             }
-            InputStream ontologyStream = ontologyDS.getContentStream();
-            try {
-                owlManager.loadOntologyFromOntologyDocument(ontologyStream);
-            } catch (OWLOntologyCreationException e) {
-                logger.debug("Failed to load ontology for object " + currentObjectReader.GetObjectPID(), e);
-            }
+            ontologies.addAll(ontology.getOWLOntologyManager().getImportsClosure(ontology));
         }
-        OWLOntologyMerger merger = new OWLOntologyMerger(owlManager);
+        OWLOntologyMerger merger = new OWLOntologyMerger(new OWLOntologySetProvider() {
+            @Override
+            public Set<OWLOntology> getOntologies() {
+                return ontologies;
+            }
+        });
         IRI mergedOntologyIRI = IRI.create("http://www.semanticweb.com/mymergedont");
         OWLOntology mergedOntology = null;
         try {
@@ -159,6 +167,32 @@ public class OwlValidator {
 
     }
 
+    /**
+     * Get the parsed ONTOLOGY of a content model, or null if it has none or
+     * it cannot be parsed. Each content model's ontology is parsed by its own
+     * manager so that it can be kept (see {@link ContentModelCache}) and
+     * merged with others for each object validated.
+     */
+    private OWLOntology getOntology(DOReader contentmodelReader, Date asOfDateTime, String pid)
+            throws ServerException {
+        OWLOntology ontology = (OWLOntology) cache.get(contentmodelReader, asOfDateTime, ONTOLOGY);
+        if (ontology == null) {
+            Datastream ontologyDS = contentmodelReader.GetDatastream(ONTOLOGY, asOfDateTime);
+            if (ontologyDS == null) {
+                return null;
+            }
+            InputStream ontologyStream = ontologyDS.getContentStream();
+            try {
+                ontology = OWLManager.createOWLOntologyManager().loadOntologyFromOntologyDocument(ontologyStream);
+            } catch (OWLOntologyCreationException e) {
+                logger.debug("Failed to load ontology for object " + pid, e);
+                return null;
+            }
+            cache.put(contentmodelReader, asOfDateTime, ONTOLOGY, ontology);
+        }
+        return ontology;
+    }
+
     private Set<RelationshipTuple> getRelationsSubjectTo(Set<RelationshipTuple> relations, String datastream) {
         HashSet<RelationshipTuple> found = new HashSet<RelationshipTuple>();
         for (RelationshipTuple relation : relations) {
@@ -400,11 +434,10 @@ public class OwlValidator {
             contentmodel = contentmodel.substring("info:fedora/".length());
         }
         DOReader reader = doMgr.getReader(false, context, contentmodel);
-        Datastream dscompmodelDS = reader.GetDatastream("DS-COMPOSITE-MODEL", asOfDateTime);
-        if (dscompmodelDS == null) {//NO ds composite model, thats okay, continue to next content model
+        DsCompositeModel dscompobject = DatastreamValidator.getCompositeModel(reader, asOfDateTime, cache);
+        if (dscompobject == null) {//NO ds composite model, thats okay, continue to next content model
             return names;
         }
-        DsCompositeModel dscompobject = JAXB.unmarshal(dscompmodelDS.getContentStream(context), DsCompositeModel.class);
 
         for (DsTypeModel typeModel : dscompobject.getDsTypeModel()) {
             names.add(typeModel.getID());
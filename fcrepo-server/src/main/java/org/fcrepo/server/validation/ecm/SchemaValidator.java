@@ -42,7 +42,14 @@ import org.xml.sax.SAXParseException;
  */
 public class SchemaValidator {
 
+    private final ContentModelCache cache;
+
     public SchemaValidator() {
+        this(EcmValidator.getContentModelCache());
+    }
+
+    public SchemaValidator(ContentModelCache cache) {
+        this.cache = cache;
     }
 
     void validate(Context context, DsTypeModel typeModel, Datastream objectDatastream, Validation validation,
@@ -50,7 +57,9 @@ public class SchemaValidator {
 
         List<Extension> extensions = typeModel.getExtension();
         List<List<String>> schemaStreamsToProblemsMap = new ArrayList<List<String>>();
+        int extensionIndex = -1;
         for (Extension extension : extensions) {
+            extensionIndex++;
             String name = extension.getName();
 
 
@@ -61,70 +70,81 @@ public class SchemaValidator {
                 continue;
             }
 
-            List<Element> contents = extension.getAny();
-            for (Element content : contents) { //find the reference
-                String tagname = content.getTagName();
-                if (tagname.equals("reference")) {
-                    reference = content;
-                    break;
-                }
-            }
-
-            if (reference == null){ //if no reference
-                boolean found = false;
-                for (Element content : contents) {
-                    if ( content.getNodeType() == Element.ELEMENT_NODE){
-                        source = new DOMSource(content);//parse the inline schema
-                        found = true;
+            //schemas from the content model are kept for its current version, see ContentModelCache
+            String cacheKey = "SCHEMA/" + typeModel.getID() + "/" + extensionIndex;
+            Schema schema = (Schema) cache.get(contentmodelReader, asOfDateTime, cacheKey);
+            if (schema == null) {
+                boolean cacheable = true;
+
+                List<Element> contents = extension.getAny();
+                for (Element content : contents) { //find the reference
+                    String tagname = content.getTagName();
+                    if (tagname.equals("reference")) {
+                        reference = content;
                         break;
                     }
                 }
-                if (!found){//empty tag
-                    List<String> validationProblems = validation.getDatastreamProblems(objectDatastream.DatastreamID);
-                    validationProblems.add(Errors.schemaNotFound(contentmodelReader.GetObjectPID()));
-                    validation.setValid(false);
-                }
-            }
-            else {
-                String type = reference.getAttribute("type");
-                String value = reference.getAttribute("value");
 
-                if ("datastream".equalsIgnoreCase(type)) {
-                    Datastream schemaDS = contentmodelReader.GetDatastream(value, asOfDateTime);
-                    if (schemaDS == null) {//No schema datastream, ignore and continue
-                        continue;
+                if (reference == null){ //if no reference
+                    boolean found = false;
+                    for (Element content : contents) {
+                        if ( content.getNodeType() == Element.ELEMENT_NODE){
+                            source = new DOMSource(content);//parse the inline schema
+                            found = true;
+                            break;
+                        }
+                    }
+                    if (!found){//empty tag
+                        List<String> validationProblems = validation.getDatastreamProblems(objectDatastream.DatastreamID);
+                        validationProblems.add(Errors.schemaNotFound(contentmodelReader.GetObjectPID()));
+                        validation.setValid(false);
                     }
-                    InputStream schemaStream;
-                    schemaStream = schemaDS.getContentStream();
-                    source = new StreamSource(schemaStream);
-
-                } else if ("url".equalsIgnoreCase(type)){
-                    InputStream schemaStream;
-                    ContentManagerParams params = new ContentManagerParams(value);
-                    MIMETypedStream externalContent = m_exExternalContentManager.getExternalContent(params);
-                    schemaStream = externalContent.getStream();
-                    source = new StreamSource(schemaStream);
-                } else { //reference used, but type not recognized
-                    List<String> validationProblems = validation.getDatastreamProblems(objectDatastream.DatastreamID);
-                    validationProblems.add(Errors.schemaNotFound(contentmodelReader.GetObjectPID()));
-                    validation.setValid(false);
-                    continue;
                 }
+                else {
+                    String type = reference.getAttribute("type");
+                    String value = reference.getAttribute("value");
+
+                    if ("datastream".equalsIgnoreCase(type)) {
+                        Datastream schemaDS = contentmodelReader.GetDatastream(value, asOfDateTime);
+                        if (schemaDS == null) {//No schema datastream, ignore and continue
+                            continue;
+                        }
+                        InputStream schemaStream;
+                        schemaStream = schemaDS.getContentStream();
+                        source = new StreamSource(schemaStream);
+
+                    } else if ("url".equalsIgnoreCase(type)){
+                        InputStream schemaStream;
+                        ContentManagerParams params = new ContentManagerParams(value);
+                        MIMETypedStream externalContent = m_exExternalContentManager.getExternalContent(params);
+                        schemaStream = externalContent.getStream();
+                        source = new StreamSource(schemaStream);
+                        //external content may change without the content model changing
+                        cacheable = false;
+                    } else { //reference used, but type not recognized
+                        List<String> validationProblems = validation.getDatastreamProblems(objectDatastream.DatastreamID);
+                        validationProblems.add(Errors.schemaNotFound(contentmodelReader.GetObjectPID()));
+                        validation.setValid(false);
+                        continue;
+                    }
 
-            }
+                }
 
-            LSResourceResolver resourceResolver
-                    = new ResourceResolver(contentmodelReader, asOfDateTime);
+                LSResourceResolver resourceResolver
+                        = new ResourceResolver(contentmodelReader, asOfDateTime);
 
 
-            Schema schema;
-            try {
-                schema = parseAsSchema(source, resourceResolver);
-            } catch (SAXException e) {
-                List<String> validationProblems = validation.getDatastreamProblems(objectDatastream.DatastreamID);
-                validationProblems.add(Errors.schemaCannotParse(contentmodelReader.GetObjectPID(),objectDatastream.DatastreamID,e));
-                validation.setValid(false);
-                continue;
+                try {
+                    schema = parseAsSchema(source, resourceResolver);
+                } catch (SAXException e) {
+                    List<String> validationProblems = validation.getDatastreamProblems(objectDatastream.DatastreamID);
+                    validationProblems.add(Errors.schemaCannotParse(contentmodelReader.GetObjectPID(),objectDatastream.DatastreamID,e));
+                    validation.setValid(false);
+                    continue;
+                }
+                if (cacheable) {
+                    cache.put(contentmodelReader, asOfDateTime, cacheKey, schema);
+                }
             }
 
             List<String> problems = checkSchema( objectDatastream.getContentStream(),
@@ -9,7 +9,8 @@ import org.junit.runner.RunWith;
 import org.junit.runners.Suite;
 
 @RunWith(Suite.class)
-@Suite.SuiteClasses( {org.fcrepo.server.access.DefaultAccessTest.class})
+@Suite.SuiteClasses( {org.fcrepo.server.access.DefaultAccessTest.class,
+        org.fcrepo.server.access.dissemination.DatastreamMediationRegistryTest.class})
 public class AllUnitTests {
 
     // Supports legacy tests runners
@@ -19,6 +20,7 @@ public class AllUnitTests {
                 new junit.framework.TestSuite(AllUnitTests.class.getName());
 
         suite.addTest(org.fcrepo.server.access.DefaultAccessTest.suite());
+        suite.addTest(org.fcrepo.server.access.dissemination.DatastreamMediationRegistryTest.suite());
 
         return suite;
     }
@@ -6,7 +6,11 @@ package org.fcrepo.server.access;
 
 import static org.junit.Assert.assertEquals;
 import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import java.io.ByteArrayInputStream;
@@ -15,6 +19,7 @@ import java.util.Date;
 import java.util.HashMap;
 
 import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.input.BoundedInputStream;
 import org.apache.http.HttpHeaders;
 import org.apache.http.HttpStatus;
 import org.fcrepo.server.Context;
@@ -22,6 +27,7 @@ import org.fcrepo.server.Module;
 import org.fcrepo.server.ReadOnlyContext;
 import org.fcrepo.server.Server;
 import org.fcrepo.server.errors.DatastreamNotFoundException;
+import org.fcrepo.server.errors.ModuleInitializationException;
 import org.fcrepo.server.errors.ServerException;
 import org.fcrepo.server.errors.StreamIOException;
 import org.fcrepo.server.security.Authorization;
@@ -35,7 +41,9 @@ import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.Mock;
+import org.mockito.invocation.InvocationOnMock;
 import org.mockito.runners.MockitoJUnitRunner;
+import org.mockito.stubbing.Answer;
 
 import junit.framework.JUnit4TestAdapter;
 
@@ -85,13 +93,22 @@ public class DefaultAccessTest {
         return mockDatastream(new ByteArrayInputStream(bytes), bytes.length);
     }
 
-    private DatastreamManagedContent mockDatastream(InputStream content, long size) throws StreamIOException {
+    private DatastreamManagedContent mockDatastream(final InputStream content, long size) throws StreamIOException {
         DatastreamManagedContent mock = mock(DatastreamManagedContent.class);
         mock.DatastreamID = TEST_DSID;
         mock.DSChecksum = TEST_ETAG_CHECKSUM;
         mock.DSCreateDT = new Date(System.currentTimeMillis() - 1000);
         mock.DSSize = size;
         when(mock.getContentStream(any(Context.class))).thenReturn(content);
+        when(mock.getContentStream(any(Context.class), anyLong(), anyLong()))
+                .thenAnswer(new Answer<InputStream>() {
+                    @Override
+                    public InputStream answer(InvocationOnMock invocation) throws Exception {
+                        Object[] args = invocation.getArguments();
+                        content.skip((Long) args[1]);
+                        return new BoundedInputStream(content, (Long) args[2]);
+                    }
+                });
         when(mock.isRepositoryManaged()).thenReturn(true);
         return mock;
     }
@@ -134,9 +151,44 @@ public class DefaultAccessTest {
         assertEquals(HttpStatus.SC_PARTIAL_CONTENT, output.getStatusCode());
     }
 
+    @Test
+    public void testPartialDatastreamDisseminationOpensAtOffset() throws Exception {
+        DatastreamManagedContent ds = mockDatastream("0123456789abcdef");
+        when(mockReader.GetDatastream(any(String.class), any(Date.class))).thenReturn(ds);
+        Context context = getContext();
+        context.getHeaders().set(HttpHeaders.RANGE.toLowerCase(), "bytes=10-");
+        MIMETypedStream output = test.getDatastreamDissemination(context, TEST_PID, TEST_DSID, null);
+        assertEquals(6l, output.getSize());
+        assertEquals("abcdef", IOUtils.toString(output.getStream()));
+        verify(ds).getContentStream(any(Context.class), eq(10L), eq(6L));
+        verify(ds, never()).getContentStream(any(Context.class));
+    }
+
+    @Test
+    public void testEmptyRangeDisseminatesEverything() throws Exception {
+        DatastreamManagedContent ds = mockDatastream("0123456789abcdef");
+        when(mockReader.GetDatastream(any(String.class), any(Date.class))).thenReturn(ds);
+        Context context = getContext();
+        context.getHeaders().set(HttpHeaders.RANGE.toLowerCase(), "");
+        MIMETypedStream output = test.getDatastreamDissemination(context, TEST_PID, TEST_DSID, null);
+        assertEquals(HttpStatus.SC_OK, output.getStatusCode());
+        assertEquals("0123456789abcdef", IOUtils.toString(output.getStream()));
+    }
+
     private Context getContext() throws Exception {
         return ReadOnlyContext.getContext("http", "lolUser", "wutPassword", false);
     }
+
+    @Test(expected=ModuleInitializationException.class)
+    public void testBadMediationParameterFailsAtStartup() throws Exception {
+        when(mockServer.getParameter("datastreamMediationMaxEntries")).thenReturn("0");
+        HashMap<String, String> parms = new HashMap<String, String>();
+        parms.put("doMediateDatastreams", "ok");
+        DefaultAccess access = new DefaultAccess(parms, mockServer, Access.class.getName());
+        access.initModule();
+        access.postInitModule();
+    }
+
     public static junit.framework.Test suite() {
         return new JUnit4TestAdapter(DefaultAccessTest.class);
     }
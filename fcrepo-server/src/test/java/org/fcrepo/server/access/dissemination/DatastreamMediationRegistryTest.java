@@ -0,0 +1,96 @@
+/* The contents of this file are subject to the license and copyright terms
+ * detailed in the license directory at the root of the source tree (also
+ * available online at http://fedora-commons.org/license/).
+ */
+
+package org.fcrepo.server.access.dissemination;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.sql.Timestamp;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.fcrepo.server.storage.types.DatastreamMediation;
+import org.junit.Before;
+import org.junit.Test;
+
+public class DatastreamMediationRegistryTest {
+
+    private DatastreamMediationRegistry registry;
+
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(DatastreamMediationRegistryTest.class);
+    }
+
+    @Before
+    public void setUp() {
+        registry = new DatastreamMediationRegistry();
+    }
+
+    @Test
+    public void testRegisterAndRelease() {
+        DatastreamMediation dm = new DatastreamMediation();
+        String id = registry.register(dm, "loc");
+        assertSame(dm, registry.get(id));
+        assertEquals(id, dm.mediatedDatastreamID);
+        // the ID is still a timestamp followed by a counter
+        Timestamp.valueOf(id.substring(0, id.lastIndexOf(':')));
+
+        registry.release(id);
+        assertNull(registry.get(id));
+        assertEquals(-1, registry.getRegistrationTime(id));
+    }
+
+    @Test
+    public void testExpiredEntriesAreRemoved() throws Exception {
+        registry.setExpirationMillis(1);
+        String id = registry.register(new DatastreamMediation(), "a");
+        Thread.sleep(10);
+        registry.register(new DatastreamMediation(), "b");
+        assertNull(registry.get(id));
+        assertEquals(1, registry.size());
+    }
+
+    @Test
+    public void testSizeIsBounded() {
+        registry.setMaxEntries(2);
+        String first = registry.register(new DatastreamMediation(), "a");
+        registry.register(new DatastreamMediation(), "b");
+        registry.register(new DatastreamMediation(), "c");
+        registry.register(new DatastreamMediation(), "d");
+        assertEquals(2, registry.size());
+        assertNull(registry.get(first));
+    }
+
+    @Test
+    public void testReleasedEntriesAreForgotten() {
+        registry.setMaxEntries(2);
+        for (int i = 0; i < 100; i++) {
+            registry.release(registry.register(new DatastreamMediation(),
+                                               "loc"));
+        }
+        assertEquals(0, registry.size());
+        assertEquals(0, registry.expiring());
+    }
+
+    @Test
+    public void testReuse() {
+        String id = registry.register(new DatastreamMediation(), "loc");
+        assertFalse(id.equals(registry.register(new DatastreamMediation(),
+                                                "loc")));
+
+        registry.setReuseMillis(60000);
+        id = registry.register(new DatastreamMediation(), "loc");
+        assertEquals(id, registry.register(new DatastreamMediation(), "loc"));
+        assertFalse(id.equals(registry.register(new DatastreamMediation(),
+                                                "other")));
+        // reusable IDs stay registered after they are resolved
+        registry.release(id);
+        assertNotNull(registry.get(id));
+    }
+}
@@ -11,7 +11,7 @@ import org.junit.runners.Suite;
 @Suite.SuiteClasses( {org.fcrepo.server.journal.helpers.AllUnitTests.class,
         org.fcrepo.server.journal.readerwriter.AllUnitTests.class,
         org.fcrepo.server.journal.xmlhelpers.AllUnitTests.class,
-        TestJournalRoundTrip.class})
+        ParallelJournalReplayerTest.class, TestJournalRoundTrip.class})
 public class AllUnitTests {
 
 }
@@ -0,0 +1,199 @@
+/* The contents of this file are subject to the license and copyright terms
+ * detailed in the license directory at the root of the source tree (also
+ * available online at http://fedora-commons.org/license/).
+ */
+package org.fcrepo.server.journal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.fcrepo.server.Context;
+import org.fcrepo.server.errors.GeneralException;
+import org.fcrepo.server.journal.entry.ConsumerJournalEntry;
+import org.fcrepo.server.journal.entry.JournalEntryContext;
+import org.fcrepo.server.journal.recoverylog.JournalRecoveryLog;
+import org.fcrepo.server.management.ManagementDelegate;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+public class ParallelJournalReplayerTest
+        implements JournalConstants {
+
+    private static final int THREADS = 4;
+
+    private static final int OBJECTS = 8;
+
+    private static final int ENTRIES_PER_OBJECT = 50;
+
+    private ManagementDelegate delegate;
+
+    private ParallelJournalReplayer replayer;
+
+    /** The labels of the modifyObject calls, by pid, in the order replayed. */
+    private final Map<String, List<String>> replayed =
+            Collections.synchronizedMap(new HashMap<String, List<String>>());
+
+    /** Every call, in the order replayed. */
+    private final List<String> calls =
+            Collections.synchronizedList(new ArrayList<String>());
+
+    @Before
+    public void setUp() throws Exception {
+        delegate = mock(ManagementDelegate.class);
+        doAnswer(new Answer<Date>() {
+
+            @Override
+            public Date answer(InvocationOnMock invocation) throws Throwable {
+                String pid = (String) invocation.getArguments()[1];
+                String label = (String) invocation.getArguments()[3];
+                if ("fail".equals(label)) {
+                    throw new GeneralException("failed to modify " + pid);
+                }
+                // give the other lanes a chance to get ahead of this one
+                if (label.hashCode() % 7 == 0) {
+                    Thread.sleep(2);
+                }
+                List<String> labels;
+                synchronized (replayed) {
+                    labels = replayed.get(pid);
+                    if (labels == null) {
+                        labels = new ArrayList<String>();
+                        replayed.put(pid, labels);
+                    }
+                }
+                labels.add(label);
+                calls.add(pid + "/" + label);
+                return new Date();
+            }
+        }).when(delegate).modifyObject(any(Context.class),
+                                       anyString(),
+                                       anyString(),
+                                       anyString(),
+                                       anyString(),
+                                       anyString(),
+                                       any(Date.class));
+        doAnswer(new Answer<String[]>() {
+
+            @Override
+            public String[] answer(InvocationOnMock invocation) {
+                calls.add("getNextPID");
+                return new String[] {"demo:100"};
+            }
+        }).when(delegate).getNextPID(any(Context.class),
+                                     anyInt(),
+                                     anyString());
+
+        replayer =
+                new ParallelJournalReplayer(THREADS,
+                                            delegate,
+                                            mock(JournalRecoveryLog.class));
+    }
+
+    @After
+    public void tearDown() {
+        replayer.shutdown();
+    }
+
+    @Test
+    public void testEntriesForOneObjectAreReplayedInOrder() throws Exception {
+        for (int i = 0; i < ENTRIES_PER_OBJECT; i++) {
+            for (int o = 0; o < OBJECTS; o++) {
+                replayer.replay(modifyObject("demo:" + o, String.valueOf(i)));
+            }
+        }
+        replayer.drain();
+
+        assertEquals(OBJECTS, replayed.size());
+        for (int o = 0; o < OBJECTS; o++) {
+            List<String> labels = replayed.get("demo:" + o);
+            assertEquals(ENTRIES_PER_OBJECT, labels.size());
+            for (int i = 0; i < ENTRIES_PER_OBJECT; i++) {
+                assertEquals("demo:" + o, String.valueOf(i), labels.get(i));
+            }
+        }
+    }
+
+    @Test
+    public void testBarrierWaitsForEarlierEntries() throws Exception {
+        for (int i = 0; i < 10; i++) {
+            for (int o = 0; o < OBJECTS; o++) {
+                replayer.replay(modifyObject("demo:" + o, String.valueOf(i)));
+            }
+        }
+        replayer.replay(getNextPid());
+        // the barrier was replayed on this thread, after all the others
+        assertEquals(10 * OBJECTS + 1, calls.size());
+        assertEquals("getNextPID", calls.get(calls.size() - 1));
+
+        for (int o = 0; o < OBJECTS; o++) {
+            replayer.replay(modifyObject("demo:" + o, "after"));
+        }
+        replayer.drain();
+        assertEquals(11 * OBJECTS + 1, calls.size());
+        assertEquals(10 * OBJECTS, calls.indexOf("getNextPID"));
+    }
+
+    @Test
+    public void testFailureStopsReplay() throws Exception {
+        replayer.replay(modifyObject("demo:1", "0"));
+        replayer.replay(modifyObject("demo:1", "fail"));
+        replayer.replay(modifyObject("demo:1", "2"));
+        try {
+            replayer.drain();
+            fail("Expected the failure to be reported");
+        } catch (JournalException e) {
+            assertTrue(e.getCause() instanceof GeneralException);
+        }
+        // the entries behind the failure were not replayed
+        assertEquals(Collections.singletonList("0"), replayed.get("demo:1"));
+
+        try {
+            replayer.replay(modifyObject("demo:2", "3"));
+            fail("Expected the replay to stay stopped");
+        } catch (JournalException e) {
+            assertTrue(e.getCause() instanceof GeneralException);
+        }
+        assertNull(replayed.get("demo:2"));
+    }
+
+    private static ConsumerJournalEntry modifyObject(String pid, String label) {
+        ConsumerJournalEntry cje =
+                new ConsumerJournalEntry(METHOD_MODIFY_OBJECT,
+                                         new JournalEntryContext());
+        cje.addArgument(ARGUMENT_NAME_PID, pid);
+        cje.addArgument(ARGUMENT_NAME_LABEL, label);
+        return cje;
+    }
+
+    private static ConsumerJournalEntry getNextPid() {
+        ConsumerJournalEntry cje =
+                new ConsumerJournalEntry(METHOD_GET_NEXT_PID,
+                                         new JournalEntryContext());
+        cje.addArgument(ARGUMENT_NAME_NUM_PIDS, 1);
+        cje.addArgument(ARGUMENT_NAME_NAMESPACE, "demo");
+        return cje;
+    }
+
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(ParallelJournalReplayerTest.class);
+    }
+}
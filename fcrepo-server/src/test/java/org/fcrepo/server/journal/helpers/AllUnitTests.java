@@ -8,7 +8,8 @@ import org.junit.runner.RunWith;
 import org.junit.runners.Suite;
 
 @RunWith(Suite.class)
-@Suite.SuiteClasses( {TestParameterHelper.class, TestPasswordCipher.class})
+@Suite.SuiteClasses( {TestParameterHelper.class, TestPasswordCipher.class,
+        ObjectLockTableTest.class})
 public class AllUnitTests {
 
     // Supports legacy tests runners
@@ -19,6 +20,7 @@ public class AllUnitTests {
 
         suite.addTest(TestParameterHelper.suite());
         suite.addTestSuite(TestPasswordCipher.class);
+        suite.addTest(new junit.framework.JUnit4TestAdapter(ObjectLockTableTest.class));
 
         return suite;
     }
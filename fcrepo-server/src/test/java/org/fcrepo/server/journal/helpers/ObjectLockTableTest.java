@@ -0,0 +1,51 @@
+/* The contents of this file are subject to the license and copyright terms
+ * detailed in the license directory at the root of the source tree (also
+ * available online at http://fedora-commons.org/license/).
+ */
+package org.fcrepo.server.journal.helpers;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Test cases for the ObjectLockTable class.
+ */
+public class ObjectLockTableTest {
+
+    @Test
+    public void testStripeCountIsRoundedUpToPowerOfTwo() {
+        assertEquals(1, new ObjectLockTable(1).getStripeCount());
+        assertEquals(4, new ObjectLockTable(3).getStripeCount());
+        assertEquals(256, new ObjectLockTable(256).getStripeCount());
+    }
+
+    @Test
+    public void testNormalizePid() {
+        assertEquals("demo:1", ObjectLockTable.normalizePid("demo:1"));
+        assertEquals("demo:1", ObjectLockTable
+                .normalizePid("info:fedora/demo:1"));
+        assertEquals("demo:1", ObjectLockTable
+                .normalizePid("info:fedora/demo:1/RELS-INT"));
+    }
+
+    @Test
+    public void testSubjectFormsShareALock() {
+        ObjectLockTable table = new ObjectLockTable(64);
+        assertSame(table.getLock("demo:1"), table
+                .getLock("info:fedora/demo:1"));
+        assertSame(table.getLock("demo:1"), table
+                .getLock("info:fedora/demo:1/DC"));
+    }
+
+    @Test
+    public void testStripeIsWithinRange() {
+        ObjectLockTable table = new ObjectLockTable(16);
+        for (int i = 0; i < 1000; i++) {
+            int stripe = table.getStripe("test:" + i);
+            assertTrue(stripe >= 0 && stripe < 16);
+        }
+    }
+}
@@ -8,7 +8,8 @@ import org.junit.runner.RunWith;
 import org.junit.runners.Suite;
 
 @RunWith(Suite.class)
-@Suite.SuiteClasses( {TestLockingFollowingJournalReader.class})
+@Suite.SuiteClasses( {MultiFileJournalWriterTest.class,
+        TestLockingFollowingJournalReader.class})
 public class AllUnitTests {
 
 }
@@ -0,0 +1,174 @@
+/* The contents of this file are subject to the license and copyright terms
+ * detailed in the license directory at the root of the source tree (also
+ * available online at http://fedora-commons.org/license/).
+ */
+package org.fcrepo.server.journal.readerwriter.multifile;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.apache.commons.io.IOUtils;
+import org.fcrepo.server.journal.JournalConstants;
+import org.fcrepo.server.journal.JournalException;
+import org.fcrepo.server.journal.MockServerForJournalTesting;
+import org.fcrepo.server.journal.entry.CreatorJournalEntry;
+import org.fcrepo.server.journal.entry.JournalEntryContext;
+import org.fcrepo.server.management.MockManagementDelegate;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class MultiFileJournalWriterTest
+        implements JournalConstants, MultiFileJournalConstants {
+
+    private static final String JOURNAL_FILENAME_PREFIX = "unit";
+
+    @Rule
+    public TemporaryFolder tmpFolder = new TemporaryFolder();
+
+    private File journalDirectory;
+
+    private MultiFileJournalWriter writer;
+
+    @Before
+    public void setUp() throws Exception {
+        journalDirectory = tmpFolder.newFolder("journal");
+
+        Map<String, String> parameters = new HashMap<String, String>();
+        parameters.put(PARAMETER_JOURNAL_DIRECTORY, journalDirectory.getPath());
+        parameters.put(PARAMETER_JOURNAL_FILENAME_PREFIX,
+                       JOURNAL_FILENAME_PREFIX);
+        parameters.put(PARAMETER_JOURNAL_FILE_SIZE_LIMIT, "0");
+        parameters.put(PARAMETER_JOURNAL_FILE_AGE_LIMIT, "1D");
+        parameters.put(PARAMETER_JOURNAL_CONCURRENCY,
+                       VALUE_JOURNAL_CONCURRENCY_PER_OBJECT);
+        writer =
+                new MultiFileJournalWriter(parameters,
+                                           "unitTest",
+                                           new MockServerForJournalTesting(new MockManagementDelegate(),
+                                                                           "Dummy Hash"));
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        writer.shutdown();
+    }
+
+    @Test
+    public void testConcurrentEntriesAreFlushed() throws Exception {
+        final int threads = 8;
+        final int entries = 25;
+        final CountDownLatch start = new CountDownLatch(1);
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<Void>> results = new ArrayList<Future<Void>>();
+            for (int t = 0; t < threads; t++) {
+                final String pid = "demo:" + t;
+                results.add(pool.submit(new Callable<Void>() {
+
+                    @Override
+                    public Void call() throws Exception {
+                        start.await();
+                        for (int i = 0; i < entries; i++) {
+                            write(modifyObject(pid, pid + "-" + i));
+                        }
+                        return null;
+                    }
+                }));
+            }
+            start.countDown();
+            for (Future<Void> result : results) {
+                result.get();
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+
+        // every entry is in the file before it is closed
+        String journal = readOpenJournal();
+        for (int t = 0; t < threads; t++) {
+            for (int i = 0; i < entries; i++) {
+                String label = "demo:" + t + "-" + i;
+                assertTrue(label, journal.contains(">" + label + "<"));
+            }
+        }
+    }
+
+    @Test
+    public void testFailingEntryDoesNotStopTheGroup() throws Exception {
+        write(modifyObject("demo:1", "before"));
+
+        CreatorJournalEntry failing = modifyObject("demo:2", "failing");
+        failing.addArgument(ARGUMENT_NAME_DS_CONTENT,
+                            new File(journalDirectory, "noSuchTempFile"));
+        try {
+            write(failing);
+            fail("Expected a JournalException");
+        } catch (JournalException e) {
+            // expected: the temp file is gone
+        }
+
+        // a later entry is still written, and flushed by its own thread
+        write(modifyObject("demo:3", "after"));
+        String journal = readOpenJournal();
+        assertTrue(journal.contains(">before<"));
+        assertTrue(journal.contains(">after<"));
+    }
+
+    private void write(CreatorJournalEntry entry) throws JournalException {
+        writer.beginConcurrentEntry();
+        try {
+            writer.writeJournalEntry(entry);
+        } finally {
+            writer.endConcurrentEntry();
+        }
+    }
+
+    private static CreatorJournalEntry modifyObject(String pid, String label) {
+        CreatorJournalEntry entry =
+                new CreatorJournalEntry(METHOD_MODIFY_OBJECT,
+                                        new JournalEntryContext());
+        entry.addArgument(ARGUMENT_NAME_PID, pid);
+        entry.addArgument(ARGUMENT_NAME_LABEL, label);
+        return entry;
+    }
+
+    /**
+     * The journal file that is being written has a temporary name.
+     */
+    private String readOpenJournal() throws IOException {
+        File[] files = journalDirectory.listFiles();
+        assertNotNull(files);
+        assertEquals(1, files.length);
+        assertTrue(files[0].getName().startsWith("_" + JOURNAL_FILENAME_PREFIX));
+        FileInputStream in = new FileInputStream(files[0]);
+        try {
+            return IOUtils.toString(in, "UTF-8");
+        } finally {
+            in.close();
+        }
+    }
+
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(MultiFileJournalWriterTest.class);
+    }
+}
@@ -0,0 +1,200 @@
+/* The contents of this file are subject to the license and copyright terms
+ * detailed in the license directory at the root of the source tree (also
+ * available online at http://fedora-commons.org/license/).
+ */
+package org.fcrepo.server.management;
+
+import java.sql.Connection;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.fcrepo.server.storage.ConnectionPool;
+import org.fcrepo.server.utilities.DerbyDDLConverter;
+
+/**
+ * Runs the PIDGenerator tests against a DBPIDGenerator reserving blocks of
+ * ids, and checks generators sharing a database, as servers would.
+ */
+public class DBPIDGeneratorIntegrationTest
+        extends TestPIDGenerator {
+
+    private static final String driver = "org.apache.derby.jdbc.EmbeddedDriver";
+    private static final String url = "jdbc:derby:test;create=true";
+
+    private static final int BLOCK_SIZE = 5;
+
+    private static ConnectionPool cPool;
+
+    @Override
+    protected void setUp() {
+        try {
+            if (cPool == null) {
+                cPool = new ConnectionPool(driver, url, "test", "test",
+                                           new DerbyDDLConverter(),
+                                           4, 4, -1, 0, 1800000, 3, -1,
+                                           "values(1)", true, true, true,
+                                           (byte) 1);
+            }
+            Connection conn = cPool.getReadWriteConnection();
+            try {
+                Statement st = conn.createStatement();
+                try {
+                    st.executeUpdate("DROP TABLE pidGen");
+                } catch (Exception e) {
+                    // not created yet
+                } finally {
+                    st.close();
+                }
+            } finally {
+                cPool.free(conn);
+            }
+        } catch (Exception e) {
+            fail(e.getMessage());
+        }
+        super.setUp();
+    }
+
+    @Override
+    protected PIDGenerator getTestPIDGenerator() {
+        return newGenerator(BLOCK_SIZE);
+    }
+
+    @Override
+    protected Set<String> getNamespaces() {
+        return new HashSet<String>(Arrays.asList("test", "demo"));
+    }
+
+    private static DBPIDGenerator newGenerator(int blockSize) {
+        try {
+            return new DBPIDGenerator(cPool, null, blockSize);
+        } catch (Exception e) {
+            fail(e.getMessage());
+            return null;
+        }
+    }
+
+    public void testNeverGeneratePIDWithinBlock() throws Exception {
+        DBPIDGenerator generator = newGenerator(BLOCK_SIZE);
+        assertEquals(1, getId(generator.generatePID("test")));
+        // in the current block
+        generator.neverGeneratePID("test:3");
+        assertEquals(4, getId(generator.generatePID("test")));
+        // beyond it
+        generator.neverGeneratePID("test:12");
+        assertEquals(5, getId(generator.generatePID("test")));
+        assertEquals(13, getId(generator.generatePID("test")));
+    }
+
+    public void testNeverGeneratePIDSeenByOtherServers() throws Exception {
+        DBPIDGenerator first = newGenerator(BLOCK_SIZE);
+        DBPIDGenerator second = newGenerator(BLOCK_SIZE);
+        assertEquals(1, getId(first.generatePID("test")));
+        second.neverGeneratePID("test:40");
+        for (int i = 2; i <= BLOCK_SIZE; i++) {
+            assertEquals(i, getId(first.generatePID("test")));
+        }
+        assertEquals(41, getId(first.generatePID("test")));
+    }
+
+    public void testSingleGeneratorNeverLowersHighestID() throws Exception {
+        // loaded before the other generator reserves anything
+        DBPIDGenerator single = newGenerator(1);
+        DBPIDGenerator blocks = newGenerator(BLOCK_SIZE);
+        for (int i = 1; i <= BLOCK_SIZE * 2; i++) {
+            assertEquals(i, getId(blocks.generatePID("test")));
+        }
+        single.generatePID("test");
+        single.neverGeneratePID("test:3");
+        assertEquals(BLOCK_SIZE * 2 + 1,
+                     getId(blocks.generatePID("test")));
+    }
+
+    public void testServersReservingNewNamespace() throws Exception {
+        final int servers = 4;
+        final int count = 3 * BLOCK_SIZE;
+        final CountDownLatch start = new CountDownLatch(1);
+        ExecutorService pool = Executors.newFixedThreadPool(servers);
+        try {
+            List<Future<List<String>>> results =
+                    new ArrayList<Future<List<String>>>();
+            for (int s = 0; s < servers; s++) {
+                final DBPIDGenerator generator = newGenerator(BLOCK_SIZE);
+                results.add(pool.submit(new Callable<List<String>>() {
+
+                    @Override
+                    public List<String> call() throws Exception {
+                        start.await();
+                        List<String> pids = new ArrayList<String>();
+                        for (int i = 0; i < count; i++) {
+                            pids.add(generator.generatePID("race").toString());
+                        }
+                        return pids;
+                    }
+                }));
+            }
+            start.countDown();
+            Set<String> all = new HashSet<String>();
+            for (Future<List<String>> result : results) {
+                for (String pid : result.get()) {
+                    assertTrue("generated twice: " + pid, all.add(pid));
+                }
+            }
+            assertEquals(servers * count, all.size());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    public void testConcurrentNeverGeneratePID() throws Exception {
+        final DBPIDGenerator generator = newGenerator(BLOCK_SIZE);
+        final List<Integer> generated =
+                Collections.synchronizedList(new ArrayList<Integer>());
+        ExecutorService pool = Executors.newSingleThreadExecutor();
+        try {
+            Future<?> generating = pool.submit(new Callable<Void>() {
+
+                @Override
+                public Void call() throws Exception {
+                    for (int i = 0; i < 200; i++) {
+                        generated.add(getId(generator.generatePID("test")));
+                    }
+                    return null;
+                }
+            });
+            // ids ahead of the generator, which must then skip them; ids
+            // are generated in order, so any found were generated later
+            List<Integer> never = new ArrayList<Integer>();
+            for (int i = 0; i < 50; i++) {
+                int ahead;
+                synchronized (generated) {
+                    ahead = (generated.isEmpty() ? 0
+                            : generated.get(generated.size() - 1))
+                            + 3 * BLOCK_SIZE;
+                }
+                generator.neverGeneratePID("test:" + ahead);
+                never.add(ahead);
+            }
+            generating.get();
+            for (Integer id : never) {
+                assertFalse("generated " + id, generated.contains(id));
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    // Supports legacy test runners
+    public static junit.framework.Test suite() {
+        return new junit.framework.TestSuite(DBPIDGeneratorIntegrationTest.class);
+    }
+}
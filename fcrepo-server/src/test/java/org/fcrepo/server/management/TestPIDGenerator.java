@@ -5,9 +5,12 @@
 package org.fcrepo.server.management;
 
 import java.io.IOException;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.Set;
 
+import org.fcrepo.common.PID;
+
 import junit.framework.TestCase;
 
 
@@ -58,7 +61,32 @@ public abstract class TestPIDGenerator
         }
     }
 
-    public void testNeverGeneratePID() {
-        // TODO
+    public void testNeverGeneratePID() throws IOException {
+        for (String namespace : namespaces) {
+            int id = getId(testPIDGenerator.generatePID(namespace));
+            testPIDGenerator.neverGeneratePID(namespace + ":" + (id + 2));
+            testPIDGenerator.neverGeneratePID(namespace + ":" + (id + 20));
+            int next = getId(testPIDGenerator.generatePID(namespace));
+            assertTrue(next > id);
+            assertTrue(next != id + 2 && next != id + 20);
+            for (int i = 0; i < 30; i++) {
+                next = getId(testPIDGenerator.generatePID(namespace));
+                assertTrue(next != id + 2 && next != id + 20);
+            }
+        }
+    }
+
+    public void testGeneratedPIDsAreUnique() throws IOException {
+        for (String namespace : namespaces) {
+            Set<String> pids = new HashSet<String>();
+            for (int i = 0; i < 50; i++) {
+                assertTrue(pids.add(testPIDGenerator.generatePID(namespace)
+                        .toString()));
+            }
+        }
+    }
+
+    protected static int getId(PID pid) {
+        return Integer.parseInt(pid.getObjectId());
     }
 }
@@ -0,0 +1,120 @@
+/* The contents of this file are subject to the license and copyright terms
+ * detailed in the license directory at the root of the source tree (also
+ * available online at http://fedora-commons.org/license/).
+ */
+package org.fcrepo.server.management;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.util.Collections;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class UploadStoreTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File dir;
+
+    @Before
+    public void setUp() throws Exception {
+        dir = folder.newFolder("uploads");
+    }
+
+    @Test
+    public void testPutAndGet() throws Exception {
+        UploadStore store = new UploadStore(dir, 60000);
+        String id = store.nextId();
+        UploadStore.Upload upload =
+                store.put(id, content("hello"), Collections.singleton("MD5"));
+
+        assertEquals(UploadStore.getFile(dir, id), upload.getFile());
+        assertFalse(dir.equals(upload.getFile().getParentFile()));
+        assertEquals(5, upload.getSize());
+        assertEquals("5d41402abc4b2a76b9719d911017c592",
+                     upload.getDigests().get("MD5"));
+        assertNotNull(store.get(id));
+        InputStream in = store.get(id).open();
+        try {
+            assertEquals("hello", IOUtils.toString(in, "UTF-8"));
+        } finally {
+            in.close();
+        }
+    }
+
+    @Test
+    public void testIdsAreUnique() throws Exception {
+        UploadStore store = new UploadStore(dir, 60000);
+        assertEquals("1", store.nextId());
+        assertEquals("2", store.nextId());
+        assertEquals("7", store.useId(7));
+        assertEquals("8", store.nextId());
+        assertEquals("3", store.useId(3));
+        assertEquals("9", store.nextId());
+    }
+
+    @Test
+    public void testRecover() throws Exception {
+        UploadStore store = new UploadStore(dir, 60000);
+        String id = store.nextId();
+        store.put(id, content("hello"), Collections.<String> emptySet());
+        write(new File(dir, "41"), "legacy");
+        File partial = new File(UploadStore.getFile(dir, "42").getPath() + ".part");
+        partial.getParentFile().mkdirs();
+        write(partial, "partial");
+
+        store = new UploadStore(dir, 60000);
+        assertEquals(2, store.size());
+        assertEquals(5, store.get(id).getSize());
+        assertEquals(UploadStore.getFile(dir, "41"), store.get("41").getFile());
+        assertTrue(store.get("41").getFile().exists());
+        assertFalse(new File(dir, "41").exists());
+        assertFalse(partial.exists());
+        assertNull(store.get("42"));
+        assertEquals("42", store.nextId());
+    }
+
+    @Test
+    public void testPurgeExpired() throws Exception {
+        UploadStore store = new UploadStore(dir, -1);
+        String id = store.nextId();
+        File file =
+                store.put(id, content("hello"), Collections.<String> emptySet())
+                        .getFile();
+        store.purgeExpired();
+        assertNull(store.get(id));
+        assertFalse(file.exists());
+    }
+
+    private static InputStream content(String s) throws Exception {
+        return new ByteArrayInputStream(s.getBytes("UTF-8"));
+    }
+
+    private static void write(File file, String s) throws Exception {
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            out.write(s.getBytes("UTF-8"));
+        } finally {
+            out.close();
+        }
+    }
+
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(UploadStoreTest.class);
+    }
+}
@@ -0,0 +1,169 @@
+/* The contents of this file are subject to the license and copyright terms
+ * detailed in the license directory at the root of the source tree (also
+ * available online at http://fedora-commons.org/license/).
+ */
+package org.fcrepo.server.messaging;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import javax.jms.Destination;
+import javax.jms.Message;
+import javax.jms.MessageListener;
+import javax.jms.TextMessage;
+import javax.naming.Context;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.fcrepo.server.errors.MessagingException;
+import org.fcrepo.server.messaging.JMSManager.DestinationType;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests the pooled and transacted sends of JMSManager, and the
+ * BatchingPublisher that uses them, against an embedded broker.
+ */
+public class BatchingPublisherTest
+        implements MessageListener {
+
+    private static final String QUEUE = "batchingpublisher.test";
+
+    private final BlockingQueue<Message> received =
+            new LinkedBlockingQueue<Message>();
+
+    private JMSManager jmsMgr;
+
+    private Destination dest;
+
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(BatchingPublisherTest.class);
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        Properties properties = new Properties();
+        properties.setProperty(Context.INITIAL_CONTEXT_FACTORY,
+                               "org.apache.activemq.jndi.ActiveMQInitialContextFactory");
+        properties.setProperty(Context.PROVIDER_URL, "vm://localhost");
+        properties.setProperty(JMSManager.CONNECTION_FACTORY_NAME,
+                               "ConnectionFactory");
+        jmsMgr = new JMSManager(properties);
+        dest = jmsMgr.createDestination(QUEUE, DestinationType.Queue);
+        jmsMgr.listen(dest, this);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        jmsMgr.close();
+    }
+
+    @Test
+    public void testConcurrentPooledSends() throws Exception {
+        final int threads = 8;
+        final int perThread = 25;
+        final List<Throwable> errors = new ArrayList<Throwable>();
+        List<Thread> senders = new ArrayList<Thread>();
+        for (int t = 0; t < threads; t++) {
+            final int thread = t;
+            Thread sender = new Thread() {
+
+                @Override
+                public void run() {
+                    try {
+                        for (int i = 0; i < perThread; i++) {
+                            jmsMgr.send(dest, thread + "-" + i, null);
+                        }
+                    } catch (Throwable th) {
+                        synchronized (errors) {
+                            errors.add(th);
+                        }
+                    }
+                }
+            };
+            senders.add(sender);
+            sender.start();
+        }
+        for (Thread sender : senders) {
+            sender.join();
+        }
+        assertEquals(0, errors.size());
+        assertEquals(threads * perThread, receive(threads * perThread).size());
+    }
+
+    @Test
+    public void testTransactedSend() throws Exception {
+        List<Destination> dests = new ArrayList<Destination>();
+        List<String> texts = new ArrayList<String>();
+        List<Map<String, String>> properties =
+                new ArrayList<Map<String, String>>();
+        for (int i = 0; i < 10; i++) {
+            dests.add(dest);
+            texts.add("message " + i);
+            properties.add(null);
+        }
+        jmsMgr.send(dests, texts, properties);
+        assertEquals(10, receive(10).size());
+    }
+
+    @Test
+    public void testPropertiesAreSent() throws Exception {
+        BatchingPublisher publisher = new BatchingPublisher(jmsMgr, 5, 3);
+        publisher.publish(dest,
+                          "message",
+                          Collections.singletonMap("pid", "demo:1"));
+        publisher.close();
+        Message msg = received.poll(5, TimeUnit.SECONDS);
+        assertNotNull(msg);
+        assertEquals("message", ((TextMessage) msg).getText());
+        assertEquals("demo:1", msg.getStringProperty("pid"));
+    }
+
+    @Test
+    public void testPublishAndClose() throws Exception {
+        BatchingPublisher publisher = new BatchingPublisher(jmsMgr, 5, 3);
+        for (int i = 0; i < 50; i++) {
+            publisher.publish(dest, "" + i, null);
+        }
+        publisher.close();
+        assertEquals(0, publisher.size());
+        assertEquals(50, receive(50).size());
+
+        try {
+            publisher.publish(dest, "late", null);
+            fail("Published after close");
+        } catch (MessagingException e) {
+        }
+    }
+
+    /**
+     * Wait for the given number of messages, returning their distinct texts.
+     */
+    private Set<String> receive(int count) throws Exception {
+        Set<String> texts = new HashSet<String>();
+        for (int i = 0; i < count; i++) {
+            Message msg = received.poll(5, TimeUnit.SECONDS);
+            assertNotNull("Received only " + i + " of " + count + " messages",
+                          msg);
+            texts.add(((TextMessage) msg).getText());
+        }
+        return texts;
+    }
+
+    public void onMessage(Message message) {
+        received.add(message);
+    }
+}
@@ -0,0 +1,378 @@
+/* The contents of this file are subject to the license and copyright terms
+ * detailed in the license directory at the root of the source tree (also
+ * available online at http://fedora-commons.org/license/).
+ */
+package org.fcrepo.server.resourceIndex;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyListOf;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.fcrepo.common.rdf.SimpleLiteral;
+import org.fcrepo.common.rdf.SimpleTriple;
+import org.fcrepo.common.rdf.SimpleURIReference;
+import org.jrdf.graph.GraphElementFactory;
+import org.jrdf.graph.ObjectNode;
+import org.jrdf.graph.PredicateNode;
+import org.jrdf.graph.SubjectNode;
+import org.jrdf.graph.Triple;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.trippi.TripleUpdate;
+import org.trippi.TriplestoreWriter;
+import org.trippi.TrippiException;
+
+public class ResourceIndexUpdateQueueTest {
+
+    private static final int BATCH_SIZE = 1000;
+
+    private static final int MAX_QUEUED = 10000;
+
+    // long enough that the worker never applies updates during a test
+    private static final long FLUSH_MILLIS = 600000;
+
+    private static final Triple T1 = triple("demo:1", "a");
+
+    private static final Triple T2 = triple("demo:2", "b");
+
+    private static final Triple T3 = triple("demo:3", "c");
+
+    private File m_dir;
+
+    private GraphElementFactory m_factory;
+
+    private TriplestoreWriter m_writer;
+
+    private List<ResourceIndexUpdateQueue> m_queues =
+            new ArrayList<ResourceIndexUpdateQueue>();
+
+    @Before
+    public void setUp() throws Exception {
+        m_dir = Files.createTempDirectory("ri-queue").toFile();
+        m_factory = mock(GraphElementFactory.class);
+        when(m_factory.createResource(any(URI.class)))
+                .thenAnswer(new Answer<Object>() {
+
+                    @Override
+                    public Object answer(InvocationOnMock invocation) {
+                        return new SimpleURIReference((URI) invocation
+                                .getArguments()[0]);
+                    }
+                });
+        when(m_factory.createLiteral(anyString()))
+                .thenAnswer(new Answer<Object>() {
+
+                    @Override
+                    public Object answer(InvocationOnMock invocation) {
+                        return new SimpleLiteral((String) invocation
+                                .getArguments()[0]);
+                    }
+                });
+        when(m_factory.createTriple(any(SubjectNode.class),
+                                    any(PredicateNode.class),
+                                    any(ObjectNode.class)))
+                .thenAnswer(new Answer<Object>() {
+
+                    @Override
+                    public Object answer(InvocationOnMock invocation) {
+                        Object[] args = invocation.getArguments();
+                        return new SimpleTriple((SubjectNode) args[0],
+                                                (PredicateNode) args[1],
+                                                (ObjectNode) args[2]);
+                    }
+                });
+        m_writer = mock(TriplestoreWriter.class);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        for (ResourceIndexUpdateQueue queue : m_queues) {
+            queue.close();
+        }
+        for (File file : m_dir.listFiles()) {
+            file.delete();
+        }
+        m_dir.delete();
+    }
+
+    @Test
+    public void testMergesUpdatesToEachTriple() throws Exception {
+        ResourceIndexUpdateQueue queue = open(m_writer);
+        queue.enqueue(Arrays.asList(add(T1), add(T2)));
+        queue.enqueue(Arrays.asList(delete(T1), delete(T3), add(T3)));
+        assertEquals(5, queue.size());
+        assertEquals(Arrays.asList(T1, T3),
+                     triples(queue.findQueuedUpdates(null,
+                                                     null,
+                                                     null,
+                                                     TripleUpdate.DELETE)));
+
+        queue.drain();
+
+        verify(m_writer).delete(Arrays.asList(T1), false);
+        verify(m_writer).add(Arrays.asList(T2, T3), false);
+        verify(m_writer).flushBuffer();
+        assertEquals(0, queue.size());
+        // only the file now being written remains
+        assertEquals(1, m_dir.listFiles().length);
+    }
+
+    @Test
+    public void testRetriesFailedBatch() throws Exception {
+        doThrow(new TrippiException("unavailable")).doNothing()
+                .when(m_writer).add(anyListOf(Triple.class), eq(false));
+        ResourceIndexUpdateQueue queue = open(m_writer);
+        queue.enqueue(Arrays.asList(add(T1)));
+        try {
+            queue.drain();
+            fail("drained although the batch failed");
+        } catch (IOException e) {
+            // expected
+        }
+        assertEquals(1, queue.size());
+        assertEquals(2, m_dir.listFiles().length);
+
+        queue.enqueue(Arrays.asList(add(T2)));
+        queue.drain();
+
+        verify(m_writer).add(Arrays.asList(T1), false);
+        verify(m_writer).add(Arrays.asList(T1, T2), false);
+        assertEquals(0, queue.size());
+        assertEquals(1, m_dir.listFiles().length);
+    }
+
+    @Test
+    public void testRecoversUnappliedUpdates() throws Exception {
+        TriplestoreWriter failing = failingWriter();
+        ResourceIndexUpdateQueue queue =
+                new ResourceIndexUpdateQueue(m_dir,
+                                             failing,
+                                             m_factory,
+                                             BATCH_SIZE,
+                                             MAX_QUEUED,
+                                             FLUSH_MILLIS);
+        queue.enqueue(Arrays.asList(add(T1), add(T2)));
+        queue.enqueue(Arrays.asList(delete(T2)));
+        // the server stops before the updates can be applied...
+        queue.close();
+        // ...and while a later group was only partly written to the file
+        // opened when the failed batch was taken
+        File last = new File(m_dir, "ri-updates-2.log");
+        assertTrue(last.exists());
+        DataOutputStream out =
+                new DataOutputStream(new FileOutputStream(last, true));
+        out.writeInt(2);
+        out.writeByte(TripleUpdate.ADD);
+        out.close();
+
+        ResourceIndexUpdateQueue reopened = open(m_writer);
+        assertEquals(3, reopened.size());
+        reopened.drain();
+
+        verify(m_writer).delete(Arrays.asList(T2), false);
+        verify(m_writer).add(Arrays.asList(T1), false);
+        assertEquals(1, m_dir.listFiles().length);
+    }
+
+    @Test
+    public void testConcurrentEnqueuesAreAllWritten() throws Exception {
+        final int threads = 8;
+        final int count = 50;
+        final ResourceIndexUpdateQueue queue =
+                new ResourceIndexUpdateQueue(m_dir,
+                                             failingWriter(),
+                                             m_factory,
+                                             BATCH_SIZE,
+                                             MAX_QUEUED,
+                                             FLUSH_MILLIS);
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<Void>> results = new ArrayList<Future<Void>>();
+            for (int t = 0; t < threads; t++) {
+                final int thread = t;
+                results.add(pool.submit(new Callable<Void>() {
+
+                    @Override
+                    public Void call() throws Exception {
+                        for (int i = 0; i < count; i++) {
+                            queue.enqueue(Collections
+                                    .singletonList(add(triple("demo:"
+                                            + thread, "" + i))));
+                        }
+                        return null;
+                    }
+                }));
+            }
+            for (Future<Void> result : results) {
+                result.get();
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+        queue.close();
+
+        ResourceIndexUpdateQueue reopened = open(m_writer);
+        assertEquals(threads * count, reopened.size());
+        for (int t = 0; t < threads; t++) {
+            assertEquals(count,
+                         reopened.findQueuedUpdates(triple("demo:" + t, "")
+                                 .getSubject(), null, null, TripleUpdate.ADD)
+                                 .size());
+        }
+    }
+
+    @Test
+    public void testFullQueueWaitsForBatchToApply() throws Exception {
+        final CountDownLatch available = new CountDownLatch(1);
+        doAnswer(new Answer<Object>() {
+
+            @Override
+            public Object answer(InvocationOnMock invocation)
+                    throws Exception {
+                available.await();
+                return null;
+            }
+        }).when(m_writer).add(anyListOf(Triple.class), eq(false));
+        final ResourceIndexUpdateQueue queue =
+                new ResourceIndexUpdateQueue(m_dir,
+                                             m_writer,
+                                             m_factory,
+                                             2,
+                                             2,
+                                             FLUSH_MILLIS);
+        m_queues.add(queue);
+        queue.enqueue(Arrays.asList(add(T1), add(T2)));
+
+        ExecutorService pool = Executors.newSingleThreadExecutor();
+        try {
+            Future<Void> result = pool.submit(new Callable<Void>() {
+
+                @Override
+                public Void call() throws Exception {
+                    queue.enqueue(Arrays.asList(add(T3)));
+                    return null;
+                }
+            });
+            try {
+                result.get(200, TimeUnit.MILLISECONDS);
+                fail("enqueued on a full queue");
+            } catch (TimeoutException e) {
+                // expected
+            }
+            assertFalse(result.isDone());
+            assertEquals(2, queue.size());
+
+            available.countDown();
+            result.get(10, TimeUnit.SECONDS);
+        } finally {
+            pool.shutdownNow();
+        }
+        queue.drain();
+
+        verify(m_writer).add(Arrays.asList(T1, T2), false);
+        verify(m_writer).add(Arrays.asList(T3), false);
+    }
+
+    @Test
+    public void testClosedQueueRefusesUpdates() throws Exception {
+        ResourceIndexUpdateQueue queue =
+                new ResourceIndexUpdateQueue(m_dir,
+                                             m_writer,
+                                             m_factory,
+                                             BATCH_SIZE,
+                                             MAX_QUEUED,
+                                             FLUSH_MILLIS);
+        queue.enqueue(Arrays.asList(add(T1)));
+        queue.close();
+        verify(m_writer).add(Arrays.asList(T1), false);
+        try {
+            queue.enqueue(Arrays.asList(add(T2)));
+            fail("enqueued on a closed queue");
+        } catch (IOException e) {
+            assertTrue(e.getMessage().contains("closed"));
+        }
+    }
+
+    private ResourceIndexUpdateQueue open(TriplestoreWriter writer)
+            throws IOException {
+        ResourceIndexUpdateQueue queue =
+                new ResourceIndexUpdateQueue(m_dir,
+                                             writer,
+                                             m_factory,
+                                             BATCH_SIZE,
+                                             MAX_QUEUED,
+                                             FLUSH_MILLIS);
+        m_queues.add(queue);
+        return queue;
+    }
+
+    private static TriplestoreWriter failingWriter() throws Exception {
+        TriplestoreWriter writer = mock(TriplestoreWriter.class);
+        doThrow(new TrippiException("unavailable")).when(writer)
+                .add(anyListOf(Triple.class), eq(false));
+        doThrow(new TrippiException("unavailable")).when(writer)
+                .delete(anyListOf(Triple.class), eq(false));
+        return writer;
+    }
+
+    private static Triple triple(String pid, String title) {
+        return new SimpleTriple(new SimpleURIReference(URI
+                .create("info:fedora/" + pid)), new SimpleURIReference(URI
+                .create("http://purl.org/dc/elements/1.1/title")),
+                                new SimpleLiteral(title));
+    }
+
+    private static TripleUpdate add(Triple triple) {
+        return new TripleUpdate(triple, TripleUpdate.ADD);
+    }
+
+    private static TripleUpdate delete(Triple triple) {
+        return new TripleUpdate(triple, TripleUpdate.DELETE);
+    }
+
+    private static List<Triple> triples(List<TripleUpdate> updates) {
+        List<Triple> triples = new ArrayList<Triple>();
+        for (TripleUpdate update : updates) {
+            triples.add(update.triple);
+        }
+        return triples;
+    }
+
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(ResourceIndexUpdateQueueTest.class);
+    }
+}
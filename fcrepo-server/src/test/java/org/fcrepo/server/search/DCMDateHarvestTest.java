@@ -0,0 +1,174 @@
+/* The contents of this file are subject to the license and copyright terms
+ * detailed in the license directory at the root of the source tree (also
+ * available online at http://fedora-commons.org/license/).
+ */
+
+package org.fcrepo.server.search;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyBoolean;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.fcrepo.server.Context;
+import org.fcrepo.server.storage.ConnectionPool;
+import org.fcrepo.server.storage.DOReader;
+import org.fcrepo.server.storage.RepositoryReader;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.mockito.stubbing.Answer;
+
+@RunWith(MockitoJUnitRunner.class)
+public class DCMDateHarvestTest {
+
+    private static final String[] HEADER_FIELDS =
+            new String[] {"pid", "dcmDate"};
+
+    /** label is stored in lowercase, so the objects must be read */
+    private static final String[] LOADED_FIELDS =
+            new String[] {"pid", "dcmDate", "label"};
+
+    @Mock
+    private ConnectionPool mockPool;
+
+    @Mock
+    private Connection mockConnection;
+
+    @Mock
+    private PreparedStatement mockStmt;
+
+    @Mock
+    private ResultSet mockResults;
+
+    @Mock
+    private RepositoryReader mockRepoReader;
+
+    @Mock
+    private DOReader mockReader;
+
+    private final List<ObjectFields> handled = new ArrayList<ObjectFields>();
+
+    private final ObjectFieldsHandler handler = new ObjectFieldsHandler() {
+
+        public void handle(ObjectFields fields) {
+            handled.add(fields);
+        }
+    };
+
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(DCMDateHarvestTest.class);
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        when(mockPool.getReadOnlyConnection()).thenReturn(mockConnection);
+        when(mockConnection.prepareStatement(anyString())).thenReturn(mockStmt);
+        when(mockStmt.executeQuery()).thenReturn(mockResults);
+        when(mockRepoReader.getReader(anyBoolean(), any(Context.class),
+                anyString())).thenReturn(mockReader);
+    }
+
+    @Test
+    public void testQueryText() {
+        assertEquals("SELECT doFields.pid, doFields.dcmDate FROM doFields"
+                + " WHERE doFields.dcmDate > 0"
+                + " ORDER BY doFields.dcmDate, doFields.pid",
+                DCMDateHarvest.getQueryText(false, false, false, null));
+        assertEquals("SELECT doFields.pid, doFields.dcmDate, doFields.state"
+                + " FROM doFields WHERE doFields.dcmDate > 0"
+                + " AND doFields.dcmDate >= ? AND doFields.dcmDate <= ?"
+                + " AND (doFields.dcmDate > ?"
+                + " OR (doFields.dcmDate = ? AND doFields.pid > ?))"
+                + " ORDER BY doFields.dcmDate, doFields.pid",
+                DCMDateHarvest.getQueryText(true, true, true,
+                        new String[] {"pid", "dcmDate", "state"}));
+    }
+
+    @Test
+    public void testProjectedFieldsAreHandledAfterConnectionIsFreed()
+            throws Exception {
+        when(mockResults.next()).thenReturn(true, true, true);
+        when(mockResults.getString(1)).thenReturn("demo:2", "demo:1");
+        when(mockResults.getLong(2)).thenReturn(1000L, 2000L);
+        final List<Boolean> freedWhenHandled = new ArrayList<Boolean>();
+        final boolean[] freed = new boolean[1];
+        doAnswer(new Answer<Void>() {
+
+            public Void answer(InvocationOnMock invocation) {
+                freed[0] = true;
+                return null;
+            }
+        }).when(mockPool).free(mockConnection);
+
+        boolean more = DCMDateHarvest.list(mockPool, mockRepoReader,
+                HEADER_FIELDS, new Date(500L), null, new Date(1000L),
+                "demo:1", 2, new ObjectFieldsHandler() {
+
+                    public void handle(ObjectFields fields) {
+                        freedWhenHandled.add(freed[0]);
+                        handler.handle(fields);
+                    }
+                });
+
+        assertTrue(more);
+        assertEquals(2, handled.size());
+        assertEquals("demo:2", handled.get(0).getPid());
+        assertEquals(new Date(1000L), handled.get(0).getDCMDate());
+        assertEquals("demo:1", handled.get(1).getPid());
+        assertEquals(new Date(2000L), handled.get(1).getDCMDate());
+        verify(mockStmt).setMaxRows(3);
+        verify(mockStmt).setLong(1, 500L);
+        verify(mockStmt).setLong(2, 1000L);
+        verify(mockStmt).setLong(3, 1000L);
+        verify(mockStmt).setString(4, "demo:1");
+        verify(mockPool).free(mockConnection);
+        assertEquals(Arrays.asList(true, true), freedWhenHandled);
+        verify(mockRepoReader, never()).getReader(anyBoolean(),
+                                                  any(Context.class),
+                                                  anyString());
+    }
+
+    @Test
+    public void testObjectsAreReadAfterConnectionIsFreed() throws Exception {
+        when(mockResults.next()).thenReturn(true, false);
+        when(mockResults.getString(1)).thenReturn("demo:1");
+        when(mockResults.getLong(2)).thenReturn(1000L);
+        when(mockReader.GetObjectLabel()).thenReturn("Label");
+
+        boolean more = DCMDateHarvest.list(mockPool, mockRepoReader,
+                LOADED_FIELDS, null, null, null, null, 10, handler);
+
+        assertFalse(more);
+        assertEquals(1, handled.size());
+        assertEquals("demo:1", handled.get(0).getPid());
+        assertEquals("Label", handled.get(0).getLabel());
+        assertEquals(new Date(1000L), handled.get(0).getDCMDate());
+        InOrder inOrder = inOrder(mockPool, mockRepoReader);
+        inOrder.verify(mockPool).free(mockConnection);
+        inOrder.verify(mockRepoReader).getReader(anyBoolean(),
+                                                 any(Context.class),
+                                                 anyString());
+    }
+}
@@ -0,0 +1,190 @@
+/* The contents of this file are subject to the license and copyright terms
+ * detailed in the license directory at the root of the source tree (also
+ * available online at http://fedora-commons.org/license/).
+ */
+
+package org.fcrepo.server.search;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyBoolean;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.fcrepo.server.Context;
+import org.fcrepo.server.errors.UnknownSessionTokenException;
+import org.fcrepo.server.storage.ConnectionPool;
+import org.fcrepo.server.storage.DOReader;
+import org.fcrepo.server.storage.RepositoryReader;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+@RunWith(MockitoJUnitRunner.class)
+public class KeysetFieldSearchResultTest {
+
+    /** label is stored in lowercase, so the objects must be read */
+    private static final String[] LOADED_FIELDS =
+            new String[] {"pid", "label"};
+
+    private static final String[] PROJECTED_FIELDS =
+            new String[] {"pid", "state", "mDate"};
+
+    @Mock
+    private ConnectionPool mockPool;
+
+    @Mock
+    private Connection mockConnection;
+
+    @Mock
+    private PreparedStatement mockStmt;
+
+    @Mock
+    private ResultSet mockResults;
+
+    @Mock
+    private RepositoryReader mockRepoReader;
+
+    @Mock
+    private DOReader mockReader;
+
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(KeysetFieldSearchResultTest.class);
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        when(mockPool.getReadOnlyConnection()).thenReturn(mockConnection);
+        when(mockConnection.prepareStatement(anyString())).thenReturn(mockStmt);
+        when(mockStmt.executeQuery()).thenReturn(mockResults);
+        when(mockRepoReader.getReader(anyBoolean(), any(Context.class),
+                anyString())).thenReturn(mockReader);
+    }
+
+    @Test
+    public void testKeysetQueryText() throws Exception {
+        assertEquals("SELECT doFields.pid FROM doFields ORDER BY doFields.pid",
+                FieldSearchResultSQLImpl.getKeysetQueryText(
+                        new FieldSearchQuery("*"), false));
+        assertEquals("SELECT doFields.pid FROM doFields"
+                + " WHERE doFields.pid > ? ORDER BY doFields.pid",
+                FieldSearchResultSQLImpl.getKeysetQueryText(
+                        new FieldSearchQuery("*"), true));
+        String terms = FieldSearchResultSQLImpl.getKeysetQueryText(
+                new FieldSearchQuery("foo"), true);
+        assertEquals(0, terms.indexOf("SELECT doFields.pid FROM doFields WHERE (pid"));
+        assertEquals(terms.length() - ") AND doFields.pid > ? ORDER BY doFields.pid".length(),
+                terms.indexOf(") AND doFields.pid > ? ORDER BY doFields.pid"));
+        List<Condition> conditions =
+                Condition.getConditions("date>2006-01-01 pid~demo:*");
+        String joined = FieldSearchResultSQLImpl.getKeysetQueryText(
+                new FieldSearchQuery(conditions), true);
+        assertTrue(joined.startsWith("SELECT DISTINCT doFields.pid FROM doFields"
+                + " LEFT JOIN dcDates ON doFields.pid=dcDates.pid"
+                + " WHERE dcDates.dcDate>"));
+        assertTrue(joined.endsWith(" AND doFields.pid LIKE 'demo:%'"
+                + " AND doFields.pid > ? ORDER BY doFields.pid"));
+    }
+
+    @Test
+    public void testPagesResumeAfterLastPid() throws Exception {
+        when(mockResults.next()).thenReturn(true, true, true, false,
+                                            true, false);
+        when(mockResults.getString(1)).thenReturn("demo:1", "demo:2",
+                                                  "demo:3", "demo:3");
+
+        FieldSearchQuery query =
+                new FieldSearchQuery(Condition.getConditions("pid~demo:*"));
+        KeysetFieldSearchResult first =
+                KeysetFieldSearchResult.getFirstPage(mockPool, mockRepoReader,
+                                                     LOADED_FIELDS, 2, 60,
+                                                     query);
+        assertEquals(pids("demo:1", "demo:2"), getPids(first));
+        assertEquals(0, first.getCursor());
+        assertNotNull(first.getToken());
+        assertNotNull(first.getExpirationDate());
+        verify(mockStmt).setMaxRows(3);
+        // the connection is not held between pages
+        verify(mockPool, times(1)).free(mockConnection);
+
+        KeysetFieldSearchResult second =
+                KeysetFieldSearchResult.getNextPage(mockPool, mockRepoReader,
+                                                    first.getToken(), 100, 60);
+        assertEquals(pids("demo:3"), getPids(second));
+        assertEquals(2, second.getCursor());
+        assertNull(second.getToken());
+        verify(mockStmt).setString(1, "demo:2");
+        verify(mockPool, times(2)).free(mockConnection);
+    }
+
+    @Test
+    public void testProjectedFieldsDoNotReadObjects() throws Exception {
+        when(mockResults.next()).thenReturn(true, false);
+        when(mockResults.getString(1)).thenReturn("demo:1");
+        when(mockResults.getString("pid")).thenReturn("demo:1");
+        when(mockResults.getString("state")).thenReturn("a");
+        when(mockResults.getLong("mDate")).thenReturn(5000L);
+
+        KeysetFieldSearchResult result =
+                KeysetFieldSearchResult.getFirstPage(mockPool, mockRepoReader,
+                                                     PROJECTED_FIELDS, 10, 60,
+                                                     new FieldSearchQuery("*"));
+        verify(mockConnection).prepareStatement("SELECT doFields.pid,"
+                + " doFields.state, doFields.mDate FROM doFields"
+                + " ORDER BY doFields.pid");
+        assertEquals(1, result.objectFieldsList().size());
+        ObjectFields f = result.objectFieldsList().get(0);
+        assertEquals("demo:1", f.getPid());
+        assertEquals("A", f.getState());
+        assertEquals(new Date(5000L), f.getMDate());
+        assertNull(result.getToken());
+        verify(mockRepoReader, never()).getReader(anyBoolean(),
+                                                  any(Context.class),
+                                                  anyString());
+    }
+
+    @Test
+    public void testBadTokenIsUnknown() throws Exception {
+        try {
+            KeysetFieldSearchResult.getNextPage(mockPool, mockRepoReader,
+                                                "not-a-token", 100, 60);
+            fail("Expected UnknownSessionTokenException");
+        } catch (UnknownSessionTokenException e) {
+            // expected
+        }
+    }
+
+    private static List<String> pids(String... pids) {
+        List<String> result = new ArrayList<String>();
+        for (String pid : pids) {
+            result.add(pid);
+        }
+        return result;
+    }
+
+    private static List<String> getPids(FieldSearchResult result) {
+        List<String> pids = new ArrayList<String>();
+        for (ObjectFields f : result.objectFieldsList()) {
+            pids.add(f.getPid());
+        }
+        return pids;
+    }
+}
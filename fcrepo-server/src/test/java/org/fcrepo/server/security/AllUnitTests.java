@@ -8,7 +8,7 @@ import org.junit.runner.RunWith;
 import org.junit.runners.Suite;
 
 @RunWith(Suite.class)
-@Suite.SuiteClasses( { TestPolicyParser.class, org.fcrepo.server.security.impl.AllUnitTests.class })
+@Suite.SuiteClasses( { TestPolicyParser.class, TestPolicyFinderModule.class, org.fcrepo.server.security.impl.AllUnitTests.class, org.fcrepo.server.security.servletfilters.AllUnitTests.class })
 public class AllUnitTests {
 
     // Supports legacy tests runners
@@ -17,7 +17,9 @@ public class AllUnitTests {
         junit.framework.TestSuite suite =
                 new junit.framework.TestSuite(AllUnitTests.class.getName());
         suite.addTest(TestPolicyParser.suite());
+        suite.addTest(TestPolicyFinderModule.suite());
         suite.addTest(org.fcrepo.server.security.impl.AllUnitTests.suite());
+        suite.addTest(org.fcrepo.server.security.servletfilters.AllUnitTests.suite());
         return suite;
     }
 }
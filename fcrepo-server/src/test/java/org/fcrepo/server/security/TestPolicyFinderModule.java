@@ -0,0 +1,136 @@
+/* The contents of this file are subject to the license and copyright terms
+ * detailed in the license directory at the root of the source tree (also
+ * available online at http://fedora-commons.org/license/).
+ */
+package org.fcrepo.server.security;
+
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyBoolean;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.fcrepo.server.Server;
+import org.fcrepo.server.config.ModuleConfiguration;
+import org.fcrepo.server.config.Parameter;
+import org.fcrepo.server.storage.types.Datastream;
+import org.fcrepo.server.storage.types.DatastreamXMLMetadata;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.powermock.core.classloader.annotations.PowerMockIgnore;
+import org.powermock.core.classloader.annotations.PrepareForTest;
+import org.powermock.modules.junit4.PowerMockRunner;
+
+import org.jboss.security.xacml.sunxacml.PolicySet;
+
+/**
+ * Unit tests for the object policy cache in PolicyFinderModule.
+ */
+@RunWith(PowerMockRunner.class)
+@PowerMockIgnore({"org.slf4j.*", "org.apache.xerces.*", "javax.xml.*",
+    "org.xml.sax.*", "org.w3c.*"})
+@PrepareForTest({Server.class})
+public class TestPolicyFinderModule {
+
+    private static final String PID = "test:1";
+
+    @Mock
+    private Server m_server;
+
+    private File m_schema;
+
+    private PolicyLoader m_loader;
+
+    private PolicyFinderModule m_finder;
+
+    @Before
+    public void setUp() throws Exception {
+        m_schema = File.createTempFile("policy", ".xsd");
+        FileOutputStream out = new FileOutputStream(m_schema);
+        try {
+            out.write(TestPolicyParser.SCHEMA_GOODENOUGH.getBytes("UTF-8"));
+        } finally {
+            out.close();
+        }
+        when(m_server.getHomeDir()).thenReturn(m_schema.getParentFile());
+        m_loader = mock(PolicyLoader.class);
+        when(m_loader.parseObjectPolicy(any(PolicyParser.class),
+                any(Datastream.class), anyBoolean())).thenCallRealMethod();
+
+        List<Parameter> params = new ArrayList<Parameter>();
+        params.add(new Parameter("POLICY-SCHEMA-PATH",
+                m_schema.getAbsolutePath()));
+        m_finder = new PolicyFinderModule(m_server, m_loader,
+                new ModuleConfiguration(params, "Authorization", null, null));
+    }
+
+    @After
+    public void tearDown() {
+        m_schema.delete();
+    }
+
+    @Test
+    public void testUnchangedPolicyIsParsedOnce() throws Exception {
+        when(m_loader.getObjectPolicyDatastream(PID)).thenReturn(
+                getPolicy("POLICY.0", 1000));
+
+        PolicySet first = m_finder.getObjectPolicySet(PID);
+        PolicySet second = m_finder.getObjectPolicySet(PID);
+        assertSame(first, second);
+        verify(m_loader, times(1)).parseObjectPolicy(any(PolicyParser.class),
+                any(Datastream.class), anyBoolean());
+    }
+
+    @Test
+    public void testModifiedPolicyIsParsedAgain() throws Exception {
+        when(m_loader.getObjectPolicyDatastream(PID)).thenReturn(
+                getPolicy("POLICY.0", 1000), getPolicy("POLICY.1", 2000));
+
+        PolicySet first = m_finder.getObjectPolicySet(PID);
+        PolicySet second = m_finder.getObjectPolicySet(PID);
+        assertNotSame(first, second);
+        verify(m_loader, times(2)).parseObjectPolicy(any(PolicyParser.class),
+                any(Datastream.class), anyBoolean());
+    }
+
+    @Test
+    public void testObjectWithoutPolicyGetsRepositoryPolicies()
+            throws Exception {
+        when(m_loader.getObjectPolicyDatastream(PID)).thenReturn(null);
+
+        PolicySet first = m_finder.getObjectPolicySet(PID);
+        assertSame(first, m_finder.getObjectPolicySet(PID));
+        verify(m_loader, never()).parseObjectPolicy(any(PolicyParser.class),
+                any(Datastream.class), anyBoolean());
+    }
+
+    private static Datastream getPolicy(String versionId, long created)
+            throws IOException {
+        DatastreamXMLMetadata ds = new DatastreamXMLMetadata();
+        ds.DatastreamID = "POLICY";
+        ds.DSVersionID = versionId;
+        ds.DSCreateDT = new Date(created);
+        ds.xmlContent = TestPolicyParser.POLICY_GOODENOUGH.getBytes("UTF-8");
+        return ds;
+    }
+
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(TestPolicyFinderModule.class);
+    }
+}
@@ -0,0 +1,156 @@
+/* The contents of this file are subject to the license and copyright terms
+ * detailed in the license directory at the root of the source tree (also
+ * available online at http://fedora-commons.org/license/).
+ */
+package org.fcrepo.server.security.servletfilters;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Test;
+
+public class TestCache {
+
+    private static final String PASSWORD = "secret";
+
+    /**
+     * Authenticates one user with one password, counting lookups, and
+     * optionally holding each lookup until released.
+     */
+    private static class Populator
+            implements CacheElementPopulator {
+
+        final AtomicInteger lookups = new AtomicInteger();
+
+        final AtomicBoolean fail = new AtomicBoolean();
+
+        volatile CountDownLatch release;
+
+        @Override
+        public void populateCacheElement(CacheElement cacheElement,
+                                         String password) {
+            lookups.incrementAndGet();
+            try {
+                if (release != null) {
+                    release.await(10, TimeUnit.SECONDS);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            if (fail.get()) {
+                cacheElement.populate(null, null, null, "backend down");
+            } else {
+                cacheElement.populate(Boolean.valueOf(PASSWORD.equals(password)),
+                                      null,
+                                      null,
+                                      null);
+            }
+        }
+    }
+
+    private static Cache getCache(Populator populator,
+                                  String successUnit,
+                                  int successDuration) {
+        return new Cache("TestFilter", "", successUnit, successDuration,
+                         "SECOND", 1, "SECOND", 1, populator);
+    }
+
+    @Test
+    public void testPasswordChecked() throws Throwable {
+        Populator populator = new Populator();
+        Cache cache = getCache(populator, "MINUTE", 10);
+
+        assertTrue(cache.authenticate(populator, "user", PASSWORD));
+        assertTrue(cache.authenticate(populator, "user", PASSWORD));
+        assertFalse(cache.authenticate(populator, "user", "wrong"));
+        assertFalse(cache.authenticate(populator, "user", ""));
+        assertEquals(1, populator.lookups.get());
+        assertEquals(3, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+        assertEquals(1, cache.getLookupCount());
+    }
+
+    @Test
+    public void testOneLookupPerUser() throws Exception {
+        final Populator populator = new Populator();
+        populator.release = new CountDownLatch(1);
+        final Cache cache = getCache(populator, "MINUTE", 10);
+
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<Boolean>> results = new ArrayList<Future<Boolean>>();
+            for (int i = 0; i < 8; i++) {
+                results.add(pool.submit(new Callable<Boolean>() {
+
+                    @Override
+                    public Boolean call() throws Exception {
+                        try {
+                            return cache.authenticate(populator, "user",
+                                                      PASSWORD);
+                        } catch (Throwable t) {
+                            throw new Exception(t);
+                        }
+                    }
+                }));
+            }
+            Thread.sleep(200);
+            populator.release.countDown();
+            for (Future<Boolean> result : results) {
+                assertTrue(result.get(10, TimeUnit.SECONDS));
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+        assertEquals(1, populator.lookups.get());
+    }
+
+    @Test
+    public void testRefreshedAheadOfExpiry() throws Throwable {
+        Populator populator = new Populator();
+        Cache cache = getCache(populator, "MILLISECOND", 2000);
+
+        assertTrue(cache.authenticate(populator, "user", PASSWORD));
+        Thread.sleep(1700);
+        // still served from the cache, but starts a refresh
+        assertTrue(cache.authenticate(populator, "user", PASSWORD));
+        for (int i = 0; i < 50 && populator.lookups.get() < 2; i++) {
+            Thread.sleep(20);
+        }
+        assertEquals(2, populator.lookups.get());
+        assertEquals(1, cache.getMissCount());
+    }
+
+    @Test
+    public void testFailedRefreshKeepsAnswer() throws Throwable {
+        Populator populator = new Populator();
+        Cache cache = getCache(populator, "MILLISECOND", 2000);
+
+        assertTrue(cache.authenticate(populator, "user", PASSWORD));
+        populator.fail.set(true);
+        Thread.sleep(1700);
+        assertTrue(cache.authenticate(populator, "user", PASSWORD));
+        for (int i = 0; i < 50 && populator.lookups.get() < 2; i++) {
+            Thread.sleep(20);
+        }
+        assertEquals(2, populator.lookups.get());
+        assertTrue(cache.authenticate(populator, "user", PASSWORD));
+    }
+
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(TestCache.class);
+    }
+}
@@ -10,9 +10,12 @@ import org.junit.runners.Suite;
 
 @RunWith(Suite.class)
 @Suite.SuiteClasses( {org.fcrepo.server.storage.DefaultDOManagerTest.class,
+                      org.fcrepo.server.storage.DOReaderCacheTest.class,
                       org.fcrepo.server.storage.DefaultExternalContentManagerTest.class,
+                      org.fcrepo.server.storage.IndexReconcilerTest.class,
+                      org.fcrepo.server.storage.RelationshipChangesTest.class,
                       org.fcrepo.server.storage.translation.AllUnitTests.class,
-                      org.fcrepo.server.storage.lowlevel.akubra.AllUnitTests.class})
+                      org.fcrepo.server.storage.lowlevel.AllUnitTests.class})
 public class AllUnitTests {
 
     // Supports legacy tests runners
@@ -22,9 +25,12 @@ public class AllUnitTests {
                 new junit.framework.TestSuite(AllUnitTests.class.getName());
 
         suite.addTest(org.fcrepo.server.storage.DefaultDOManagerTest.suite());
+        suite.addTest(org.fcrepo.server.storage.DOReaderCacheTest.suite());
         suite.addTest(org.fcrepo.server.storage.DefaultExternalContentManagerTest.suite());
+        suite.addTest(org.fcrepo.server.storage.IndexReconcilerTest.suite());
+        suite.addTest(org.fcrepo.server.storage.RelationshipChangesTest.suite());
         suite.addTest(org.fcrepo.server.storage.translation.AllUnitTests.suite());
-        suite.addTest(org.fcrepo.server.storage.lowlevel.akubra.AllUnitTests.suite());
+        suite.addTest(org.fcrepo.server.storage.lowlevel.AllUnitTests.suite());
 
         return suite;
     }
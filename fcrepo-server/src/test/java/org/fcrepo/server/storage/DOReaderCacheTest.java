@@ -0,0 +1,109 @@
+/* The contents of this file are subject to the license and copyright terms
+ * detailed in the license directory at the root of the source tree (also
+ * available online at http://fedora-commons.org/license/).
+ */
+
+package org.fcrepo.server.storage;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.fcrepo.server.storage.types.BasicDigitalObject;
+import org.fcrepo.server.storage.types.DatastreamXMLMetadata;
+import org.junit.Before;
+import org.junit.Test;
+
+public class DOReaderCacheTest {
+
+    private DOReaderCache cache;
+
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(DOReaderCacheTest.class);
+    }
+
+    @Before
+    public void setUp() {
+        cache = new DOReaderCache();
+        cache.setMaxSeconds(60);
+    }
+
+    @Test
+    public void testHitsAndMisses() {
+        DOReader reader = reader("demo:1", 0);
+        assertNull(cache.get("demo:1"));
+        cache.put(reader);
+        assertSame(reader, cache.get("demo:1"));
+        assertEquals(1, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+        assertEquals(1, cache.getLoadCount());
+
+        cache.remove("demo:1");
+        assertNull(cache.get("demo:1"));
+        assertEquals(0, cache.getSize());
+    }
+
+    @Test
+    public void testExpiredEntriesAreRemoved() {
+        cache.put(reader("demo:1", 0), System.currentTimeMillis() - 120000);
+        cache.removeExpired();
+        assertEquals(0, cache.getSize());
+        assertEquals(1, cache.getExpirationCount());
+    }
+
+    @Test
+    public void testFrequentObjectIsNotDisplacedByNewOne() {
+        cache.setMaxEntries(1);
+        get("demo:1", 3);
+        cache.put(reader("demo:1", 0));
+
+        // asked for once: not admitted in place of demo:1
+        get("demo:2", 1);
+        cache.put(reader("demo:2", 0));
+        assertNull(cache.get("demo:2"));
+        assertNotNull(cache.get("demo:1"));
+        assertEquals(1, cache.getRejectionCount());
+
+        // asked for more often than demo:1: admitted
+        get("demo:2", 5);
+        cache.put(reader("demo:2", 0));
+        assertNotNull(cache.get("demo:2"));
+        assertNull(cache.get("demo:1"));
+        assertEquals(1, cache.getEvictionCount());
+    }
+
+    @Test
+    public void testWeightBound() {
+        cache.setMaxWeight(10);
+        // 1 for the object, 1 for the datastream, 20 for 20KB of XML
+        cache.put(reader("demo:big", 20 * 1024));
+        assertEquals(0, cache.getSize());
+        assertEquals(1, cache.getRejectionCount());
+
+        cache.put(reader("demo:small", 1024));
+        assertEquals(1, cache.getSize());
+        assertEquals(3, cache.getWeight());
+    }
+
+    private void get(String pid, int times) {
+        for (int i = 0; i < times; i++) {
+            cache.get(pid);
+        }
+    }
+
+    private static DOReader reader(String pid, int xmlBytes) {
+        BasicDigitalObject obj = new BasicDigitalObject();
+        obj.setPid(pid);
+        if (xmlBytes > 0) {
+            DatastreamXMLMetadata ds = new DatastreamXMLMetadata();
+            ds.DatastreamID = "DS";
+            ds.DSVersionID = "DS.0";
+            ds.xmlContent = new byte[xmlBytes];
+            obj.addDatastreamVersion(ds, false);
+        }
+        return new MockDOReader(obj);
+    }
+}
@@ -9,10 +9,14 @@ import static junit.framework.Assert.fail;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyBoolean;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyListOf;
 import static org.mockito.Matchers.anyString;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.powermock.api.mockito.PowerMockito.mockStatic;
@@ -21,17 +25,26 @@ import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.lang.reflect.Field;
+import java.net.URI;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 
+import org.fcrepo.common.Constants;
 import org.fcrepo.common.PID;
+import org.fcrepo.common.rdf.SimpleLiteral;
+import org.fcrepo.common.rdf.SimpleTriple;
+import org.fcrepo.common.rdf.SimpleURIReference;
 import org.fcrepo.server.Context;
 import org.fcrepo.server.Server;
 import org.fcrepo.server.errors.ObjectExistsException;
@@ -40,6 +53,7 @@ import org.fcrepo.server.errors.ServerException;
 import org.fcrepo.server.errors.GeneralException;
 import org.fcrepo.server.management.BasicPIDGenerator;
 import org.fcrepo.server.management.ManagementModule;
+import org.fcrepo.server.resourceIndex.ResourceIndex;
 import org.fcrepo.server.resourceIndex.ResourceIndexModule;
 import org.fcrepo.server.search.FieldSearch;
 import org.fcrepo.server.storage.lowlevel.DefaultLowlevelStorageModule;
@@ -50,9 +64,16 @@ import org.fcrepo.server.storage.types.BasicDigitalObject;
 import org.fcrepo.server.utilities.SQLUtility;
 import org.fcrepo.server.validation.DOObjectValidatorModule;
 import org.fcrepo.server.validation.DOValidatorModule;
+import org.fcrepo.server.validation.MockTripleIterator;
+import org.jrdf.graph.ObjectNode;
+import org.jrdf.graph.PredicateNode;
+import org.jrdf.graph.SubjectNode;
+import org.jrdf.graph.Triple;
+import org.jrdf.graph.URIReference;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.invocation.InvocationOnMock;
 import org.mockito.stubbing.Answer;
@@ -443,6 +464,181 @@ public class DefaultDOManagerTest
         assertEquals(0, unexpectedFailures);
     }
     
+    @Test
+    public void testGetReaderCachesWithLoadTime() throws Throwable {
+        mockReaderCache.setMaxSeconds(60);
+        when(mockLowLevelStorage.retrieveObject(DUMMY_PID)).thenReturn(
+                new ByteArrayInputStream("".getBytes(ENCODING)));
+        doAnswer(
+            new Answer<Void>() {
+                @Override
+                public Void answer(InvocationOnMock invocation) throws Throwable {
+                    BasicDigitalObject obj = (BasicDigitalObject) invocation.getArguments()[1];
+                    obj.setPid(DUMMY_PID);
+                    return null;
+                }
+            }
+        ).when(mockTranslatorModule).deserialize(
+            any(InputStream.class), any(BasicDigitalObject.class), eq(FORMAT), eq(ENCODING),
+                eq(DOTranslationUtility.DESERIALIZE_INSTANCE));
+
+        long start = System.currentTimeMillis();
+        testObj.getReader(false, mockContext, DUMMY_PID);
+
+        // timed from the load, whether or not debug logging is on
+        assertEquals(1, mockReaderCache.getLoadCount());
+        assertTrue(mockReaderCache.getTotalLoadMillis()
+                <= System.currentTimeMillis() - start);
+        mockReaderCache.removeExpired();
+        assertEquals(0, mockReaderCache.getExpirationCount());
+        assertEquals(1, mockReaderCache.getSize());
+    }
+
+    @Test
+    public void testReindexObjectAppliesTripleDiff() throws Throwable {
+        when(mockLowLevelStorage.retrieveObject(DUMMY_PID)).thenReturn(
+                new ByteArrayInputStream("".getBytes(ENCODING)));
+        doAnswer(
+            new Answer<Void>() {
+                @Override
+                public Void answer(InvocationOnMock invocation) throws Throwable {
+                    BasicDigitalObject obj = (BasicDigitalObject) invocation.getArguments()[1];
+                    obj.setPid(DUMMY_PID);
+                    return null;
+                }
+            }
+        ).when(mockTranslatorModule).deserialize(
+            any(InputStream.class), any(BasicDigitalObject.class), eq(FORMAT), eq(ENCODING),
+                eq(DOTranslationUtility.DESERIALIZE_INSTANCE));
+
+        String obj = "info:fedora/" + DUMMY_PID;
+        String dc = obj + "/DC";
+        String gone = obj + "/GONE";
+        String disseminates = Constants.VIEW.DISSEMINATES.uri;
+        String mimeType = Constants.VIEW.MIME_TYPE.uri;
+        String label = Constants.MODEL.LABEL.uri;
+        String owner = Constants.MODEL.OWNER.uri;
+
+        final List<Triple> stored = Arrays.asList(
+                triple(obj, label, "old"),
+                triple(obj, owner, "fedoraAdmin"),
+                uriTriple(obj, disseminates, dc),
+                uriTriple(obj, disseminates, gone),
+                triple(dc, mimeType, "text/plain"),
+                triple(gone, mimeType, "text/plain"));
+        List<Triple> expected = Arrays.asList(
+                triple(obj, label, "new"),
+                triple(obj, owner, "fedoraAdmin"),
+                uriTriple(obj, disseminates, dc),
+                triple(dc, mimeType, "text/xml"));
+
+        when(mockResourceIndexModule.getIndexLevel())
+                .thenReturn(ResourceIndex.INDEX_LEVEL_ON);
+        when(mockResourceIndexModule.exportObject(any(DOReader.class)))
+                .thenReturn(expected);
+        when(mockResourceIndexModule.findTriples(any(SubjectNode.class),
+                any(PredicateNode.class), any(ObjectNode.class), anyInt()))
+                .thenAnswer(new Answer<MockTripleIterator>() {
+                    @Override
+                    public MockTripleIterator answer(InvocationOnMock invocation) {
+                        Object[] args = invocation.getArguments();
+                        URI subject = ((URIReference) args[0]).getURI();
+                        URI predicate = args[1] == null ? null
+                                : ((URIReference) args[1]).getURI();
+                        List<Triple> found = new ArrayList<Triple>();
+                        for (Triple t : stored) {
+                            if (((URIReference) t.getSubject()).getURI().equals(subject)
+                                    && (predicate == null || ((URIReference) t
+                                            .getPredicate()).getURI().equals(predicate))) {
+                                found.add(t);
+                            }
+                        }
+                        return new MockTripleIterator(found);
+                    }
+                });
+
+        assertTrue(testObj.reindexObject(DUMMY_PID, -1));
+
+        verify(mockFieldSearch).update(any(DOReader.class));
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<List<Triple>> deletes =
+                (ArgumentCaptor<List<Triple>>) (ArgumentCaptor<?>) ArgumentCaptor
+                        .forClass(List.class);
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<List<Triple>> adds =
+                (ArgumentCaptor<List<Triple>>) (ArgumentCaptor<?>) ArgumentCaptor
+                        .forClass(List.class);
+        verify(mockResourceIndexModule).delete(deletes.capture(), eq(false));
+        verify(mockResourceIndexModule).add(adds.capture(), anyBoolean());
+        // the datastream that is gone is found through the stored triples
+        assertEquals(new HashSet<Triple>(Arrays.asList(
+                triple(obj, label, "old"),
+                uriTriple(obj, disseminates, gone),
+                triple(dc, mimeType, "text/plain"),
+                triple(gone, mimeType, "text/plain"))),
+                new HashSet<Triple>(deletes.getValue()));
+        assertEquals(new HashSet<Triple>(Arrays.asList(
+                triple(obj, label, "new"),
+                triple(dc, mimeType, "text/xml"))),
+                new HashSet<Triple>(adds.getValue()));
+    }
+
+    @Test
+    public void testReindexObjectLeavesIndexedObjectAlone() throws Throwable {
+        when(mockLowLevelStorage.retrieveObject(DUMMY_PID)).thenReturn(
+                new ByteArrayInputStream("".getBytes(ENCODING)));
+        doAnswer(
+            new Answer<Void>() {
+                @Override
+                public Void answer(InvocationOnMock invocation) throws Throwable {
+                    BasicDigitalObject obj = (BasicDigitalObject) invocation.getArguments()[1];
+                    obj.setPid(DUMMY_PID);
+                    return null;
+                }
+            }
+        ).when(mockTranslatorModule).deserialize(
+            any(InputStream.class), any(BasicDigitalObject.class), eq(FORMAT), eq(ENCODING),
+                eq(DOTranslationUtility.DESERIALIZE_INSTANCE));
+
+        final List<Triple> stored = Arrays.asList(
+                triple("info:fedora/" + DUMMY_PID,
+                        Constants.MODEL.LABEL.uri, "same"));
+        when(mockResourceIndexModule.getIndexLevel())
+                .thenReturn(ResourceIndex.INDEX_LEVEL_ON);
+        when(mockResourceIndexModule.exportObject(any(DOReader.class)))
+                .thenReturn(stored);
+        when(mockResourceIndexModule.findTriples(any(SubjectNode.class),
+                any(PredicateNode.class), any(ObjectNode.class), anyInt()))
+                .thenAnswer(new Answer<MockTripleIterator>() {
+                    @Override
+                    public MockTripleIterator answer(InvocationOnMock invocation) {
+                        return new MockTripleIterator(
+                                invocation.getArguments()[1] == null ? stored
+                                        : new ArrayList<Triple>());
+                    }
+                });
+
+        assertTrue(testObj.reindexObject(DUMMY_PID, -1));
+
+        verify(mockFieldSearch).update(any(DOReader.class));
+        verify(mockResourceIndexModule, never()).delete(
+                anyListOf(Triple.class), anyBoolean());
+        verify(mockResourceIndexModule, never()).add(
+                anyListOf(Triple.class), anyBoolean());
+    }
+
+    private static Triple triple(String subject, String predicate, String literal) {
+        return new SimpleTriple(new SimpleURIReference(URI.create(subject)),
+                new SimpleURIReference(URI.create(predicate)),
+                new SimpleLiteral(literal));
+    }
+
+    private static Triple uriTriple(String subject, String predicate, String object) {
+        return new SimpleTriple(new SimpleURIReference(URI.create(subject)),
+                new SimpleURIReference(URI.create(predicate)),
+                new SimpleURIReference(URI.create(object)));
+    }
+
     @Test
     public void testGetWriterUnlocksForException() throws Throwable {
         
@@ -0,0 +1,244 @@
+/* The contents of this file are subject to the license and copyright terms
+ * detailed in the license directory at the root of the source tree (also
+ * available online at http://fedora-commons.org/license/).
+ */
+
+package org.fcrepo.server.storage;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Matchers.startsWith;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.withSettings;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.Arrays;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.fcrepo.server.errors.GeneralException;
+import org.fcrepo.server.search.FieldSearch;
+import org.fcrepo.server.storage.lowlevel.IListable;
+import org.fcrepo.server.storage.lowlevel.ILowlevelStorage;
+import org.fcrepo.server.storage.lowlevel.ITimestamped;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+public class IndexReconcilerTest {
+
+    private DefaultDOManager m_manager;
+
+    private ConnectionPool m_pool;
+
+    private ILowlevelStorage m_store;
+
+    private FieldSearch m_fieldSearch;
+
+    private ResultSet m_watermark;
+
+    private ResultSet m_orphans;
+
+    private ResultSet m_failures;
+
+    private PreparedStatement m_update;
+
+    private PreparedStatement m_insert;
+
+    private PreparedStatement m_insertFailure;
+
+    private PreparedStatement m_updateFailure;
+
+    private PreparedStatement m_deleteFailure;
+
+    @Before
+    public void setUp() throws Exception {
+        m_manager = mock(DefaultDOManager.class);
+        m_store = mock(ILowlevelStorage.class, withSettings().extraInterfaces(
+                IListable.class, ITimestamped.class));
+        when(((IListable) m_store).listObjects()).thenReturn(
+                Arrays.asList("test:old", "test:new").iterator());
+        when(((ITimestamped) m_store).getObjectLastModified("test:old"))
+                .thenReturn(1000L);
+        when(((ITimestamped) m_store).getObjectLastModified("test:new"))
+                .thenReturn(5000L);
+        m_fieldSearch = mock(FieldSearch.class);
+
+        m_watermark = mock(ResultSet.class);
+        m_orphans = mock(ResultSet.class);
+        m_failures = mock(ResultSet.class);
+        Statement query = mock(Statement.class);
+        when(query.executeQuery(startsWith("SELECT watermark")))
+                .thenReturn(m_watermark);
+        when(query.executeQuery(startsWith("SELECT pid FROM"))).thenReturn(
+                m_orphans);
+        when(query.executeQuery(startsWith("SELECT pid, attempts")))
+                .thenReturn(m_failures);
+        m_update = mock(PreparedStatement.class);
+        m_insert = mock(PreparedStatement.class);
+        m_updateFailure = mock(PreparedStatement.class);
+        m_insertFailure = mock(PreparedStatement.class);
+        m_deleteFailure = mock(PreparedStatement.class);
+        Connection conn = mock(Connection.class);
+        when(conn.createStatement()).thenReturn(query);
+        when(conn.prepareStatement(startsWith("UPDATE fcrepoReconcileStatus")))
+                .thenReturn(m_update);
+        when(conn.prepareStatement(startsWith("INSERT INTO fcrepoReconcileStatus")))
+                .thenReturn(m_insert);
+        when(conn.prepareStatement(startsWith("UPDATE fcrepoReconcileFailure")))
+                .thenReturn(m_updateFailure);
+        when(conn.prepareStatement(startsWith("INSERT INTO fcrepoReconcileFailure")))
+                .thenReturn(m_insertFailure);
+        when(conn.prepareStatement(startsWith("DELETE FROM fcrepoReconcileFailure")))
+                .thenReturn(m_deleteFailure);
+        m_pool = mock(ConnectionPool.class);
+        when(m_pool.getReadOnlyConnection()).thenReturn(conn);
+        when(m_pool.getReadWriteConnection()).thenReturn(conn);
+    }
+
+    private IndexReconciler getReconciler() {
+        return new IndexReconciler(m_manager, m_pool, m_store, m_fieldSearch,
+                0);
+    }
+
+    @Test
+    public void testFirstPassReindexesEverything() throws Exception {
+        when(m_watermark.next()).thenReturn(false);
+        when(m_manager.reindexObject(anyString(), anyLong())).thenReturn(true);
+        when(m_update.executeUpdate()).thenReturn(0);
+
+        long start = System.currentTimeMillis();
+        assertEquals(2, getReconciler().reconcile());
+        long end = System.currentTimeMillis();
+        verify(m_manager).reindexObject("test:old", -1);
+        verify(m_manager).reindexObject("test:new", -1);
+        ArgumentCaptor<Long> watermark = ArgumentCaptor.forClass(Long.class);
+        verify(m_insert).setLong(eq(1), watermark.capture());
+        verify(m_insert).executeUpdate();
+        long slack = IndexReconciler.WATERMARK_SLACK_MILLIS;
+        assertTrue(watermark.getValue() >= start - slack);
+        assertTrue(watermark.getValue() <= end - slack);
+    }
+
+    @Test
+    public void testObjectsBeforeWatermarkAreSkipped() throws Exception {
+        when(m_watermark.next()).thenReturn(true);
+        when(m_watermark.getLong(1)).thenReturn(3000L);
+        when(m_manager.reindexObject(anyString(), anyLong())).thenReturn(true);
+        when(m_update.executeUpdate()).thenReturn(1);
+
+        assertEquals(1, getReconciler().reconcile());
+        verify(m_manager, never()).reindexObject(startsWith("test:old"),
+                anyLong());
+        verify(m_manager).reindexObject("test:new", -1);
+        verify(m_update).executeUpdate();
+        verify(m_insert, never()).executeUpdate();
+    }
+
+    @Test
+    public void testFailureRecordedAndWatermarkMoved() throws Exception {
+        when(m_watermark.next()).thenReturn(false);
+        when(m_manager.reindexObject("test:old", -1)).thenThrow(
+                new GeneralException("failed"));
+        when(m_manager.reindexObject("test:new", -1)).thenReturn(true);
+        when(m_update.executeUpdate()).thenReturn(0);
+
+        assertEquals(1, getReconciler().reconcile());
+        verify(m_insertFailure).setInt(1, 1);
+        verify(m_insertFailure).setString(2, "test:old");
+        verify(m_insertFailure).executeUpdate();
+        verify(m_insert).executeUpdate();
+    }
+
+    @Test
+    public void testFailureRetriedBeforeWatermark() throws Exception {
+        when(m_watermark.next()).thenReturn(true);
+        when(m_watermark.getLong(1)).thenReturn(3000L);
+        when(m_failures.next()).thenReturn(true, false);
+        when(m_failures.getString(1)).thenReturn("test:old");
+        when(m_failures.getInt(2)).thenReturn(1);
+        when(m_manager.reindexObject(anyString(), anyLong())).thenReturn(true);
+        when(m_update.executeUpdate()).thenReturn(1);
+
+        assertEquals(2, getReconciler().reconcile());
+        verify(m_manager).reindexObject("test:old", -1);
+        verify(m_manager).reindexObject("test:new", -1);
+        verify(m_deleteFailure).setString(1, "test:old");
+        verify(m_deleteFailure).executeUpdate();
+    }
+
+    @Test
+    public void testFailureCountedAgain() throws Exception {
+        when(m_watermark.next()).thenReturn(true);
+        when(m_watermark.getLong(1)).thenReturn(3000L);
+        when(m_failures.next()).thenReturn(true, false);
+        when(m_failures.getString(1)).thenReturn("test:old");
+        when(m_failures.getInt(2)).thenReturn(2);
+        when(m_manager.reindexObject("test:old", -1)).thenThrow(
+                new GeneralException("failed"));
+        when(m_manager.reindexObject("test:new", -1)).thenReturn(true);
+        when(m_update.executeUpdate()).thenReturn(1);
+
+        assertEquals(1, getReconciler().reconcile());
+        verify(m_updateFailure).setInt(1, 3);
+        verify(m_updateFailure).setString(2, "test:old");
+        verify(m_updateFailure).executeUpdate();
+        verify(m_update).executeUpdate();
+    }
+
+    @Test
+    public void testRepeatedFailureNoLongerRetried() throws Exception {
+        when(m_watermark.next()).thenReturn(true);
+        when(m_watermark.getLong(1)).thenReturn(3000L);
+        when(m_failures.next()).thenReturn(true, false);
+        when(m_failures.getString(1)).thenReturn("test:old");
+        when(m_failures.getInt(2)).thenReturn(IndexReconciler.MAX_ATTEMPTS);
+        when(m_manager.reindexObject(anyString(), anyLong())).thenReturn(true);
+        when(m_update.executeUpdate()).thenReturn(1);
+
+        assertEquals(1, getReconciler().reconcile());
+        verify(m_manager, never()).reindexObject(eq("test:old"), anyLong());
+        // still recorded, so it stays excluded until it is written again
+        verify(m_deleteFailure, never()).executeUpdate();
+        verify(m_updateFailure, never()).executeUpdate();
+    }
+
+    @Test
+    public void testFailureForgottenWhenObjectIsGone() throws Exception {
+        when(m_watermark.next()).thenReturn(true);
+        when(m_watermark.getLong(1)).thenReturn(3000L);
+        when(m_failures.next()).thenReturn(true, false);
+        when(m_failures.getString(1)).thenReturn("test:gone");
+        when(m_failures.getInt(2)).thenReturn(1);
+        when(m_manager.reindexObject(anyString(), anyLong())).thenReturn(true);
+        when(m_update.executeUpdate()).thenReturn(1);
+
+        getReconciler().reconcile();
+        verify(m_deleteFailure).setString(1, "test:gone");
+        verify(m_deleteFailure).executeUpdate();
+    }
+
+    @Test
+    public void testOrphansRemovedFromFieldSearch() throws Exception {
+        when(m_watermark.next()).thenReturn(false);
+        when(m_orphans.next()).thenReturn(true, false);
+        when(m_orphans.getString(1)).thenReturn("test:gone");
+        when(m_update.executeUpdate()).thenReturn(1);
+
+        getReconciler().reconcile();
+        verify(m_fieldSearch).delete("test:gone");
+    }
+
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(IndexReconcilerTest.class);
+    }
+}
@@ -0,0 +1,90 @@
+/* The contents of this file are subject to the license and copyright terms
+ * detailed in the license directory at the root of the source tree (also
+ * available online at http://fedora-commons.org/license/).
+ */
+package org.fcrepo.server.storage;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Test;
+
+public class RelationshipChangesTest {
+
+    private static final String IS_MEMBER_OF =
+            "info:fedora/fedora-system:def/relations-external#isMemberOf";
+
+    private static final Map<String, Set<String>> CHANGES =
+            Collections.singletonMap(IS_MEMBER_OF,
+                                     Collections.singleton("info:fedora/demo:10"));
+
+    private static class Recorder
+            implements RelationshipChanges.Listener {
+
+        final List<String> pids = new ArrayList<String>();
+
+        final List<Map<String, Set<String>>> changes =
+                new ArrayList<Map<String, Set<String>>>();
+
+        @Override
+        public void relationshipsChanged(String pid,
+                                         Map<String, Set<String>> changes) {
+            pids.add(pid);
+            this.changes.add(changes);
+        }
+    }
+
+    @Test
+    public void testListenersNotified() {
+        Recorder recorder = new Recorder();
+        RelationshipChanges.addListener(recorder);
+        try {
+            RelationshipChanges.fire("demo:1", CHANGES);
+            RelationshipChanges.fire("demo:2", null);
+        } finally {
+            RelationshipChanges.removeListener(recorder);
+        }
+        RelationshipChanges.fire("demo:3", null);
+
+        assertEquals(2, recorder.pids.size());
+        assertEquals("demo:1", recorder.pids.get(0));
+        assertEquals(CHANGES, recorder.changes.get(0));
+        assertEquals("demo:2", recorder.pids.get(1));
+        assertNull(recorder.changes.get(1));
+    }
+
+    @Test
+    public void testFailingListenerDoesNotStopOthers() {
+        RelationshipChanges.Listener failing =
+                new RelationshipChanges.Listener() {
+
+                    @Override
+                    public void relationshipsChanged(String pid,
+                                                     Map<String, Set<String>> changes) {
+                        throw new IllegalStateException("failing listener");
+                    }
+                };
+        Recorder recorder = new Recorder();
+        RelationshipChanges.addListener(failing);
+        RelationshipChanges.addListener(recorder);
+        try {
+            RelationshipChanges.fire("demo:1", null);
+        } finally {
+            RelationshipChanges.removeListener(failing);
+            RelationshipChanges.removeListener(recorder);
+        }
+        assertEquals(Collections.singletonList("demo:1"), recorder.pids);
+    }
+
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(RelationshipChangesTest.class);
+    }
+}
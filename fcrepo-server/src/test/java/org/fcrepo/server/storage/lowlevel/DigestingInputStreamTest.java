@@ -0,0 +1,74 @@
+/* The contents of this file are subject to the license and copyright terms
+ * detailed in the license directory at the root of the source tree (also
+ * available online at http://fedora-commons.org/license/).
+ */
+package org.fcrepo.server.storage.lowlevel;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.ByteArrayInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Map;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.fcrepo.server.utilities.StringUtility;
+import org.junit.Test;
+
+public class DigestingInputStreamTest {
+
+    private static final byte[] CONTENT = new byte[10000];
+    static {
+        for (int i = 0; i < CONTENT.length; i++) {
+            CONTENT[i] = (byte) (i * 31);
+        }
+    }
+
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(DigestingInputStreamTest.class);
+    }
+
+    @Test
+    public void testSeveralDigestsInOnePass() throws Exception {
+        DigestingInputStream in =
+                new DigestingInputStream(new ByteArrayInputStream(CONTENT),
+                                         Arrays.asList("MD5", "SHA-1"));
+        byte[] buf = new byte[777];
+        in.read();
+        while (in.read(buf, 0, buf.length) != -1) {
+        }
+        in.close();
+
+        assertEquals(CONTENT.length, in.getByteCount());
+        Map<String, String> digests = in.getDigests();
+        assertEquals(2, digests.size());
+        assertEquals(digest("MD5"), digests.get("MD5"));
+        assertEquals(digest("SHA-1"), digests.get("SHA-1"));
+        assertNull(digests.get("SHA-256"));
+    }
+
+    @Test
+    public void testSkippedBytesAreDigested() throws Exception {
+        DigestingInputStream in =
+                new DigestingInputStream(new ByteArrayInputStream(CONTENT),
+                                         Arrays.asList("MD5"));
+        assertEquals(5000, in.skip(5000));
+        assertEquals(5000, in.skip(6000));
+        assertEquals(CONTENT.length, in.getByteCount());
+        assertEquals(digest("MD5"), in.getDigests().get("MD5"));
+    }
+
+    @Test(expected = NoSuchAlgorithmException.class)
+    public void testUnknownAlgorithm() throws Exception {
+        new DigestingInputStream(new ByteArrayInputStream(CONTENT),
+                                 Arrays.asList("NO-SUCH-DIGEST"));
+    }
+
+    private static String digest(String algorithm) throws Exception {
+        return StringUtility.byteArraytoHexString(MessageDigest
+                .getInstance(algorithm).digest(CONTENT));
+    }
+}
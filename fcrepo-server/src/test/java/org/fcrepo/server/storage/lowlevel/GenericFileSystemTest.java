@@ -0,0 +1,120 @@
+/* The contents of this file are subject to the license and copyright terms
+ * detailed in the license directory at the root of the source tree (also
+ * available online at http://fedora-commons.org/license/).
+ */
+package org.fcrepo.server.storage.lowlevel;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.util.HashMap;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.fcrepo.utilities.io.FileChannelInputStream;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class GenericFileSystemTest {
+
+    private File file;
+
+    private final GenericFileSystem fs =
+            new GenericFileSystem(new HashMap<String, Object>());
+
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(GenericFileSystemTest.class);
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        file = File.createTempFile("genericfilesystem", ".dat");
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            out.write("0123456789".getBytes("UTF-8"));
+        } finally {
+            out.close();
+        }
+    }
+
+    @After
+    public void tearDown() {
+        file.delete();
+    }
+
+    @Test
+    public void testReadRange() throws Exception {
+        assertEquals("345", read(3, 3));
+        assertEquals("0", read(0, 1));
+    }
+
+    @Test
+    public void testReadRangePastEnd() throws Exception {
+        assertEquals("789", read(7, 10));
+        assertEquals("", read(12, 2));
+    }
+
+    @Test
+    public void testReadRangeIsTransferable() throws Exception {
+        InputStream in = fs.read(file, 4, 2);
+        try {
+            File target = File.createTempFile("genericfilesystem", ".out");
+            FileOutputStream out = new FileOutputStream(target);
+            try {
+                assertTrue(FileChannelInputStream.isTransferable(in, out));
+                assertEquals(2, FileChannelInputStream.transferTo(in, out));
+                out.close();
+                assertEquals("45", FileUtils.readFileToString(target, "UTF-8"));
+            } finally {
+                out.close();
+                target.delete();
+            }
+        } finally {
+            in.close();
+        }
+    }
+
+    @Test
+    public void testLink() throws Exception {
+        File dir = File.createTempFile("genericfilesystem", ".dir");
+        dir.delete();
+        File linked = new File(new File(dir, "sub"), "linked");
+        try {
+            fs.link(file, linked);
+            InputStream in = fs.read(linked);
+            try {
+                assertEquals("0123456789", IOUtils.toString(in, "UTF-8"));
+            } finally {
+                in.close();
+            }
+
+            File other = File.createTempFile("genericfilesystem", ".dat");
+            try {
+                fs.relink(other, linked);
+                assertEquals(0, linked.length());
+                assertEquals(10, file.length());
+            } finally {
+                other.delete();
+            }
+        } finally {
+            linked.delete();
+            linked.getParentFile().delete();
+            dir.delete();
+        }
+    }
+
+    private String read(long offset, long length) throws Exception {
+        InputStream in = fs.read(file, offset, length);
+        try {
+            return IOUtils.toString(in, "UTF-8");
+        } finally {
+            in.close();
+        }
+    }
+}
@@ -8,7 +8,7 @@ import org.junit.runner.RunWith;
 import org.junit.runners.Suite;
 
 @RunWith(Suite.class)
-@Suite.SuiteClasses( {DCFieldsTest.class, PIDStreamIterableWrapperTest.class, StreamUtilityTest.class, StringUtilityTest.class})
+@Suite.SuiteClasses( {BloomFilterTest.class, DCFieldsTest.class, ParallelTasksTest.class, PIDStreamIterableWrapperTest.class, StreamUtilityTest.class, StringUtilityTest.class})
 public class AllUnitTests {
 
 }
@@ -0,0 +1,55 @@
+/* The contents of this file are subject to the license and copyright terms
+ * detailed in the license directory at the root of the source tree (also
+ * available online at http://fedora-commons.org/license/).
+ */
+package org.fcrepo.server.utilities;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Test;
+
+public class BloomFilterTest {
+
+    @Test
+    public void testAddedAreContained() {
+        BloomFilter filter = new BloomFilter(1000);
+        for (int i = 0; i < 1000; i++) {
+            filter.add("demo:" + i);
+        }
+        for (int i = 0; i < 1000; i++) {
+            assertTrue(filter.mightContain("demo:" + i));
+        }
+    }
+
+    @Test
+    public void testFalsePositivesAreRare() {
+        BloomFilter filter = new BloomFilter(10000);
+        for (int i = 0; i < 10000; i++) {
+            filter.add("demo:" + i);
+        }
+        int falsePositives = 0;
+        for (int i = 0; i < 10000; i++) {
+            if (filter.mightContain("test:" + i)) {
+                falsePositives++;
+            }
+        }
+        // about 1% are expected
+        assertTrue("too many false positives: " + falsePositives,
+                   falsePositives < 300);
+    }
+
+    @Test
+    public void testEmpty() {
+        BloomFilter filter = new BloomFilter(0);
+        assertFalse(filter.mightContain("demo:1"));
+        filter.add("demo:1");
+        assertTrue(filter.mightContain("demo:1"));
+    }
+
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(BloomFilterTest.class);
+    }
+}
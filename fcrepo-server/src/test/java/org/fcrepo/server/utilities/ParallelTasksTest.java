@@ -0,0 +1,107 @@
+/* The contents of this file are subject to the license and copyright terms
+ * detailed in the license directory at the root of the source tree (also
+ * available online at http://fedora-commons.org/license/).
+ */
+package org.fcrepo.server.utilities;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Test;
+
+public class ParallelTasksTest {
+
+    @Test
+    public void testResultsInTaskOrder() throws Exception {
+        List<Callable<Integer>> tasks = new ArrayList<Callable<Integer>>();
+        for (int i = 0; i < 100; i++) {
+            final int value = i;
+            tasks.add(new Callable<Integer>() {
+
+                @Override
+                public Integer call() {
+                    return value;
+                }
+            });
+        }
+        List<Integer> results = ParallelTasks.invokeAll(tasks);
+        assertEquals(100, results.size());
+        for (int i = 0; i < 100; i++) {
+            assertEquals(i, results.get(i).intValue());
+        }
+    }
+
+    @Test
+    public void testEmptyBatch() throws Exception {
+        List<Callable<Integer>> tasks = Collections.emptyList();
+        assertEquals(0, ParallelTasks.invokeAll(tasks).size());
+    }
+
+    @Test
+    public void testNestedBatches() throws Exception {
+        List<Callable<Integer>> tasks = new ArrayList<Callable<Integer>>();
+        for (int i = 0; i < 20; i++) {
+            tasks.add(new Callable<Integer>() {
+
+                @Override
+                public Integer call() throws Exception {
+                    List<Callable<Integer>> inner =
+                            new ArrayList<Callable<Integer>>();
+                    for (int j = 0; j < 20; j++) {
+                        inner.add(new Callable<Integer>() {
+
+                            @Override
+                            public Integer call() {
+                                return 1;
+                            }
+                        });
+                    }
+                    int sum = 0;
+                    for (Integer result : ParallelTasks.invokeAll(inner)) {
+                        sum += result;
+                    }
+                    return sum;
+                }
+            });
+        }
+        for (Integer result : ParallelTasks.invokeAll(tasks)) {
+            assertEquals(20, result.intValue());
+        }
+    }
+
+    @Test
+    public void testTaskExceptionIsThrown() throws Exception {
+        List<Callable<Integer>> tasks = new ArrayList<Callable<Integer>>();
+        for (int i = 0; i < 10; i++) {
+            final int value = i;
+            tasks.add(new Callable<Integer>() {
+
+                @Override
+                public Integer call() throws IOException {
+                    if (value == 5) {
+                        throw new IOException("task " + value);
+                    }
+                    return value;
+                }
+            });
+        }
+        try {
+            ParallelTasks.invokeAll(tasks);
+            fail("expected the task's exception");
+        } catch (IOException e) {
+            assertEquals("task 5", e.getMessage());
+        }
+    }
+
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(ParallelTasksTest.class);
+    }
+}
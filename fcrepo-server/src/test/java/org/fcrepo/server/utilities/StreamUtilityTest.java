@@ -2,6 +2,11 @@ package org.fcrepo.server.utilities;
 
 import static org.junit.Assert.assertEquals;
 
+import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
 import org.junit.Test;
 
 
@@ -30,4 +35,23 @@ public class StreamUtilityTest {
         actual = StreamUtility.enc(in);
         assertEquals(expected, actual);
     }
+
+    @Test
+    public void testSkip() throws IOException {
+        // skips at most two bytes at a time
+        InputStream in =
+                new FilterInputStream(new ByteArrayInputStream("0123456789"
+                        .getBytes("UTF-8"))) {
+
+                    @Override
+                    public long skip(long n) throws IOException {
+                        return super.skip(Math.min(n, 2));
+                    }
+                };
+        assertEquals(7, StreamUtility.skip(in, 7));
+        assertEquals('7', in.read());
+        // stops at the end
+        assertEquals(2, StreamUtility.skip(in, 5));
+        assertEquals(-1, in.read());
+    }
 }
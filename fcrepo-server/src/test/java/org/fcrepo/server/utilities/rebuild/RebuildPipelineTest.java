@@ -0,0 +1,141 @@
+/* The contents of this file are subject to the license and copyright terms
+ * detailed in the license directory at the root of the source tree (also
+ * available online at http://fedora-commons.org/license/).
+ */
+package org.fcrepo.server.utilities.rebuild;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.withSettings;
+
+import java.io.File;
+import java.util.Arrays;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.fcrepo.server.errors.LowlevelStorageException;
+import org.fcrepo.server.storage.lowlevel.IListable;
+import org.fcrepo.server.storage.lowlevel.ILowlevelStorage;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+public class RebuildPipelineTest {
+
+    private ILowlevelStorage llstore;
+
+    private ResumableRebuilder rebuilder;
+
+    private File checkpointFile;
+
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(RebuildPipelineTest.class);
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        llstore =
+                mock(ILowlevelStorage.class,
+                     withSettings().extraInterfaces(IListable.class));
+        when(((IListable) llstore).listObjects())
+                .thenAnswer(new Answer<Object>() {
+
+                    public Object answer(InvocationOnMock inv) {
+                        return Arrays.asList("demo:1", "demo:2", "demo:3",
+                                             "demo:4", "demo:5").iterator();
+                    }
+                });
+        // every object fails to load; the pipeline still counts and
+        // checkpoints them
+        when(llstore.retrieveObject(anyString()))
+                .thenThrow(new LowlevelStorageException(true, "unreadable"));
+        rebuilder = mock(ResumableRebuilder.class);
+        checkpointFile = File.createTempFile("rebuild", ".checkpoint");
+        checkpointFile.delete();
+    }
+
+    @After
+    public void tearDown() {
+        checkpointFile.delete();
+    }
+
+    @Test
+    public void testCheckpoints() throws Exception {
+        RebuildPipeline pipeline =
+                new RebuildPipeline(rebuilder, llstore, 1, 2, 2, checkpointFile);
+        pipeline.run(null);
+        assertEquals(5, pipeline.getTotal());
+        assertEquals(5, pipeline.getErrors());
+        verify(rebuilder, times(2)).commit();
+
+        RebuildPipeline.Checkpoint checkpoint =
+                RebuildPipeline.readCheckpoint(checkpointFile, rebuilder);
+        assertEquals(4, checkpoint.count);
+        assertEquals("demo:4", checkpoint.pid);
+    }
+
+    @Test
+    public void testResume() throws Exception {
+        RebuildPipeline pipeline =
+                new RebuildPipeline(rebuilder, llstore, 3, 2, 10, checkpointFile);
+        pipeline.run(new RebuildPipeline.Checkpoint(3, "demo:3"));
+        assertEquals(2, pipeline.getTotal());
+        verify(llstore, never()).retrieveObject("demo:3");
+        verify(llstore).retrieveObject("demo:4");
+        verify(llstore).retrieveObject("demo:5");
+    }
+
+    @Test
+    public void testResumeFailsIfListingChanged() throws Exception {
+        RebuildPipeline pipeline =
+                new RebuildPipeline(rebuilder, llstore, 2, 2, 10, checkpointFile);
+        try {
+            pipeline.run(new RebuildPipeline.Checkpoint(3, "demo:2"));
+            fail("Resumed from a checkpoint that doesn't match the listing");
+        } catch (Exception e) {
+        }
+        verify(llstore, never()).retrieveObject(anyString());
+    }
+
+    @Test(timeout = 10000)
+    public void testReaderErrorDoesNotHangTheWriter() throws Exception {
+        Error error = new OutOfMemoryError("reading demo:2");
+        doThrow(error).when(llstore).retrieveObject("demo:2");
+        RebuildPipeline pipeline =
+                new RebuildPipeline(rebuilder, llstore, 2, 2, 1, checkpointFile);
+        try {
+            pipeline.run(null);
+            fail("Expected the reader's error to be reported");
+        } catch (Exception e) {
+            assertSame(error, e.getCause());
+        }
+        // the object that wasn't read is not checkpointed past
+        RebuildPipeline.Checkpoint checkpoint =
+                RebuildPipeline.readCheckpoint(checkpointFile, rebuilder);
+        assertEquals(1, checkpoint.count);
+        assertEquals("demo:1", checkpoint.pid);
+    }
+
+    @Test
+    public void testCheckpointIsForOneRebuilder() throws Exception {
+        RebuildPipeline.writeCheckpoint(checkpointFile,
+                                        rebuilder,
+                                        new RebuildPipeline.Checkpoint(7,
+                                                                       "demo:7"));
+        assertEquals(7, RebuildPipeline.readCheckpoint(checkpointFile,
+                                                       rebuilder).count);
+        assertNull(RebuildPipeline.readCheckpoint(checkpointFile,
+                                                  new SQLRebuilder()));
+    }
+}
@@ -3,6 +3,7 @@ package org.fcrepo.server.utilities.rebuild;
 import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.anyString;
 import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.powermock.api.mockito.PowerMockito.mockStatic;
@@ -15,9 +16,12 @@ import java.util.HashMap;
 
 import org.fcrepo.server.Server;
 import org.fcrepo.server.config.ServerConfiguration;
+import org.fcrepo.server.management.BasicPIDGenerator;
+import org.fcrepo.server.search.FieldSearchSQLModule;
 import org.fcrepo.server.storage.ConnectionPool;
 import org.fcrepo.server.storage.ConnectionPoolManagerImpl;
 import org.fcrepo.server.storage.lowlevel.DefaultLowlevelStorageModule;
+import org.fcrepo.server.storage.types.BasicDigitalObject;
 import org.fcrepo.server.utilities.SQLUtility;
 import org.junit.Before;
 import org.junit.Test;
@@ -58,8 +62,17 @@ public class SQLRebuilderTest {
     @Mock
     private PreparedStatement mockUpdateStmt;
 
+    @Mock
+    private PreparedStatement mockRegisterStmt;
+
     @Mock
     private ResultSet mockResults;
+
+    @Mock
+    private BasicPIDGenerator mockPIDGenerator;
+
+    @Mock
+    private FieldSearchSQLModule mockFieldSearch;
     
     @Mock
     private Server mockServer;
@@ -90,6 +103,12 @@ public class SQLRebuilderTest {
         .thenReturn(mockCreateStmt);
         when(mockRWConnection.prepareStatement(SQLRebuilder.UPDATE_REBUILD_STATUS))
         .thenReturn(mockUpdateStmt);
+        when(mockRWConnection.prepareStatement(SQLRebuilder.REGISTER_OBJECT))
+        .thenReturn(mockRegisterStmt);
+        when(mockServer.getModule("org.fcrepo.server.management.PIDGenerator"))
+        .thenReturn(mockPIDGenerator);
+        when(mockServer.getModule("org.fcrepo.server.search.FieldSearch"))
+        .thenReturn(mockFieldSearch);
         
         test.setServerConfiguration(mockConfig);
     }
@@ -116,4 +135,30 @@ public class SQLRebuilderTest {
         verify(mockUpdateStmt, never()).setBoolean(1, true);
         verify(mockUpdateStmt, never()).execute();
     }
+
+    @Test
+    public void testObjectsAreRegisteredInBatches() throws Exception {
+        test.start(new HashMap<String, String>());
+        test.addObject(object("demo:1"));
+        test.addObject(object("demo:2"));
+        // nothing is registered until the batch is committed
+        verify(mockRegisterStmt, never()).executeBatch();
+
+        test.commit();
+        verify(mockRegisterStmt).setString(1, "demo:1");
+        verify(mockRegisterStmt).setString(1, "demo:2");
+        verify(mockRegisterStmt, times(2)).addBatch();
+        verify(mockRegisterStmt).executeBatch();
+        verify(mockRWConnection).commit();
+
+        // the batch is empty now
+        test.finish();
+        verify(mockRegisterStmt).executeBatch();
+    }
+
+    private static BasicDigitalObject object(String pid) {
+        BasicDigitalObject obj = new BasicDigitalObject();
+        obj.setPid(pid);
+        return obj;
+    }
 }
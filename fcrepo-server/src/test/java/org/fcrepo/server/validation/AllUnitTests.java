@@ -10,6 +10,7 @@ import org.junit.runners.Suite;
 @RunWith(Suite.class)
 @Suite.SuiteClasses( {RelsValidatorTest.class,
                       DOValidatorXMLSchemaTest.class,
+                      DOValidatorImplTest.class,
                       ValidationUtilityTest.class})
 public class AllUnitTests {
 
@@ -21,6 +22,7 @@ public class AllUnitTests {
 
         suite.addTestSuite(RelsValidatorTest.class);
         suite.addTest(DOValidatorXMLSchemaTest.suite());
+        suite.addTest(DOValidatorImplTest.suite());
         suite.addTest(ValidationUtilityTest.suite());
 
         return suite;
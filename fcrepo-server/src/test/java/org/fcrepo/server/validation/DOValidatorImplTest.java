@@ -0,0 +1,205 @@
+/* The contents of this file are subject to the license and copyright terms
+ * detailed in the license directory at the root of the source tree (also
+ * available online at http://fedora-commons.org/license/).
+ */
+package org.fcrepo.server.validation;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.fcrepo.common.Constants;
+import org.fcrepo.server.errors.ObjectValidityException;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class DOValidatorImplTest {
+
+    private static final String RESOURCES = "src/main/resources/";
+
+    private static final String FOXML = Constants.FOXML1_1.uri;
+
+    private static final String ATOM_ZIP = Constants.ATOM_ZIP1_1.uri;
+
+    private static final String LABEL =
+            "<foxml:property NAME=\"info:fedora/fedora-system:def/model#label\""
+                    + " VALUE=\"An object\"/>";
+
+    @Rule
+    public TemporaryFolder tmpFolder = new TemporaryFolder();
+
+    private File m_tempDir;
+
+    private DOValidatorImpl m_validator;
+
+    @Before
+    public void setUp() throws Exception {
+        m_tempDir = tmpFolder.newFolder("validation");
+        Map<String, String> xmlSchemas = new HashMap<String, String>();
+        xmlSchemas.put(FOXML, RESOURCES + "xsd/foxml1-1.xsd");
+        xmlSchemas.put(ATOM_ZIP, RESOURCES + "xsd/atom.xsd");
+        Map<String, String> ruleSchemas = new HashMap<String, String>();
+        ruleSchemas.put(FOXML, RESOURCES + "schematron/foxmlRules1-1.xml");
+        ruleSchemas.put(ATOM_ZIP, RESOURCES + "schematron/atom-bogus.xml");
+        m_validator =
+                new DOValidatorImpl(m_tempDir.getPath(),
+                                    xmlSchemas,
+                                    RESOURCES + "schematron/preprocessor.xslt",
+                                    ruleSchemas);
+    }
+
+    @Test
+    public void testValidateAllInOnePass() throws Exception {
+        ReadOnceInputStream in = new ReadOnceInputStream(foxml(LABEL));
+        m_validator.validate(in, FOXML, DOValidator.VALIDATE_ALL, "ingest");
+
+        assertEquals(0, in.available());
+        // nothing was spooled to be read a second time
+        assertEquals(0, m_tempDir.list().length);
+    }
+
+    @Test
+    public void testValidateAllReportsSchematronFailure() throws Exception {
+        // valid against the schema, but the label is repeated
+        InputStream in = new ReadOnceInputStream(foxml(LABEL + LABEL));
+        try {
+            m_validator.validate(in, FOXML, DOValidator.VALIDATE_ALL, "ingest");
+            fail("Expected the Schematron rules to fail");
+        } catch (ObjectValidityException e) {
+            String problem =
+                    e.getValidation().getObjectProblems().get(0);
+            assertTrue(problem, problem.contains("DUPLICATE object property"));
+        }
+    }
+
+    @Test
+    public void testValidateAllReportsSchemaFailureFirst() throws Exception {
+        // invalid against the schema, and the label is repeated
+        String object =
+                foxml(LABEL + LABEL).replace("VERSION=\"1.1\"",
+                                             "VERSION=\"9.9\"");
+        try {
+            m_validator.validate(new ReadOnceInputStream(object),
+                                 FOXML,
+                                 DOValidator.VALIDATE_ALL,
+                                 "ingest");
+            fail("Expected the XML Schema to fail");
+        } catch (ObjectValidityException e) {
+            String problem =
+                    e.getValidation().getObjectProblems().get(0);
+            assertTrue(problem, problem.startsWith("DOValidatorXMLSchema"));
+        }
+    }
+
+    @Test
+    public void testValidateAtomZipManifest() throws Exception {
+        m_validator.validate(new ReadOnceInputStream(atomZip(atom("<id>info:fedora/demo:1</id>"))),
+                             ATOM_ZIP,
+                             DOValidator.VALIDATE_ALL,
+                             "ingest");
+        assertEquals(0, m_tempDir.list().length);
+    }
+
+    @Test
+    public void testValidateAtomZipManifestFailure() throws Exception {
+        // the schema allows the id to be repeated, the rules don't
+        InputStream in =
+                new ReadOnceInputStream(atomZip(atom("<id>info:fedora/demo:1</id>"
+                        + "<id>info:fedora/demo:2</id>")));
+        try {
+            m_validator.validate(in, ATOM_ZIP, DOValidator.VALIDATE_ALL, "ingest");
+            fail("Expected the Schematron rules to fail");
+        } catch (ObjectValidityException e) {
+            String problem =
+                    e.getValidation().getObjectProblems().get(0);
+            assertTrue(problem, problem.contains("atom:id"));
+        }
+    }
+
+    @Test(expected = ObjectValidityException.class)
+    public void testValidateAtomZipWithoutManifest() throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ZipOutputStream zip = new ZipOutputStream(bytes);
+        zip.putNextEntry(new ZipEntry("demo_1+DS1+DS1.0.xml"));
+        zip.write("<content/>".getBytes("UTF-8"));
+        zip.close();
+        m_validator.validate(new ByteArrayInputStream(bytes.toByteArray()),
+                             ATOM_ZIP,
+                             DOValidator.VALIDATE_ALL,
+                             "ingest");
+    }
+
+    private static String foxml(String properties) {
+        return "<foxml:digitalObject VERSION=\"1.1\" PID=\"demo:1\""
+                + " xmlns:foxml=\"info:fedora/fedora-system:def/foxml#\">"
+                + "<foxml:objectProperties>"
+                + "<foxml:property NAME=\"info:fedora/fedora-system:def/model#state\""
+                + " VALUE=\"A\"/>" + properties + "</foxml:objectProperties>"
+                + "</foxml:digitalObject>";
+    }
+
+    private static String atom(String ids) {
+        return "<feed xmlns=\"http://www.w3.org/2005/Atom\">" + ids
+                + "<title type=\"text\">An object</title>"
+                + "<updated>2011-01-01T00:00:00.000Z</updated></feed>";
+    }
+
+    /**
+     * A Zip serialization, with the manifest after some content.
+     */
+    private static byte[] atomZip(String manifest) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ZipOutputStream zip = new ZipOutputStream(bytes);
+        zip.putNextEntry(new ZipEntry("demo_1+DS1+DS1.0.xml"));
+        zip.write("<content/>".getBytes("UTF-8"));
+        zip.closeEntry();
+        zip.putNextEntry(new ZipEntry("atommanifest.xml"));
+        zip.write(manifest.getBytes("UTF-8"));
+        zip.closeEntry();
+        zip.close();
+        return bytes.toByteArray();
+    }
+
+    /**
+     * A stream that can only be read once.
+     */
+    private static class ReadOnceInputStream
+            extends ByteArrayInputStream {
+
+        ReadOnceInputStream(String content) throws IOException {
+            this(content.getBytes("UTF-8"));
+        }
+
+        ReadOnceInputStream(byte[] content) {
+            super(content);
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+
+        @Override
+        public synchronized void reset() {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(DOValidatorImplTest.class);
+    }
+}
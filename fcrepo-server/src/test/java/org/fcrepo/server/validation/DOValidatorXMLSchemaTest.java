@@ -7,13 +7,20 @@ package org.fcrepo.server.validation;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
 import junit.framework.JUnit4TestAdapter;
 
+import static org.junit.Assert.assertEquals;
+
 import org.fcrepo.common.FedoraTestConstants;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
+import org.xml.sax.Attributes;
+import org.xml.sax.helpers.DefaultHandler;
 
 
 /**
@@ -52,6 +59,41 @@ public class DOValidatorXMLSchemaTest
         dov.validate(in);
     }
 
+    @Test
+    public void testFoxmlValidationPassesEvents() throws Exception {
+        InputStream in =
+                new FileInputStream(RESOURCES + "demo/demo-objects/foxml/local-server-demos/simple-image-demo/obj_demo_5.xml");
+        DOValidatorXMLSchema dov =
+                new DOValidatorXMLSchema(RESOURCES + "xsd/foxml1-1.xsd");
+        final List<String> events = new ArrayList<String>();
+        dov.validate(in, new DefaultHandler() {
+
+            @Override
+            public void startDocument() {
+                events.add("startDocument");
+            }
+
+            @Override
+            public void startElement(String uri,
+                                     String localName,
+                                     String qName,
+                                     Attributes attributes) {
+                if (events.size() == 1) {
+                    events.add(uri + localName);
+                }
+            }
+
+            @Override
+            public void endDocument() {
+                events.add("endDocument");
+            }
+        });
+        // the whole document, with namespaces
+        assertEquals(Arrays.asList("startDocument",
+                                   "info:fedora/fedora-system:def/foxml#digitalObject",
+                                   "endDocument"), events);
+    }
+
     @Test
     public void testMetsValidation() throws Exception {
         InputStream in =
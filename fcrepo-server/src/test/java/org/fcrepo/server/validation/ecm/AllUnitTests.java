@@ -9,7 +9,7 @@ import org.junit.runners.Suite;
 
 @RunWith(Suite.class)
 
-@Suite.SuiteClasses(EcmTest.class)
+@Suite.SuiteClasses({EcmTest.class, ContentModelCacheTest.class})
 
 public class AllUnitTests {
 
@@ -20,6 +20,7 @@ public class AllUnitTests {
                 new junit.framework.TestSuite(AllUnitTests.class.getName());
 
         suite.addTestSuite(EcmTest.class);
+        suite.addTest(ContentModelCacheTest.suite());
 
         return suite;
     }
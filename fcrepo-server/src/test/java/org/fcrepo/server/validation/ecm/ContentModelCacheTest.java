@@ -0,0 +1,77 @@
+/* The contents of this file are subject to the license and copyright terms
+ * detailed in the license directory at the root of the source tree (also
+ * available online at http://fedora-commons.org/license/).
+ */
+package org.fcrepo.server.validation.ecm;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.Date;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.fcrepo.server.storage.DOReader;
+import org.junit.Test;
+
+public class ContentModelCacheTest {
+
+    private static final String PID = "demo:contentModel1";
+
+    private final ContentModelCache cache = new ContentModelCache(2);
+
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(ContentModelCacheTest.class);
+    }
+
+    @Test
+    public void testKeptForVersion() throws Exception {
+        DOReader v1 = contentModel(PID, new Date(1000));
+        cache.put(v1, null, "SCHEMA", "v1 schema");
+        assertEquals("v1 schema", cache.get(v1, null, "SCHEMA"));
+        assertEquals("v1 schema", cache.get(v1, new Date(1000), "SCHEMA"));
+        assertNull(cache.get(v1, null, "ONTOLOGY"));
+
+        DOReader v2 = contentModel(PID, new Date(2000));
+        assertNull(cache.get(v2, null, "SCHEMA"));
+        cache.put(v2, null, "SCHEMA", "v2 schema");
+        assertEquals("v2 schema", cache.get(v2, null, "SCHEMA"));
+        // the older version is no longer kept, and doesn't replace the newer
+        assertNull(cache.get(v1, null, "SCHEMA"));
+        cache.put(v1, null, "SCHEMA", "v1 schema");
+        assertEquals("v2 schema", cache.get(v2, null, "SCHEMA"));
+    }
+
+    @Test
+    public void testNotUsedForEarlierTimes() throws Exception {
+        DOReader cm = contentModel(PID, new Date(1000));
+        cache.put(cm, new Date(999), "SCHEMA", "schema");
+        assertNull(cache.get(cm, null, "SCHEMA"));
+        cache.put(cm, null, "SCHEMA", "schema");
+        assertNull(cache.get(cm, new Date(999), "SCHEMA"));
+    }
+
+    @Test
+    public void testInvalidateAndEviction() throws Exception {
+        DOReader cm1 = contentModel(PID, new Date(1000));
+        cache.put(cm1, null, "SCHEMA", "schema");
+        cache.invalidate(PID);
+        assertNull(cache.get(cm1, null, "SCHEMA"));
+
+        cache.put(cm1, null, "SCHEMA", "schema");
+        cache.put(contentModel("demo:contentModel2", new Date(1000)), null, "SCHEMA", "2");
+        cache.put(contentModel("demo:contentModel3", new Date(1000)), null, "SCHEMA", "3");
+        assertEquals(2, cache.size());
+        assertNull(cache.get(cm1, null, "SCHEMA"));
+    }
+
+    private static DOReader contentModel(String pid, Date lastModified)
+            throws Exception {
+        DOReader reader = mock(DOReader.class);
+        when(reader.GetObjectPID()).thenReturn(pid);
+        when(reader.getLastModDate()).thenReturn(lastModified);
+        return reader;
+    }
+}